@@ -19,7 +19,9 @@
 package de.hub.cs.dbis.aeolus.batching;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -35,6 +37,7 @@ import backtype.storm.generated.GlobalStreamId;
 import backtype.storm.generated.Grouping;
 import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
 import backtype.storm.utils.Utils;
 
@@ -46,8 +49,27 @@ import backtype.storm.utils.Utils;
  * {@link AbstractBatchCollector} buffers emitted tuples in batches and emits full batches. It is used by
  * {@link BatchSpoutOutputCollector} and {@link BatchOutputCollector}.
  * 
- * {@link AbstractBatchCollector} uses {@code de.hub.cs.dbis.aeolus.batching.StormConnector} which is provided as
- * jar-file. This jar file need to be build manually (see folder aeolus/aeolus-storm-connector).
+ * The state of each batched output stream is resolved into a {@link StreamDescriptor} at construction time. Thus,
+ * buffering a tuple requires at most a single map lookup (none, if the same output stream is used as for the last
+ * tuple).
+ * 
+ * For fields-grouped receivers, {@link AbstractBatchCollector} computes the receiver task of each output tuple itself
+ * (see {@link FieldsGroupingPartitioner}), using the same partitioning as Storm. Regularly, each output tuple is
+ * inserted into a single output buffer and thus, the number of output buffers of a stream is the product of the dops
+ * of all fields-grouped receivers (receivers that use the same grouping fields and have the same dop share their
+ * buffers). If fields-grouped receivers subscribe to the corresponding direct stream (see
+ * {@link BatchingOutputFieldsDeclarer}), each receiver task gets its own output buffer instead and output batches are
+ * emitted via the direct stream. For this case, the number of output buffers of a stream is the sum of the dops of all
+ * receivers.
+ * 
+ * Output buffers that are only consumed by tasks of the producer's worker can use a different (usually smaller) batch
+ * size or bypass batching completely (see {@link #setLocalBatchSize(String, int)}), because batching only pays off for
+ * network transfer.
+ * 
+ * Control streams (eg, punctuations or flush streams that signal progress) are never batched. Before a control tuple
+ * is emitted, all buffered batches of data streams that share a receiver with the control stream are emitted. Thus,
+ * receivers never see a control tuple before data tuples that were emitted earlier (see
+ * {@link #addControlStream(String)}).
  * 
  * @author mjsax
  */
@@ -55,60 +77,58 @@ public abstract class AbstractBatchCollector {
 	protected final static Logger logger = LoggerFactory.getLogger(AbstractBatchCollector.class);
 	
 	/**
-	 * The sizes of the output batches for each output stream.
+	 * The ID of the producer operator which output is buffered by this {@link AbstractBatchCollector}.
 	 */
-	private final Map<String, Integer> batchSizes;
+	private final String componentId;
 	/**
-	 * The number of the attributes of the output schema.
+	 * The ID of the producer task which output is buffered by this {@link AbstractBatchCollector}.
 	 */
-	private final Map<String, Integer> numberOfAttributes = new HashMap<String, Integer>();
+	private final int taskId;
 	/**
-	 * The current runtime environment.
+	 * Maps batched output streams to their descriptors. Output streams with disabled batching are not contained.
 	 */
-	private final TopologyContext topologyContext;
+	private final Map<String, StreamDescriptor> streams = new HashMap<String, StreamDescriptor>();
 	/**
-	 * The ID of the producer operator which output is buffered by this {@link AbstractBatchCollector}.
+	 * Maps all output streams to their receivers and groupings.
 	 */
-	private final String componentId;
+	private final Map<String, Map<String, Grouping>> targets;
 	/**
-	 * Maps output streams to their receivers.
+	 * Maps each control stream to the batched output streams that must be flushed before a control tuple is emitted.
 	 */
-	private final Map<String, List<String>> receivers = new HashMap<String, List<String>>();
+	private final Map<String, StreamDescriptor[]> controlStreams = new HashMap<String, StreamDescriptor[]>();
 	/**
-	 * Contains all receivers, that use fields-grouping.
+	 * The ID of the output stream that was used last (see {@link #getStream(String)}).
 	 */
-	private final Set<String> fieldsGroupingReceivers = new HashSet<String>();
+	private String lastStreamId;
 	/**
-	 * Maps all receivers, that use custom-grouping, to the user defined grouping.
+	 * The descriptor of the output stream that was used last ({@code null} if batching is disabled for this stream).
 	 */
-	private final Map<String, CustomStreamGrouping> customGroupingReceivers = new HashMap<String, CustomStreamGrouping>();
+	private StreamDescriptor lastStream;
 	/**
-	 * Stores the dop of each receiver.
+	 * Is set to {@code true}, if a maximum buffer time is specified for any output stream.
 	 */
-	private final Map<String, Integer> numberOfReceiverTasks = new HashMap<String, Integer>();
+	private boolean maxBufferTimeSet = false;
 	/**
-	 * Maps each output stream to a task-id-to-batch-index map.
-	 * 
-	 * Task-IDs can have arbitrary values but we need values from 0 to number-of-batches. Thus, we assign an appropriate
-	 * index value to each task-ID.
+	 * Adjusts the batch sizes at runtime (can be {@code null}).
 	 */
-	private final Map<String, Map<Integer, Integer>> streamBatchIndexMapping = new HashMap<String, Map<Integer, Integer>>();
+	private AdaptiveBatchSizeController batchSizeController;
 	/**
-	 * Maps output streams to corresponding output buffers.
-	 * 
-	 * The number of outputBuffers depends on the number of logical receivers as well as each logical receiver's
-	 * distribution pattern and parallelism.
+	 * The pool output batch columns are taken from ({@code null} if columns are not recycled).
+	 */
+	private BatchColumnPool columnPool;
+	/**
+	 * If {@code true}, output tuples are serialized when they are inserted into an output batch.
 	 */
-	private final Map<String, Batch[]> outputBuffers = new HashMap<String, Batch[]>();
+	private boolean serializeOnAppend = false;
 	/**
-	 * Maps direct output streams to corresponding output buffers. Each consumer task has its own output buffer.
+	 * Counts for each anchor tuple, the number of buffered (ie, not yet emitted) batches that are anchored to it.
+	 * ({@link Tuple} implementations use reference equality.)
 	 */
-	private final Map<String, Map<Integer, Batch>> directOutputBuffers = new HashMap<String, Map<Integer, Batch>>();
+	private final Map<Tuple, Integer> pendingAnchors = new HashMap<Tuple, Integer>();
 	/**
-	 * Assigns a "weight" to each receiver the used fields-grouping. This weight is necessary to compute the correct
-	 * index within the list of output buffers.
+	 * Contains all anchor tuples that got acked by the producer while being an anchor of a buffered batch.
 	 */
-	private final Map<String, Integer> weights = new HashMap<String, Integer>();
+	private final Set<Tuple> deferredAcks = new HashSet<Tuple>();
 	
 	
 	
@@ -139,13 +159,24 @@ public abstract class AbstractBatchCollector {
 	private AbstractBatchCollector(TopologyContext context, HashMap<String, Integer> batchSizes) {
 		logger.trace("batchSizes: {}", batchSizes);
 		
-		this.batchSizes = batchSizes;
-		this.topologyContext = context;
 		this.componentId = context.getThisComponentId();
+		this.taskId = context.getThisTaskId();
+		this.targets = context.getThisTargets();
 		logger.trace("this-id: {}", this.componentId);
 		
+		// StreamId -> ReceiverId -> Grouping (regular output streams only; used to emulate fields-grouping)
+		final Map<String, Map<String, CustomStreamGrouping>> receiverGroupings = new HashMap<String, Map<String, CustomStreamGrouping>>();
+		// StreamId -> ReceiverIds
+		final Map<String, List<String>> receivers = new HashMap<String, List<String>>();
+		// all tasks that are executed by the same worker as this task
+		final Set<Integer> workerTasks = new HashSet<Integer>();
+		final List<Integer> thisWorkerTasks = context.getThisWorkerTasks();
+		if(thisWorkerTasks != null) {
+			workerTasks.addAll(thisWorkerTasks);
+		}
+		
 		// StreamId -> ReceiverId -> Grouping
-		for(Entry<String, Map<String, Grouping>> outputStream : context.getThisTargets().entrySet()) {
+		for(Entry<String, Map<String, Grouping>> outputStream : this.targets.entrySet()) {
 			final String streamId = outputStream.getKey();
 			logger.trace("output-stream: {}", streamId);
 			
@@ -154,22 +185,33 @@ public abstract class AbstractBatchCollector {
 			// -> we take the batch size specified for "userStream" and add an entry for "aeolus::userStream" with the
 			// same batch size value
 			if(streamId.startsWith(BatchingOutputFieldsDeclarer.STREAM_PREFIX)) {
-				this.batchSizes.put(streamId,
-					this.batchSizes.get(streamId.substring(BatchingOutputFieldsDeclarer.STREAM_PREFIX.length())));
+				batchSizes.put(streamId,
+					batchSizes.get(streamId.substring(BatchingOutputFieldsDeclarer.STREAM_PREFIX.length())));
 			}
-			Integer bS = this.batchSizes.get(streamId);
+			Integer bS = batchSizes.get(streamId);
 			if(bS == null || bS.intValue() <= 0) {
 				logger.trace("batching disabled");
 				continue;
 			}
 			final Map<String, Grouping> streamReceivers = outputStream.getValue();
 			
-			final int numAttributes = context.getComponentOutputFields(this.componentId, streamId).size();
-			this.numberOfAttributes.put(streamId, new Integer(numAttributes));
+			final Fields outputSchema = context.getComponentOutputFields(this.componentId, streamId);
+			final int numAttributes = outputSchema.size();
+			final StreamDescriptor stream = new StreamDescriptor(streamId, bS.intValue(), numAttributes);
+			this.streams.put(streamId, stream);
 			
 			int numberOfBatches = 1;
 			final ArrayList<String> receiverIds = new ArrayList<String>(streamReceivers.size());
-			this.receivers.put(streamId, receiverIds);
+			receivers.put(streamId, receiverIds);
+			final Map<String, CustomStreamGrouping> groupings = new HashMap<String, CustomStreamGrouping>();
+			receiverGroupings.put(streamId, groupings);
+			final ArrayList<FieldsGroupingPartitioner> partitioners = new ArrayList<FieldsGroupingPartitioner>();
+			final ArrayList<Integer> weights = new ArrayList<Integer>();
+			ArrayList<Integer> directTaskIds = null;
+			// used to determine the output buffers that are only consumed by tasks of this worker
+			final ArrayList<Integer> fieldsReceiverPartitioners = new ArrayList<Integer>();
+			final ArrayList<List<Integer>> fieldsReceiverTasks = new ArrayList<List<Integer>>();
+			boolean otherReceiversLocal = true;
 			
 			for(Entry<String, Grouping> receiver : streamReceivers.entrySet()) {
 				final String receiverId = receiver.getKey();
@@ -182,49 +224,51 @@ public abstract class AbstractBatchCollector {
 				if(receiverGrouping.is_set_direct()) {
 					logger.trace("directGrouping");
 					
-					Map<Integer, Batch> outputBatches = this.directOutputBuffers.get(streamId);
-					if(outputBatches == null) {
-						outputBatches = new HashMap<Integer, Batch>();
-						this.directOutputBuffers.put(streamId, outputBatches);
-					}
-					for(Integer taskId : taskIds) {
-						outputBatches.put(taskId, new Batch(this.batchSizes.get(streamId).intValue(), numAttributes));
+					if(directTaskIds == null) {
+						directTaskIds = new ArrayList<Integer>();
 					}
+					directTaskIds.addAll(taskIds);
 					
 					numberOfBatches = 0; // mark as direct output stream
 				} else if(receiverGrouping.is_set_fields()) {
+					final FieldsGroupingPartitioner partitioner = new FieldsGroupingPartitioner(outputSchema,
+						receiverGrouping.get_fields(), taskIds);
+					groupings.put(receiverId, partitioner);
+					
 					// do not consider as regular fields- or custom-Grouping if emulated by directGrouping
-					for(Entry<String, Map<String, Grouping>> outputStream2 : context.getThisTargets().entrySet()) {
-						if(outputStream2.getKey().equals(BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId)) {
-							final Map<String, Grouping> streamReceivers2 = outputStream2.getValue();
-							for(Entry<String, Grouping> receiver2 : streamReceivers2.entrySet()) {
-								if(receiver2.getKey().equals(receiverId)) {
-									assert (receiver2.getValue().is_set_direct());
-									numberOfBatches = 0; // mark as emulated via direct output stream
-								}
-							}
-						}
+					final Map<String, Grouping> directStreamReceivers = this.targets.get(
+						BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId);
+					if(directStreamReceivers != null && directStreamReceivers.containsKey(receiverId)) {
+						assert (directStreamReceivers.get(receiverId).is_set_direct());
+						numberOfBatches = 0; // mark as emulated via direct output stream
 					}
 					
 					if(numberOfBatches != 0) {
-						// TODO we could reduce number of output buffers, if two logical consumers use the same
-						// output fields for partitioning AND have the same dop
 						logger.trace("fieldsGrouping");
 						
-						this.fieldsGroupingReceivers.add(receiverId);
-						this.weights.put(receiverId, new Integer(numberOfBatches));
-						numberOfBatches *= taskIds.size();
-						
-						Map<Integer, Integer> taskToIndex = this.streamBatchIndexMapping.get(streamId);
-						if(taskToIndex == null) {
-							taskToIndex = new HashMap<Integer, Integer>();
-							this.streamBatchIndexMapping.put(streamId, taskToIndex);
+						// receivers that use the same fields for partitioning AND have the same dop can share their
+						// output buffers
+						int partitionerIndex = -1;
+						for(int i = 0; i < partitioners.size(); ++i) {
+							if(partitioners.get(i).isEquivalent(partitioner)) {
+								logger.trace("sharing output buffers");
+								partitionerIndex = i;
+								break;
+							}
 						}
-						int i = 0;
-						for(Integer tId : taskIds) {
-							taskToIndex.put(tId, new Integer(i));
-							++i;
+						
+						if(partitionerIndex == -1) {
+							partitionerIndex = partitioners.size();
+							partitioners.add(partitioner);
+							weights.add(new Integer(numberOfBatches));
+							numberOfBatches *= taskIds.size();
 						}
+						
+						// same order as used by FieldsGroupingPartitioner
+						final List<Integer> sortedTaskIds = new ArrayList<Integer>(taskIds);
+						Collections.sort(sortedTaskIds);
+						fieldsReceiverPartitioners.add(new Integer(partitionerIndex));
+						fieldsReceiverTasks.add(sortedTaskIds);
 					}
 				} else if(receiverGrouping.is_set_custom_serialized()) {
 					logger.trace("customGrouping");
@@ -233,22 +277,96 @@ public abstract class AbstractBatchCollector {
 						.get_custom_serialized());
 					customGrouping.prepare(context, new GlobalStreamId(this.componentId, streamId), taskIds);
 					
-					this.customGroupingReceivers.put(receiverId, customGrouping);
-					this.numberOfReceiverTasks.put(receiverId, new Integer(taskIds.size()));
+					groupings.put(receiverId, customGrouping);
+					otherReceiversLocal &= workerTasks.containsAll(taskIds);
+				} else {
+					// only used if fields-grouping is emulated via direct output stream
+					DirectEmitGrouping grouping = new DirectEmitGrouping(receiverGrouping.is_set_all());
+					grouping.prepare(context, new GlobalStreamId(this.componentId, streamId), taskIds);
+					
+					groupings.put(receiverId, grouping);
+					otherReceiversLocal &= workerTasks.containsAll(taskIds);
 				}
 			}
 			
-			if(numberOfBatches > 0) { // otherwise, we got a direct output stream and this.directOutputBuffers is
-										// already set up
-				Batch[] batches = new Batch[numberOfBatches];
-				for(int i = 0; i < numberOfBatches; ++i) {
-					batches[i] = new Batch(this.batchSizes.get(streamId).intValue(), numAttributes);
+			if(directTaskIds != null) {
+				stream.initDirectBuffers(directTaskIds);
+				
+				for(int i = 0; i < stream.directTaskIds.length; ++i) {
+					if(workerTasks.contains(new Integer(stream.directTaskIds[i]))) {
+						stream.localDirectBuffers.set(i);
+					}
+				}
+			}
+			if(numberOfBatches > 0) { // otherwise, we got a direct output stream (or an emulated one)
+				stream.initBuffers(numberOfBatches);
+				
+				if(partitioners.size() > 0) {
+					stream.partitioners = partitioners.toArray(new FieldsGroupingPartitioner[partitioners.size()]);
+					stream.weights = new int[weights.size()];
+					for(int i = 0; i < stream.weights.length; ++i) {
+						stream.weights[i] = weights.get(i).intValue();
+					}
+				}
+				
+				// an output buffer is local, if the receiver task of each fields-grouped receiver as well as all tasks
+				// of all other receivers run in this worker
+				if(otherReceiversLocal) {
+					for(int i = 0; i < numberOfBatches; ++i) {
+						boolean local = true;
+						for(int j = 0; local && j < fieldsReceiverTasks.size(); ++j) {
+							final List<Integer> tasks = fieldsReceiverTasks.get(j);
+							final int weight = weights.get(fieldsReceiverPartitioners.get(j).intValue()).intValue();
+							local = workerTasks.contains(tasks.get((i / weight) % tasks.size()));
+						}
+						if(local) {
+							stream.localBuffers.set(i);
+						}
+					}
+				}
+				logger.trace("local output buffers: {}", stream.localBuffers);
+			}
+		}
+		
+		// link each regular output stream to its Aeolus-defined direct stream (if any)
+		for(StreamDescriptor stream : this.streams.values()) {
+			final StreamDescriptor directStream = this.streams.get(BatchingOutputFieldsDeclarer.STREAM_PREFIX
+				+ stream.streamId);
+			if(directStream != null && directStream.directBuffers != null) {
+				final Map<String, CustomStreamGrouping> groupings = receiverGroupings.get(stream.streamId);
+				final List<CustomStreamGrouping> directStreamGroupings = new ArrayList<CustomStreamGrouping>();
+				for(String receiverId : receivers.get(directStream.streamId)) {
+					final CustomStreamGrouping grouping = groupings.get(receiverId);
+					if(grouping != null) {
+						directStreamGroupings.add(grouping);
+					}
 				}
-				this.outputBuffers.put(streamId, batches);
+				
+				stream.directStream = directStream;
+				stream.directStreamGroupings = directStreamGroupings
+					.toArray(new CustomStreamGrouping[directStreamGroupings.size()]);
 			}
 		}
 	}
 	
+	/**
+	 * Returns the descriptor of the given output stream. The descriptor of the last used output stream is cached;
+	 * thus, a map lookup is only necessary if the output stream changes.
+	 * 
+	 * @param streamId
+	 *            The ID of the output stream.
+	 * 
+	 * @return the descriptor of the given output stream or {@code null} if batching is disabled for this stream
+	 */
+	private StreamDescriptor getStream(String streamId) {
+		// stream IDs are usually constants -> comparing references is sufficient to detect a cache hit
+		if(streamId != this.lastStreamId) {
+			this.lastStream = this.streams.get(streamId);
+			this.lastStreamId = streamId;
+		}
+		return this.lastStream;
+	}
+	
 	/**
 	 * Captures an regular emit call of an operator, adds the output tuple to the corresponding output buffer, and emits
 	 * the buffer if it gets filled completely during this call.
@@ -256,63 +374,63 @@ public abstract class AbstractBatchCollector {
 	 * @param streamId
 	 *            The name of the output stream the tuple is appended.
 	 * @param anchors
-	 *            The anchor tuples of the emitted tuple (bolts only).
+	 *            The anchor tuples of the emitted tuple (bolts only). The emitted batch is anchored to the distinct
+	 *            anchors of all buffered tuples.
 	 * @param tuple
 	 *            The output tuple to be emitted.
 	 * @param messageId
-	 *            The ID of the output tuple (spouts only).
+	 *            The ID of the output tuple (spouts only). The emitted batch gets a {@link BatchMessageId} that contains
+	 *            the IDs of all buffered tuples.
 	 * 
-	 * @return currently {@code null} is returned, because the receiver task IDs cannot be determined if it is only
-	 *         inserted into an output batch but not actual emit happens
+	 * @return the receiver task IDs if the tuple is emitted without batching (see
+	 *         {@link #setLocalBatchSize(String, int)}); otherwise {@code null} is returned, because the receiver task
+	 *         IDs cannot be determined if it is only inserted into an output batch but not actual emit happens
 	 */
 	public List<Integer> tupleEmit(String streamId, Collection<Tuple> anchors, List<Object> tuple, Object messageId) {
-		Integer bS = this.batchSizes.get(streamId);
-		if(bS == null || bS.intValue() <= 0) {
+		final StreamDescriptor stream = this.getStream(streamId);
+		if(stream == null) {
+			this.flushBeforeControlTuple(streamId);
 			return this.doEmit(streamId, anchors, tuple, messageId);
 		}
 		
-		String directStream = BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId;
-		if(this.directOutputBuffers.containsKey(directStream)) { // emulate by direct emit
-			for(String receiverComponentId : this.receivers.get(directStream)) {
-				final CustomStreamGrouping customGrouping = this.customGroupingReceivers.get(receiverComponentId);
-				if(customGrouping != null) {
-					List<Integer> taskIds = customGrouping.chooseTasks(
-						this.numberOfReceiverTasks.get(receiverComponentId).intValue(), tuple);
-					
-					for(Integer taskId : taskIds) {
-						this.tupleEmitDirect(taskId.intValue(), directStream, anchors, tuple, messageId);
-					}
-				} else {
-					int taskId = StormConnector.getFieldsGroupingReceiverTaskId(this.topologyContext, this.componentId,
-						streamId, receiverComponentId, tuple).intValue();
-					this.tupleEmitDirect(taskId, directStream, anchors, tuple, messageId);
+		if(stream.directStream != null) { // emulate by direct emit
+			// tuple might be inserted into multiple batches
+			final Object sharedMessageId = messageId != null ? new SharedMessageId(messageId) : null;
+			final CustomStreamGrouping[] groupings = stream.directStreamGroupings;
+			for(int i = 0; i < groupings.length; ++i) {
+				final List<Integer> taskIds = groupings[i].chooseTasks(this.taskId, tuple);
+				for(int j = 0; j < taskIds.size(); ++j) {
+					this.bufferTupleDirect(taskIds.get(j).intValue(), stream.directStream, anchors, tuple,
+						sharedMessageId);
 				}
 			}
-		} else { // regular batching
+		} else if(stream.buffers != null) { // regular batching
 			int bufferIndex = 0;
 			
-			final Map<Integer, Integer> taskIndex = this.streamBatchIndexMapping.get(streamId);
-			if(taskIndex != null) { // fields grouping for at least one receiver
-				for(String receiverComponentId : this.receivers.get(streamId)) {
-					if(this.fieldsGroupingReceivers.contains(receiverComponentId)) {
-						Integer taskId = StormConnector.getFieldsGroupingReceiverTaskId(this.topologyContext,
-							this.componentId, streamId, receiverComponentId, tuple);
-						bufferIndex += (this.weights.get(receiverComponentId).intValue() * taskIndex.get(taskId)
-							.intValue());
-					}
+			final FieldsGroupingPartitioner[] partitioners = stream.partitioners;
+			if(partitioners != null) { // fields grouping for at least one receiver
+				final int[] weights = stream.weights;
+				for(int i = 0; i < partitioners.length; ++i) {
+					bufferIndex += weights[i] * partitioners[i].getTaskIndex(tuple);
 				}
 			}
 			
-			Batch[] streamBuffers = this.outputBuffers.get(streamId);
-			if(streamBuffers != null) {
-				final Batch buffer = streamBuffers[bufferIndex];
-				buffer.addTuple(tuple);
-				
-				if(buffer.isFull()) {
-					this.doEmit(streamId, null, buffer, null);
-					this.outputBuffers.get(streamId)[bufferIndex] = new Batch(this.batchSizes.get(streamId).intValue(),
-						this.numberOfAttributes.get(streamId).intValue());
+			if(stream.localBatchSize == 0 && stream.localBuffers.get(bufferIndex)) {
+				// all receivers run in this worker -> bypass batching (preserving the order of buffered tuples)
+				if(stream.dirtyBuffers.get(bufferIndex)) {
+					this.emitBuffer(stream, bufferIndex);
 				}
+				return this.doEmit(streamId, anchors, tuple, messageId);
+			}
+			
+			final Batch buffer = stream.buffers[bufferIndex];
+			if(buffer.isEmpty()) {
+				stream.dirtyBuffers.set(bufferIndex);
+			}
+			this.bufferTuple(buffer, anchors, tuple, messageId);
+			
+			if(buffer.isFull()) {
+				this.emitBuffer(stream, bufferIndex);
 			}
 		}
 		
@@ -339,75 +457,736 @@ public abstract class AbstractBatchCollector {
 	 *            The ID of the output tuple (spouts only).
 	 */
 	public void tupleEmitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple, Object messageId) {
-		Integer bS = this.batchSizes.get(streamId);
-		if(bS == null || bS.intValue() <= 0) {
+		final StreamDescriptor stream = this.getStream(streamId);
+		if(stream == null) {
+			this.flushBeforeControlTuple(streamId);
 			this.doEmitDirect(taskId, streamId, anchors, tuple, messageId);
+		} else if(stream.directBuffers != null) {
+			this.bufferTupleDirect(taskId, stream, anchors, tuple, messageId);
 		}
-		
-		Integer tid = new Integer(taskId);
-		final Map<Integer, Batch> streamBuffers = this.directOutputBuffers.get(streamId);
-		if(streamBuffers != null) {
-			final Batch buffer = streamBuffers.get(tid);
-			if(buffer != null) {
-				buffer.addTuple(tuple);
-				
-				if(buffer.isFull()) {
-					this.doEmitDirect(taskId, streamId, null, buffer, null);
-					this.directOutputBuffers.get(streamId).put(
-						tid,
-						new Batch(this.batchSizes.get(streamId).intValue(), this.numberOfAttributes.get(streamId)
-							.intValue()));
+	}
+	
+	/**
+	 * Adds the output tuple to the output buffer of the given receiver task, and emits the buffer if it gets filled
+	 * completely during this call.
+	 * 
+	 * @param taskId
+	 *            The ID of the receiver task.
+	 * @param stream
+	 *            The direct output stream the tuple is appended.
+	 * @param anchors
+	 *            The anchor tuples of the emitted tuple (bolts only).
+	 * @param tuple
+	 *            The output tuple to be emitted.
+	 * @param messageId
+	 *            The ID of the output tuple (spouts only).
+	 */
+	private void bufferTupleDirect(int taskId, StreamDescriptor stream, Collection<Tuple> anchors, List<Object> tuple, Object messageId) {
+		final int bufferIndex = stream.getDirectBufferIndex(taskId);
+		if(bufferIndex >= 0) {
+			if(stream.localBatchSize == 0 && stream.localDirectBuffers.get(bufferIndex)) {
+				// receiver runs in this worker -> bypass batching (preserving the order of buffered tuples)
+				if(stream.dirtyDirectBuffers.get(bufferIndex)) {
+					this.emitDirectBuffer(stream, bufferIndex);
 				}
+				if(messageId instanceof SharedMessageId) {
+					((SharedMessageId)messageId).addBatch();
+					// acks of shared message IDs are resolved via BatchMessageId
+					this.doEmitDirect(taskId, stream.streamId, anchors, tuple,
+						new BatchMessageId(Collections.singletonList(messageId), stream.streamId));
+				} else {
+					this.doEmitDirect(taskId, stream.streamId, anchors, tuple, messageId);
+				}
+				return;
+			}
+			
+			final Batch buffer = stream.directBuffers[bufferIndex];
+			if(buffer.isEmpty()) {
+				stream.dirtyDirectBuffers.set(bufferIndex);
+			}
+			if(messageId instanceof SharedMessageId) {
+				((SharedMessageId)messageId).addBatch();
 			}
+			this.bufferTuple(buffer, anchors, tuple, messageId);
+			
+			if(buffer.isFull()) {
+				this.emitDirectBuffer(stream, bufferIndex);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the output tuple and its metadata to the given output buffer.
+	 * 
+	 * @param buffer
+	 *            The output buffer.
+	 * @param anchors
+	 *            The anchor tuples of the emitted tuple (bolts only).
+	 * @param tuple
+	 *            The output tuple to be emitted.
+	 * @param messageId
+	 *            The ID of the output tuple (spouts only).
+	 */
+	private void bufferTuple(Batch buffer, Collection<Tuple> anchors, List<Object> tuple, Object messageId) {
+		if(buffer.isEmpty() && (this.maxBufferTimeSet || this.batchSizeController != null)) {
+			buffer.firstTupleTimestamp = System.currentTimeMillis();
+		}
+		buffer.addTuple(tuple);
+		if(messageId != null) {
+			buffer.addMessageId(messageId);
+		}
+		if(anchors != null) {
+			this.addAnchors(buffer, anchors);
 		}
 	}
 	
 	/**
-	 * Emits all incomplete batches from the output buffer.
+	 * Emits all incomplete batches from the output buffer. Only non-empty output buffers are visited.
 	 */
 	public void flush() {
-		for(String streamId : this.outputBuffers.keySet()) {
-			Integer bS = this.batchSizes.get(streamId);
-			if(bS != null && bS.intValue() > 0) {
-				for(int i = 0; i < this.outputBuffers.get(streamId).length; ++i) {
-					Batch batch = this.outputBuffers.get(streamId)[i];
-					if(!batch.isEmpty()) {
-						this.doEmit(streamId, null, batch, null);
-						this.outputBuffers.get(streamId)[i] = new Batch(this.batchSizes.get(streamId).intValue(),
-							this.numberOfAttributes.get(streamId).intValue());
+		for(StreamDescriptor stream : this.streams.values()) {
+			if(stream.buffers != null) {
+				final BitSet dirty = stream.dirtyBuffers;
+				for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+					this.emitBuffer(stream, i);
+				}
+			}
+		}
+		
+		for(StreamDescriptor stream : this.streams.values()) {
+			if(stream.directBuffers != null) {
+				final BitSet dirty = stream.dirtyDirectBuffers;
+				for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+					this.emitDirectBuffer(stream, i);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Emits all incomplete batches of the given output stream.
+	 * 
+	 * @param stream
+	 *            The output stream to be flushed.
+	 */
+	private void flush(StreamDescriptor stream) {
+		if(stream.buffers != null) {
+			final BitSet dirty = stream.dirtyBuffers;
+			for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+				this.emitBuffer(stream, i);
+			}
+		}
+		if(stream.directBuffers != null) {
+			final BitSet dirty = stream.dirtyDirectBuffers;
+			for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+				this.emitDirectBuffer(stream, i);
+			}
+		}
+	}
+	
+	/**
+	 * Emits all incomplete batches that must be emitted before a tuple of the given (unbatched) output stream, if the
+	 * stream is a control stream.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 */
+	private void flushBeforeControlTuple(String streamId) {
+		if(!this.controlStreams.isEmpty()) {
+			final StreamDescriptor[] dataStreams = this.controlStreams.get(streamId);
+			if(dataStreams != null) {
+				for(int i = 0; i < dataStreams.length; ++i) {
+					this.flush(dataStreams[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Marks the given output stream as control stream. Control tuples are never batched (even if a batch size is
+	 * specified for the stream) and are emitted immediately. Before a control tuple is emitted, all buffered batches
+	 * of all output streams that share at least one receiver with the control stream are emitted. Thus, the order of
+	 * data and control tuples is preserved for each receiver. Batches that are buffered for the control stream itself
+	 * are emitted by this call.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 */
+	public void addControlStream(String streamId) {
+		// fields-grouping might be emulated via an Aeolus-defined direct stream (cf. constructor)
+		for(String id : new String[] {streamId, BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId}) {
+			final StreamDescriptor stream = this.streams.remove(id);
+			if(stream != null) {
+				this.flush(stream);
+			}
+		}
+		this.lastStreamId = null;
+		this.lastStream = null;
+		this.updateMaxBufferTimeSet();
+		
+		final List<StreamDescriptor> dataStreams = new ArrayList<StreamDescriptor>();
+		final Map<String, Grouping> controlReceivers = this.targets.get(streamId);
+		if(controlReceivers != null) {
+			for(StreamDescriptor stream : this.streams.values()) {
+				if(!Collections.disjoint(this.targets.get(stream.streamId).keySet(), controlReceivers.keySet())) {
+					dataStreams.add(stream);
+				}
+			}
+		}
+		logger.trace("control stream {} flushes: {}", streamId, new Integer(dataStreams.size()));
+		this.controlStreams.put(streamId, dataStreams.toArray(new StreamDescriptor[dataStreams.size()]));
+	}
+	
+	/**
+	 * Emits all incomplete batches that contain a tuple that was buffered longer than the maximum buffer time of the
+	 * batch's output stream (see {@link #setMaxBufferTime(String, long)}). Output streams without a maximum buffer
+	 * time are not flushed.
+	 */
+	public void flushStale() {
+		if(this.maxBufferTimeSet) {
+			this.flushStale(System.currentTimeMillis());
+		}
+	}
+	
+	/**
+	 * Emits all incomplete batches that contain a tuple that was buffered longer than the maximum buffer time of the
+	 * batch's output stream, with regard to the given point in time.
+	 * 
+	 * @param now
+	 *            The current system time (in ms).
+	 */
+	void flushStale(long now) {
+		for(StreamDescriptor stream : this.streams.values()) {
+			if(stream.maxBufferTime >= 0 && stream.buffers != null) {
+				final long deadline = now - stream.maxBufferTime;
+				final BitSet dirty = stream.dirtyBuffers;
+				for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+					if(stream.buffers[i].firstTupleTimestamp <= deadline) {
+						logger.trace("flushing stale batch of stream {}", stream.streamId);
+						this.emitBuffer(stream, i);
 					}
 				}
 			}
 		}
 		
-		for(String streamId : this.directOutputBuffers.keySet()) {
-			Integer bS = this.batchSizes.get(streamId);
-			if(bS != null && bS.intValue() > 0) {
-				for(Integer taskId : this.directOutputBuffers.get(streamId).keySet()) {
-					Batch batch = this.directOutputBuffers.get(streamId).get(taskId);
-					if(!batch.isEmpty()) {
-						this.doEmitDirect(taskId.intValue(), streamId, null, batch, null);
-						this.directOutputBuffers.get(streamId).put(
-							taskId,
-							new Batch(this.batchSizes.get(streamId).intValue(), this.numberOfAttributes.get(streamId)
-								.intValue()));
+		for(StreamDescriptor stream : this.streams.values()) {
+			if(stream.maxBufferTime >= 0 && stream.directBuffers != null) {
+				final long deadline = now - stream.maxBufferTime;
+				final BitSet dirty = stream.dirtyDirectBuffers;
+				for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+					if(stream.directBuffers[i].firstTupleTimestamp <= deadline) {
+						logger.trace("flushing stale batch of stream {} for task {}", stream.streamId, new Integer(
+							stream.directTaskIds[i]));
+						this.emitDirectBuffer(stream, i);
 					}
-					
 				}
 			}
 		}
 	}
 	
 	/**
-	 * Registers the classes {@link Batch Batch.class} and {@link BatchColumn BatchColumn.class} for serialization and
-	 * deserialization.
+	 * Sets the maximum buffer time for all batched output streams. Same as calling
+	 * {@link #setMaxBufferTime(String, long)} for each output stream.
+	 * 
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 */
+	public void setMaxBufferTime(long maxBufferTime) {
+		for(StreamDescriptor stream : this.streams.values()) {
+			stream.maxBufferTime = maxBufferTime < 0 ? -1 : maxBufferTime;
+		}
+		this.updateMaxBufferTimeSet();
+	}
+	
+	/**
+	 * Sets the maximum time a tuple can be buffered in an incomplete batch of the given output stream. Stale batches
+	 * are not emitted automatically, but each time {@link #flushStale()} is called.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 */
+	public void setMaxBufferTime(String streamId, long maxBufferTime) {
+		final long time = maxBufferTime < 0 ? -1 : maxBufferTime;
+		
+		StreamDescriptor stream = this.streams.get(streamId);
+		if(stream != null) {
+			stream.maxBufferTime = time;
+		}
+		// fields-grouping might be emulated via an Aeolus-defined direct stream (cf. constructor)
+		stream = this.streams.get(BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId);
+		if(stream != null) {
+			stream.maxBufferTime = time;
+		}
+		
+		this.updateMaxBufferTimeSet();
+	}
+	
+	/**
+	 * Updates {@link #maxBufferTimeSet} after a maximum buffer time changed.
+	 */
+	private void updateMaxBufferTimeSet() {
+		this.maxBufferTimeSet = false;
+		for(StreamDescriptor stream : this.streams.values()) {
+			if(stream.maxBufferTime >= 0) {
+				this.maxBufferTimeSet = true;
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches of all batched output streams. Same as calling
+	 * {@link #setMaxBatchBytes(String, int)} for each output stream.
+	 * 
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	public void setMaxBatchBytes(int maxBatchBytes) {
+		for(StreamDescriptor stream : this.streams.values()) {
+			this.setMaxBatchBytes(stream, maxBatchBytes);
+		}
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches of the given output stream. An output batch is
+	 * emitted as soon as it contains {@code batchSize} tuples or its estimated size (see
+	 * {@link BatchColumn#estimateSize(Object)}) reaches {@code maxBatchBytes}, whatever happens first. Thus, output
+	 * batches of streams with variable-size attributes (eg, strings or byte arrays) do not grow arbitrarily large. The
+	 * bound applies to all output batches that are empty at the time of the call.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	public void setMaxBatchBytes(String streamId, int maxBatchBytes) {
+		StreamDescriptor stream = this.streams.get(streamId);
+		if(stream != null) {
+			this.setMaxBatchBytes(stream, maxBatchBytes);
+		}
+		// fields-grouping might be emulated via an Aeolus-defined direct stream (cf. constructor)
+		stream = this.streams.get(BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId);
+		if(stream != null) {
+			this.setMaxBatchBytes(stream, maxBatchBytes);
+		}
+	}
+	
+	/**
+	 * Sets the maximum estimated batch size of the given output stream and applies it to all empty output buffers.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	private void setMaxBatchBytes(StreamDescriptor stream, int maxBatchBytes) {
+		stream.maxBatchBytes = maxBatchBytes > 0 ? maxBatchBytes : -1;
+		this.configureEmptyBuffers(stream);
+	}
+	
+	/**
+	 * Applies the current configuration of the given output stream to all its empty output buffers (see
+	 * {@link #configureBatch(StreamDescriptor, Batch)}).
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 */
+	private void configureEmptyBuffers(StreamDescriptor stream) {
+		if(stream.buffers != null) {
+			for(Batch batch : stream.buffers) {
+				if(batch.isEmpty()) {
+					this.configureBatch(stream, batch);
+				}
+			}
+		}
+		if(stream.directBuffers != null) {
+			for(Batch batch : stream.directBuffers) {
+				if(batch.isEmpty()) {
+					this.configureBatch(stream, batch);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Enables compression of output batches for all batched output streams. Same as calling
+	 * {@link #setCompressionThreshold(String, int)} for each output stream.
+	 * 
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 */
+	public void setCompressionThreshold(int threshold) {
+		for(StreamDescriptor stream : this.streams.values()) {
+			stream.compressionThreshold = threshold < 0 ? -1 : threshold;
+			this.configureEmptyBuffers(stream);
+		}
+	}
+	
+	/**
+	 * Enables compression of the output batches of the given output stream. Batches are only compressed if they are
+	 * transfered to a different worker (ie, if they get serialized by {@link BatchColumnSerializer}). Each batch column
+	 * is compressed independently, if its serialized values require at least {@code threshold} bytes. Compression
+	 * trades CPU for network bandwidth and is most effective for columns with text-like or repeated values.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 */
+	public void setCompressionThreshold(String streamId, int threshold) {
+		final int t = threshold < 0 ? -1 : threshold;
+		
+		StreamDescriptor stream = this.streams.get(streamId);
+		if(stream != null) {
+			stream.compressionThreshold = t;
+			this.configureEmptyBuffers(stream);
+		}
+		// fields-grouping might be emulated via an Aeolus-defined direct stream (cf. constructor)
+		stream = this.streams.get(BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId);
+		if(stream != null) {
+			stream.compressionThreshold = t;
+			this.configureEmptyBuffers(stream);
+		}
+	}
+	
+	/**
+	 * Sets the batch size of all output buffers that are only consumed by tasks of this worker, for all batched output
+	 * streams. Same as calling {@link #setLocalBatchSize(String, int)} for each output stream.
+	 * 
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	public void setLocalBatchSize(int localBatchSize) {
+		for(StreamDescriptor stream : this.streams.values()) {
+			this.setLocalBatchSize(stream, localBatchSize);
+		}
+	}
+	
+	/**
+	 * Sets the batch size of all output buffers of the given output stream that are only consumed by tasks of this
+	 * worker (according to {@link TopologyContext#getThisWorkerTasks()}). Batching only pays off for network transfer;
+	 * for intra-worker transfer, it adds latency without reducing overhead significantly. A direct output buffer is
+	 * local if its receiver task runs in this worker. A regular output buffer is local if the receiver task of each
+	 * fields-grouped receiver, and all tasks of all other receivers run in this worker. Local output tuples are emitted
+	 * without batching if {@code localBatchSize} is zero. The batch size applies to all local output batches that are
+	 * empty at the time of the call.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	public void setLocalBatchSize(String streamId, int localBatchSize) {
+		StreamDescriptor stream = this.streams.get(streamId);
+		if(stream != null) {
+			this.setLocalBatchSize(stream, localBatchSize);
+		}
+		// fields-grouping might be emulated via an Aeolus-defined direct stream (cf. constructor)
+		stream = this.streams.get(BatchingOutputFieldsDeclarer.STREAM_PREFIX + streamId);
+		if(stream != null) {
+			this.setLocalBatchSize(stream, localBatchSize);
+		}
+	}
+	
+	/**
+	 * Sets the local batch size of the given output stream and replaces all empty local output buffers.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	private void setLocalBatchSize(StreamDescriptor stream, int localBatchSize) {
+		stream.localBatchSize = localBatchSize < 0 ? -1 : localBatchSize;
+		
+		if(stream.buffers != null) {
+			final BitSet local = stream.localBuffers;
+			for(int i = local.nextSetBit(0); i >= 0; i = local.nextSetBit(i + 1)) {
+				if(stream.buffers[i].isEmpty()) {
+					stream.buffers[i] = this.newBatch(stream, true);
+				}
+			}
+		}
+		if(stream.directBuffers != null) {
+			final BitSet local = stream.localDirectBuffers;
+			for(int i = local.nextSetBit(0); i >= 0; i = local.nextSetBit(i + 1)) {
+				if(stream.directBuffers[i].isEmpty()) {
+					stream.directBuffers[i] = this.newBatch(stream, true);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Enables serialize-on-append for all batched output streams. Output tuples are serialized when they are inserted
+	 * into an output batch (see {@link SerializedBatchColumn}), instead of serializing the whole batch when it is
+	 * emitted. Thus, the serialization cost is spread over all emit calls and buffered tuples do not form object graphs
+	 * on the heap. Receivers decode the values lazily. Buffered tuples are only kept off-heap if column recycling is
+	 * enabled, too (see {@link #setColumnPoolSize(int)}); otherwise, heap buffers are used to avoid allocating a new
+	 * direct buffer for each output batch.
+	 * 
+	 * @param serializeOnAppend
+	 *            {@code true} to enable serialize-on-append; {@code false} to use typed columns
+	 */
+	public void setSerializeOnAppend(boolean serializeOnAppend) {
+		this.serializeOnAppend = serializeOnAppend;
+		for(StreamDescriptor stream : this.streams.values()) {
+			this.configureEmptyBuffers(stream);
+		}
+	}
+	
+	/**
+	 * Sets an {@link AdaptiveBatchSizeController} that adjusts the batch sizes of all batched output streams at
+	 * runtime. Output streams with disabled batching are not affected.
+	 * 
+	 * @param controller
+	 *            The controller to be used ({@code null} disables batch size adaption).
+	 */
+	public void setBatchSizeController(AdaptiveBatchSizeController controller) {
+		this.batchSizeController = controller;
+	}
+	
+	/**
+	 * Enables recycling of output batch columns. Emitted columns are returned to a {@link BatchColumnPool} after all
+	 * receiving tasks released them, ie, after they got debatched by an {@code InputDebatcher} (local transfer) or
+	 * serialized by {@link BatchColumnSerializer} (remote transfer). Recycling requires that the receiving task IDs
+	 * are reported by {@link #doEmit(String, Collection, Object, Object)}; otherwise, emitted columns are not
+	 * recycled.<br />
+	 * <br />
+	 * <strong>CAUTION:</strong> Recycling must not be used if Storm serializes tuples additionally to the regular
+	 * transfer (ie, if {@code topology.testing.always.try.serialize} is enabled), or if a receiving bolt is not wrapped
+	 * by an {@code InputDebatcher}.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of free columns per column type that are kept for reuse (a non-positive value
+	 *            disables recycling).
+	 */
+	public void setColumnPoolSize(int poolSize) {
+		if(poolSize > 0) {
+			this.columnPool = new BatchColumnPool(poolSize);
+		} else {
+			this.columnPool = null;
+		}
+	}
+	
+	/**
+	 * Defers the ack of the given input tuple, if it is an anchor of a buffered output batch. The ack is forwarded via
+	 * {@link #doAck(Tuple)} after all batches that are anchored to the tuple got emitted. Otherwise, Storm would
+	 * complete the tuple tree before the buffered output is emitted.
+	 * 
+	 * @param input
+	 *            The input tuple to be acked.
+	 * 
+	 * @return {@code true} if the ack got deferred; {@code false} if the tuple can be acked immediately
+	 */
+	public boolean deferAck(Tuple input) {
+		if(this.pendingAnchors.containsKey(input)) {
+			this.deferredAcks.add(input);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Registers the given anchors for an output batch.
+	 * 
+	 * @param batch
+	 *            The output batch.
+	 * @param anchors
+	 *            The anchors of a tuple that got inserted into {@code batch}.
+	 */
+	private void addAnchors(Batch batch, Collection<Tuple> anchors) {
+		for(Tuple anchor : anchors) {
+			if(batch.addAnchor(anchor)) {
+				final Integer count = this.pendingAnchors.get(anchor);
+				this.pendingAnchors.put(anchor, new Integer(count == null ? 1 : count.intValue() + 1));
+			}
+		}
+	}
+	
+	/**
+	 * Unregisters all anchors of an emitted output batch and forwards all deferred acks that are not blocked by any
+	 * other buffered batch.
+	 * 
+	 * @param batch
+	 *            The emitted output batch.
+	 */
+	private void releaseAnchors(Batch batch) {
+		final Collection<Tuple> anchors = batch.getAnchors();
+		if(anchors != null) {
+			for(Tuple anchor : anchors) {
+				final int count = this.pendingAnchors.get(anchor).intValue() - 1;
+				if(count == 0) {
+					this.pendingAnchors.remove(anchor);
+					if(this.deferredAcks.remove(anchor)) {
+						this.doAck(anchor);
+					}
+				} else {
+					this.pendingAnchors.put(anchor, new Integer(count));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Emits the given output buffer of a regular output stream and replaces it by a new (empty) batch.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param bufferIndex
+	 *            The index of the output buffer within {@link StreamDescriptor#buffers}.
+	 */
+	private void emitBuffer(StreamDescriptor stream, int bufferIndex) {
+		final Batch batch = stream.buffers[bufferIndex];
+		this.emitBatch(stream, batch);
+		stream.buffers[bufferIndex] = this.newBatch(stream, batch, stream.localBuffers.get(bufferIndex));
+		stream.dirtyBuffers.clear(bufferIndex);
+	}
+	
+	/**
+	 * Emits the given output buffer of a direct output stream and replaces it by a new (empty) batch.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param bufferIndex
+	 *            The index of the output buffer within {@link StreamDescriptor#directBuffers}.
+	 */
+	private void emitDirectBuffer(StreamDescriptor stream, int bufferIndex) {
+		final Batch batch = stream.directBuffers[bufferIndex];
+		this.emitBatchDirect(stream.directTaskIds[bufferIndex], stream, batch);
+		stream.directBuffers[bufferIndex] = this.newBatch(stream, batch, stream.localDirectBuffers.get(bufferIndex));
+		stream.dirtyDirectBuffers.clear(bufferIndex);
+	}
+	
+	/**
+	 * Creates a new (empty) output batch for the given output stream, that replaces an emitted batch. If an
+	 * {@link AdaptiveBatchSizeController} is set, the batch size of the stream is updated before the new batch is
+	 * created. Local output buffers with a separate batch size are not considered by the controller.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param emittedBatch
+	 *            The batch that got emitted.
+	 * @param local
+	 *            {@code true} if the output buffer is only consumed by tasks of this worker
+	 * 
+	 * @return the new output batch
+	 */
+	private Batch newBatch(StreamDescriptor stream, Batch emittedBatch, boolean local) {
+		if(this.batchSizeController != null && (!local || stream.localBatchSize < 0)) {
+			final int newBatchSize = this.batchSizeController.batchEmitted(stream.streamId,
+				emittedBatch.getNumberOfTuples(), System.currentTimeMillis() - emittedBatch.firstTupleTimestamp,
+				stream.batchSize);
+			if(newBatchSize != stream.batchSize) {
+				logger.debug("changing batch size of stream {} from {} to {}", stream.streamId, new Integer(
+					stream.batchSize), new Integer(newBatchSize));
+				stream.batchSize = newBatchSize;
+			}
+		}
+		
+		return this.newBatch(stream, local);
+	}
+	
+	/**
+	 * Creates a new (empty) and configured output batch for the given output stream.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param local
+	 *            {@code true} if the output buffer is only consumed by tasks of this worker
+	 * 
+	 * @return the new output batch
+	 */
+	private Batch newBatch(StreamDescriptor stream, boolean local) {
+		// a batch size of zero (ie, no batching) is only used for local buffers that are bypassed
+		final int batchSize = Math.max(stream.getBatchSize(local), 1);
+		final Batch batch = new Batch(batchSize, stream.numberOfAttributes, this.columnPool);
+		this.configureBatch(stream, batch);
+		return batch;
+	}
+	
+	/**
+	 * Applies the maximum batch size in bytes and the compression threshold of the given output stream, and the
+	 * serialize-on-append setting to the given (empty) batch.
+	 * 
+	 * @param stream
+	 *            The output stream.
+	 * @param batch
+	 *            The batch to be configured.
+	 */
+	private void configureBatch(StreamDescriptor stream, Batch batch) {
+		batch.setMaxBytes(stream.maxBatchBytes);
+		batch.setCompressionThreshold(stream.compressionThreshold);
+		batch.setSerializeOnAppend(this.serializeOnAppend);
+	}
+	
+	/**
+	 * Emits the given batch. If columns are recycled, the batch columns are handed over to the receiving tasks.
+	 * 
+	 * @param stream
+	 *            The output stream the batch is appended.
+	 * @param batch
+	 *            The batch to be emitted.
+	 */
+	private void emitBatch(StreamDescriptor stream, Batch batch) {
+		if(this.columnPool != null) {
+			batch.acquireColumns();
+			final List<Integer> receiverTasks = this.doEmit(stream.streamId, batch.getAnchors(), batch,
+				batch.getMessageId(stream.streamId));
+			batch.handOverColumns(receiverTasks != null ? receiverTasks.size() : -1);
+		} else {
+			this.doEmit(stream.streamId, batch.getAnchors(), batch, batch.getMessageId(stream.streamId));
+		}
+		this.releaseAnchors(batch);
+	}
+	
+	/**
+	 * Emits the given batch to the given task. If columns are recycled, the batch columns are handed over to the
+	 * receiving task.
+	 * 
+	 * @param taskId
+	 *            The ID of the receiver task.
+	 * @param stream
+	 *            The output stream the batch is appended.
+	 * @param batch
+	 *            The batch to be emitted.
+	 */
+	private void emitBatchDirect(int taskId, StreamDescriptor stream, Batch batch) {
+		if(this.columnPool != null) {
+			batch.acquireColumns();
+			this.doEmitDirect(taskId, stream.streamId, batch.getAnchors(), batch, batch.getMessageId(stream.streamId));
+			batch.handOverColumns(1);
+		} else {
+			this.doEmitDirect(taskId, stream.streamId, batch.getAnchors(), batch, batch.getMessageId(stream.streamId));
+		}
+		this.releaseAnchors(batch);
+	}
+	
+	/**
+	 * Registers the classes {@link Batch Batch.class}, {@link BatchColumn BatchColumn.class}, and all typed
+	 * {@link BatchColumn} sub classes for serialization and deserialization. All columns are serialized via
+	 * {@link BatchColumnSerializer}.
 	 * 
 	 * @param stormConfig
 	 *            The storm config the which the classes should be registered to.
 	 */
 	public static void registerKryoClasses(Config stormConfig) {
 		stormConfig.registerSerialization(Batch.class);
-		stormConfig.registerSerialization(BatchColumn.class);
+		stormConfig.registerSerialization(BatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(LongBatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(IntBatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(ShortBatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(DoubleBatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(StringBatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(BinaryBatchColumn.class, BatchColumnSerializer.class);
+		stormConfig.registerSerialization(SerializedBatchColumn.class, BatchColumnSerializer.class);
 	}
 	
 	/**
@@ -420,7 +1199,7 @@ public abstract class AbstractBatchCollector {
 	 * @param tupleOrBatch
 	 *            The output tuple or batch to be emitted.
 	 * @param messageId
-	 *            The ID of the output batch (spouts only).
+	 *            The ID of the output tuple or batch (spouts only); a batch ID is of type {@link BatchMessageId}.
 	 * 
 	 * @return the task IDs that received the batch
 	 */
@@ -438,8 +1217,19 @@ public abstract class AbstractBatchCollector {
 	 * @param tupleOrBatch
 	 *            The output tuple or batch to be emitted.
 	 * @param messageId
-	 *            The ID of the output batch (spouts only).
+	 *            The ID of the output tuple or batch (spouts only); a batch ID is of type {@link BatchMessageId}.
 	 */
 	protected abstract void doEmitDirect(int taskId, String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId);
 	
+	/**
+	 * Is called each time a deferred ack can be forwarded (see {@link #deferAck(Tuple)}). Acks are only deferred for
+	 * bolts; thus, the default implementation does nothing.
+	 * 
+	 * @param input
+	 *            The input tuple to be acked.
+	 */
+	protected void doAck(Tuple input) {
+		// empty
+	}
+	
 }
@@ -0,0 +1,239 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.task.TopologyContext;
+
+
+
+
+
+/**
+ * {@link AdaptiveBatchSizeController} adjusts the batch size of each output stream at runtime. The goal is to use the
+ * largest batch size that does not violate a given latency target. For each stream, the controller maintains the
+ * tuple emit rate (computed from the batch fill time) as well as the downstream latency (reported via
+ * {@link #reportLatency(String, long)}). Each time a batch is emitted, the batch size is set to the number of tuples
+ * that can be buffered within the remaining latency budget (ie, target latency minus downstream latency). In order to
+ * avoid oscillation, the batch size is at most doubled or halved per emitted batch and always stays within the
+ * configured bounds.<br />
+ * <br />
+ * An {@link AdaptiveBatchSizeController} is stateful and must not be shared by multiple tasks. Because each task gets
+ * its own deserialized copy of the enclosing spout or bolt, this is the case if it is handed over to
+ * {@link de.hub.cs.dbis.aeolus.batching.api.SpoutOutputBatcher SpoutOutputBatcher} or
+ * {@link de.hub.cs.dbis.aeolus.batching.api.BoltOutputBatcher BoltOutputBatcher} before the topology is submitted.<br />
+ * <br />
+ * If the wrapped spout emits tuples with message IDs (ie, acking is enabled),
+ * {@link de.hub.cs.dbis.aeolus.batching.api.SpoutOutputBatcher SpoutOutputBatcher} reports the complete latency of
+ * each acked batch (ie, the time between emitting the batch and receiving its ack) as downstream latency. Without
+ * acking, and for {@link de.hub.cs.dbis.aeolus.batching.api.BoltOutputBatcher BoltOutputBatcher}, no latency is
+ * measured automatically and the batch size is only adapted to the emit rate, unless latencies are reported
+ * externally.<br />
+ * <br />
+ * At runtime, the batcher registers its (deserialized) controller as task data of the {@link TopologyContext}. Thus,
+ * the wrapped spout or bolt (or any other component along the chain of wrappers) can look up the controller via
+ * {@link #getController(TopologyContext)} in {@code open(...)} or {@code prepare(...)} and report measured downstream
+ * latencies. Latencies must be reported by the executor thread, ie, from within {@code nextTuple()},
+ * {@code execute(...)}, {@code ack(...)}, or {@code fail(...)}.
+ * 
+ * @author mjsax
+ */
+public class AdaptiveBatchSizeController implements Serializable {
+	private final static long serialVersionUID = -3316457914270329658L;
+	
+	private final static Logger logger = LoggerFactory.getLogger(AdaptiveBatchSizeController.class);
+	
+	/**
+	 * The weight of a new measurement for the exponential moving averages of emit rate and downstream latency.
+	 */
+	private final static double SMOOTHING_FACTOR = 0.25;
+	
+	/**
+	 * The name of the task data entry that holds the controller at runtime (see
+	 * {@link TopologyContext#getTaskData(String)}).
+	 */
+	public final static String TASK_DATA_KEY = "aeolus::batch-size-controller";
+	
+	/**
+	 * The smallest allowed batch size.
+	 */
+	private final int minBatchSize;
+	/**
+	 * The largest allowed batch size.
+	 */
+	private final int maxBatchSize;
+	/**
+	 * The latency target in ms.
+	 */
+	private final long targetLatency;
+	/**
+	 * The collected statistics for each output stream.
+	 */
+	private final HashMap<String, StreamStatistics> statistics = new HashMap<String, StreamStatistics>();
+	
+	
+	
+	/**
+	 * Instantiates a new {@link AdaptiveBatchSizeController}.
+	 * 
+	 * @param minBatchSize
+	 *            The smallest allowed batch size (must be larger than 0).
+	 * @param maxBatchSize
+	 *            The largest allowed batch size (must not be smaller than {@code minBatchSize}).
+	 * @param targetLatency
+	 *            The latency target in ms (must not be negative).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if any parameter is out of range
+	 */
+	public AdaptiveBatchSizeController(int minBatchSize, int maxBatchSize, long targetLatency) {
+		if(minBatchSize < 1) {
+			throw new IllegalArgumentException("Parameter <minBatchSize> must be greater than 0.");
+		}
+		if(maxBatchSize < minBatchSize) {
+			throw new IllegalArgumentException("Parameter <maxBatchSize> must not be smaller than <minBatchSize>.");
+		}
+		if(targetLatency < 0) {
+			throw new IllegalArgumentException("Parameter <targetLatency> must not be negative.");
+		}
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.targetLatency = targetLatency;
+	}
+	
+	
+	
+	/**
+	 * Returns the {@link AdaptiveBatchSizeController} that is used by the batcher of the given task.
+	 * 
+	 * @param context
+	 *            The context of the task.
+	 * 
+	 * @return the controller of the given task or {@code null} if the task does not use a controller
+	 */
+	public static AdaptiveBatchSizeController getController(TopologyContext context) {
+		return (AdaptiveBatchSizeController)context.getTaskData(TASK_DATA_KEY);
+	}
+	
+	/**
+	 * Registers this controller as task data of the given task (see {@link #getController(TopologyContext)}).
+	 * 
+	 * @param context
+	 *            The context of the task.
+	 */
+	public void register(TopologyContext context) {
+		context.setTaskData(TASK_DATA_KEY, this);
+	}
+	
+	/**
+	 * Reports the measured latency of the consumers of the given output stream. The reported latency is subtracted
+	 * from the latency target, ie, the larger the downstream latency, the smaller the batch size.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param latency
+	 *            The measured downstream latency in ms.
+	 */
+	public void reportLatency(String streamId, long latency) {
+		final StreamStatistics stats = this.getStatistics(streamId);
+		if(stats.latency < 0) {
+			stats.latency = latency;
+		} else {
+			stats.latency = SMOOTHING_FACTOR * latency + (1 - SMOOTHING_FACTOR) * stats.latency;
+		}
+	}
+	
+	/**
+	 * Updates the statistics of the given output stream and computes the batch size for the next batch.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param numberOfTuples
+	 *            The number of tuples in the emitted batch.
+	 * @param fillTime
+	 *            The time in ms between inserting the first tuple into the emitted batch and emitting the batch.
+	 * @param batchSize
+	 *            The current batch size of the output stream.
+	 * 
+	 * @return the batch size for the next batch of the given output stream
+	 */
+	int batchEmitted(String streamId, int numberOfTuples, long fillTime, int batchSize) {
+		final StreamStatistics stats = this.getStatistics(streamId);
+		
+		// System.currentTimeMillis() is too coarse grained for short fill times -> underestimates high rates, which
+		// slows down growing the batch size only
+		final double rate = (double)numberOfTuples / (fillTime < 1 ? 1 : fillTime);
+		if(stats.rate < 0) {
+			stats.rate = rate;
+		} else {
+			stats.rate = SMOOTHING_FACTOR * rate + (1 - SMOOTHING_FACTOR) * stats.rate;
+		}
+		
+		final double budget = this.targetLatency - (stats.latency < 0 ? 0 : stats.latency);
+		double newBatchSize = budget > 0 ? stats.rate * budget : this.minBatchSize;
+		
+		if(newBatchSize > 2.0 * batchSize) {
+			newBatchSize = 2.0 * batchSize;
+		} else if(newBatchSize < batchSize / 2.0) {
+			newBatchSize = batchSize / 2.0;
+		}
+		if(newBatchSize > this.maxBatchSize) {
+			newBatchSize = this.maxBatchSize;
+		} else if(newBatchSize < this.minBatchSize) {
+			newBatchSize = this.minBatchSize;
+		}
+		
+		logger.trace("streamId: {}; rate: {}; latency: {}; batch size: {}", streamId, new Double(stats.rate),
+			new Double(stats.latency), new Double(newBatchSize));
+		return (int)newBatchSize;
+	}
+	
+	private StreamStatistics getStatistics(String streamId) {
+		StreamStatistics stats = this.statistics.get(streamId);
+		if(stats == null) {
+			stats = new StreamStatistics();
+			this.statistics.put(streamId, stats);
+		}
+		return stats;
+	}
+	
+	
+	
+	/**
+	 * The collected runtime statistics of a single output stream.
+	 */
+	private final static class StreamStatistics implements Serializable {
+		private final static long serialVersionUID = 2361307917584934101L;
+		
+		/**
+		 * Moving average of the emit rate in tuples per ms ({@code -1} if unknown).
+		 */
+		double rate = -1;
+		/**
+		 * Moving average of the downstream latency in ms ({@code -1} if unknown).
+		 */
+		double latency = -1;
+	}
+	
+}
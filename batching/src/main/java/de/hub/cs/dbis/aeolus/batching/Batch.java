@@ -19,11 +19,15 @@
 package de.hub.cs.dbis.aeolus.batching;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
 
 
@@ -34,6 +38,10 @@ import backtype.storm.tuple.Values;
  * A {@link Batch} is a buffer that stores multiple tuples (ie, {@link Values}). It requires that all tuples have the
  * same number of attributes.
  * 
+ * The type of each {@link BatchColumn} is chosen when the first tuple is inserted (see
+ * {@link BatchColumn#newColumn(Object, int)}). If a later tuple contains an attribute value that does not fit the
+ * chosen column type, the column is converted into a plain {@link BatchColumn}.
+ * 
  * @author mjsax
  */
 public class Batch extends ArrayList<BatchColumn> {
@@ -53,6 +61,43 @@ public class Batch extends ArrayList<BatchColumn> {
 	 * The current number of tuples stored in this {@link Batch}.
 	 */
 	private int size;
+	/**
+	 * The maximum estimated serialized size (in bytes) of this {@link Batch} (a non-positive value disables the
+	 * bound).
+	 */
+	private transient int maxBytes;
+	/**
+	 * The estimated serialized size (in bytes) of all stored tuples (only maintained if {@link #maxBytes} is set).
+	 */
+	private transient long estimatedBytes;
+	/**
+	 * If {@code true}, tuples are serialized when they are inserted (see {@link SerializedBatchColumn}).
+	 */
+	private transient boolean serializeOnAppend;
+	/**
+	 * The minimum number of serialized bytes to compress a column of this {@link Batch} (a negative value disables
+	 * compression).
+	 */
+	private transient int compressionThreshold = -1;
+	/**
+	 * The system time (in ms) at which the first tuple was inserted into this {@link Batch}. Is only set by
+	 * {@link AbstractBatchCollector} if a maximum buffer time is configured.
+	 */
+	transient long firstTupleTimestamp;
+	/**
+	 * The pool the columns of this {@link Batch} are taken from ({@code null} if columns are not recycled).
+	 */
+	private transient BatchColumnPool columnPool;
+	/**
+	 * The message IDs of the buffered tuples ({@code null} if no tuple has a message ID). Is only set by
+	 * {@link AbstractBatchCollector} for spout output.
+	 */
+	private transient List<Object> messageIds;
+	/**
+	 * The distinct anchors of the buffered tuples ({@code null} if no tuple is anchored). Is only set by
+	 * {@link AbstractBatchCollector} for bolt output.
+	 */
+	private transient Set<Tuple> anchors;
 	
 	
 	
@@ -83,10 +128,23 @@ public class Batch extends ArrayList<BatchColumn> {
 		this.batchSize = batchSize;
 		this.numberOfAttributes = numberOfAttributes;
 		this.size = 0;
-		
-		for(int i = 0; i < numberOfAttributes; ++i) {
-			this.add(new BatchColumn(batchSize));
-		}
+	}
+	
+	/**
+	 * Instantiates a new {@link Batch} with size {@code batchSize} that takes its columns from the given
+	 * {@link BatchColumnPool}. All tuples that are inserted, must have the same number of attributes as specified by
+	 * {@code numberOfAttributes}.
+	 * 
+	 * @param batchSize
+	 *            The number of tuples that can be stored in this {@link Batch} (must be largen than 0).
+	 * @param numberOfAttributes
+	 *            The number of attributes of the tuples stored in this {@link Batch} (must be larger than 0).
+	 * @param columnPool
+	 *            The pool the columns are taken from ({@code null} disables recycling).
+	 */
+	public Batch(int batchSize, int numberOfAttributes, BatchColumnPool columnPool) {
+		this(batchSize, numberOfAttributes);
+		this.columnPool = columnPool;
 	}
 	
 	
@@ -106,20 +164,190 @@ public class Batch extends ArrayList<BatchColumn> {
 		
 		logger.trace("tuple: {}; size before insert: {}", tuple, new Integer(this.size));
 		
+		if(super.size() == 0) { // first tuple determines column types
+			for(int i = 0; i < this.numberOfAttributes; ++i) {
+				final BatchColumn column;
+				if(this.serializeOnAppend) {
+					if(this.columnPool != null) {
+						column = this.columnPool.getSerializedColumn(this.batchSize);
+					} else {
+						column = new SerializedBatchColumn(this.batchSize);
+					}
+				} else if(this.columnPool != null) {
+					column = this.columnPool.getColumn(tuple.get(i), this.batchSize);
+				} else {
+					column = BatchColumn.newColumn(tuple.get(i), this.batchSize);
+				}
+				column.setCompressionThreshold(this.compressionThreshold);
+				this.add(column);
+			}
+		}
+		
 		for(int i = 0; i < this.numberOfAttributes; ++i) {
-			this.get(i).add(tuple.get(i));
+			final Object value = tuple.get(i);
+			BatchColumn column = this.get(i);
+			if(!column.accepts(value)) {
+				column = column.toGenericColumn();
+				column.setCompressionThreshold(this.compressionThreshold);
+				this.set(i, column);
+			}
+			column.add(value);
+		}
+		if(this.maxBytes > 0) {
+			for(int i = 0; i < this.numberOfAttributes; ++i) {
+				this.estimatedBytes += this.get(i).estimateSize(tuple.get(i));
+			}
 		}
 		
 		++this.size;
 	}
 	
 	/**
-	 * Returns {@code true} if this batch is full; {@code false} otherwise.
+	 * Bounds the estimated serialized size of this {@link Batch}. A bounded batch is full if either its capacity is
+	 * reached or the estimated size of the stored tuples reaches {@code maxBytes} (see
+	 * {@link BatchColumn#estimateSize(Object)}). Must be called before the first tuple is inserted.
+	 * 
+	 * @param maxBytes
+	 *            The maximum estimated size in bytes (a non-positive value disables the bound).
+	 */
+	void setMaxBytes(int maxBytes) {
+		assert (this.size == 0);
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Enables serialize-on-append. If enabled, all columns are {@link SerializedBatchColumn}s, that serialize each
+	 * value when it is inserted. Thus, the serialization cost is spread over all insert calls and the buffered values
+	 * are kept in byte buffers (off-heap, if the columns are taken from a {@link BatchColumnPool}). Columns that
+	 * receive a value of an unsupported type are converted into a plain {@link BatchColumn}. Must be called before the
+	 * first tuple is inserted.
+	 * 
+	 * @param serializeOnAppend
+	 *            {@code true} to enable serialize-on-append; {@code false} to use typed columns
+	 */
+	void setSerializeOnAppend(boolean serializeOnAppend) {
+		assert (this.size == 0);
+		this.serializeOnAppend = serializeOnAppend;
+	}
+	
+	/**
+	 * Enables compression of the columns of this {@link Batch}, if the batch is transfered to a different worker (see
+	 * {@link BatchColumnSerializer}). Must be called before the first tuple is inserted.
+	 * 
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a column (a negative value disables compression).
+	 */
+	void setCompressionThreshold(int threshold) {
+		assert (this.size == 0);
+		this.compressionThreshold = threshold;
+	}
+	
+	/**
+	 * Returns the estimated serialized size of all stored tuples. The size is only estimated if a maximum size is set
+	 * (see {@link #setMaxBytes(int)}).
+	 * 
+	 * @return the estimated serialized size in bytes (or zero if the size is not estimated)
+	 */
+	long getEstimatedBytes() {
+		return this.estimatedBytes;
+	}
+	
+	/**
+	 * Registers the message ID of a buffered tuple.
+	 * 
+	 * @param messageId
+	 *            The message ID of the buffered tuple.
+	 */
+	void addMessageId(Object messageId) {
+		assert (messageId != null);
+		
+		if(this.messageIds == null) {
+			this.messageIds = new ArrayList<Object>(this.batchSize);
+		}
+		this.messageIds.add(messageId);
+	}
+	
+	/**
+	 * Returns the message ID of this batch, that holds the message IDs of all buffered tuples.
+	 * 
+	 * @param streamId
+	 *            The output stream this batch is emitted to.
+	 * 
+	 * @return the message ID of this batch, or {@code null} if no buffered tuple has a message ID
+	 */
+	BatchMessageId getMessageId(String streamId) {
+		if(this.messageIds == null) {
+			return null;
+		}
+		return new BatchMessageId(this.messageIds, streamId);
+	}
+	
+	/**
+	 * Registers an anchor of a buffered tuple.
+	 * 
+	 * @param anchor
+	 *            The anchor of the buffered tuple.
+	 * 
+	 * @return {@code true} if {@code anchor} was not registered for this batch already; {@code false} otherwise
+	 */
+	boolean addAnchor(Tuple anchor) {
+		assert (anchor != null);
+		
+		if(this.anchors == null) {
+			this.anchors = new HashSet<Tuple>();
+		}
+		return this.anchors.add(anchor);
+	}
+	
+	/**
+	 * Returns the distinct anchors of all buffered tuples.
+	 * 
+	 * @return the distinct anchors of all buffered tuples, or {@code null} if no buffered tuple is anchored
+	 */
+	Collection<Tuple> getAnchors() {
+		return this.anchors;
+	}
+	
+	/**
+	 * Returns the number of tuples stored in this batch.
+	 * 
+	 * @return the number of tuples stored in this batch
+	 */
+	public int getNumberOfTuples() {
+		return this.size;
+	}
+	
+	/**
+	 * Marks all columns of this batch as used by the producer (see {@link BatchColumn#acquire()}). Must be called
+	 * before the batch is emitted.
+	 */
+	void acquireColumns() {
+		for(int i = 0; i < super.size(); ++i) {
+			this.get(i).acquire();
+		}
+	}
+	
+	/**
+	 * Hands over all columns of this batch to its consumers (see {@link BatchColumn#handOver(int)}). Must be called
+	 * after the batch was emitted.
+	 * 
+	 * @param numberOfConsumers
+	 *            The number of consumer tasks that received this batch (negative if unknown).
+	 */
+	void handOverColumns(int numberOfConsumers) {
+		for(int i = 0; i < super.size(); ++i) {
+			this.get(i).handOver(numberOfConsumers);
+		}
+	}
+	
+	/**
+	 * Returns {@code true} if this batch is full; {@code false} otherwise. A batch is full, if its capacity is reached
+	 * or if its estimated serialized size reaches its maximum size (see {@link #setMaxBytes(int)}).
 	 * 
 	 * @return {@code true}, if this batch is full; {@code false} otherwise.
 	 */
 	public boolean isFull() {
-		return this.size == this.batchSize;
+		return this.size == this.batchSize || (this.maxBytes > 0 && this.estimatedBytes >= this.maxBytes);
 	}
 	
 	/**
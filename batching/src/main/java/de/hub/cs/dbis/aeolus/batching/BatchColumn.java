@@ -18,7 +18,15 @@
  */
 package de.hub.cs.dbis.aeolus.batching;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 
 
 
@@ -27,18 +35,87 @@ import java.util.ArrayList;
 /**
  * {@link BatchColumn} represent an attribute column of a {@link Batch}.
  * 
+ * A plain {@link BatchColumn} can store values of any type. For the most common attribute types, typed sub classes
+ * exist that store the attribute values in an array of primitive type (see {@link #newColumn(Object, int)}). Those
+ * typed columns avoid boxing overhead and are serialized as a packed array by {@link BatchColumnSerializer}. If
+ * beneficial, typed columns encode their values as runs, deltas, or dictionary indexes; decoding is transparent to the
+ * receiver.
+ * 
+ * A {@link BatchColumn} can be taken from a {@link BatchColumnPool}. In this case, the column is returned to the pool
+ * after it was released by all its consumers (see {@link #release()}).
+ * 
  * @author mjsax
  */
-public class BatchColumn extends ArrayList<Object> {
+public class BatchColumn extends AbstractList<Object> implements RandomAccess, Serializable {
 	private final static long serialVersionUID = -2215147192473477343L;
 	
+	/**
+	 * The number of references that are held by the producer while a column is emitted. The value is large enough to
+	 * never be reached by releases of consumers, before the actual number of consumers is known.
+	 */
+	private final static int PRODUCER_REFERENCES = Integer.MAX_VALUE / 2;
+	
+	/**
+	 * The estimated serialized size of a value of unknown type (see {@link #estimateSize(Object)}).
+	 */
+	private final static int DEFAULT_VALUE_SIZE = 16;
+	
+	/**
+	 * Encoding tag of typed columns: all values are written one after another.
+	 */
+	final static byte PLAIN_ENCODING = 0;
+	/**
+	 * Encoding tag of typed columns: each run of equal values is written as value followed by the run length.
+	 */
+	final static byte RUN_LENGTH_ENCODING = 1;
+	/**
+	 * Encoding tag of typed columns: the first value is written followed by the (non-negative) differences of all
+	 * consecutive values.
+	 */
+	final static byte DELTA_ENCODING = 2;
+	/**
+	 * Encoding tag of typed columns: all distinct values are written once followed by the dictionary index of each
+	 * value.
+	 */
+	final static byte DICTIONARY_ENCODING = 3;
+	
+	private final static AtomicIntegerFieldUpdater<BatchColumn> referencesUpdater = AtomicIntegerFieldUpdater
+		.newUpdater(BatchColumn.class, "references");
+	
+	/**
+	 * The maximum number of values that can be stored without resizing the internal buffer.
+	 */
+	protected int capacity;
+	/**
+	 * The current number of values stored in this {@link BatchColumn}.
+	 */
+	protected int size = 0;
+	/**
+	 * The stored attribute values (allocated on first insert).
+	 */
+	private Object[] data;
+	/**
+	 * The pool this column is returned to, after it got released by all consumers ({@code null} if this column is not
+	 * recycled).
+	 */
+	private transient volatile BatchColumnPool pool;
+	/**
+	 * The number of outstanding references to this column (only used if {@link #pool} is set).
+	 */
+	private transient volatile int references;
+	/**
+	 * The minimum number of serialized bytes to compress the values of this column (a negative value disables
+	 * compression).
+	 */
+	private transient int compressionThreshold = -1;
+	
 	
 	
 	/**
 	 * Default constructor. Needed for serialization.
 	 */
 	public BatchColumn() {
-		super();
+		this.capacity = 10;
 	}
 	
 	/**
@@ -48,8 +125,286 @@ public class BatchColumn extends ArrayList<Object> {
 	 *            The number of attributes that should be stored in this {@link BatchColumn}.
 	 */
 	public BatchColumn(int batchSize) {
-		super(batchSize);
 		assert (batchSize > 0);
+		this.capacity = batchSize;
+	}
+	
+	
+	
+	/**
+	 * Creates a new {@link BatchColumn} that is best suited to store values of the same type as {@code value}. If no
+	 * typed column exists for the type of {@code value} (or {@code value} is {@code null}), a plain
+	 * {@link BatchColumn} is returned.
+	 * 
+	 * @param value
+	 *            The first value that is going to be inserted into the new column.
+	 * @param batchSize
+	 *            The number of values that should be stored in the new column.
+	 * 
+	 * @return a new (empty) column
+	 */
+	public static BatchColumn newColumn(Object value, int batchSize) {
+		if(value instanceof Long) {
+			return new LongBatchColumn(batchSize);
+		}
+		if(value instanceof Integer) {
+			return new IntBatchColumn(batchSize);
+		}
+		if(value instanceof Short) {
+			return new ShortBatchColumn(batchSize);
+		}
+		if(value instanceof Double) {
+			return new DoubleBatchColumn(batchSize);
+		}
+		if(value instanceof String) {
+			return new StringBatchColumn(batchSize);
+		}
+		if(value instanceof byte[]) {
+			return new BinaryBatchColumn(batchSize);
+		}
+		return new BatchColumn(batchSize);
+	}
+	
+	/**
+	 * Returns the class of the {@link BatchColumn} that {@link #newColumn(Object, int)} returns for {@code value}.
+	 * 
+	 * @param value
+	 *            The first value that is going to be inserted into a new column.
+	 * 
+	 * @return the class of the column that is best suited to store values of the same type as {@code value}
+	 */
+	public static Class<? extends BatchColumn> getColumnType(Object value) {
+		if(value instanceof Long) {
+			return LongBatchColumn.class;
+		}
+		if(value instanceof Integer) {
+			return IntBatchColumn.class;
+		}
+		if(value instanceof Short) {
+			return ShortBatchColumn.class;
+		}
+		if(value instanceof Double) {
+			return DoubleBatchColumn.class;
+		}
+		if(value instanceof String) {
+			return StringBatchColumn.class;
+		}
+		if(value instanceof byte[]) {
+			return BinaryBatchColumn.class;
+		}
+		return BatchColumn.class;
+	}
+	
+	/**
+	 * Returns {@code true} if {@code value} can be appended to this column. A plain {@link BatchColumn} accepts any
+	 * value; typed sub classes only accept values of their type.
+	 * 
+	 * @param value
+	 *            The value to be checked.
+	 * 
+	 * @return {@code true} if {@code value} can be appended to this column; {@code false} otherwise
+	 */
+	public boolean accepts(Object value) {
+		return true;
+	}
+	
+	/**
+	 * Estimates the number of bytes {@code value} requires if this column is serialized by
+	 * {@link BatchColumnSerializer}. A plain {@link BatchColumn} writes each value including its class information;
+	 * thus, the estimate is only accurate for common types. Typed sub classes return the size of a packed value.
+	 * 
+	 * @param value
+	 *            The value that is appended to this column.
+	 * 
+	 * @return the estimated serialized size of {@code value} in bytes
+	 */
+	int estimateSize(Object value) {
+		if(value == null) {
+			return 1;
+		}
+		// one byte class ID plus value
+		if(value instanceof String) {
+			return ((String)value).length() + 2;
+		}
+		if(value instanceof byte[]) {
+			return ((byte[])value).length + 2;
+		}
+		if(value instanceof Number || value instanceof Boolean || value instanceof Character) {
+			return 9;
+		}
+		return DEFAULT_VALUE_SIZE;
+	}
+	
+	/**
+	 * Returns a plain {@link BatchColumn} that contains the same values as this column. Is used to degrade a typed
+	 * column, if a value of a different type must be inserted.
+	 * 
+	 * @return a plain {@link BatchColumn} containing all values of this column
+	 */
+	public BatchColumn toGenericColumn() {
+		final BatchColumn column = new BatchColumn(this.capacity);
+		for(int i = 0; i < this.size; ++i) {
+			column.add(this.get(i));
+		}
+		return column;
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		if(this.data == null) {
+			this.data = new Object[this.capacity];
+		} else if(this.size == this.data.length) {
+			this.capacity = 2 * this.capacity;
+			this.data = Arrays.copyOf(this.data, this.capacity);
+		}
+		this.data[this.size++] = value;
+		++this.modCount;
+		return true;
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		return this.data[index];
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		this.checkIndex(index);
+		final Object old = this.data[index];
+		this.data[index] = value;
+		return old;
+	}
+	
+	@Override
+	public int size() {
+		return this.size;
+	}
+	
+	@Override
+	public void clear() {
+		if(this.data != null) {
+			Arrays.fill(this.data, 0, this.size, null);
+		}
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	/**
+	 * Enables compression of this column, if it gets serialized by {@link BatchColumnSerializer}.
+	 * 
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress the values (a negative value disables
+	 *            compression).
+	 */
+	void setCompressionThreshold(int threshold) {
+		this.compressionThreshold = threshold;
+	}
+	
+	/**
+	 * Returns the minimum number of serialized bytes to compress the values of this column.
+	 * 
+	 * @return the compression threshold (a negative value indicates that compression is disabled)
+	 */
+	int getCompressionThreshold() {
+		return this.compressionThreshold;
+	}
+	
+	/**
+	 * Binds this column to the given pool. A bound column is returned to the pool, after it was released by all its
+	 * consumers.
+	 * 
+	 * @param columnPool
+	 *            The pool this column belongs to.
+	 */
+	void setPool(BatchColumnPool columnPool) {
+		this.pool = columnPool;
+	}
+	
+	/**
+	 * Marks this column as used by its producer. Must be called before the column is emitted.
+	 */
+	void acquire() {
+		if(this.pool != null) {
+			this.references = PRODUCER_REFERENCES;
+		}
+	}
+	
+	/**
+	 * Hands this column over to its consumers, after it was emitted. If the number of consumers is unknown, the column
+	 * is unbound from its pool and is never recycled.
+	 * 
+	 * @param numberOfConsumers
+	 *            The number of consumers that received this column (negative if unknown).
+	 */
+	void handOver(int numberOfConsumers) {
+		final BatchColumnPool columnPool = this.pool;
+		if(columnPool != null) {
+			if(numberOfConsumers < 0) {
+				this.pool = null;
+			} else if(referencesUpdater.addAndGet(this, numberOfConsumers - PRODUCER_REFERENCES) == 0) {
+				columnPool.recycle(this);
+			}
+		}
+	}
+	
+	/**
+	 * Releases this column. Must be called by each consumer, after it finished processing this column (ie, after
+	 * debatching or serialization). As soon as all consumers released a column that belongs to a
+	 * {@link BatchColumnPool}, the column is cleared and returned to the pool. Thus, a consumer must not access this
+	 * column after releasing it. If the column does not belong to a pool, this call has no effect.
+	 */
+	public void release() {
+		final BatchColumnPool columnPool = this.pool;
+		if(columnPool != null && referencesUpdater.decrementAndGet(this) == 0) {
+			columnPool.recycle(this);
+		}
+	}
+	
+	/**
+	 * Checks if {@code index} is a valid index within this column.
+	 * 
+	 * @param index
+	 *            The index to be checked.
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code index} is negative or not smaller than the current size of this column
+	 */
+	protected final void checkIndex(int index) {
+		if(index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+	}
+	
+	/**
+	 * Writes all values of this column. Each value is written including its class information.
+	 * 
+	 * @param kryo
+	 *            The Kryo instance to be used.
+	 * @param output
+	 *            The output the values are written to.
+	 */
+	void writeValues(Kryo kryo, Output output) {
+		for(int i = 0; i < this.size; ++i) {
+			kryo.writeClassAndObject(output, this.data[i]);
+		}
+	}
+	
+	/**
+	 * Reads {@code numberOfValues} values (written by {@link #writeValues(Kryo, Output)}) and appends them to this
+	 * column.
+	 * 
+	 * @param kryo
+	 *            The Kryo instance to be used.
+	 * @param input
+	 *            The input the values are read from.
+	 * @param numberOfValues
+	 *            The number of values to be read.
+	 */
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		for(int i = 0; i < numberOfValues; ++i) {
+			this.add(kryo.readClassAndObject(input));
+		}
 	}
 	
 	/**
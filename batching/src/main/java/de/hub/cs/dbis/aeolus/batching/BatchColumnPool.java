@@ -0,0 +1,125 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+
+
+
+
+/**
+ * {@link BatchColumnPool} recycles {@link BatchColumn}s, in order to avoid allocating new columns (and their internal
+ * arrays) for each output batch. The pool holds a bounded queue of free columns for each column type. Columns are
+ * returned to the pool after they got released by all consumers (see {@link BatchColumn#release()}), ie, after each
+ * receiving task debatched the column (local transfer) or the column got serialized (remote transfer). Releasing
+ * might happen in a different thread than taking a column from the pool; thus, {@link BatchColumnPool} is
+ * thread-safe.
+ * 
+ * @author mjsax
+ */
+public class BatchColumnPool {
+	/**
+	 * The free columns for each column type.
+	 */
+	private final Map<Class<? extends BatchColumn>, ArrayBlockingQueue<BatchColumn>> freeColumns = new HashMap<Class<? extends BatchColumn>, ArrayBlockingQueue<BatchColumn>>();
+	
+	
+	
+	/**
+	 * Instantiates a new {@link BatchColumnPool} that holds up to {@code poolSize} free columns per column type.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of free columns per column type (must be larger than zero).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code poolSize} is not positive
+	 */
+	public BatchColumnPool(int poolSize) {
+		if(poolSize < 1) {
+			throw new IllegalArgumentException("Parameter <poolSize> must be greater than 0.");
+		}
+		// map is not modified after construction -> can be read concurrently
+		this.freeColumns.put(BatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(LongBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(IntBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(ShortBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(DoubleBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(StringBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(BinaryBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+		this.freeColumns.put(SerializedBatchColumn.class, new ArrayBlockingQueue<BatchColumn>(poolSize));
+	}
+	
+	
+	
+	/**
+	 * Returns an empty column that is best suited to store values of the same type as {@code value} (see
+	 * {@link BatchColumn#newColumn(Object, int)}). If no free column is available, a new column is allocated.
+	 * 
+	 * @param value
+	 *            The first value that is going to be inserted into the column.
+	 * @param batchSize
+	 *            The number of values that should be stored in the column (only used if a new column is allocated).
+	 * 
+	 * @return an empty column that belongs to this pool
+	 */
+	public BatchColumn getColumn(Object value, int batchSize) {
+		BatchColumn column = this.freeColumns.get(BatchColumn.getColumnType(value)).poll();
+		if(column == null) {
+			column = BatchColumn.newColumn(value, batchSize);
+			column.setPool(this);
+		}
+		return column;
+	}
+	
+	/**
+	 * Returns an empty {@link SerializedBatchColumn}. If no free column is available, a new column is allocated.
+	 * Recycling is especially beneficial for {@link SerializedBatchColumn}s, because it avoids allocating new direct
+	 * buffers. Thus, only columns that are taken from a pool use direct (ie, off-heap) buffers.
+	 * 
+	 * @param batchSize
+	 *            The number of values that should be stored in the column (only used if a new column is allocated).
+	 * 
+	 * @return an empty {@link SerializedBatchColumn} that belongs to this pool
+	 */
+	public BatchColumn getSerializedColumn(int batchSize) {
+		BatchColumn column = this.freeColumns.get(SerializedBatchColumn.class).poll();
+		if(column == null) {
+			column = new SerializedBatchColumn(batchSize, true);
+			column.setPool(this);
+		}
+		return column;
+	}
+	
+	/**
+	 * Clears the given column and adds it to the free columns. If the pool is full, the column is dropped.
+	 * 
+	 * @param column
+	 *            The column to be recycled.
+	 */
+	void recycle(BatchColumn column) {
+		column.clear();
+		if(!this.freeColumns.get(column.getClass()).offer(column)) {
+			column.setPool(null);
+		}
+	}
+	
+}
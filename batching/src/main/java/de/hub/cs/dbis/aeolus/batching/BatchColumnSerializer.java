@@ -0,0 +1,186 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link BatchColumnSerializer} is a Kryo serializer for {@link BatchColumn} and all its typed sub classes. For each
+ * column, only the number of values and the values itself are written. Typed columns write their values as a packed
+ * array without any per-value class information. The type of the column is encoded by Kryo's class registration (see
+ * {@link AbstractBatchCollector#registerKryoClasses(backtype.storm.Config)}).
+ * 
+ * If compression is enabled for a column (see {@link BatchColumn#setCompressionThreshold(int)}), its values are
+ * compressed with {@link Deflater#BEST_SPEED} if they require at least the column's threshold number of bytes (and if
+ * compression actually reduces their size). Storm serializes tuples only if they are transfered to a different worker;
+ * thus, local batches are never compressed.
+ * 
+ * @author mjsax
+ */
+public class BatchColumnSerializer extends Serializer<BatchColumn> {
+	/**
+	 * Buffers the uncompressed values of a column that might get compressed.
+	 */
+	private final Output uncompressed = new Output(4096, -1);
+	/**
+	 * Buffers the compressed values of a column.
+	 */
+	private byte[] compressed = new byte[4096];
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+	
+	
+	
+	// the lowest bit of the written column size indicates if the values are compressed
+	@Override
+	public void write(Kryo kryo, Output output, BatchColumn column) {
+		final int size = column.size();
+		final int threshold = column.getCompressionThreshold();
+		
+		if(threshold < 0) {
+			output.writeInt(size << 1, true);
+			column.writeValues(kryo, output);
+		} else {
+			this.uncompressed.clear();
+			column.writeValues(kryo, this.uncompressed);
+			final byte[] values = this.uncompressed.getBuffer();
+			final int length = this.uncompressed.position();
+			
+			final int compressedLength = length >= threshold ? this.compress(values, length) : length;
+			if(compressedLength < length) {
+				output.writeInt((size << 1) | 1, true);
+				output.writeInt(length, true);
+				output.writeInt(compressedLength, true);
+				output.writeBytes(this.compressed, 0, compressedLength);
+			} else {
+				output.writeInt(size << 1, true);
+				output.writeBytes(values, 0, length);
+			}
+		}
+		
+		// each remote receiver serializes the column once -> it is not accessed afterwards
+		column.release();
+	}
+	
+	/**
+	 * Compresses the given values into {@link #compressed}.
+	 * 
+	 * @param values
+	 *            The values to be compressed.
+	 * @param length
+	 *            The number of bytes to be compressed.
+	 * 
+	 * @return the number of compressed bytes (if compression does not reduce the size, {@code length} is returned)
+	 */
+	private int compress(byte[] values, int length) {
+		this.deflater.reset();
+		this.deflater.setInput(values, 0, length);
+		this.deflater.finish();
+		
+		int compressedLength = 0;
+		while(!this.deflater.finished()) {
+			if(compressedLength >= length) {
+				return length; // not compressible
+			}
+			if(compressedLength == this.compressed.length) {
+				this.compressed = Arrays.copyOf(this.compressed, 2 * this.compressed.length);
+			}
+			compressedLength += this.deflater.deflate(this.compressed, compressedLength, this.compressed.length
+				- compressedLength);
+		}
+		return compressedLength;
+	}
+	
+	@Override
+	public BatchColumn read(Kryo kryo, Input input, Class<BatchColumn> type) {
+		final int header = input.readInt(true);
+		final int size = header >>> 1;
+		final int capacity = size > 0 ? size : 1;
+		
+		final Class<?> columnType = type;
+		final BatchColumn column;
+		if(columnType == LongBatchColumn.class) {
+			column = new LongBatchColumn(capacity);
+		} else if(columnType == IntBatchColumn.class) {
+			column = new IntBatchColumn(capacity);
+		} else if(columnType == ShortBatchColumn.class) {
+			column = new ShortBatchColumn(capacity);
+		} else if(columnType == DoubleBatchColumn.class) {
+			column = new DoubleBatchColumn(capacity);
+		} else if(columnType == StringBatchColumn.class) {
+			column = new StringBatchColumn(capacity);
+		} else if(columnType == BinaryBatchColumn.class) {
+			column = new BinaryBatchColumn(capacity);
+		} else if(columnType == SerializedBatchColumn.class) {
+			column = new SerializedBatchColumn(capacity);
+		} else {
+			column = new BatchColumn(capacity);
+		}
+		
+		if((header & 1) == 0) {
+			column.readValues(kryo, input, size);
+		} else {
+			column.readValues(kryo, new Input(this.decompress(input)), size);
+		}
+		return column;
+	}
+	
+	/**
+	 * Reads and decompresses the compressed values of a column.
+	 * 
+	 * @param input
+	 *            The input the compressed values are read from.
+	 * 
+	 * @return the decompressed values
+	 */
+	private byte[] decompress(Input input) {
+		final byte[] values = new byte[input.readInt(true)];
+		final byte[] compressedValues = input.readBytes(input.readInt(true));
+		
+		this.inflater.reset();
+		this.inflater.setInput(compressedValues);
+		try {
+			int length = 0;
+			while(length < values.length) {
+				final int n = this.inflater.inflate(values, length, values.length - length);
+				if(n == 0 && (this.inflater.finished() || this.inflater.needsInput())) {
+					throw new KryoException("Compressed batch column is truncated.");
+				}
+				length += n;
+			}
+		} catch(DataFormatException e) {
+			throw new KryoException("Compressed batch column is corrupted.", e);
+		}
+		return values;
+	}
+	
+}
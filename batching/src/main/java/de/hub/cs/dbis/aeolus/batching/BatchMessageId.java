@@ -0,0 +1,151 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.List;
+
+import backtype.storm.spout.ISpout;
+
+
+
+
+
+/**
+ * {@link BatchMessageId} is the message ID of an emitted {@link Batch}. It holds the message IDs of all tuples that are
+ * contained in the batch. If Storm acks or fails a batch, the ack or fail is replayed for each single tuple to the
+ * original spout (see {@link #ack(ISpout)} and {@link #fail(ISpout)}). Additionally, it records the output stream and
+ * the time the batch was emitted, such that the complete latency of the batch can be measured when it is acked.
+ * 
+ * @author mjsax
+ */
+public class BatchMessageId {
+	/**
+	 * The message IDs of the buffered tuples (might contain {@link SharedMessageId}s).
+	 */
+	private final List<Object> messageIds;
+	/**
+	 * The output stream the batch was emitted to ({@code null} if unknown).
+	 */
+	private final String streamId;
+	/**
+	 * The time the batch was emitted in ms.
+	 */
+	private final long emitTimestamp;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link BatchMessageId} for the given tuple message IDs.
+	 * 
+	 * @param messageIds
+	 *            The message IDs of all tuples contained in the batch.
+	 */
+	BatchMessageId(List<Object> messageIds) {
+		this(messageIds, null);
+	}
+	
+	/**
+	 * Instantiates a new {@link BatchMessageId} for the given tuple message IDs of a batch that is emitted to the
+	 * given output stream.
+	 * 
+	 * @param messageIds
+	 *            The message IDs of all tuples contained in the batch.
+	 * @param streamId
+	 *            The output stream the batch is emitted to.
+	 */
+	BatchMessageId(List<Object> messageIds, String streamId) {
+		assert (messageIds != null);
+		this.messageIds = messageIds;
+		this.streamId = streamId;
+		this.emitTimestamp = System.currentTimeMillis();
+	}
+	
+	
+	
+	/**
+	 * Acks all tuples of the batch at the given spout. A tuple that is contained in multiple batches is acked after
+	 * all its batches got acked.
+	 * 
+	 * @param spout
+	 *            The spout that emitted the tuples.
+	 */
+	public void ack(ISpout spout) {
+		for(Object messageId : this.messageIds) {
+			if(messageId instanceof SharedMessageId) {
+				messageId = ((SharedMessageId)messageId).ack();
+				if(messageId == null) {
+					continue;
+				}
+			}
+			spout.ack(messageId);
+		}
+	}
+	
+	/**
+	 * Fails all tuples of the batch at the given spout. A tuple that is contained in multiple batches is failed only
+	 * once.
+	 * 
+	 * @param spout
+	 *            The spout that emitted the tuples.
+	 */
+	public void fail(ISpout spout) {
+		for(Object messageId : this.messageIds) {
+			if(messageId instanceof SharedMessageId) {
+				messageId = ((SharedMessageId)messageId).fail();
+				if(messageId == null) {
+					continue;
+				}
+			}
+			spout.fail(messageId);
+		}
+	}
+	
+	/**
+	 * Returns the output stream the batch was emitted to.
+	 * 
+	 * @return the output stream the batch was emitted to ({@code null} if unknown)
+	 */
+	public String getStreamId() {
+		return this.streamId;
+	}
+	
+	/**
+	 * Returns the time the batch was emitted.
+	 * 
+	 * @return the time the batch was emitted in ms
+	 */
+	public long getEmitTimestamp() {
+		return this.emitTimestamp;
+	}
+	
+	/**
+	 * Returns the number of tuples contained in the batch.
+	 * 
+	 * @return the number of tuples contained in the batch
+	 */
+	public int size() {
+		return this.messageIds.size();
+	}
+	
+	@Override
+	public String toString() {
+		return "BatchMessageId" + this.messageIds;
+	}
+	
+}
@@ -128,7 +128,7 @@ public class BatchOutputCollector extends OutputCollector {
 	 * {@inheritDoc}
 	 * 
 	 * The tuple is not emitted directly, but is added to an output batch. Output batches are emitted if they are full.
-	 * The given anchors are ignored right now because anchoring is not yet supported.
+	 * The output batch is anchored to the given anchors.
 	 * 
 	 * @return currently {@code null} is returned, because the receiver task IDs cannot be determined if it is only
 	 *         inserted into an output batch but not actual emit happens
@@ -193,7 +193,7 @@ public class BatchOutputCollector extends OutputCollector {
 	
 	/**
 	 * The tuple is not emitted directly, but is added to an output batch. Output batches are emitted if they are full.
-	 * The given anchors are ignored right now because anchoring is not yet supported.
+	 * The output batch is anchored to the given anchors.
 	 */
 	// need to override to redirect call to BoltBatchCollector.emitDirect(int taskId, String streamId, Collection<Tuple>
 	// anchors, List<Object> tuple)
@@ -225,7 +225,7 @@ public class BatchOutputCollector extends OutputCollector {
 	
 	/**
 	 * The tuple is not emitted directly, but is added to an output batch. Output batches are emitted if they are full.
-	 * The given anchors are ignored right now because anchoring is not yet supported.
+	 * The output batch is anchored to the given anchors.
 	 */
 	@Override
 	public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
@@ -235,7 +235,7 @@ public class BatchOutputCollector extends OutputCollector {
 	
 	/**
 	 * The tuple is not emitted directly, but is added to an output batch. Output batches are emitted if they are full.
-	 * The given anchors are ignored right now because anchoring is not yet supported.
+	 * The output batch is anchored to the given anchors.
 	 */
 	@Override
 	public void emitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
@@ -243,9 +243,16 @@ public class BatchOutputCollector extends OutputCollector {
 		this.batcher.tupleEmitDirect(taskId, streamId, anchors, tuple, null);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If {@code input} is an anchor of a buffered output tuple, the ack is deferred until the output batch is emitted.
+	 */
 	@Override
 	public void ack(Tuple input) {
-		this.collector.ack(input);
+		if(!this.batcher.deferAck(input)) {
+			this.collector.ack(input);
+		}
 	}
 	
 	@Override
@@ -265,4 +272,147 @@ public class BatchOutputCollector extends OutputCollector {
 		this.batcher.flush();
 	}
 	
+	/**
+	 * Emits all incomplete batches from the output buffer, that exceed the maximum buffer time of their output stream.
+	 */
+	public void flushStale() {
+		this.batcher.flushStale();
+	}
+	
+	/**
+	 * Sets the maximum buffer time for all batched output streams.
+	 * 
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 */
+	public void setMaxBufferTime(long maxBufferTime) {
+		this.batcher.setMaxBufferTime(maxBufferTime);
+	}
+	
+	/**
+	 * Sets the maximum buffer time for the given output stream.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 */
+	public void setMaxBufferTime(String streamId, long maxBufferTime) {
+		this.batcher.setMaxBufferTime(streamId, maxBufferTime);
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches of all batched output streams.
+	 * 
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	public void setMaxBatchBytes(int maxBatchBytes) {
+		this.batcher.setMaxBatchBytes(maxBatchBytes);
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches of the given output stream.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	public void setMaxBatchBytes(String streamId, int maxBatchBytes) {
+		this.batcher.setMaxBatchBytes(streamId, maxBatchBytes);
+	}
+	
+	/**
+	 * Enables compression of output batches for all batched output streams.
+	 * 
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 */
+	public void setCompressionThreshold(int threshold) {
+		this.batcher.setCompressionThreshold(threshold);
+	}
+	
+	/**
+	 * Enables compression of the output batches of the given output stream.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 */
+	public void setCompressionThreshold(String streamId, int threshold) {
+		this.batcher.setCompressionThreshold(streamId, threshold);
+	}
+	
+	/**
+	 * Sets the batch size of all output buffers that are only consumed by tasks of this worker, for all batched output
+	 * streams.
+	 * 
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	public void setLocalBatchSize(int localBatchSize) {
+		this.batcher.setLocalBatchSize(localBatchSize);
+	}
+	
+	/**
+	 * Sets the batch size of all output buffers of the given output stream that are only consumed by tasks of this
+	 * worker.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	public void setLocalBatchSize(String streamId, int localBatchSize) {
+		this.batcher.setLocalBatchSize(streamId, localBatchSize);
+	}
+	
+	/**
+	 * Marks the given output stream as control stream. Control tuples are emitted immediately, after all buffered
+	 * batches that share a receiver with the control stream got emitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 */
+	public void addControlStream(String streamId) {
+		this.batcher.addControlStream(streamId);
+	}
+	
+	/**
+	 * Enables serialize-on-append for all batched output streams.
+	 * 
+	 * @param serializeOnAppend
+	 *            {@code true} to enable serialize-on-append; {@code false} to use typed columns
+	 */
+	public void setSerializeOnAppend(boolean serializeOnAppend) {
+		this.batcher.setSerializeOnAppend(serializeOnAppend);
+	}
+	
+	/**
+	 * Sets an {@link AdaptiveBatchSizeController} that adjusts the batch sizes at runtime.
+	 * 
+	 * @param controller
+	 *            The controller to be used ({@code null} disables batch size adaption).
+	 */
+	public void setBatchSizeController(AdaptiveBatchSizeController controller) {
+		this.batcher.setBatchSizeController(controller);
+	}
+	
+	/**
+	 * Enables recycling of output batch columns.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of free columns per column type that are kept for reuse (a non-positive value
+	 *            disables recycling).
+	 */
+	public void setColumnPoolSize(int poolSize) {
+		this.batcher.setColumnPoolSize(poolSize);
+	}
+	
 }
@@ -0,0 +1,292 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.MessageId;
+import backtype.storm.tuple.Tuple;
+
+
+
+
+
+/**
+ * {@link BatchTupleView} is a reusable (flyweight) {@link Tuple} that provides access to a single row of an input batch.
+ * It does not copy any attribute values, but reads them directly from the batch columns. Thus, no object allocation is
+ * required to hand over a single tuple of an input batch to a bolt (except for boxing of primitive column values).
+ * {@link #getValues()} and {@link #select(Fields)} are supported but allocate a new list on each call.<br />
+ * <br />
+ * <strong>CAUTION:</strong> A {@link BatchTupleView} is only valid during a single call to {@code execute(...)}. After
+ * {@code execute(...)} returns, the same object is reset to the next row (or next batch) and batch columns might get
+ * recycled. Thus, a bolt must not retain a {@link BatchTupleView}, ie, store it in a field, buffer it (eg,
+ * {@code TimestampMerger}), or use it as an anchor of buffered output (eg, if {@code InputDebatcher} wraps a
+ * {@code BoltOutputBatcher}). Bolts that retain input tuples must enable copy mode of {@code InputDebatcher}.
+ * 
+ * @author mjsax
+ */
+public class BatchTupleView implements Tuple {
+	private final static MessageId unanchored = MessageId.makeUnanchored();
+	
+	/**
+	 * The received input tuple that contains the current batch.
+	 */
+	private Tuple batchTuple;
+	/**
+	 * The columns of the current batch.
+	 */
+	private BatchColumn[] columns;
+	/**
+	 * The ack-tracking information of the current batch.
+	 */
+	private DebatchedInput batch;
+	/**
+	 * The current row.
+	 */
+	private int row;
+	
+	
+	
+	/**
+	 * Sets a new batch for this view.
+	 * 
+	 * @param currentBatch
+	 *            The ack-tracking information of the batch (holds the received input tuple).
+	 * @param batchColumns
+	 *            The columns of the batch.
+	 */
+	public void setBatch(DebatchedInput currentBatch, BatchColumn[] batchColumns) {
+		this.batch = currentBatch;
+		this.batchTuple = currentBatch.getBatchTuple();
+		this.columns = batchColumns;
+		this.row = 0;
+	}
+	
+	/**
+	 * Moves this view to the given row of the current batch.
+	 * 
+	 * @param index
+	 *            The index of the row.
+	 */
+	public void setRow(int index) {
+		this.row = index;
+	}
+	
+	/**
+	 * Returns the ack-tracking information of the current batch.
+	 * 
+	 * @return the ack-tracking information of the current batch
+	 */
+	DebatchedInput getBatch() {
+		return this.batch;
+	}
+	
+	/**
+	 * Returns the received input tuple that contains the current batch.
+	 * 
+	 * @return the received input tuple that contains the current batch
+	 */
+	public Tuple getBatchTuple() {
+		return this.batchTuple;
+	}
+	
+	@Override
+	public int size() {
+		return this.columns.length;
+	}
+	
+	@Override
+	public int fieldIndex(String field) {
+		return this.getFields().fieldIndex(field);
+	}
+	
+	@Override
+	public boolean contains(String field) {
+		return this.getFields().contains(field);
+	}
+	
+	@Override
+	public Object getValue(int i) {
+		return this.columns[i].get(this.row);
+	}
+	
+	@Override
+	public String getString(int i) {
+		return (String)this.getValue(i);
+	}
+	
+	@Override
+	public Integer getInteger(int i) {
+		return (Integer)this.getValue(i);
+	}
+	
+	@Override
+	public Long getLong(int i) {
+		return (Long)this.getValue(i);
+	}
+	
+	@Override
+	public Boolean getBoolean(int i) {
+		return (Boolean)this.getValue(i);
+	}
+	
+	@Override
+	public Short getShort(int i) {
+		return (Short)this.getValue(i);
+	}
+	
+	@Override
+	public Byte getByte(int i) {
+		return (Byte)this.getValue(i);
+	}
+	
+	@Override
+	public Double getDouble(int i) {
+		return (Double)this.getValue(i);
+	}
+	
+	@Override
+	public Float getFloat(int i) {
+		return (Float)this.getValue(i);
+	}
+	
+	@Override
+	public byte[] getBinary(int i) {
+		return (byte[])this.getValue(i);
+	}
+	
+	@Override
+	public Object getValueByField(String field) {
+		return this.getValue(this.fieldIndex(field));
+	}
+	
+	@Override
+	public String getStringByField(String field) {
+		return (String)this.getValueByField(field);
+	}
+	
+	@Override
+	public Integer getIntegerByField(String field) {
+		return (Integer)this.getValueByField(field);
+	}
+	
+	@Override
+	public Long getLongByField(String field) {
+		return (Long)this.getValueByField(field);
+	}
+	
+	@Override
+	public Boolean getBooleanByField(String field) {
+		return (Boolean)this.getValueByField(field);
+	}
+	
+	@Override
+	public Short getShortByField(String field) {
+		return (Short)this.getValueByField(field);
+	}
+	
+	@Override
+	public Byte getByteByField(String field) {
+		return (Byte)this.getValueByField(field);
+	}
+	
+	@Override
+	public Double getDoubleByField(String field) {
+		return (Double)this.getValueByField(field);
+	}
+	
+	@Override
+	public Float getFloatByField(String field) {
+		return (Float)this.getValueByField(field);
+	}
+	
+	@Override
+	public byte[] getBinaryByField(String field) {
+		return (byte[])this.getValueByField(field);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The returned list is a copy of the current row.
+	 */
+	@Override
+	public List<Object> getValues() {
+		final ArrayList<Object> values = new ArrayList<Object>(this.columns.length);
+		for(int i = 0; i < this.columns.length; ++i) {
+			values.add(this.columns[i].get(this.row));
+		}
+		return values;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The schema is the same as the schema of the received input batch.
+	 */
+	@Override
+	public Fields getFields() {
+		return this.batchTuple.getFields();
+	}
+	
+	@Override
+	public List<Object> select(Fields selector) {
+		return this.getFields().select(selector, this.getValues());
+	}
+	
+	@Override
+	public GlobalStreamId getSourceGlobalStreamid() {
+		return this.batchTuple.getSourceGlobalStreamid();
+	}
+	
+	@Override
+	public String getSourceComponent() {
+		return this.batchTuple.getSourceComponent();
+	}
+	
+	@Override
+	public int getSourceTask() {
+		return this.batchTuple.getSourceTask();
+	}
+	
+	@Override
+	public String getSourceStreamId() {
+		return this.batchTuple.getSourceStreamId();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * A {@link BatchTupleView} is always unanchored. Anchoring to it is redirected to the received input batch by
+	 * {@link DebatchingOutputCollector}.
+	 */
+	@Override
+	public MessageId getMessageId() {
+		return unanchored;
+	}
+	
+	@Override
+	public String toString() {
+		return "row " + this.row + ": " + this.getValues();
+	}
+	
+}
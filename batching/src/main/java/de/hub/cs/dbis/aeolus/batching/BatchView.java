@@ -0,0 +1,151 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+
+
+
+
+
+/**
+ * {@link BatchView} provides columnar access to a received input batch. It is handed over to an {@code IBatchBolt} by
+ * {@code InputDebatcher}. A {@link BatchView} is reused for all input batches; thus, it is only valid during a single
+ * call to {@code executeBatch(...)} and must not be retained. The same holds for its columns, that might get recycled
+ * after {@code executeBatch(...)} returns.
+ * 
+ * @author mjsax
+ */
+public class BatchView {
+	/**
+	 * The received input tuple that contains the batch.
+	 */
+	private Tuple batchTuple;
+	/**
+	 * The columns of the batch.
+	 */
+	private BatchColumn[] columns;
+	
+	
+	
+	/**
+	 * Sets a new batch for this view.
+	 * 
+	 * @param input
+	 *            The received input tuple that contains the batch.
+	 * @param batchColumns
+	 *            The columns of the batch.
+	 */
+	public void setBatch(Tuple input, BatchColumn[] batchColumns) {
+		assert (batchColumns.length > 0);
+		this.batchTuple = input;
+		this.columns = batchColumns;
+	}
+	
+	/**
+	 * Returns the received input tuple that contains the batch. The input tuple must be used to ack or fail the whole
+	 * batch, or as anchor for output tuples.
+	 * 
+	 * @return the received input tuple that contains the batch
+	 */
+	public Tuple getInput() {
+		return this.batchTuple;
+	}
+	
+	/**
+	 * Returns the number of tuples (ie, rows) of the batch.
+	 * 
+	 * @return the number of tuples of the batch
+	 */
+	public int size() {
+		return this.columns[0].size();
+	}
+	
+	/**
+	 * Returns the number of attributes (ie, columns) of the batch.
+	 * 
+	 * @return the number of attributes of the batch
+	 */
+	public int getNumberOfAttributes() {
+		return this.columns.length;
+	}
+	
+	/**
+	 * Returns the column with the given index. Typed columns (eg, {@link LongBatchColumn}) provide access to primitive
+	 * values without boxing.
+	 * 
+	 * @param index
+	 *            The index of the column.
+	 * 
+	 * @return the column with the given index
+	 */
+	public BatchColumn getColumn(int index) {
+		return this.columns[index];
+	}
+	
+	/**
+	 * Returns the column of the given attribute.
+	 * 
+	 * @param field
+	 *            The name of the attribute.
+	 * 
+	 * @return the column of the given attribute
+	 */
+	public BatchColumn getColumn(String field) {
+		return this.columns[this.getFields().fieldIndex(field)];
+	}
+	
+	/**
+	 * Returns the schema of the batch.
+	 * 
+	 * @return the schema of the batch
+	 */
+	public Fields getFields() {
+		return this.batchTuple.getFields();
+	}
+	
+	/**
+	 * Returns the ID of the component that emitted the batch.
+	 * 
+	 * @return the ID of the component that emitted the batch
+	 */
+	public String getSourceComponent() {
+		return this.batchTuple.getSourceComponent();
+	}
+	
+	/**
+	 * Returns the ID of the task that emitted the batch.
+	 * 
+	 * @return the ID of the task that emitted the batch
+	 */
+	public int getSourceTask() {
+		return this.batchTuple.getSourceTask();
+	}
+	
+	/**
+	 * Returns the ID of the stream the batch was emitted to.
+	 * 
+	 * @return the ID of the stream the batch was emitted to
+	 */
+	public String getSourceStreamId() {
+		return this.batchTuple.getSourceStreamId();
+	}
+	
+}
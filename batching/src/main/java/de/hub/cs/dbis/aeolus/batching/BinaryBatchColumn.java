@@ -0,0 +1,134 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link BinaryBatchColumn} is a {@link BatchColumn} that stores {@code byte[]} attributes. The byte arrays are written without any class information.
+ * 
+ * @author mjsax
+ */
+public final class BinaryBatchColumn extends BatchColumn {
+	private final static long serialVersionUID = 3113800820142183085L;
+	
+	/**
+	 * The stored attribute values.
+	 */
+	private byte[][] values;
+	
+	
+	
+	/**
+	 * Instantiates a {@link BinaryBatchColumn} with size {@code batchSize} (must be larger than zero).
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link BinaryBatchColumn}.
+	 */
+	public BinaryBatchColumn(int batchSize) {
+		super(batchSize);
+		this.values = new byte[batchSize][];
+	}
+	
+	
+	
+	/**
+	 * Returns {@code true} if {@code value} is of type {@code byte[]} or {@code null}.
+	 */
+	@Override
+	public boolean accepts(Object value) {
+		return value == null || value instanceof byte[];
+	}
+	
+	/**
+	 * Returns the length of {@code value} plus one (ie, the size of a packed value, assuming a short array).
+	 */
+	@Override
+	int estimateSize(Object value) {
+		return value == null ? 1 : ((byte[])value).length + 1;
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		if(this.size == this.values.length) {
+			this.capacity = 2 * this.capacity;
+			this.values = Arrays.copyOf(this.values, this.capacity);
+		}
+		this.values[this.size++] = (byte[])value;
+		++this.modCount;
+		return true;
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		return this.values[index];
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		this.checkIndex(index);
+		final byte[] old = this.values[index];
+		this.values[index] = (byte[])value;
+		return old;
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	@Override
+	void writeValues(Kryo kryo, Output output) {
+		for(int i = 0; i < this.size; ++i) {
+			final byte[] value = this.values[i];
+			if(value == null) {
+				output.writeInt(0, true);
+			} else {
+				output.writeInt(value.length + 1, true);
+				output.writeBytes(value);
+			}
+		}
+	}
+	
+	@Override
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		assert (this.size == 0 && this.values.length >= numberOfValues);
+		for(int i = 0; i < numberOfValues; ++i) {
+			final int length = input.readInt(true);
+			if(length == 0) {
+				this.values[i] = null;
+			} else {
+				this.values[i] = input.readBytes(length - 1);
+			}
+		}
+		this.size = numberOfValues;
+	}
+	
+}
@@ -0,0 +1,97 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import backtype.storm.tuple.Tuple;
+
+
+
+
+
+/**
+ * {@link DebatchedInput} keeps track of the tuples that got extracted from an input batch by an {@code InputDebatcher}.
+ * The input batch is acked after all extracted tuples got acked, and it is failed as soon as the first extracted tuple
+ * fails.
+ * 
+ * @author mjsax
+ */
+public class DebatchedInput {
+	/**
+	 * The received input tuple that contains the batch.
+	 */
+	private final Tuple batchTuple;
+	/**
+	 * The number of extracted tuples that were neither acked nor failed yet.
+	 */
+	private int pendingTuples;
+	/**
+	 * Is set to {@code true}, if any extracted tuple failed.
+	 */
+	private boolean failed = false;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link DebatchedInput} for the given batch.
+	 * 
+	 * @param batchTuple
+	 *            The received input tuple that contains the batch.
+	 * @param numberOfTuples
+	 *            The number of tuples that are extracted from the batch.
+	 */
+	public DebatchedInput(Tuple batchTuple, int numberOfTuples) {
+		this.batchTuple = batchTuple;
+		this.pendingTuples = numberOfTuples;
+	}
+	
+	
+	
+	/**
+	 * Returns the received input tuple that contains the batch.
+	 * 
+	 * @return the received input tuple that contains the batch
+	 */
+	Tuple getBatchTuple() {
+		return this.batchTuple;
+	}
+	
+	/**
+	 * Is called if an extracted tuple is acked.
+	 * 
+	 * @return {@code true} if the input batch must be acked; {@code false} otherwise
+	 */
+	boolean ack() {
+		return --this.pendingTuples == 0 && !this.failed;
+	}
+	
+	/**
+	 * Is called if an extracted tuple failed.
+	 * 
+	 * @return {@code true} if the input batch must be failed; {@code false} otherwise
+	 */
+	boolean fail() {
+		--this.pendingTuples;
+		if(!this.failed) {
+			this.failed = true;
+			return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,81 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.List;
+
+import backtype.storm.task.GeneralTopologyContext;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.TupleImpl;
+
+
+
+
+
+/**
+ * {@link DebatchedTuple} is a tuple that got extracted (ie, copied) from an input batch by an {@code InputDebatcher} in
+ * copy mode. In contrast to a {@link BatchTupleView}, it can be retained by the receiving bolt. Acking, failing, and
+ * anchoring of a {@link DebatchedTuple} is redirected to the input batch by {@link DebatchingOutputCollector}.
+ * 
+ * @author mjsax
+ */
+public class DebatchedTuple extends TupleImpl {
+	/**
+	 * The input batch this tuple got extracted from.
+	 */
+	private final DebatchedInput batch;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link DebatchedTuple}.
+	 * 
+	 * @param context
+	 *            The current runtime environment.
+	 * @param values
+	 *            The attribute values of the tuple.
+	 * @param batch
+	 *            The input batch the tuple got extracted from.
+	 */
+	public DebatchedTuple(GeneralTopologyContext context, List<Object> values, DebatchedInput batch) {
+		super(context, values, batch.getBatchTuple().getSourceTask(), batch.getBatchTuple().getSourceStreamId());
+		this.batch = batch;
+	}
+	
+	
+	
+	/**
+	 * Returns the input batch this tuple got extracted from.
+	 * 
+	 * @return the input batch this tuple got extracted from
+	 */
+	DebatchedInput getBatch() {
+		return this.batch;
+	}
+	
+	/**
+	 * Returns the received input tuple that contains the batch this tuple got extracted from.
+	 * 
+	 * @return the received input tuple that contains the batch this tuple got extracted from
+	 */
+	public Tuple getBatchTuple() {
+		return this.batch.getBatchTuple();
+	}
+	
+}
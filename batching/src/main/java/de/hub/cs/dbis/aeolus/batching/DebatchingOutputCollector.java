@@ -0,0 +1,172 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import backtype.storm.task.IOutputCollector;
+import backtype.storm.tuple.Tuple;
+
+
+
+
+
+/**
+ * {@link DebatchingOutputCollector} is used by {@code InputDebatcher} to wrap the original provided
+ * {@link IOutputCollector}. It enables acking, failing, and anchoring of tuples that got extracted from an input batch
+ * (see {@link BatchTupleView} and {@link DebatchedTuple}):
+ * <ul>
+ * <li>the input batch is acked after all its extracted tuples got acked,</li>
+ * <li>the input batch is failed (once) if any extracted tuple fails, and</li>
+ * <li>output tuples that are anchored to extracted tuples get anchored to the corresponding input batches.</li>
+ * </ul>
+ * Regular input tuples are handled as usual.
+ * 
+ * @author mjsax
+ */
+public class DebatchingOutputCollector implements IOutputCollector {
+	/**
+	 * The originally provided collector object.
+	 */
+	private final IOutputCollector collector;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link DebatchingOutputCollector} that wraps the given collector.
+	 * 
+	 * @param collector
+	 *            The original collector object.
+	 */
+	public DebatchingOutputCollector(IOutputCollector collector) {
+		this.collector = collector;
+	}
+	
+	
+	
+	/**
+	 * Returns the input batch the given tuple got extracted from.
+	 * 
+	 * @param input
+	 *            An input tuple of the wrapped bolt.
+	 * 
+	 * @return the input batch of {@code input}, or {@code null} if {@code input} is a regular input tuple
+	 */
+	private static DebatchedInput getBatch(Tuple input) {
+		if(input instanceof BatchTupleView) {
+			return ((BatchTupleView)input).getBatch();
+		}
+		if(input instanceof DebatchedTuple) {
+			return ((DebatchedTuple)input).getBatch();
+		}
+		return null;
+	}
+	
+	/**
+	 * Replaces all extracted tuples by their input batches. Each input batch is contained only once in the result.
+	 * 
+	 * @param anchors
+	 *            The anchors of an output tuple (can be {@code null}).
+	 * 
+	 * @return the anchors of the output tuple with regard to the received input tuples
+	 */
+	Collection<Tuple> mapAnchors(Collection<Tuple> anchors) {
+		if(anchors == null) {
+			return null;
+		}
+		
+		boolean debatched = false;
+		for(Tuple anchor : anchors) {
+			if(anchor instanceof DebatchedTuple || anchor instanceof BatchTupleView) {
+				debatched = true;
+				break;
+			}
+		}
+		if(!debatched) {
+			return anchors;
+		}
+		
+		// the number of distinct input batches is usually small -> linear search is cheap
+		final List<Tuple> inputAnchors = new ArrayList<Tuple>();
+		for(Tuple anchor : anchors) {
+			if(anchor instanceof DebatchedTuple) {
+				anchor = ((DebatchedTuple)anchor).getBatchTuple();
+			} else if(anchor instanceof BatchTupleView) {
+				anchor = ((BatchTupleView)anchor).getBatchTuple();
+			}
+			if(!inputAnchors.contains(anchor)) {
+				inputAnchors.add(anchor);
+			}
+		}
+		return inputAnchors;
+	}
+	
+	@Override
+	public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+		return this.collector.emit(streamId, this.mapAnchors(anchors), tuple);
+	}
+	
+	@Override
+	public void emitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+		this.collector.emitDirect(taskId, streamId, this.mapAnchors(anchors), tuple);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If {@code input} got extracted from an input batch, the input batch is acked after all its extracted tuples got
+	 * acked.
+	 */
+	@Override
+	public void ack(Tuple input) {
+		final DebatchedInput batch = getBatch(input);
+		if(batch != null) {
+			if(batch.ack()) {
+				this.collector.ack(batch.getBatchTuple());
+			}
+		} else {
+			this.collector.ack(input);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If {@code input} got extracted from an input batch, the input batch is failed (if it did not fail already).
+	 */
+	@Override
+	public void fail(Tuple input) {
+		final DebatchedInput batch = getBatch(input);
+		if(batch != null) {
+			if(batch.fail()) {
+				this.collector.fail(batch.getBatchTuple());
+			}
+		} else {
+			this.collector.fail(input);
+		}
+	}
+	
+	@Override
+	public void reportError(Throwable error) {
+		this.collector.reportError(error);
+	}
+	
+}
@@ -0,0 +1,92 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.grouping.CustomStreamGrouping;
+import backtype.storm.task.WorkerTopologyContext;
+
+
+
+
+
+/**
+ * {@link DirectEmitGrouping} chooses the receiver tasks of a tuple for shuffle-, local-or-shuffle-, none-, and
+ * all-grouping receivers, if the output batches are emitted via a direct stream (ie, if fields-grouping is emulated by
+ * {@link AbstractBatchCollector}). Shuffle-, local-or-shuffle-, and none-grouping are emulated by assigning tuples to
+ * the receiver tasks in a round-robin fashion.
+ * 
+ * @author mjsax
+ */
+class DirectEmitGrouping implements CustomStreamGrouping {
+	private static final long serialVersionUID = 3204937581265466447L;
+	
+	/**
+	 * If {@code true}, each tuple is sent to all receiver tasks (all-grouping).
+	 */
+	private final boolean allTasks;
+	/**
+	 * A singleton list for each receiver task (or a single list containing all receiver tasks).
+	 */
+	private List<List<Integer>> choices;
+	/**
+	 * The index of the receiver task of the next tuple.
+	 */
+	private int next = 0;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link DirectEmitGrouping}.
+	 * 
+	 * @param allTasks
+	 *            {@code true} for all-grouping; {@code false} for round-robin.
+	 */
+	DirectEmitGrouping(boolean allTasks) {
+		this.allTasks = allTasks;
+	}
+	
+	
+	
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		this.choices = new ArrayList<List<Integer>>();
+		if(this.allTasks) {
+			this.choices.add(Collections.unmodifiableList(new ArrayList<Integer>(targetTasks)));
+		} else {
+			for(Integer taskId : targetTasks) {
+				this.choices.add(Collections.singletonList(taskId));
+			}
+		}
+	}
+	
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		final List<Integer> tasks = this.choices.get(this.next);
+		if(++this.next == this.choices.size()) {
+			this.next = 0;
+		}
+		return tasks;
+	}
+	
+}
@@ -0,0 +1,145 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link DoubleBatchColumn} is a {@link BatchColumn} that stores {@link Double} attributes as an unboxed {@code double} array.
+ * 
+ * @author mjsax
+ */
+public final class DoubleBatchColumn extends BatchColumn {
+	private final static long serialVersionUID = -7188541571915962892L;
+	
+	/**
+	 * The stored attribute values.
+	 */
+	private double[] values;
+	
+	
+	
+	/**
+	 * Instantiates a {@link DoubleBatchColumn} with size {@code batchSize} (must be larger than zero).
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link DoubleBatchColumn}.
+	 */
+	public DoubleBatchColumn(int batchSize) {
+		super(batchSize);
+		this.values = new double[batchSize];
+	}
+	
+	
+	
+	/**
+	 * Returns {@code true} if {@code value} is of type {@link Double}.
+	 */
+	@Override
+	public boolean accepts(Object value) {
+		return value instanceof Double;
+	}
+	
+	/**
+	 * Returns 8 (ie, the size of a packed value).
+	 */
+	@Override
+	int estimateSize(Object value) {
+		return 8;
+	}
+	
+	/**
+	 * Appends a primitive {@code double} value to this column.
+	 * 
+	 * @param value
+	 *            The value to be appended.
+	 */
+	public void addDouble(double value) {
+		if(this.size == this.values.length) {
+			this.capacity = 2 * this.capacity;
+			this.values = Arrays.copyOf(this.values, this.capacity);
+		}
+		this.values[this.size++] = value;
+		++this.modCount;
+	}
+	
+	/**
+	 * Returns the primitive {@code double} value at position {@code index}.
+	 * 
+	 * @param index
+	 *            The index of the requested value.
+	 * 
+	 * @return the value at position {@code index}
+	 */
+	public double getDouble(int index) {
+		this.checkIndex(index);
+		return this.values[index];
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		this.addDouble(((Double)value).doubleValue());
+		return true;
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		return Double.valueOf(this.values[index]);
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		this.checkIndex(index);
+		final Double old = Double.valueOf(this.values[index]);
+		this.values[index] = ((Double)value).doubleValue();
+		return old;
+	}
+	
+	@Override
+	public void clear() {
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	@Override
+	void writeValues(Kryo kryo, Output output) {
+		for(int i = 0; i < this.size; ++i) {
+			output.writeDouble(this.values[i]);
+		}
+	}
+	
+	@Override
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		assert (this.size == 0 && this.values.length >= numberOfValues);
+		for(int i = 0; i < numberOfValues; ++i) {
+			this.values[i] = input.readDouble();
+		}
+		this.size = numberOfValues;
+	}
+	
+}
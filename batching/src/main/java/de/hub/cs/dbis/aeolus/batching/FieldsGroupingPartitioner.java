@@ -0,0 +1,156 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.grouping.CustomStreamGrouping;
+import backtype.storm.task.WorkerTopologyContext;
+import backtype.storm.tuple.Fields;
+
+
+
+
+
+/**
+ * {@link FieldsGroupingPartitioner} computes the receiver task of a tuple for a single fields-grouped (or
+ * global-grouped) receiver. It uses the same partitioning as Storm's fields-grouping: the hash code of the list of
+ * selected field values modulo the number of receiver tasks is used as index into the sorted list of receiver task
+ * IDs. Global-grouping (ie, fields-grouping with an empty field list) always selects the receiver task with the
+ * smallest ID.
+ * 
+ * All required information is precomputed, such that computing the receiver task of a tuple does not allocate any
+ * objects. {@link FieldsGroupingPartitioner} is prepared by its constructor; thus,
+ * {@link #prepare(WorkerTopologyContext, GlobalStreamId, List)} does nothing.
+ * 
+ * @author mjsax
+ */
+class FieldsGroupingPartitioner implements CustomStreamGrouping {
+	private static final long serialVersionUID = -2594434817693458342L;
+	
+	/**
+	 * The indexes of the grouping fields within the output schema.
+	 */
+	private final int[] fieldIndexes;
+	/**
+	 * The sorted IDs of all receiver tasks.
+	 */
+	private final Integer[] taskIds;
+	/**
+	 * A singleton list for each receiver task (same order as {@link #taskIds}).
+	 */
+	private final List<List<Integer>> choices;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link FieldsGroupingPartitioner}.
+	 * 
+	 * @param outputSchema
+	 *            The output schema of the producer.
+	 * @param groupingFields
+	 *            The grouping fields of the receiver.
+	 * @param receiverTaskIds
+	 *            The IDs of all receiver tasks.
+	 */
+	FieldsGroupingPartitioner(Fields outputSchema, List<String> groupingFields, List<Integer> receiverTaskIds) {
+		assert (receiverTaskIds.size() > 0);
+		
+		this.fieldIndexes = new int[groupingFields.size()];
+		for(int i = 0; i < this.fieldIndexes.length; ++i) {
+			this.fieldIndexes[i] = outputSchema.fieldIndex(groupingFields.get(i));
+		}
+		
+		final List<Integer> sortedTaskIds = new ArrayList<Integer>(receiverTaskIds);
+		Collections.sort(sortedTaskIds);
+		this.taskIds = sortedTaskIds.toArray(new Integer[sortedTaskIds.size()]);
+		
+		this.choices = new ArrayList<List<Integer>>(this.taskIds.length);
+		for(Integer taskId : this.taskIds) {
+			this.choices.add(Collections.singletonList(taskId));
+		}
+	}
+	
+	
+	
+	/**
+	 * Checks if the given partitioner partitions tuples the same way as this partitioner, ie, if both use the same
+	 * grouping fields and the same number of receiver tasks.
+	 * 
+	 * @param other
+	 *            The partitioner to compare with.
+	 * 
+	 * @return {@code true} if both partitioners compute the same task index for any tuple; {@code false} otherwise
+	 */
+	boolean isEquivalent(FieldsGroupingPartitioner other) {
+		return this.taskIds.length == other.taskIds.length && Arrays.equals(this.fieldIndexes, other.fieldIndexes);
+	}
+	
+	/**
+	 * Returns the index of the receiver task for the given tuple.
+	 * 
+	 * @param tuple
+	 *            The output tuple.
+	 * 
+	 * @return the index of the receiver task (within the sorted list of receiver task IDs)
+	 */
+	int getTaskIndex(List<Object> tuple) {
+		if(this.fieldIndexes.length == 0) { // global-grouping
+			return 0;
+		}
+		
+		// same as tuple.select(...).hashCode() (see java.util.List#hashCode())
+		int hashCode = 1;
+		for(int i = 0; i < this.fieldIndexes.length; ++i) {
+			final Object value = tuple.get(this.fieldIndexes[i]);
+			hashCode = 31 * hashCode + (value == null ? 0 : value.hashCode());
+		}
+		
+		// Clojure's mod returns non-negative values for a positive divisor
+		final int index = hashCode % this.taskIds.length;
+		return index < 0 ? index + this.taskIds.length : index;
+	}
+	
+	/**
+	 * Returns the ID of the receiver task for the given tuple.
+	 * 
+	 * @param tuple
+	 *            The output tuple.
+	 * 
+	 * @return the ID of the receiver task
+	 */
+	Integer getTaskId(List<Object> tuple) {
+		return this.taskIds[this.getTaskIndex(tuple)];
+	}
+	
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		// nothing to do
+	}
+	
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		return this.choices.get(this.getTaskIndex(values));
+	}
+	
+}
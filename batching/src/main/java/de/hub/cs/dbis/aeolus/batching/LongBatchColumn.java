@@ -0,0 +1,201 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link LongBatchColumn} is a {@link BatchColumn} that stores {@link Long} attributes as an unboxed {@code long} array.
+ * 
+ * @author mjsax
+ */
+public final class LongBatchColumn extends BatchColumn {
+	private final static long serialVersionUID = -2839783886783336020L;
+	
+	/**
+	 * The stored attribute values.
+	 */
+	private long[] values;
+	
+	
+	
+	/**
+	 * Instantiates a {@link LongBatchColumn} with size {@code batchSize} (must be larger than zero).
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link LongBatchColumn}.
+	 */
+	public LongBatchColumn(int batchSize) {
+		super(batchSize);
+		this.values = new long[batchSize];
+	}
+	
+	
+	
+	/**
+	 * Returns {@code true} if {@code value} is of type {@link Long}.
+	 */
+	@Override
+	public boolean accepts(Object value) {
+		return value instanceof Long;
+	}
+	
+	/**
+	 * Returns 8 (ie, the size of a packed value).
+	 */
+	@Override
+	int estimateSize(Object value) {
+		return 8;
+	}
+	
+	/**
+	 * Appends a primitive {@code long} value to this column.
+	 * 
+	 * @param value
+	 *            The value to be appended.
+	 */
+	public void addLong(long value) {
+		if(this.size == this.values.length) {
+			this.capacity = 2 * this.capacity;
+			this.values = Arrays.copyOf(this.values, this.capacity);
+		}
+		this.values[this.size++] = value;
+		++this.modCount;
+	}
+	
+	/**
+	 * Returns the primitive {@code long} value at position {@code index}.
+	 * 
+	 * @param index
+	 *            The index of the requested value.
+	 * 
+	 * @return the value at position {@code index}
+	 */
+	public long getLong(int index) {
+		this.checkIndex(index);
+		return this.values[index];
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		this.addLong(((Long)value).longValue());
+		return true;
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		return Long.valueOf(this.values[index]);
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		this.checkIndex(index);
+		final Long old = Long.valueOf(this.values[index]);
+		this.values[index] = ((Long)value).longValue();
+		return old;
+	}
+	
+	@Override
+	public void clear() {
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	/**
+	 * Returns {@code true} if all values are sorted in non-decreasing order (as it is usually the case for timestamps)
+	 * and all differences of consecutive values are non-negative {@code long} values.
+	 */
+	private boolean isNonDecreasing() {
+		for(int i = 1; i < this.size; ++i) {
+			if(this.values[i] < this.values[i - 1] || this.values[i] - this.values[i - 1] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	void writeValues(Kryo kryo, Output output) {
+		int runs = this.size > 0 ? 1 : 0;
+		for(int i = 1; i < this.size; ++i) {
+			if(this.values[i] != this.values[i - 1]) {
+				++runs;
+			}
+		}
+		
+		if(2 * runs <= this.size) {
+			output.writeByte(RUN_LENGTH_ENCODING);
+			int start = 0;
+			for(int i = 1; i <= this.size; ++i) {
+				if(i == this.size || this.values[i] != this.values[start]) {
+					output.writeLong(this.values[start]);
+					output.writeInt(i - start, true);
+					start = i;
+				}
+			}
+		} else if(this.isNonDecreasing()) {
+			output.writeByte(DELTA_ENCODING);
+			output.writeLong(this.values[0]);
+			for(int i = 1; i < this.size; ++i) {
+				output.writeLong(this.values[i] - this.values[i - 1], true);
+			}
+		} else {
+			output.writeByte(PLAIN_ENCODING);
+			for(int i = 0; i < this.size; ++i) {
+				output.writeLong(this.values[i]);
+			}
+		}
+	}
+	
+	@Override
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		assert (this.size == 0 && this.values.length >= numberOfValues);
+		switch(input.readByte()) {
+		case RUN_LENGTH_ENCODING:
+			for(int i = 0; i < numberOfValues;) {
+				final long value = input.readLong();
+				final int runLength = input.readInt(true);
+				Arrays.fill(this.values, i, i + runLength, value);
+				i += runLength;
+			}
+			break;
+		case DELTA_ENCODING:
+			this.values[0] = input.readLong();
+			for(int i = 1; i < numberOfValues; ++i) {
+				this.values[i] = this.values[i - 1] + input.readLong(true);
+			}
+			break;
+		default:
+			for(int i = 0; i < numberOfValues; ++i) {
+				this.values[i] = input.readLong();
+			}
+		}
+		this.size = numberOfValues;
+	}
+	
+}
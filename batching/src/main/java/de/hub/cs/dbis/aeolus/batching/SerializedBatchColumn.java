@@ -0,0 +1,483 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link SerializedBatchColumn} is a {@link BatchColumn} that serializes each value when it is appended. The values
+ * are written into a growable {@link ByteBuffer} in the same format that is used by {@link BatchColumnSerializer};
+ * thus, serializing the column only copies bytes and the stored values do not form an object graph that must be
+ * traversed by the garbage collector. Values are decoded lazily, each time they are accessed via {@link #get(int)}.
+ * 
+ * Only columns that are taken from a {@link BatchColumnPool} use a direct {@link ByteBuffer} (ie, off-heap). Direct
+ * buffers are expensive to allocate and are only freed after the owning column got garbage collected; thus,
+ * allocating a new direct buffer for each batch could exhaust the direct memory. All other columns use a heap buffer.
+ * 
+ * {@link SerializedBatchColumn} accepts {@link Long}, {@link Integer}, {@link Short}, {@link Double}, {@link String},
+ * {@code byte[]}, and {@code null} values. Because values have variable length, {@link #set(int, Object)} is not
+ * supported.
+ * 
+ * @author mjsax
+ */
+public final class SerializedBatchColumn extends BatchColumn {
+	private final static long serialVersionUID = -6120187520925325463L;
+	
+	private final static byte NULL = 0;
+	private final static byte LONG = 1;
+	private final static byte INT = 2;
+	private final static byte SHORT = 3;
+	private final static byte DOUBLE = 4;
+	private final static byte ASCII_STRING = 5;
+	private final static byte STRING = 6;
+	private final static byte BINARY = 7;
+	
+	/**
+	 * The initial number of bytes that are allocated per value.
+	 */
+	private final static int INITIAL_BYTES_PER_VALUE = 16;
+	
+	/**
+	 * The key of the copy buffer for direct buffers within the context of a {@link Kryo} instance (see
+	 * {@link Kryo#getContext()}).
+	 */
+	private final static String COPY_BUFFER_KEY = "aeolus::serialized-column-copy-buffer";
+	
+	/**
+	 * The size of the copy buffer for direct buffers.
+	 */
+	private final static int COPY_BUFFER_SIZE = 4096;
+	
+	/**
+	 * The serialized values (allocated on first insert). Only absolute get and put methods are used; thus, concurrent
+	 * readers do not interfere.
+	 */
+	private transient ByteBuffer buffer;
+	/**
+	 * The number of used bytes of {@link #buffer}.
+	 */
+	private int numberOfBytes = 0;
+	/**
+	 * The offset of each value within {@link #buffer}.
+	 */
+	private int[] offsets;
+	/**
+	 * If {@code true}, {@link #buffer} is allocated off-heap.
+	 */
+	private final boolean direct;
+	
+	
+	
+	/**
+	 * Instantiates a {@link SerializedBatchColumn} with size {@code batchSize} (must be larger than zero) that uses a
+	 * heap buffer.
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link SerializedBatchColumn}.
+	 */
+	public SerializedBatchColumn(int batchSize) {
+		this(batchSize, false);
+	}
+	
+	/**
+	 * Instantiates a {@link SerializedBatchColumn} with size {@code batchSize} (must be larger than zero) that uses a
+	 * heap or direct buffer. A direct buffer should only be used, if the column is recycled (see
+	 * {@link BatchColumnPool}).
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link SerializedBatchColumn}.
+	 * @param direct
+	 *            {@code true} to use a direct (ie, off-heap) buffer; {@code false} to use a heap buffer.
+	 */
+	SerializedBatchColumn(int batchSize, boolean direct) {
+		super(batchSize);
+		this.offsets = new int[batchSize];
+		this.direct = direct;
+	}
+	
+	
+	
+	/**
+	 * Returns {@code true} if {@code value} is {@code null} or of type {@link Long}, {@link Integer}, {@link Short},
+	 * {@link Double}, {@link String}, or {@code byte[]}.
+	 */
+	@Override
+	public boolean accepts(Object value) {
+		return value == null || value instanceof Long || value instanceof Integer || value instanceof Short
+			|| value instanceof Double || value instanceof String || value instanceof byte[];
+	}
+	
+	/**
+	 * Returns the number of bytes {@code value} requires within the buffer of this column (assuming an ASCII string).
+	 */
+	@Override
+	int estimateSize(Object value) {
+		if(value instanceof Long || value instanceof Double) {
+			return 9;
+		}
+		if(value instanceof Integer) {
+			return 5;
+		}
+		if(value instanceof Short) {
+			return 3;
+		}
+		if(value instanceof String) {
+			return 5 + ((String)value).length();
+		}
+		if(value instanceof byte[]) {
+			return 5 + ((byte[])value).length;
+		}
+		return 1;
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		if(this.size == this.offsets.length) {
+			this.capacity = 2 * this.capacity;
+			this.offsets = Arrays.copyOf(this.offsets, this.capacity);
+		}
+		
+		int position = this.numberOfBytes;
+		this.offsets[this.size] = position;
+		
+		if(value == null) {
+			this.ensureCapacity(1);
+			this.buffer.put(position, NULL);
+			++position;
+		} else if(value instanceof Long) {
+			this.ensureCapacity(9);
+			this.buffer.put(position, LONG);
+			this.buffer.putLong(position + 1, ((Long)value).longValue());
+			position += 9;
+		} else if(value instanceof Integer) {
+			this.ensureCapacity(5);
+			this.buffer.put(position, INT);
+			this.buffer.putInt(position + 1, ((Integer)value).intValue());
+			position += 5;
+		} else if(value instanceof Short) {
+			this.ensureCapacity(3);
+			this.buffer.put(position, SHORT);
+			this.buffer.putShort(position + 1, ((Short)value).shortValue());
+			position += 3;
+		} else if(value instanceof Double) {
+			this.ensureCapacity(9);
+			this.buffer.put(position, DOUBLE);
+			this.buffer.putDouble(position + 1, ((Double)value).doubleValue());
+			position += 9;
+		} else if(value instanceof String) {
+			position = this.putString(position, (String)value);
+		} else {
+			final byte[] bytes = (byte[])value;
+			this.ensureCapacity(5 + bytes.length);
+			this.buffer.put(position, BINARY);
+			this.buffer.putInt(position + 1, bytes.length);
+			position += 5;
+			for(int i = 0; i < bytes.length; ++i) {
+				this.buffer.put(position++, bytes[i]);
+			}
+		}
+		
+		this.numberOfBytes = position;
+		++this.size;
+		++this.modCount;
+		return true;
+	}
+	
+	/**
+	 * Writes the given string at the given position. Strings that only contain ASCII characters are written with one
+	 * byte per character; all other strings are written with two bytes per character.
+	 * 
+	 * @param position
+	 *            The position the string is written to.
+	 * @param value
+	 *            The string to be written.
+	 * 
+	 * @return the position after the written string
+	 */
+	private int putString(int position, String value) {
+		final int length = value.length();
+		
+		boolean ascii = true;
+		for(int i = 0; i < length; ++i) {
+			if(value.charAt(i) > 127) {
+				ascii = false;
+				break;
+			}
+		}
+		
+		if(ascii) {
+			this.ensureCapacity(5 + length);
+			this.buffer.put(position, ASCII_STRING);
+			this.buffer.putInt(position + 1, length);
+			position += 5;
+			for(int i = 0; i < length; ++i) {
+				this.buffer.put(position++, (byte)value.charAt(i));
+			}
+		} else {
+			this.ensureCapacity(5 + 2 * length);
+			this.buffer.put(position, STRING);
+			this.buffer.putInt(position + 1, length);
+			position += 5;
+			for(int i = 0; i < length; ++i) {
+				this.buffer.putChar(position, value.charAt(i));
+				position += 2;
+			}
+		}
+		
+		return position;
+	}
+	
+	/**
+	 * Ensures that {@link #buffer} can store {@code numberOfBytes} additional bytes. If not, a new buffer of at least
+	 * twice the size is allocated and all used bytes are copied.
+	 * 
+	 * @param numberOfBytes
+	 *            The number of additional bytes.
+	 */
+	private void ensureCapacity(int numberOfBytes) {
+		final int required = this.numberOfBytes + numberOfBytes;
+		if(this.buffer == null) {
+			this.buffer = this.allocate(Math.max(required, this.capacity * INITIAL_BYTES_PER_VALUE));
+		} else if(required > this.buffer.capacity()) {
+			final ByteBuffer newBuffer = this.allocate(Math.max(required, 2 * this.buffer.capacity()));
+			final ByteBuffer usedBytes = this.buffer.duplicate();
+			usedBytes.position(0);
+			usedBytes.limit(this.numberOfBytes);
+			newBuffer.put(usedBytes);
+			this.buffer = newBuffer;
+		}
+	}
+	
+	/**
+	 * Allocates a new heap or direct buffer (see {@link #direct}).
+	 * 
+	 * @param size
+	 *            The size of the buffer in bytes.
+	 * 
+	 * @return the new buffer
+	 */
+	private ByteBuffer allocate(int size) {
+		if(this.direct) {
+			return ByteBuffer.allocateDirect(size);
+		}
+		return ByteBuffer.allocate(size);
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		
+		int position = this.offsets[index];
+		switch(this.buffer.get(position++)) {
+		case NULL:
+			return null;
+		case LONG:
+			return new Long(this.buffer.getLong(position));
+		case INT:
+			return new Integer(this.buffer.getInt(position));
+		case SHORT:
+			return new Short(this.buffer.getShort(position));
+		case DOUBLE:
+			return new Double(this.buffer.getDouble(position));
+		case ASCII_STRING: {
+			final char[] chars = new char[this.buffer.getInt(position)];
+			position += 4;
+			for(int i = 0; i < chars.length; ++i) {
+				chars[i] = (char)this.buffer.get(position++);
+			}
+			return new String(chars);
+		}
+		case STRING: {
+			final char[] chars = new char[this.buffer.getInt(position)];
+			position += 4;
+			for(int i = 0; i < chars.length; ++i) {
+				chars[i] = this.buffer.getChar(position);
+				position += 2;
+			}
+			return new String(chars);
+		}
+		case BINARY: {
+			final byte[] bytes = new byte[this.buffer.getInt(position)];
+			position += 4;
+			for(int i = 0; i < bytes.length; ++i) {
+				bytes[i] = this.buffer.get(position++);
+			}
+			return bytes;
+		}
+		default:
+			throw new IllegalStateException("Unknown value type at offset " + this.offsets[index] + ".");
+		}
+	}
+	
+	/**
+	 * Not supported, because values are stored with variable length.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public Object set(int index, Object value) {
+		throw new UnsupportedOperationException("SerializedBatchColumn does not support set(int, Object).");
+	}
+	
+	/**
+	 * Clears this column. The allocated buffer is kept for reuse.
+	 */
+	@Override
+	public void clear() {
+		this.numberOfBytes = 0;
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	/**
+	 * Returns the number of bytes that are used by the serialized values.
+	 * 
+	 * @return the number of used bytes
+	 */
+	int getNumberOfBytes() {
+		return this.numberOfBytes;
+	}
+	
+	/**
+	 * Returns {@code true} if the values are stored off-heap.
+	 * 
+	 * @return {@code true} if the values are stored in a direct buffer; {@code false} otherwise
+	 */
+	boolean isDirect() {
+		return this.buffer != null && this.buffer.isDirect();
+	}
+	
+	/**
+	 * Copies the used bytes of {@link #buffer} into the given output. Heap buffers are written directly from their
+	 * backing array. Direct buffers are copied in chunks via a copy buffer that is allocated once per {@link Kryo}
+	 * instance (and thus, per serializing thread).
+	 */
+	@Override
+	void writeValues(Kryo kryo, Output output) {
+		output.writeInt(this.numberOfBytes, true);
+		
+		if(this.numberOfBytes > 0) {
+			if(this.buffer.hasArray()) {
+				output.writeBytes(this.buffer.array(), this.buffer.arrayOffset(), this.numberOfBytes);
+			} else {
+				final byte[] chunk = getCopyBuffer(kryo);
+				final ByteBuffer usedBytes = this.buffer.duplicate();
+				usedBytes.position(0);
+				usedBytes.limit(this.numberOfBytes);
+				while(usedBytes.hasRemaining()) {
+					final int length = Math.min(chunk.length, usedBytes.remaining());
+					usedBytes.get(chunk, 0, length);
+					output.writeBytes(chunk, 0, length);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the copy buffer of the given {@link Kryo} instance. The buffer is allocated on first access.
+	 * 
+	 * @param kryo
+	 *            The {@link Kryo} instance that serializes this column.
+	 * 
+	 * @return the copy buffer of the given {@link Kryo} instance
+	 */
+	@SuppressWarnings("unchecked")
+	private static byte[] getCopyBuffer(Kryo kryo) {
+		byte[] chunk = (byte[])kryo.getContext().get(COPY_BUFFER_KEY);
+		if(chunk == null) {
+			chunk = new byte[COPY_BUFFER_SIZE];
+			kryo.getContext().put(COPY_BUFFER_KEY, chunk);
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Reads the bytes written by {@link #writeValues(Kryo, Output)} into a heap buffer and restores the value offsets.
+	 * Values are not decoded.
+	 */
+	@Override
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		assert (this.size == 0 && this.offsets.length >= numberOfValues);
+		
+		this.numberOfBytes = input.readInt(true);
+		this.buffer = ByteBuffer.wrap(input.readBytes(this.numberOfBytes));
+		this.restoreOffsets(numberOfValues);
+	}
+	
+	/**
+	 * Restores {@link #offsets} by skipping over all values of {@link #buffer}.
+	 * 
+	 * @param numberOfValues
+	 *            The number of values stored in {@link #buffer}.
+	 */
+	private void restoreOffsets(int numberOfValues) {
+		int position = 0;
+		for(int i = 0; i < numberOfValues; ++i) {
+			this.offsets[i] = position;
+			switch(this.buffer.get(position++)) {
+			case NULL:
+				break;
+			case LONG:
+			case DOUBLE:
+				position += 8;
+				break;
+			case INT:
+				position += 4;
+				break;
+			case SHORT:
+				position += 2;
+				break;
+			case STRING:
+				position += 4 + 2 * this.buffer.getInt(position);
+				break;
+			default: // ASCII_STRING, BINARY
+				position += 4 + this.buffer.getInt(position);
+			}
+		}
+		this.size = numberOfValues;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		for(int i = 0; i < this.numberOfBytes; ++i) {
+			out.writeByte(this.buffer.get(i));
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		final byte[] bytes = new byte[this.numberOfBytes];
+		in.readFully(bytes);
+		this.buffer = ByteBuffer.wrap(bytes);
+	}
+	
+}
@@ -0,0 +1,99 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+
+
+
+
+/**
+ * {@link SharedMessageId} wraps the message ID of a tuple that is inserted into multiple output batches (ie, if
+ * fields-grouping is emulated via direct streams for multiple receivers). It keeps track of the number of pending
+ * batches, such that the tuple is acked after all batches got acked and failed only once.
+ * 
+ * @author mjsax
+ */
+class SharedMessageId {
+	/**
+	 * The original message ID of the tuple.
+	 */
+	private final Object messageId;
+	/**
+	 * The number of batches that contain the tuple and were neither acked nor failed yet.
+	 */
+	private int pendingBatches = 0;
+	/**
+	 * Is set to {@code true}, if any batch that contains the tuple failed.
+	 */
+	private boolean failed = false;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link SharedMessageId} for the given tuple message ID.
+	 * 
+	 * @param messageId
+	 *            The original message ID of the tuple.
+	 */
+	SharedMessageId(Object messageId) {
+		this.messageId = messageId;
+	}
+	
+	
+	
+	/**
+	 * Registers a batch the tuple is inserted into.
+	 */
+	void addBatch() {
+		++this.pendingBatches;
+	}
+	
+	/**
+	 * Is called if a batch that contains the tuple is acked.
+	 * 
+	 * @return the original message ID if the tuple must be acked; {@code null} otherwise
+	 */
+	Object ack() {
+		--this.pendingBatches;
+		if(this.pendingBatches == 0 && !this.failed) {
+			return this.messageId;
+		}
+		return null;
+	}
+	
+	/**
+	 * Is called if a batch that contains the tuple failed.
+	 * 
+	 * @return the original message ID if the tuple must be failed; {@code null} otherwise
+	 */
+	Object fail() {
+		--this.pendingBatches;
+		if(!this.failed) {
+			this.failed = true;
+			return this.messageId;
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return String.valueOf(this.messageId);
+	}
+	
+}
@@ -0,0 +1,176 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link ShortBatchColumn} is a {@link BatchColumn} that stores {@link Short} attributes as an unboxed {@code short} array.
+ * 
+ * @author mjsax
+ */
+public final class ShortBatchColumn extends BatchColumn {
+	private final static long serialVersionUID = 315414867172693938L;
+	
+	/**
+	 * The stored attribute values.
+	 */
+	private short[] values;
+	
+	
+	
+	/**
+	 * Instantiates a {@link ShortBatchColumn} with size {@code batchSize} (must be larger than zero).
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link ShortBatchColumn}.
+	 */
+	public ShortBatchColumn(int batchSize) {
+		super(batchSize);
+		this.values = new short[batchSize];
+	}
+	
+	
+	
+	/**
+	 * Returns {@code true} if {@code value} is of type {@link Short}.
+	 */
+	@Override
+	public boolean accepts(Object value) {
+		return value instanceof Short;
+	}
+	
+	/**
+	 * Returns 2 (ie, the size of a packed value).
+	 */
+	@Override
+	int estimateSize(Object value) {
+		return 2;
+	}
+	
+	/**
+	 * Appends a primitive {@code short} value to this column.
+	 * 
+	 * @param value
+	 *            The value to be appended.
+	 */
+	public void addShort(short value) {
+		if(this.size == this.values.length) {
+			this.capacity = 2 * this.capacity;
+			this.values = Arrays.copyOf(this.values, this.capacity);
+		}
+		this.values[this.size++] = value;
+		++this.modCount;
+	}
+	
+	/**
+	 * Returns the primitive {@code short} value at position {@code index}.
+	 * 
+	 * @param index
+	 *            The index of the requested value.
+	 * 
+	 * @return the value at position {@code index}
+	 */
+	public short getShort(int index) {
+		this.checkIndex(index);
+		return this.values[index];
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		this.addShort(((Short)value).shortValue());
+		return true;
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		return Short.valueOf(this.values[index]);
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		this.checkIndex(index);
+		final Short old = Short.valueOf(this.values[index]);
+		this.values[index] = ((Short)value).shortValue();
+		return old;
+	}
+	
+	@Override
+	public void clear() {
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	@Override
+	void writeValues(Kryo kryo, Output output) {
+		int runs = this.size > 0 ? 1 : 0;
+		for(int i = 1; i < this.size; ++i) {
+			if(this.values[i] != this.values[i - 1]) {
+				++runs;
+			}
+		}
+		
+		if(2 * runs <= this.size) {
+			output.writeByte(RUN_LENGTH_ENCODING);
+			int start = 0;
+			for(int i = 1; i <= this.size; ++i) {
+				if(i == this.size || this.values[i] != this.values[start]) {
+					output.writeShort(this.values[start]);
+					output.writeInt(i - start, true);
+					start = i;
+				}
+			}
+		} else {
+			output.writeByte(PLAIN_ENCODING);
+			for(int i = 0; i < this.size; ++i) {
+				output.writeShort(this.values[i]);
+			}
+		}
+	}
+	
+	@Override
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		assert (this.size == 0 && this.values.length >= numberOfValues);
+		switch(input.readByte()) {
+		case RUN_LENGTH_ENCODING:
+			for(int i = 0; i < numberOfValues;) {
+				final short value = input.readShort();
+				final int runLength = input.readInt(true);
+				Arrays.fill(this.values, i, i + runLength, value);
+				i += runLength;
+			}
+			break;
+		default:
+			for(int i = 0; i < numberOfValues; ++i) {
+				this.values[i] = input.readShort();
+			}
+		}
+		this.size = numberOfValues;
+	}
+	
+}
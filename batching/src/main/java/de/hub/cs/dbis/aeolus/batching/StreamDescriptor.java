@@ -0,0 +1,238 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import backtype.storm.grouping.CustomStreamGrouping;
+
+
+
+
+
+/**
+ * {@link StreamDescriptor} holds all information {@link AbstractBatchCollector} requires to buffer and emit the tuples
+ * of a single batched output stream. All information is resolved once, when the {@link AbstractBatchCollector} is
+ * created, such that buffering a tuple does not require any per-stream map lookups.
+ * 
+ * @author mjsax
+ */
+class StreamDescriptor {
+	/**
+	 * The ID of the output stream.
+	 */
+	final String streamId;
+	/**
+	 * The number of attributes of the output schema.
+	 */
+	final int numberOfAttributes;
+	/**
+	 * The current batch size of the output stream.
+	 */
+	int batchSize;
+	/**
+	 * The maximum time (in ms) a tuple is buffered before its (incomplete) output batch is emitted by
+	 * {@link AbstractBatchCollector#flushStale()}. A negative value disables the timeout.
+	 */
+	long maxBufferTime = -1;
+	/**
+	 * The maximum estimated serialized size (in bytes) of an output batch (see {@link Batch#setMaxBytes(int)}). A
+	 * non-positive value disables the bound.
+	 */
+	int maxBatchBytes = -1;
+	/**
+	 * The minimum number of serialized bytes to compress a column of an output batch (see
+	 * {@link BatchColumnSerializer}). A negative value disables compression.
+	 */
+	int compressionThreshold = -1;
+	/**
+	 * The batch size of all output buffers that are only consumed by tasks of the producer's worker (see
+	 * {@link #localBuffers} and {@link #localDirectBuffers}). A negative value applies {@link #batchSize}; zero disables
+	 * batching for those buffers.
+	 */
+	int localBatchSize = -1;
+	
+	/**
+	 * The output buffers of a regular output stream ({@code null} for direct output streams).
+	 * 
+	 * The number of output buffers depends on the number of logical receivers as well as each logical receiver's
+	 * distribution pattern and parallelism.
+	 */
+	Batch[] buffers;
+	/**
+	 * Marks all non-empty output buffers of {@link #buffers}.
+	 */
+	BitSet dirtyBuffers;
+	/**
+	 * Marks all output buffers of {@link #buffers} that are only consumed by tasks of the producer's worker.
+	 */
+	BitSet localBuffers;
+	/**
+	 * The partitioners of all regular fields-grouped receivers, that are used to compute the index of an output buffer
+	 * ({@code null} if no receiver uses fields-grouping).
+	 */
+	FieldsGroupingPartitioner[] partitioners;
+	/**
+	 * Assigns a "weight" to each partitioner. This weight is necessary to compute the correct index within the list of
+	 * output buffers.
+	 */
+	int[] weights;
+	
+	/**
+	 * The output buffers of a direct output stream ({@code null} for regular output streams). Each consumer task has
+	 * its own output buffer. Buffers are ordered by the consumer's task ID (cf. {@link #directTaskIds}).
+	 */
+	Batch[] directBuffers;
+	/**
+	 * The IDs of all consumer tasks of a direct output stream, in ascending order.
+	 */
+	int[] directTaskIds;
+	/**
+	 * Marks all non-empty output buffers of {@link #directBuffers}.
+	 */
+	BitSet dirtyDirectBuffers;
+	/**
+	 * Marks all output buffers of {@link #directBuffers} which consumer task runs in the producer's worker.
+	 */
+	BitSet localDirectBuffers;
+	/**
+	 * The smallest consumer task ID of a direct output stream.
+	 */
+	private int minDirectTaskId;
+	/**
+	 * Maps each task ID (minus {@link #minDirectTaskId}) to the index of its output buffer ({@code -1} if the task is
+	 * not a consumer).
+	 */
+	private int[] directBufferIndexes;
+	
+	/**
+	 * The Aeolus-defined direct output stream, that is used to emulate this output stream ({@code null} if not
+	 * emulated).
+	 */
+	StreamDescriptor directStream;
+	/**
+	 * The groupings of all receivers of {@link #directStream}.
+	 */
+	CustomStreamGrouping[] directStreamGroupings;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link StreamDescriptor}.
+	 * 
+	 * @param streamId
+	 *            The ID of the output stream.
+	 * @param batchSize
+	 *            The batch size of the output stream.
+	 * @param numberOfAttributes
+	 *            The number of attributes of the output schema.
+	 */
+	StreamDescriptor(String streamId, int batchSize, int numberOfAttributes) {
+		this.streamId = streamId;
+		this.batchSize = batchSize;
+		this.numberOfAttributes = numberOfAttributes;
+	}
+	
+	
+	
+	/**
+	 * Sets up {@link #buffers} for a regular output stream.
+	 * 
+	 * @param numberOfBuffers
+	 *            The number of output buffers.
+	 */
+	void initBuffers(int numberOfBuffers) {
+		this.buffers = new Batch[numberOfBuffers];
+		for(int i = 0; i < numberOfBuffers; ++i) {
+			this.buffers[i] = new Batch(this.batchSize, this.numberOfAttributes);
+		}
+		this.dirtyBuffers = new BitSet(numberOfBuffers);
+		this.localBuffers = new BitSet(numberOfBuffers);
+	}
+	
+	/**
+	 * Sets up {@link #directBuffers} for a direct output stream.
+	 * 
+	 * @param consumerTaskIds
+	 *            The IDs of all consumer tasks.
+	 */
+	void initDirectBuffers(List<Integer> consumerTaskIds) {
+		final int numberOfBuffers = consumerTaskIds.size();
+		
+		this.directBuffers = new Batch[numberOfBuffers];
+		this.directTaskIds = new int[numberOfBuffers];
+		this.dirtyDirectBuffers = new BitSet(numberOfBuffers);
+		this.localDirectBuffers = new BitSet(numberOfBuffers);
+		if(numberOfBuffers == 0) {
+			this.directBufferIndexes = new int[0];
+			return;
+		}
+		
+		final int minTaskId = Collections.min(consumerTaskIds).intValue();
+		final int maxTaskId = Collections.max(consumerTaskIds).intValue();
+		this.minDirectTaskId = minTaskId;
+		// Storm assigns consecutive task IDs to the tasks of a component -> index table is dense
+		this.directBufferIndexes = new int[maxTaskId - minTaskId + 1];
+		for(int i = 0; i < this.directBufferIndexes.length; ++i) {
+			this.directBufferIndexes[i] = -1;
+		}
+		
+		int i = 0;
+		for(int taskId = minTaskId; taskId <= maxTaskId; ++taskId) {
+			if(consumerTaskIds.contains(new Integer(taskId))) {
+				this.directBuffers[i] = new Batch(this.batchSize, this.numberOfAttributes);
+				this.directTaskIds[i] = taskId;
+				this.directBufferIndexes[taskId - minTaskId] = i;
+				++i;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the batch size of an output buffer.
+	 * 
+	 * @param local
+	 *            {@code true} if the output buffer is only consumed by tasks of the producer's worker
+	 * 
+	 * @return the batch size of the output buffer (zero if batching is disabled for the buffer)
+	 */
+	int getBatchSize(boolean local) {
+		return local && this.localBatchSize >= 0 ? this.localBatchSize : this.batchSize;
+	}
+	
+	/**
+	 * Returns the index of the output buffer of the given consumer task.
+	 * 
+	 * @param taskId
+	 *            The ID of the consumer task.
+	 * 
+	 * @return the index of the task's output buffer within {@link #directBuffers} or {@code -1} if the task is not a
+	 *         consumer of this output stream
+	 */
+	int getDirectBufferIndex(int taskId) {
+		final int i = taskId - this.minDirectTaskId;
+		if(i < 0 || i >= this.directBufferIndexes.length) {
+			return -1;
+		}
+		return this.directBufferIndexes[i];
+	}
+	
+}
@@ -0,0 +1,166 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link StringBatchColumn} is a {@link BatchColumn} that stores {@link String} attributes. The strings are written without any class information.
+ * 
+ * @author mjsax
+ */
+public final class StringBatchColumn extends BatchColumn {
+	private final static long serialVersionUID = 5618022309046058580L;
+	
+	/**
+	 * The stored attribute values.
+	 */
+	private String[] values;
+	
+	
+	
+	/**
+	 * Instantiates a {@link StringBatchColumn} with size {@code batchSize} (must be larger than zero).
+	 * 
+	 * @param batchSize
+	 *            The number of attributes that should be stored in this {@link StringBatchColumn}.
+	 */
+	public StringBatchColumn(int batchSize) {
+		super(batchSize);
+		this.values = new String[batchSize];
+	}
+	
+	
+	
+	/**
+	 * Returns {@code true} if {@code value} is of type {@link String} or {@code null}.
+	 */
+	@Override
+	public boolean accepts(Object value) {
+		return value == null || value instanceof String;
+	}
+	
+	/**
+	 * Returns the length of {@code value} plus one (ie, the size of a packed value, assuming ASCII characters).
+	 */
+	@Override
+	int estimateSize(Object value) {
+		return value == null ? 1 : ((String)value).length() + 1;
+	}
+	
+	@Override
+	public boolean add(Object value) {
+		if(this.size == this.values.length) {
+			this.capacity = 2 * this.capacity;
+			this.values = Arrays.copyOf(this.values, this.capacity);
+		}
+		this.values[this.size++] = (String)value;
+		++this.modCount;
+		return true;
+	}
+	
+	@Override
+	public Object get(int index) {
+		this.checkIndex(index);
+		return this.values[index];
+	}
+	
+	@Override
+	public Object set(int index, Object value) {
+		this.checkIndex(index);
+		final String old = this.values[index];
+		this.values[index] = (String)value;
+		return old;
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+		++this.modCount;
+	}
+	
+	@Override
+	void writeValues(Kryo kryo, Output output) {
+		// a dictionary only pays off if each distinct value occurs twice on average
+		final int maxDictionarySize = this.size / 2;
+		final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		final List<String> entries = new ArrayList<String>();
+		for(int i = 0; i < this.size; ++i) {
+			if(!dictionary.containsKey(this.values[i])) {
+				if(entries.size() == maxDictionarySize) {
+					entries.clear();
+					break;
+				}
+				dictionary.put(this.values[i], new Integer(entries.size()));
+				entries.add(this.values[i]);
+			}
+		}
+		
+		if(entries.size() > 0) {
+			output.writeByte(DICTIONARY_ENCODING);
+			output.writeInt(entries.size(), true);
+			for(String entry : entries) {
+				output.writeString(entry);
+			}
+			for(int i = 0; i < this.size; ++i) {
+				output.writeInt(dictionary.get(this.values[i]).intValue(), true);
+			}
+		} else {
+			output.writeByte(PLAIN_ENCODING);
+			for(int i = 0; i < this.size; ++i) {
+				output.writeString(this.values[i]);
+			}
+		}
+	}
+	
+	@Override
+	void readValues(Kryo kryo, Input input, int numberOfValues) {
+		assert (this.size == 0 && this.values.length >= numberOfValues);
+		switch(input.readByte()) {
+		case DICTIONARY_ENCODING:
+			final String[] entries = new String[input.readInt(true)];
+			for(int i = 0; i < entries.length; ++i) {
+				entries[i] = input.readString();
+			}
+			for(int i = 0; i < numberOfValues; ++i) {
+				this.values[i] = entries[input.readInt(true)];
+			}
+			break;
+		default:
+			for(int i = 0; i < numberOfValues; ++i) {
+				this.values[i] = input.readString();
+			}
+		}
+		this.size = numberOfValues;
+	}
+	
+}
@@ -28,6 +28,7 @@ import backtype.storm.topology.IRichSpout;
 import backtype.storm.topology.IRichStateSpout;
 import backtype.storm.topology.SpoutDeclarer;
 import backtype.storm.topology.TopologyBuilder;
+import de.hub.cs.dbis.aeolus.batching.AdaptiveBatchSizeController;
 
 
 
@@ -35,7 +36,8 @@ import backtype.storm.topology.TopologyBuilder;
 
 /**
  * {@link AeolusBuilder} allows to specify an output batch size for each Spout/Bolt that is added to the topology. It
- * automatically inserts wrappers that batch the output and debatch the input if required.
+ * automatically inserts wrappers that batch the output and debatch the input if required. Bolts that implement
+ * {@link IBatchBolt} receive input batches as a whole.
  * 
  * @author mjsax
  */
@@ -113,6 +115,62 @@ public class AeolusBuilder extends TopologyBuilder {
 		return new BatchedDeclarer(super.setBolt(id, bolt, parallelismHint));
 	}
 	
+	/**
+	 * Define a new bolt in this topology with the specified amount of parallelism. Incomplete output batches are
+	 * emitted after at most {@code maxBufferTime} ms (see {@link BoltOutputBatcher#setMaxBufferTime(long)}).
+	 * 
+	 * @param id
+	 *            The id of this component. This id is referenced by other components that want to consume this bolt's
+	 *            outputs.
+	 * @param bolt
+	 *            The bolt to be added to the topology.
+	 * @param parallelismHint
+	 *            The number of tasks that should be assigned to execute this bolt. Each task will run on a thread in a
+	 *            process somewhere around the cluster.
+	 * @param batchSize
+	 *            The batch size to be used for all output streams of the given spout (must not be negative).
+	 * @param maxBufferTime
+	 *            The maximum time (in ms) an output tuple can be buffered (a negative value disables the timeout).
+	 * 
+	 * @return use the returned object to declare the inputs to this component
+	 */
+	public BoltDeclarer setBolt(String id, IRichBolt bolt, Number parallelismHint, int batchSize, long maxBufferTime) {
+		BoltOutputBatcher batcher;
+		if(batchSize > 0) {
+			batcher = new BoltOutputBatcher(new InputDebatcher(bolt), batchSize);
+		} else {
+			batcher = new BoltOutputBatcher(new InputDebatcher(bolt), new HashMap<String, Integer>());
+		}
+		batcher.setMaxBufferTime(maxBufferTime);
+		return new BatchedDeclarer(super.setBolt(id, batcher, parallelismHint));
+	}
+	
+	/**
+	 * Define a new bolt in this topology with the specified amount of parallelism. The output batch sizes are adjusted
+	 * at runtime by the given {@link AdaptiveBatchSizeController}.
+	 * 
+	 * @param id
+	 *            The id of this component. This id is referenced by other components that want to consume this bolt's
+	 *            outputs.
+	 * @param bolt
+	 *            The bolt to be added to the topology.
+	 * @param parallelismHint
+	 *            The number of tasks that should be assigned to execute this bolt. Each task will run on a thread in a
+	 *            process somewhere around the cluster.
+	 * @param batchSize
+	 *            The initial batch size to be used for all output streams of the given bolt (must be positive).
+	 * @param controller
+	 *            The controller that adjusts the batch sizes.
+	 * 
+	 * @return use the returned object to declare the inputs to this component
+	 */
+	public BoltDeclarer setBolt(String id, IRichBolt bolt, Number parallelismHint, int batchSize,
+		AdaptiveBatchSizeController controller) {
+		BoltOutputBatcher batcher = new BoltOutputBatcher(new InputDebatcher(bolt), batchSize);
+		batcher.setBatchSizeController(controller);
+		return new BatchedDeclarer(super.setBolt(id, batcher, parallelismHint));
+	}
+	
 	/**
 	 * Define a new bolt in this topology with the specified amount of parallelism.
 	 * 
@@ -218,6 +276,58 @@ public class AeolusBuilder extends TopologyBuilder {
 		return super.setSpout(id, new SpoutOutputBatcher(spout, batchSize), parallelismHint);
 	}
 	
+	/**
+	 * Define a new spout in this topology. Incomplete output batches are emitted after at most {@code maxBufferTime} ms
+	 * (see {@link SpoutOutputBatcher#setMaxBufferTime(long)}).
+	 * 
+	 * @param id
+	 *            The ID of this component. This ID is referenced by other components that want to consume this spout's
+	 *            outputs.
+	 * @param spout
+	 *            The spout to be added to the topology.
+	 * @param parallelismHint
+	 *            The number of tasks that should be assigned to execute this spout. Each task will run on a thread in a
+	 *            process somewhere around the cluster.
+	 * @param batchSize
+	 *            The batch size to be used for all output streams of the given spout (must not be negative).
+	 * @param maxBufferTime
+	 *            The maximum time (in ms) an output tuple can be buffered (a negative value disables the timeout).
+	 */
+	public SpoutDeclarer setSpout(String id, IRichSpout spout, Number parallelismHint, int batchSize, long maxBufferTime) {
+		SpoutOutputBatcher batcher;
+		if(batchSize > 0) {
+			batcher = new SpoutOutputBatcher(spout, batchSize);
+		} else {
+			batcher = new SpoutOutputBatcher(spout, new HashMap<String, Integer>());
+		}
+		batcher.setMaxBufferTime(maxBufferTime);
+		return super.setSpout(id, batcher, parallelismHint);
+	}
+	
+	/**
+	 * Define a new spout in this topology. The output batch sizes are adjusted at runtime by the given
+	 * {@link AdaptiveBatchSizeController}.
+	 * 
+	 * @param id
+	 *            The ID of this component. This ID is referenced by other components that want to consume this spout's
+	 *            outputs.
+	 * @param spout
+	 *            The spout to be added to the topology.
+	 * @param parallelismHint
+	 *            The number of tasks that should be assigned to execute this spout. Each task will run on a thread in a
+	 *            process somewhere around the cluster.
+	 * @param batchSize
+	 *            The initial batch size to be used for all output streams of the given spout (must be positive).
+	 * @param controller
+	 *            The controller that adjusts the batch sizes.
+	 */
+	public SpoutDeclarer setSpout(String id, IRichSpout spout, Number parallelismHint, int batchSize,
+		AdaptiveBatchSizeController controller) {
+		SpoutOutputBatcher batcher = new SpoutOutputBatcher(spout, batchSize);
+		batcher.setBatchSizeController(controller);
+		return super.setSpout(id, batcher, parallelismHint);
+	}
+	
 	/**
 	 * Define a new spout in this topology.
 	 * 
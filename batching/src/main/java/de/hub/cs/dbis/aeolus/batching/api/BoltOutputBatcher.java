@@ -18,15 +18,20 @@
  */
 package de.hub.cs.dbis.aeolus.batching.api;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import backtype.storm.Config;
+import backtype.storm.Constants;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Tuple;
 import de.hub.cs.dbis.aeolus.batching.AbstractBatchCollector;
+import de.hub.cs.dbis.aeolus.batching.AdaptiveBatchSizeController;
 import de.hub.cs.dbis.aeolus.batching.BatchOutputCollector;
 import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
 
@@ -41,11 +46,18 @@ import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
  * <strong>CAUTION:</strong>Calls to {@code .emit(...)} will return {@code null}, because the tuples might still be in
  * the output buffer and not transfered yet.<br />
  * <br />
- * <strong>CAUTION:</strong>Tuple acking, failing, and anchoring is currently not supported.
+ * If a maximum buffer time is set (see {@link #setMaxBufferTime(long)}), {@link BoltOutputBatcher} requests tick tuples
+ * and emits incomplete batches that exceed the maximum buffer time each time a tick tuple is received. Because Storm's
+ * tick tuple frequency is specified in seconds, buffered tuples might be delayed up to one tick interval longer than
+ * the specified maximum buffer time. If the wrapped bolt requests tick tuples itself, its tick frequency is used and
+ * all tick tuples are forwarded to the wrapped bolt.<br />
+ * <br />
+ * Anchoring is supported: each output batch is anchored to the distinct anchors of all its tuples. Acks of input
+ * tuples are deferred until all output batches that are anchored to them got emitted.
  * 
  * @author mjsax
  */
-public class BoltOutputBatcher implements IRichBolt {
+public class BoltOutputBatcher implements IBoltWrapper {
 	private final static long serialVersionUID = 6453060658895879104L;
 	
 	/**
@@ -60,10 +72,65 @@ public class BoltOutputBatcher implements IRichBolt {
 	 * The size of the output batches (for all output streams).
 	 */
 	private final int batchSize;
+	/**
+	 * The maximum buffer time (in ms) for all output streams (a negative value disables the timeout).
+	 */
+	private long maxBufferTime = -1;
+	/**
+	 * The maximum buffer times (in ms) for single output streams.
+	 */
+	private final HashMap<String, Long> maxBufferTimes = new HashMap<String, Long>();
+	/**
+	 * The maximum estimated size (in bytes) of the output batches for all output streams (a non-positive value
+	 * disables the bound).
+	 */
+	private int maxBatchBytes = -1;
+	/**
+	 * The maximum estimated sizes (in bytes) of the output batches for single output streams.
+	 */
+	private final HashMap<String, Integer> maxBatchBytesPerStream = new HashMap<String, Integer>();
+	/**
+	 * The compression threshold (in bytes) for all output streams (a negative value disables compression).
+	 */
+	private int compressionThreshold = -1;
+	/**
+	 * The compression thresholds (in bytes) for single output streams.
+	 */
+	private final HashMap<String, Integer> compressionThresholds = new HashMap<String, Integer>();
+	/**
+	 * The batch size for receivers in the same worker, for all output streams (a negative value applies the regular
+	 * batch size).
+	 */
+	private int localBatchSize = -1;
+	/**
+	 * The batch sizes for receivers in the same worker, for single output streams.
+	 */
+	private final HashMap<String, Integer> localBatchSizes = new HashMap<String, Integer>();
+	/**
+	 * The output streams that are never batched and flush all buffered batches of the same receivers.
+	 */
+	private final HashSet<String> controlStreams = new HashSet<String>();
+	/**
+	 * Adjusts the batch sizes at runtime (can be {@code null}).
+	 */
+	private AdaptiveBatchSizeController batchSizeController;
+	/**
+	 * The maximum number of recycled batch columns per column type (a non-positive value disables recycling).
+	 */
+	private int columnPoolSize = 0;
+	/**
+	 * If {@code true}, output tuples are serialized when they are inserted into an output batch.
+	 */
+	private boolean serializeOnAppend = false;
 	/**
 	 * The used {@link BatchOutputCollector} that wraps the actual {@link OutputCollector}.
 	 */
 	private BatchOutputCollector batchCollector;
+	/**
+	 * Indicates if received tick tuples were requested by {@link BoltOutputBatcher} only, and thus must not be
+	 * forwarded to the wrapped bolt.
+	 */
+	private boolean consumeTickTuples = false;
 	
 	
 	
@@ -117,6 +184,207 @@ public class BoltOutputBatcher implements IRichBolt {
 	
 	
 	
+	/**
+	 * Sets the maximum time a tuple can be buffered in an incomplete batch, for all output streams. Must be called
+	 * before the topology is submitted.
+	 * 
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 */
+	public void setMaxBufferTime(long maxBufferTime) {
+		this.maxBufferTime = maxBufferTime;
+	}
+	
+	/**
+	 * Sets the maximum time a tuple can be buffered in an incomplete batch of the given output stream. Overwrites the
+	 * value set via {@link #setMaxBufferTime(long)} for this stream. Must be called before the topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setMaxBufferTime(String streamId, long maxBufferTime) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.maxBufferTimes.put(streamId, new Long(maxBufferTime));
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches, for all output streams (see
+	 * {@link AbstractBatchCollector#setMaxBatchBytes(String, int)}). An output batch is emitted as soon as either its
+	 * batch size or its maximum size is reached. Must be called before the topology is submitted.
+	 * 
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	public void setMaxBatchBytes(int maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches of the given output stream. Overwrites the value set
+	 * via {@link #setMaxBatchBytes(int)} for this stream. Must be called before the topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setMaxBatchBytes(String streamId, int maxBatchBytes) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.maxBatchBytesPerStream.put(streamId, new Integer(maxBatchBytes));
+	}
+	
+	/**
+	 * Enables compression of output batches that are transfered to a different worker, for all output streams (see
+	 * {@link AbstractBatchCollector#setCompressionThreshold(String, int)}). Must be called before the topology is
+	 * submitted.
+	 * 
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 */
+	public void setCompressionThreshold(int threshold) {
+		this.compressionThreshold = threshold;
+	}
+	
+	/**
+	 * Enables compression of output batches of the given output stream, that are transfered to a different worker.
+	 * Overwrites the value set via {@link #setCompressionThreshold(int)} for this stream. Must be called before the
+	 * topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setCompressionThreshold(String streamId, int threshold) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.compressionThresholds.put(streamId, new Integer(threshold));
+	}
+	
+	/**
+	 * Sets the batch size for receiver tasks that run in the same worker as the producer task, for all output streams
+	 * (see {@link AbstractBatchCollector#setLocalBatchSize(String, int)}). Must be called before the topology is
+	 * submitted.
+	 * 
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	public void setLocalBatchSize(int localBatchSize) {
+		this.localBatchSize = localBatchSize;
+	}
+	
+	/**
+	 * Sets the batch size for receiver tasks of the given output stream that run in the same worker as the producer
+	 * task. Overwrites the value set via {@link #setLocalBatchSize(int)} for this stream. Must be called before the
+	 * topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setLocalBatchSize(String streamId, int localBatchSize) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.localBatchSizes.put(streamId, new Integer(localBatchSize));
+	}
+	
+	/**
+	 * Marks the given output stream as control stream (see {@link AbstractBatchCollector#addControlStream(String)}).
+	 * Control tuples (eg, punctuations or flush tuples that signal progress to {@code TimestampMerger}) are never
+	 * batched. Before a control tuple is emitted, all buffered batches of all output streams that share a receiver
+	 * with the control stream are emitted, such that the order of data and control tuples is preserved. Must be
+	 * called before the topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void addControlStream(String streamId) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.controlStreams.add(streamId);
+	}
+	
+	/**
+	 * Sets an {@link AdaptiveBatchSizeController} that adjusts the batch sizes of all batched output streams at
+	 * runtime, starting with the batch sizes given in the constructor. Must be called before the topology is
+	 * submitted. At runtime, the wrapped bolt can look up the controller via
+	 * {@link AdaptiveBatchSizeController#getController(TopologyContext)} to report downstream latencies.
+	 * 
+	 * @param controller
+	 *            The controller to be used ({@code null} disables batch size adaption).
+	 */
+	public void setBatchSizeController(AdaptiveBatchSizeController controller) {
+		this.batchSizeController = controller;
+	}
+	
+	/**
+	 * Enables recycling of output batch columns (see {@link AbstractBatchCollector#setColumnPoolSize(int)}). All
+	 * receiving bolts must be wrapped by an {@link InputDebatcher}. Must be called before the topology is submitted.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of free columns per column type that are kept for reuse (a non-positive value
+	 *            disables recycling).
+	 */
+	public void setColumnPoolSize(int poolSize) {
+		this.columnPoolSize = poolSize;
+	}
+	
+	/**
+	 * Enables serialize-on-append (see {@link AbstractBatchCollector#setSerializeOnAppend(boolean)}). Must be called
+	 * before the topology is submitted.
+	 * 
+	 * @param serializeOnAppend
+	 *            {@code true} to enable serialize-on-append; {@code false} to use typed columns
+	 */
+	public void setSerializeOnAppend(boolean serializeOnAppend) {
+		this.serializeOnAppend = serializeOnAppend;
+	}
+	
+	/**
+	 * Returns the smallest specified maximum buffer time.
+	 * 
+	 * @return the smallest specified maximum buffer time or {@code -1} if no maximum buffer time is specified
+	 */
+	private long getMinMaxBufferTime() {
+		long min = this.maxBufferTime;
+		for(Long time : this.maxBufferTimes.values()) {
+			final long t = time.longValue();
+			if(t >= 0 && (min < 0 || t < min)) {
+				min = t;
+			}
+		}
+		return min;
+	}
+	
 	@Override
 	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
 		if(this.batchSizes != null) {
@@ -124,15 +392,67 @@ public class BoltOutputBatcher implements IRichBolt {
 		} else {
 			this.batchCollector = new BatchOutputCollector(context, collector, this.batchSize);
 		}
+		
+		for(String streamId : this.controlStreams) {
+			this.batchCollector.addControlStream(streamId);
+		}
+		
+		if(this.maxBufferTime >= 0) {
+			this.batchCollector.setMaxBufferTime(this.maxBufferTime);
+		}
+		for(Entry<String, Long> time : this.maxBufferTimes.entrySet()) {
+			this.batchCollector.setMaxBufferTime(time.getKey(), time.getValue().longValue());
+		}
+		if(this.maxBatchBytes > 0) {
+			this.batchCollector.setMaxBatchBytes(this.maxBatchBytes);
+		}
+		for(Entry<String, Integer> bytes : this.maxBatchBytesPerStream.entrySet()) {
+			this.batchCollector.setMaxBatchBytes(bytes.getKey(), bytes.getValue().intValue());
+		}
+		if(this.compressionThreshold >= 0) {
+			this.batchCollector.setCompressionThreshold(this.compressionThreshold);
+		}
+		for(Entry<String, Integer> threshold : this.compressionThresholds.entrySet()) {
+			this.batchCollector.setCompressionThreshold(threshold.getKey(), threshold.getValue().intValue());
+		}
+		if(this.localBatchSize >= 0) {
+			this.batchCollector.setLocalBatchSize(this.localBatchSize);
+		}
+		for(Entry<String, Integer> size : this.localBatchSizes.entrySet()) {
+			this.batchCollector.setLocalBatchSize(size.getKey(), size.getValue().intValue());
+		}
+		this.batchCollector.setBatchSizeController(this.batchSizeController);
+		if(this.batchSizeController != null) {
+			this.batchSizeController.register(context);
+		}
+		this.batchCollector.setColumnPoolSize(this.columnPoolSize);
+		this.batchCollector.setSerializeOnAppend(this.serializeOnAppend);
+		
+		final Map<String, Object> boltConf = this.wrappedBolt.getComponentConfiguration();
+		this.consumeTickTuples = this.getMinMaxBufferTime() >= 0
+			&& (boltConf == null || boltConf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS) == null);
+		
 		this.wrappedBolt.prepare(stormConf, context, this.batchCollector);
 		
 	}
 	
 	@Override
 	public void execute(Tuple input) {
+		if(Constants.SYSTEM_COMPONENT_ID.equals(input.getSourceComponent())
+			&& Constants.SYSTEM_TICK_STREAM_ID.equals(input.getSourceStreamId())) {
+			this.batchCollector.flushStale();
+			if(this.consumeTickTuples) {
+				return;
+			}
+		}
 		this.wrappedBolt.execute(input);
 	}
 	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.wrappedBolt;
+	}
+	
 	@Override
 	public void cleanup() {
 		this.wrappedBolt.cleanup();
@@ -144,9 +464,33 @@ public class BoltOutputBatcher implements IRichBolt {
 		this.wrappedBolt.declareOutputFields(new BatchingOutputFieldsDeclarer(declarer));
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If a maximum buffer time is specified and the wrapped bolt does not request tick tuples, tick tuples are
+	 * requested additionally to the configuration of the wrapped bolt.
+	 */
 	@Override
 	public Map<String, Object> getComponentConfiguration() {
-		return this.wrappedBolt.getComponentConfiguration();
+		final Map<String, Object> boltConf = this.wrappedBolt.getComponentConfiguration();
+		
+		final long minMaxBufferTime = this.getMinMaxBufferTime();
+		if(minMaxBufferTime < 0 || (boltConf != null && boltConf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS) != null)) {
+			return boltConf;
+		}
+		
+		final Map<String, Object> conf = new HashMap<String, Object>();
+		if(boltConf != null) {
+			conf.putAll(boltConf);
+		}
+		// tick frequency is specified in seconds -> use the largest interval that does not exceed the max buffer time
+		int tickFrequency = (int)(minMaxBufferTime / 1000);
+		if(tickFrequency < 1) {
+			tickFrequency = 1;
+		}
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, new Integer(tickFrequency));
+		
+		return conf;
 	}
 	
 	/**
@@ -0,0 +1,50 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching.api;
+
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+
+
+
+
+
+/**
+ * {@link IBatchBolt} is a bolt that processes whole input batches at once. If an {@link IBatchBolt} is wrapped by an
+ * {@link InputDebatcher} (eg, via {@link AeolusBuilder}), each input batch is handed over to
+ * {@link #executeBatch(BatchView)} directly instead of being split into single tuples. Non-batched input tuples are
+ * still processed by {@link #execute(Tuple)}.<br />
+ * <br />
+ * An {@link IBatchBolt} acks, fails, or anchors to a whole batch via {@link BatchView#getInput()}.
+ * 
+ * @author mjsax
+ */
+public interface IBatchBolt extends IRichBolt {
+	
+	/**
+	 * Processes a single input batch. The given {@link BatchView} (including its columns) is only valid during this
+	 * call and must not be retained.
+	 * 
+	 * @param batch
+	 *            The input batch to be processed.
+	 */
+	public void executeBatch(BatchView batch);
+	
+}
@@ -0,0 +1,44 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching.api;
+
+import backtype.storm.topology.IRichBolt;
+
+
+
+
+
+/**
+ * {@link IBoltWrapper} is a bolt that wraps another bolt and forwards all input tuples to it (eg,
+ * {@link BoltOutputBatcher} or a monitoring wrapper). Wrappers expose the wrapped bolt, such that
+ * {@link InputDebatcher} can inspect the whole chain of wrappers down to the user bolt (eg, to detect a nested
+ * {@link BoltOutputBatcher} or a nested {@link IBatchBolt}).
+ * 
+ * @author mjsax
+ */
+public interface IBoltWrapper extends IRichBolt {
+	
+	/**
+	 * Returns the wrapped bolt.
+	 * 
+	 * @return the wrapped bolt
+	 */
+	public IRichBolt getWrappedBolt();
+	
+}
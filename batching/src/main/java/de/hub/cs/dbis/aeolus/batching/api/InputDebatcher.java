@@ -30,9 +30,13 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Tuple;
-import backtype.storm.tuple.TupleImpl;
 import de.hub.cs.dbis.aeolus.batching.AbstractBatchCollector;
 import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchTupleView;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.DebatchedInput;
+import de.hub.cs.dbis.aeolus.batching.DebatchedTuple;
+import de.hub.cs.dbis.aeolus.batching.DebatchingOutputCollector;
 
 
 
@@ -44,11 +48,27 @@ import de.hub.cs.dbis.aeolus.batching.BatchColumn;
  * a batch and forwards it to its wrapped bolt for processing. {@link InputDebatcher} can handle and combination of
  * batched and non-batched input and works with any batch size.<br />
  * <br />
- * <strong>CAUTION:</strong>Tuple acking, failing, and anchoring is currently not supported.
+ * Tuple acking, failing, and anchoring is supported for extracted tuples: an input batch is acked after all its
+ * tuples got acked by the wrapped bolt, and it is failed if any of its tuples fails. Output tuples that are anchored to
+ * extracted tuples are anchored to the corresponding input batches.<br />
+ * <br />
+ * By default, tuples are not copied out of an input batch. Instead, a single reusable {@link BatchTupleView} is handed
+ * over to the wrapped bolt for each tuple. <strong>CAUTION:</strong> the wrapped bolt must not retain an input tuple
+ * after {@code execute(...)} returns (see {@link BatchTupleView}). Bolts that retain input tuples must enable copy
+ * mode via {@link #setCopyTuples(boolean)}. Copy mode is enabled automatically if acking is enabled and the wrapped
+ * bolt is a {@link BoltOutputBatcher} or wraps a {@link BoltOutputBatcher} via a chain of {@link IBoltWrapper}s,
+ * because buffered output tuples retain their anchors. A {@link BoltOutputBatcher} that is nested within a wrapper
+ * that does not implement {@link IBoltWrapper} cannot be detected; in this case, copy mode must be enabled
+ * explicitly.<br />
+ * <br />
+ * If the wrapped bolt is an {@link IBatchBolt}, input batches are not debatched but handed over to
+ * {@link IBatchBolt#executeBatch(BatchView)} as a whole. A wrapper (ie, an {@link IBoltWrapper}) that implements
+ * {@link IBatchBolt} only receives whole batches if the bolt at the end of the wrapper chain is an {@link IBatchBolt},
+ * too; thus, wrappers can forward {@link IBatchBolt#executeBatch(BatchView)} to their wrapped bolt unconditionally.
  * 
  * @author mjsax
  */
-public class InputDebatcher implements IRichBolt {
+public class InputDebatcher implements IBoltWrapper {
 	private final static long serialVersionUID = 7781347435499103691L;
 	
 	private final static Logger logger = LoggerFactory.getLogger(InputDebatcher.class);
@@ -61,6 +81,23 @@ public class InputDebatcher implements IRichBolt {
 	 * The current runtime environment.
 	 */
 	private TopologyContext topologyContext;
+	/**
+	 * If {@code true}, each extracted tuple is copied into a new {@link DebatchedTuple}; otherwise, a single
+	 * {@link BatchTupleView} is reused.
+	 */
+	private boolean copyTuples = false;
+	/**
+	 * The reusable view that is handed over to the wrapped bolt (if copy mode is disabled).
+	 */
+	private transient BatchTupleView view;
+	/**
+	 * The wrapped bolt if it processes whole batches; {@code null} otherwise.
+	 */
+	private transient IBatchBolt batchBolt;
+	/**
+	 * The reusable view that is handed over to the wrapped bolt (if it is an {@link IBatchBolt}).
+	 */
+	private transient BatchView batchView;
 	
 	
 	
@@ -76,16 +113,38 @@ public class InputDebatcher implements IRichBolt {
 	
 	
 	
+	/**
+	 * Enables or disables copy mode. In copy mode, each tuple of an input batch is copied into a new tuple object, that
+	 * can be retained by the wrapped bolt. Must be called before the topology is submitted.
+	 * 
+	 * @param copy
+	 *            {@code true} to enable copy mode; {@code false} to hand over a reusable {@link BatchTupleView}.
+	 */
+	public void setCopyTuples(boolean copy) {
+		this.copyTuples = copy;
+	}
+	
 	@Override
 	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
 		this.topologyContext = context;
-		this.wrappedBolt.prepare(stormConf, context, collector);
+		if(!this.copyTuples && isAckingEnabled(stormConf) && wrapsOutputBatcher(this.wrappedBolt)) {
+			logger.debug("enabling copy mode: buffered output tuples retain their anchors");
+			this.copyTuples = true;
+		}
+		this.view = new BatchTupleView();
+		if(processesBatches(this.wrappedBolt)) {
+			this.batchBolt = (IBatchBolt)this.wrappedBolt;
+			this.batchView = new BatchView();
+		}
+		this.wrappedBolt.prepare(stormConf, context, new OutputCollector(new DebatchingOutputCollector(collector)));
 	}
 	
 	/**
 	 * Processes a single input tuple or batch. In case of an regular input tuple, the input tuple is simply forwarded
 	 * to the wrapped bolt for processing. In case of an input batch, all tuples are extracted from the batch and
-	 * forwarded to the wrapped bolt one by one. The batch metadata is recreated for each extracted tuple.
+	 * forwarded to the wrapped bolt one by one, either via a reusable {@link BatchTupleView} or as a copy (see
+	 * {@link DebatchedTuple}). The batch metadata is recreated for each extracted tuple. If the wrapped bolt is an
+	 * {@link IBatchBolt}, the input batch is forwarded as a whole via a reusable {@link BatchView}.
 	 */
 	@Override
 	public void execute(Tuple input) {
@@ -106,18 +165,27 @@ public class InputDebatcher implements IRichBolt {
 			
 			final int size = columns[0].size();
 			logger.trace("batchSize: {}", new Integer(size));
-			for(int i = 0; i < size; ++i) {
-				final ArrayList<Object> attributes = new ArrayList<Object>(numberOfAttributes);
-				
-				for(int j = 0; j < numberOfAttributes; ++j) {
-					attributes.add(columns[j].get(i));
+			if(this.batchBolt != null) {
+				this.batchView.setBatch(input, columns);
+				this.batchBolt.executeBatch(this.batchView);
+			} else if(!this.copyTuples) {
+				final DebatchedInput batch = new DebatchedInput(input, size);
+				this.view.setBatch(batch, columns);
+				for(int i = 0; i < size; ++i) {
+					this.view.setRow(i);
+					if(logger.isTraceEnabled()) {
+						logger.trace("extracted tuple #{}: {}", new Integer(i), this.view);
+					}
+					
+					this.wrappedBolt.execute(this.view);
 				}
-				logger.trace("extracted tuple #{}: {}", new Integer(i), attributes);
-				
-				final TupleImpl tuple = new TupleImpl(this.topologyContext, attributes, input.getSourceTask(),
-					input.getSourceStreamId());
-				
-				this.wrappedBolt.execute(tuple);
+			} else {
+				this.copyTuples(new DebatchedInput(input, size), columns);
+			}
+			
+			// all values are extracted -> columns can be recycled by the producer
+			for(int i = 0; i < numberOfAttributes; ++i) {
+				columns[i].release();
 			}
 		} else {
 			this.wrappedBolt.execute(input);
@@ -125,6 +193,91 @@ public class InputDebatcher implements IRichBolt {
 		
 	}
 	
+	/**
+	 * Copies all tuples of the given input batch and forwards them to the wrapped bolt (copy mode).
+	 * 
+	 * @param batch
+	 *            The ack-tracking information of the input batch.
+	 * @param columns
+	 *            The columns of the input batch.
+	 */
+	private void copyTuples(DebatchedInput batch, BatchColumn[] columns) {
+		final int numberOfAttributes = columns.length;
+		final int size = columns[0].size();
+		for(int i = 0; i < size; ++i) {
+			final ArrayList<Object> attributes = new ArrayList<Object>(numberOfAttributes);
+			
+			for(int j = 0; j < numberOfAttributes; ++j) {
+				attributes.add(columns[j].get(i));
+			}
+			logger.trace("extracted tuple #{}: {}", new Integer(i), attributes);
+			
+			final DebatchedTuple tuple = new DebatchedTuple(this.topologyContext, attributes, batch);
+			
+			this.wrappedBolt.execute(tuple);
+		}
+	}
+	
+	/**
+	 * Checks if the given bolt is a {@link BoltOutputBatcher} or wraps a {@link BoltOutputBatcher} (at any level of a
+	 * chain of {@link IBoltWrapper}s).
+	 * 
+	 * @param bolt
+	 *            The bolt to be checked.
+	 * 
+	 * @return {@code true} if the given bolt is or wraps a {@link BoltOutputBatcher}; {@code false} otherwise
+	 */
+	private static boolean wrapsOutputBatcher(IRichBolt bolt) {
+		while(bolt instanceof IBoltWrapper) {
+			if(bolt instanceof BoltOutputBatcher) {
+				return true;
+			}
+			bolt = ((IBoltWrapper)bolt).getWrappedBolt();
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if the given bolt processes whole batches, ie, if the given bolt and all bolts of its chain of
+	 * {@link IBoltWrapper}s are {@link IBatchBolt}s.
+	 * 
+	 * @param bolt
+	 *            The bolt to be checked.
+	 * 
+	 * @return {@code true} if the given bolt processes whole batches; {@code false} otherwise
+	 */
+	private static boolean processesBatches(IRichBolt bolt) {
+		while(bolt instanceof IBatchBolt) {
+			if(!(bolt instanceof IBoltWrapper)) {
+				return true;
+			}
+			bolt = ((IBoltWrapper)bolt).getWrappedBolt();
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if acking is enabled, ie, if at least one acker executor is configured.
+	 * 
+	 * @param stormConf
+	 *            The Storm configuration.
+	 * 
+	 * @return {@code true} if acking is enabled; {@code false} otherwise
+	 */
+	private static boolean isAckingEnabled(@SuppressWarnings("rawtypes") Map stormConf) {
+		if(stormConf == null) {
+			return false;
+		}
+		// Storm starts one acker per worker by default
+		final Object ackers = stormConf.get(Config.TOPOLOGY_ACKER_EXECUTORS);
+		return ackers == null || ((Number)ackers).intValue() > 0;
+	}
+	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.wrappedBolt;
+	}
+	
 	@Override
 	public void cleanup() {
 		this.wrappedBolt.cleanup();
@@ -18,7 +18,10 @@
  */
 package de.hub.cs.dbis.aeolus.batching.api;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import backtype.storm.Config;
 import backtype.storm.spout.SpoutOutputCollector;
@@ -26,6 +29,8 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichSpout;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import de.hub.cs.dbis.aeolus.batching.AbstractBatchCollector;
+import de.hub.cs.dbis.aeolus.batching.AdaptiveBatchSizeController;
+import de.hub.cs.dbis.aeolus.batching.BatchMessageId;
 import de.hub.cs.dbis.aeolus.batching.BatchSpoutOutputCollector;
 import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
 
@@ -40,7 +45,19 @@ import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
  * <strong>CAUTION:</strong>Calls to {@code .emit(...)} will return {@code null}, because the tuples might still be in
  * the output buffer and not transfered yet.<br />
  * <br />
- * <strong>CAUTION:</strong>Tuple acking, failing, and anchoring is currently not supported.
+ * If a maximum buffer time is set (see {@link #setMaxBufferTime(long)}), each call to {@link #nextTuple()} emits all
+ * incomplete batches that exceed the maximum buffer time.<br />
+ * <br />
+ * Each call to {@link #nextTuple()} calls the wrapped spout until an output batch is emitted, the wrapped spout does
+ * not emit a tuple, or the per-call budget is exhausted (see {@link #setMaxNextTupleCalls(int)} and
+ * {@link #setMaxNextTupleTime(long)}). Thus, large batches do not block the spout executor (and thus, the processing
+ * of acks and fails) for a long time. If the wrapped spout is idle, incomplete batches can be emitted (see
+ * {@link #setIdleFlushThreshold(int)}).<br />
+ * <br />
+ * Tuple acking and failing is supported: each output batch is emitted with a single {@link BatchMessageId} that
+ * contains the message IDs of all buffered tuples. If a batch is acked or failed, all its tuples are acked or failed
+ * at the wrapped spout. Be aware, that {@code topology.max.spout.pending} limits the number of pending batches (and
+ * not tuples).
  * 
  * @author mjsax
  */
@@ -63,6 +80,74 @@ public class SpoutOutputBatcher implements IRichSpout {
 	 * The size of the output batches (for all output streams).
 	 */
 	private final int batchSize;
+	/**
+	 * The maximum buffer time (in ms) for all output streams (a negative value disables the timeout).
+	 */
+	private long maxBufferTime = -1;
+	/**
+	 * The maximum buffer times (in ms) for single output streams.
+	 */
+	private final HashMap<String, Long> maxBufferTimes = new HashMap<String, Long>();
+	/**
+	 * The maximum estimated size (in bytes) of the output batches for all output streams (a non-positive value
+	 * disables the bound).
+	 */
+	private int maxBatchBytes = -1;
+	/**
+	 * The maximum estimated sizes (in bytes) of the output batches for single output streams.
+	 */
+	private final HashMap<String, Integer> maxBatchBytesPerStream = new HashMap<String, Integer>();
+	/**
+	 * The compression threshold (in bytes) for all output streams (a negative value disables compression).
+	 */
+	private int compressionThreshold = -1;
+	/**
+	 * The compression thresholds (in bytes) for single output streams.
+	 */
+	private final HashMap<String, Integer> compressionThresholds = new HashMap<String, Integer>();
+	/**
+	 * The batch size for receivers in the same worker, for all output streams (a negative value applies the regular
+	 * batch size).
+	 */
+	private int localBatchSize = -1;
+	/**
+	 * The batch sizes for receivers in the same worker, for single output streams.
+	 */
+	private final HashMap<String, Integer> localBatchSizes = new HashMap<String, Integer>();
+	/**
+	 * The output streams that are never batched and flush all buffered batches of the same receivers.
+	 */
+	private final HashSet<String> controlStreams = new HashSet<String>();
+	/**
+	 * Adjusts the batch sizes at runtime (can be {@code null}).
+	 */
+	private AdaptiveBatchSizeController batchSizeController;
+	/**
+	 * The maximum number of recycled batch columns per column type (a non-positive value disables recycling).
+	 */
+	private int columnPoolSize = 0;
+	/**
+	 * If {@code true}, output tuples are serialized when they are inserted into an output batch.
+	 */
+	private boolean serializeOnAppend = false;
+	/**
+	 * The maximum number of calls to the wrapped spout per call of {@link #nextTuple()} (a non-positive value disables
+	 * the budget).
+	 */
+	private int maxNextTupleCalls = -1;
+	/**
+	 * The maximum time (in ms) spent per call of {@link #nextTuple()} (a negative value disables the budget).
+	 */
+	private long maxNextTupleTime = -1;
+	/**
+	 * The number of consecutive calls of {@link #nextTuple()} without any emitted tuple, after which all incomplete
+	 * batches are emitted (a non-positive value disables idle flushing).
+	 */
+	private int idleFlushThreshold = -1;
+	/**
+	 * The number of consecutive calls of {@link #nextTuple()} without any emitted tuple.
+	 */
+	private int idleCalls = 0;
 	
 	
 	
@@ -116,6 +201,231 @@ public class SpoutOutputBatcher implements IRichSpout {
 	
 	
 	
+	/**
+	 * Sets the maximum time a tuple can be buffered in an incomplete batch, for all output streams. Must be called
+	 * before the topology is submitted.
+	 * 
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 */
+	public void setMaxBufferTime(long maxBufferTime) {
+		this.maxBufferTime = maxBufferTime;
+	}
+	
+	/**
+	 * Sets the maximum time a tuple can be buffered in an incomplete batch of the given output stream. Overwrites the
+	 * value set via {@link #setMaxBufferTime(long)} for this stream. Must be called before the topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBufferTime
+	 *            The maximum buffer time in ms (a negative value disables the timeout).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setMaxBufferTime(String streamId, long maxBufferTime) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.maxBufferTimes.put(streamId, new Long(maxBufferTime));
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches, for all output streams (see
+	 * {@link AbstractBatchCollector#setMaxBatchBytes(String, int)}). An output batch is emitted as soon as either its
+	 * batch size or its maximum size is reached. Must be called before the topology is submitted.
+	 * 
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 */
+	public void setMaxBatchBytes(int maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+	
+	/**
+	 * Bounds the estimated serialized size of the output batches of the given output stream. Overwrites the value set
+	 * via {@link #setMaxBatchBytes(int)} for this stream. Must be called before the topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param maxBatchBytes
+	 *            The maximum estimated batch size in bytes (a non-positive value disables the bound).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setMaxBatchBytes(String streamId, int maxBatchBytes) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.maxBatchBytesPerStream.put(streamId, new Integer(maxBatchBytes));
+	}
+	
+	/**
+	 * Enables compression of output batches that are transfered to a different worker, for all output streams (see
+	 * {@link AbstractBatchCollector#setCompressionThreshold(String, int)}). Must be called before the topology is
+	 * submitted.
+	 * 
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 */
+	public void setCompressionThreshold(int threshold) {
+		this.compressionThreshold = threshold;
+	}
+	
+	/**
+	 * Enables compression of output batches of the given output stream, that are transfered to a different worker.
+	 * Overwrites the value set via {@link #setCompressionThreshold(int)} for this stream. Must be called before the
+	 * topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param threshold
+	 *            The minimum number of serialized bytes to compress a batch column (a negative value disables
+	 *            compression).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setCompressionThreshold(String streamId, int threshold) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.compressionThresholds.put(streamId, new Integer(threshold));
+	}
+	
+	/**
+	 * Sets the batch size for receiver tasks that run in the same worker as the producer task, for all output streams
+	 * (see {@link AbstractBatchCollector#setLocalBatchSize(String, int)}). Must be called before the topology is
+	 * submitted.
+	 * 
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 */
+	public void setLocalBatchSize(int localBatchSize) {
+		this.localBatchSize = localBatchSize;
+	}
+	
+	/**
+	 * Sets the batch size for receiver tasks of the given output stream that run in the same worker as the producer
+	 * task. Overwrites the value set via {@link #setLocalBatchSize(int)} for this stream. Must be called before the
+	 * topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * @param localBatchSize
+	 *            The batch size for local receivers (zero disables batching for local receivers; a negative value
+	 *            applies the regular batch size).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void setLocalBatchSize(String streamId, int localBatchSize) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.localBatchSizes.put(streamId, new Integer(localBatchSize));
+	}
+	
+	/**
+	 * Marks the given output stream as control stream (see {@link AbstractBatchCollector#addControlStream(String)}).
+	 * Control tuples (eg, punctuations or flush tuples that signal progress to {@code TimestampMerger}) are never
+	 * batched. Before a control tuple is emitted, all buffered batches of all output streams that share a receiver
+	 * with the control stream are emitted, such that the order of data and control tuples is preserved. Must be
+	 * called before the topology is submitted.
+	 * 
+	 * @param streamId
+	 *            The name of the output stream.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code streamId} is {@code null}
+	 */
+	public void addControlStream(String streamId) {
+		if(streamId == null) {
+			throw new IllegalArgumentException("Parameter <streamId> must not be null.");
+		}
+		this.controlStreams.add(streamId);
+	}
+	
+	/**
+	 * Sets an {@link AdaptiveBatchSizeController} that adjusts the batch sizes of all batched output streams at
+	 * runtime, starting with the batch sizes given in the constructor. Must be called before the topology is
+	 * submitted. If the wrapped spout emits tuples with message IDs, the complete latency of each acked batch is
+	 * reported to the controller as downstream latency (see {@link #ack(Object)}). Additionally, the wrapped spout can
+	 * look up the controller via {@link AdaptiveBatchSizeController#getController(TopologyContext)} to report
+	 * downstream latencies itself.
+	 * 
+	 * @param controller
+	 *            The controller to be used ({@code null} disables batch size adaption).
+	 */
+	public void setBatchSizeController(AdaptiveBatchSizeController controller) {
+		this.batchSizeController = controller;
+	}
+	
+	/**
+	 * Enables recycling of output batch columns (see {@link AbstractBatchCollector#setColumnPoolSize(int)}). All
+	 * receiving bolts must be wrapped by an {@link InputDebatcher}. Must be called before the topology is submitted.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of free columns per column type that are kept for reuse (a non-positive value
+	 *            disables recycling).
+	 */
+	public void setColumnPoolSize(int poolSize) {
+		this.columnPoolSize = poolSize;
+	}
+	
+	/**
+	 * Enables serialize-on-append (see {@link AbstractBatchCollector#setSerializeOnAppend(boolean)}). Must be called
+	 * before the topology is submitted.
+	 * 
+	 * @param serializeOnAppend
+	 *            {@code true} to enable serialize-on-append; {@code false} to use typed columns
+	 */
+	public void setSerializeOnAppend(boolean serializeOnAppend) {
+		this.serializeOnAppend = serializeOnAppend;
+	}
+	
+	/**
+	 * Limits the number of times the wrapped spout is called within a single call of {@link #nextTuple()} (ie, the
+	 * number of emitted tuples, if the wrapped spout emits a single tuple per call). If the budget is exhausted,
+	 * {@link #nextTuple()} returns and leaves the current output batch incomplete. Must be called before the topology
+	 * is submitted.
+	 * 
+	 * @param maxCalls
+	 *            The maximum number of calls to the wrapped spout (a non-positive value disables the budget).
+	 */
+	public void setMaxNextTupleCalls(int maxCalls) {
+		this.maxNextTupleCalls = maxCalls;
+	}
+	
+	/**
+	 * Limits the time spent within a single call of {@link #nextTuple()}. If the budget is exhausted,
+	 * {@link #nextTuple()} returns and leaves the current output batch incomplete. Must be called before the topology
+	 * is submitted.
+	 * 
+	 * @param maxTime
+	 *            The maximum time in ms (a negative value disables the budget).
+	 */
+	public void setMaxNextTupleTime(long maxTime) {
+		this.maxNextTupleTime = maxTime;
+	}
+	
+	/**
+	 * Enables emitting incomplete batches if the wrapped spout is idle. If the wrapped spout does not emit any tuple
+	 * within {@code idleCalls} consecutive calls of {@link #nextTuple()}, all incomplete batches are emitted. Thus,
+	 * buffered tuples are not delayed if the data source runs dry. Must be called before the topology is submitted.
+	 * 
+	 * @param idleCalls
+	 *            The number of consecutive calls without any emitted tuple (a non-positive value disables idle
+	 *            flushing).
+	 */
+	public void setIdleFlushThreshold(int idleCalls) {
+		this.idleFlushThreshold = idleCalls;
+	}
+	
 	@Override
 	public void open(@SuppressWarnings("rawtypes") Map conf, TopologyContext context, SpoutOutputCollector collector) {
 		if(this.batchSizes != null) {
@@ -123,6 +433,42 @@ public class SpoutOutputBatcher implements IRichSpout {
 		} else {
 			this.batchCollector = new BatchSpoutOutputCollector(context, collector, this.batchSize);
 		}
+		
+		for(String streamId : this.controlStreams) {
+			this.batchCollector.addControlStream(streamId);
+		}
+		
+		if(this.maxBufferTime >= 0) {
+			this.batchCollector.setMaxBufferTime(this.maxBufferTime);
+		}
+		for(Entry<String, Long> time : this.maxBufferTimes.entrySet()) {
+			this.batchCollector.setMaxBufferTime(time.getKey(), time.getValue().longValue());
+		}
+		if(this.maxBatchBytes > 0) {
+			this.batchCollector.setMaxBatchBytes(this.maxBatchBytes);
+		}
+		for(Entry<String, Integer> bytes : this.maxBatchBytesPerStream.entrySet()) {
+			this.batchCollector.setMaxBatchBytes(bytes.getKey(), bytes.getValue().intValue());
+		}
+		if(this.compressionThreshold >= 0) {
+			this.batchCollector.setCompressionThreshold(this.compressionThreshold);
+		}
+		for(Entry<String, Integer> threshold : this.compressionThresholds.entrySet()) {
+			this.batchCollector.setCompressionThreshold(threshold.getKey(), threshold.getValue().intValue());
+		}
+		if(this.localBatchSize >= 0) {
+			this.batchCollector.setLocalBatchSize(this.localBatchSize);
+		}
+		for(Entry<String, Integer> size : this.localBatchSizes.entrySet()) {
+			this.batchCollector.setLocalBatchSize(size.getKey(), size.getValue().intValue());
+		}
+		this.batchCollector.setBatchSizeController(this.batchSizeController);
+		if(this.batchSizeController != null) {
+			this.batchSizeController.register(context);
+		}
+		this.batchCollector.setColumnPoolSize(this.columnPoolSize);
+		this.batchCollector.setSerializeOnAppend(this.serializeOnAppend);
+		
 		this.wrappedSpout.open(conf, context, this.batchCollector);
 	}
 	
@@ -148,32 +494,73 @@ public class SpoutOutputBatcher implements IRichSpout {
 		/*
 		 * In order to avoid a waiting penalty (because of a missing emit), we try to fill up a complete batch before
 		 * returning. If the wrapped spout does not add a new tuple to an output batch we return as well in order to
-		 * avoid busy waiting within the while-true-loop.
+		 * avoid busy waiting within the while-true-loop. Furthermore, we return if the per-call budget is exhausted in
+		 * order to not block the processing of acks and fails.
 		 */
+		final long deadline = this.maxNextTupleTime >= 0 ? System.nanoTime() + this.maxNextTupleTime * 1000000 : 0;
+		boolean emitted = false;
+		int calls = 0;
 		while(true) {
 			this.batchCollector.tupleEmitted = false;
 			this.batchCollector.batchEmitted = false;
 			
 			this.wrappedSpout.nextTuple();
 			
-			if(!this.batchCollector.tupleEmitted || this.batchCollector.batchEmitted) {
+			if(!this.batchCollector.tupleEmitted) {
+				break;
+			}
+			emitted = true;
+			if(this.batchCollector.batchEmitted || ++calls == this.maxNextTupleCalls) {
+				break;
+			}
+			if(this.maxNextTupleTime >= 0 && System.nanoTime() - deadline >= 0) {
 				break;
 			}
 		}
+		
+		if(emitted) {
+			this.idleCalls = 0;
+		} else if(this.idleCalls < this.idleFlushThreshold && ++this.idleCalls == this.idleFlushThreshold) {
+			// wrapped spout is idle -> do not delay buffered tuples any longer
+			this.batchCollector.flush();
+		}
+		
+		this.batchCollector.flushStale();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If {@code msgId} belongs to a batch, all tuples of the batch are acked at the wrapped spout. If a
+	 * {@link AdaptiveBatchSizeController} is used, the time between emitting and acking the batch is reported to it as
+	 * downstream latency of the batch's output stream.
+	 */
 	@Override
 	public void ack(Object msgId) {
-		// TODO: receiving ack for whole batch -> reply acks for single tuples to user spout
-		// TODO: store original Ids of all tuples for each batch
-		this.wrappedSpout.ack(msgId);
+		if(msgId instanceof BatchMessageId) {
+			final BatchMessageId batchId = (BatchMessageId)msgId;
+			if(this.batchSizeController != null && batchId.getStreamId() != null) {
+				this.batchSizeController.reportLatency(batchId.getStreamId(), System.currentTimeMillis()
+					- batchId.getEmitTimestamp());
+			}
+			batchId.ack(this.wrappedSpout);
+		} else {
+			this.wrappedSpout.ack(msgId);
+		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If {@code msgId} belongs to a batch, all tuples of the batch are failed at the wrapped spout.
+	 */
 	@Override
 	public void fail(Object msgId) {
-		// TODO: receiving fail for whole batch -> reply fails for single tuples to user spout
-		// TODO: store original Ids of all tuples for each batch
-		this.wrappedSpout.fail(msgId);
+		if(msgId instanceof BatchMessageId) {
+			((BatchMessageId)msgId).fail(this.wrappedSpout);
+		} else {
+			this.wrappedSpout.fail(msgId);
+		}
 	}
 	
 	@Override
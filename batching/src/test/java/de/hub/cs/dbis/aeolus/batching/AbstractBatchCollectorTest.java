@@ -18,14 +18,13 @@
  */
 package de.hub.cs.dbis.aeolus.batching;
 
-import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,16 +38,13 @@ import java.util.Set;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 
 import backtype.storm.Config;
 import backtype.storm.generated.Grouping;
+import backtype.storm.spout.ISpout;
 import backtype.storm.task.TopologyContext;
-import backtype.storm.task.WorkerTopologyContext;
 import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
 import backtype.storm.utils.Utils;
 
@@ -59,8 +55,6 @@ import backtype.storm.utils.Utils;
 /**
  * @author mjsax
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest(StormConnector.class)
 public class AbstractBatchCollectorTest {
 	private Random r;
 	final String sourceId = "sourceId";
@@ -134,6 +128,11 @@ public class AbstractBatchCollectorTest {
 		return batchSizes;
 	}
 	
+	private int getFieldsGroupingTaskIndex(Values tuple, int numberOfTasks) {
+		final int index = tuple.hashCode() % numberOfTasks;
+		return index < 0 ? index + numberOfTasks : index;
+	}
+	
 	
 	
 	@Before
@@ -141,8 +140,6 @@ public class AbstractBatchCollectorTest {
 		final long seed = System.currentTimeMillis();
 		this.r = new Random(seed);
 		System.out.println("Test seed: " + seed);
-		
-		PowerMockito.mockStatic(StormConnector.class);
 	}
 	
 	
@@ -391,10 +388,6 @@ public class AbstractBatchCollectorTest {
 			maxNumberOfBatches *= numberOfConsumerTasks[i];
 		}
 		final int numberOfDistinctValues = 1 + maxNumberOfBatches / 2 + this.r.nextInt(2 * maxNumberOfBatches);
-		Values[] partitionsTuple = new Values[numberOfDistinctValues];
-		for(int i = 0; i < numberOfDistinctValues; ++i) {
-			partitionsTuple[i] = new Values(new Integer(i));
-		}
 		
 		
 		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
@@ -444,13 +437,6 @@ public class AbstractBatchCollectorTest {
 			when(context.getComponentTasks(consumerId)).thenReturn(consumerTasks);
 			taskIds.put(consumerId, consumerTasks);
 			
-			for(int j = 0; j < numberOfDistinctValues; ++j) {
-				when(
-					StormConnector.getFieldsGroupingReceiverTaskId(any(WorkerTopologyContext.class), eq(this.sourceId),
-						eq(outputStreams[i]), eq(consumerId), eq(partitionsTuple[j]))).thenReturn(
-					consumerTasks.get(j % numberOfConsumerTasks[i]));
-			}
-			
 			Map<String, Grouping> streamMapping = targets.get(outputStreams[i]);
 			if(streamMapping == null) {
 				targets.put(outputStreams[i], consumer);
@@ -474,6 +460,7 @@ public class AbstractBatchCollectorTest {
 		when(context.getThisTargets()).thenReturn(targets);
 		
 		when(new Boolean(grouping.is_set_fields())).thenReturn(new Boolean(true));
+		when(grouping.get_fields()).thenReturn(Arrays.asList("attribute"));
 		
 		
 		
@@ -513,7 +500,7 @@ public class AbstractBatchCollectorTest {
 					for(int k = 0; k < numberOfConsumerTasks.length; ++k) {
 						if(outputStreams[k].equals(outputStream)) {
 							batchKey.add(taskIds.get(consumerPrefix + k).get(
-								((Integer)tuple.get(0)).intValue() % numberOfConsumerTasks[k]));
+								this.getFieldsGroupingTaskIndex(tuple, numberOfConsumerTasks[k])));
 						}
 					}
 					
@@ -606,6 +593,7 @@ public class AbstractBatchCollectorTest {
 		
 		Grouping grouping = mock(Grouping.class);
 		when(new Boolean(grouping.is_set_fields())).thenReturn(new Boolean(true));
+		when(grouping.get_fields()).thenReturn(Arrays.asList("attribute"));
 		Grouping directGrouping = mock(Grouping.class);
 		when(new Boolean(directGrouping.is_set_direct())).thenReturn(new Boolean(true));
 		
@@ -617,10 +605,6 @@ public class AbstractBatchCollectorTest {
 			maxNumberOfBatches *= numberOfConsumerTasks[i];
 		}
 		final int numberOfDistinctValues = 1 + maxNumberOfBatches / 2 + this.r.nextInt(2 * maxNumberOfBatches);
-		Values[] partitionsTuple = new Values[numberOfDistinctValues];
-		for(int i = 0; i < numberOfDistinctValues; ++i) {
-			partitionsTuple[i] = new Values(new Integer(i));
-		}
 		
 		
 		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
@@ -648,13 +632,6 @@ public class AbstractBatchCollectorTest {
 			when(context.getComponentTasks(consumerId)).thenReturn(consumerTasks);
 			taskIds.put(consumerId, consumerTasks);
 			
-			for(int j = 0; j < numberOfDistinctValues; ++j) {
-				when(
-					StormConnector.getFieldsGroupingReceiverTaskId(any(WorkerTopologyContext.class), eq(this.sourceId),
-						eq(outputStreams[i]), eq(consumerId), eq(partitionsTuple[j]))).thenReturn(
-					consumerTasks.get(j % numberOfConsumerTasks[i]));
-			}
-			
 			Map<String, Grouping> streamMapping = targets.get(outputStreams[i]);
 			if(streamMapping == null) {
 				targets.put(outputStreams[i], consumer);
@@ -725,7 +702,7 @@ public class AbstractBatchCollectorTest {
 					for(int k = 0; k < numberOfConsumerTasks.length; ++k) {
 						if(outputStreams[k].equals(outputStream)) {
 							Integer tid = taskIds.get(consumerPrefix + k).get(
-								((Integer)tuple.get(0)).intValue() % numberOfConsumerTasks[k]);
+								this.getFieldsGroupingTaskIndex(tuple, numberOfConsumerTasks[k]));
 							
 							Batch batch = currentBatch.get(tid);
 							if(batch != null) {
@@ -1099,13 +1076,427 @@ public class AbstractBatchCollectorTest {
 		Assert.assertEquals(40, collector.resultBuffer.get(directStream2).size());
 	}
 	
+	@Test
+	public void testFlushStale() {
+		final String secondStream = "stream-2";
+		final String directStream = "direct";
+		
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", mock(Grouping.class));
+		
+		HashMap<String, Grouping> directConsumer = new HashMap<String, Grouping>();
+		Grouping direct = mock(Grouping.class);
+		when(new Boolean(direct.is_set_direct())).thenReturn(new Boolean(true));
+		directConsumer.put("directReceiver", direct);
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		targets.put(secondStream, consumer);
+		targets.put(directStream, directConsumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("dummy"));
+		when(context.getComponentOutputFields(null, secondStream)).thenReturn(new Fields("dummy"));
+		when(context.getComponentOutputFields(null, directStream)).thenReturn(new Fields("dummy"));
+		when(context.getComponentTasks("directReceiver")).thenReturn(
+			Arrays.asList(new Integer[] {new Integer(0), new Integer(1), new Integer(2)}));
+		
+		final int batchSize = 5;
+		TestBatchCollector collector = new TestBatchCollector(context, batchSize);
+		collector.setMaxBufferTime(Utils.DEFAULT_STREAM_ID, 1000);
+		collector.setMaxBufferTime(directStream, 0);
+		
+		final long start = System.currentTimeMillis();
+		for(int i = 0; i < 7; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+			collector.tupleEmit(secondStream, null, new Values(new Integer(i)), null);
+		}
+		collector.tupleEmitDirect(0, directStream, null, new Values(new Integer(0)), null);
+		collector.tupleEmitDirect(2, directStream, null, new Values(new Integer(1)), null);
+		
+		Assert.assertEquals(1, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(1, collector.resultBuffer.get(secondStream).size());
+		Assert.assertNull(collector.resultBuffer.get(directStream));
+		
+		collector.flushStale(start - 1);
+		
+		Assert.assertEquals(1, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(1, collector.resultBuffer.get(secondStream).size());
+		Assert.assertNull(collector.resultBuffer.get(directStream));
+		
+		collector.flushStale(System.currentTimeMillis());
+		
+		Assert.assertEquals(1, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(1, collector.resultBuffer.get(secondStream).size());
+		Assert.assertEquals(2, collector.resultBuffer.get(directStream).size());
+		Assert.assertEquals(Arrays.asList(new Integer[] {new Integer(0), new Integer(2)}),
+			collector.taskBuffer.get(directStream));
+		
+		collector.flushStale(System.currentTimeMillis() + 1000);
+		
+		Assert.assertEquals(2, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(1, collector.resultBuffer.get(secondStream).size());
+		Assert.assertEquals(2, collector.resultBuffer.get(directStream).size());
+		
+		collector.flush();
+		
+		Assert.assertEquals(2, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(2, collector.resultBuffer.get(secondStream).size());
+		Assert.assertEquals(2, collector.resultBuffer.get(directStream).size());
+	}
+	
+	@Test
+	public void testBatchSizeController() {
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", mock(Grouping.class));
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("dummy"));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 5);
+		collector.setBatchSizeController(new AdaptiveBatchSizeController(3, 3, 1000));
+		
+		List<Object> expectedResult = new LinkedList<Object>();
+		Batch batch = new Batch(5, 1);
+		for(int i = 0; i < 5; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+			batch.addTuple(new Values(new Integer(i)));
+		}
+		expectedResult.add(batch);
+		
+		batch = new Batch(3, 1);
+		for(int i = 5; i < 11; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+			batch.addTuple(new Values(new Integer(i)));
+			if(batch.isFull()) {
+				expectedResult.add(batch);
+				batch = new Batch(3, 1);
+			}
+		}
+		
+		Assert.assertEquals(expectedResult, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID));
+	}
+	
+	@Test
+	public void testSharedFieldsGroupingBuffers() {
+		Grouping grouping = mock(Grouping.class);
+		when(new Boolean(grouping.is_set_fields())).thenReturn(new Boolean(true));
+		when(grouping.get_fields()).thenReturn(Arrays.asList("a"));
+		
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver-1", grouping);
+		consumer.put("receiver-2", grouping); // same fields and dop as receiver-1
+		consumer.put("receiver-3", grouping);
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("a"));
+		when(context.getComponentTasks("receiver-1")).thenReturn(
+			Arrays.asList(new Integer(1), new Integer(2), new Integer(3)));
+		when(context.getComponentTasks("receiver-2")).thenReturn(
+			Arrays.asList(new Integer(4), new Integer(5), new Integer(6)));
+		when(context.getComponentTasks("receiver-3")).thenReturn(Arrays.asList(new Integer(7), new Integer(8)));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 1000);
+		for(int i = 0; i < 100; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+		}
+		collector.flush();
+		
+		List<Object> result = collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(6, result.size());
+		for(Object b : result) {
+			Batch batch = (Batch)b;
+			final BatchColumn column = batch.get(0);
+			final Values first = new Values(column.get(0));
+			for(int i = 1; i < column.size(); ++i) {
+				Values tuple = new Values(column.get(i));
+				Assert.assertEquals(this.getFieldsGroupingTaskIndex(first, 3),
+					this.getFieldsGroupingTaskIndex(tuple, 3));
+				Assert.assertEquals(this.getFieldsGroupingTaskIndex(first, 2),
+					this.getFieldsGroupingTaskIndex(tuple, 2));
+			}
+		}
+	}
+	
+	@Test
+	public void testShuffleGroupingViaDirectEmit() {
+		Grouping fieldsGrouping = mock(Grouping.class);
+		when(new Boolean(fieldsGrouping.is_set_fields())).thenReturn(new Boolean(true));
+		when(fieldsGrouping.get_fields()).thenReturn(Arrays.asList("a"));
+		Grouping shuffleGrouping = mock(Grouping.class);
+		when(new Boolean(shuffleGrouping.is_set_shuffle())).thenReturn(new Boolean(true));
+		Grouping directGrouping = mock(Grouping.class);
+		when(new Boolean(directGrouping.is_set_direct())).thenReturn(new Boolean(true));
+		
+		final String directStream = BatchingOutputFieldsDeclarer.STREAM_PREFIX + Utils.DEFAULT_STREAM_ID;
+		
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("fieldsReceiver", fieldsGrouping);
+		consumer.put("shuffleReceiver", shuffleGrouping);
+		HashMap<String, Grouping> directConsumer = new HashMap<String, Grouping>();
+		directConsumer.put("fieldsReceiver", directGrouping);
+		directConsumer.put("shuffleReceiver", directGrouping);
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		targets.put(directStream, directConsumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("a"));
+		when(context.getComponentOutputFields(null, directStream)).thenReturn(new Fields("a"));
+		when(context.getComponentTasks("fieldsReceiver")).thenReturn(Arrays.asList(new Integer(0), new Integer(1)));
+		when(context.getComponentTasks("shuffleReceiver")).thenReturn(Arrays.asList(new Integer(2), new Integer(3)));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 2);
+		for(int i = 0; i < 4; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(0)), null);
+		}
+		
+		// all tuples have the same key -> two batches for a single fields-grouping receiver task
+		// round-robin -> one batch for each shuffle-grouping receiver task
+		final Integer fieldsTask = new Integer(this.getFieldsGroupingTaskIndex(new Values(new Integer(0)), 2));
+		final List<Integer> tasks = collector.taskBuffer.get(directStream);
+		Assert.assertEquals(4, tasks.size());
+		Assert.assertEquals(2, Collections.frequency(tasks, fieldsTask));
+		Assert.assertEquals(1, Collections.frequency(tasks, new Integer(2)));
+		Assert.assertEquals(1, Collections.frequency(tasks, new Integer(3)));
+		Assert.assertNull(collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID));
+	}
+	
+	@Test
+	public void testLocalBatchSizeDirectEmit() {
+		Grouping directGrouping = mock(Grouping.class);
+		when(new Boolean(directGrouping.is_set_direct())).thenReturn(new Boolean(true));
+		
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", directGrouping);
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("a"));
+		when(context.getComponentTasks("receiver")).thenReturn(Arrays.asList(new Integer(1), new Integer(2)));
+		when(context.getThisWorkerTasks()).thenReturn(Arrays.asList(new Integer(0), new Integer(1)));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 5);
+		collector.setLocalBatchSize(0);
+		for(int i = 0; i < 5; ++i) {
+			collector.tupleEmitDirect(1, Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+			collector.tupleEmitDirect(2, Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+		}
+		
+		// local task 1 receives single tuples, remote task 2 receives a single batch
+		List<Integer> tasks = collector.taskBuffer.get(Utils.DEFAULT_STREAM_ID);
+		List<Object> result = collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(6, result.size());
+		for(int i = 0; i < result.size(); ++i) {
+			if(tasks.get(i).intValue() == 1) {
+				Assert.assertTrue(result.get(i) instanceof Values);
+			} else {
+				Assert.assertEquals(2, tasks.get(i).intValue());
+				Assert.assertEquals(5, ((Batch)result.get(i)).getNumberOfTuples());
+			}
+		}
+		
+		collector = new TestBatchCollector(context, 5);
+		collector.setLocalBatchSize(2);
+		for(int i = 0; i < 4; ++i) {
+			collector.tupleEmitDirect(1, Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+			collector.tupleEmitDirect(2, Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), null);
+		}
+		
+		Assert.assertEquals(Arrays.asList(new Integer(1), new Integer(1)),
+			collector.taskBuffer.get(Utils.DEFAULT_STREAM_ID));
+		for(Object batch : collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID)) {
+			Assert.assertEquals(2, ((Batch)batch).getNumberOfTuples());
+		}
+	}
+	
+	@Test
+	public void testLocalBatchSizeFieldsGrouping() {
+		Grouping grouping = mock(Grouping.class);
+		when(new Boolean(grouping.is_set_fields())).thenReturn(new Boolean(true));
+		when(grouping.get_fields()).thenReturn(Arrays.asList("a"));
+		
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", grouping);
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("a"));
+		when(context.getComponentTasks("receiver")).thenReturn(Arrays.asList(new Integer(2), new Integer(1)));
+		when(context.getThisWorkerTasks()).thenReturn(Arrays.asList(new Integer(0), new Integer(1)));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 1000);
+		collector.setLocalBatchSize(0);
+		int numberOfLocalTuples = 0;
+		for(int i = 0; i < 100; ++i) {
+			final Values tuple = new Values(new Integer(i));
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, tuple, null);
+			if(this.getFieldsGroupingTaskIndex(tuple, 2) == 0) { // task 1
+				++numberOfLocalTuples;
+			}
+		}
+		collector.flush();
+		
+		List<Object> result = collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(numberOfLocalTuples + 1, result.size());
+		for(int i = 0; i < numberOfLocalTuples; ++i) {
+			Assert.assertEquals(0, this.getFieldsGroupingTaskIndex((Values)result.get(i), 2));
+		}
+		Assert.assertEquals(100 - numberOfLocalTuples, ((Batch)result.get(numberOfLocalTuples)).getNumberOfTuples());
+	}
+	
+	@Test
+	public void testControlStream() {
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", mock(Grouping.class));
+		HashMap<String, Grouping> otherConsumer = new HashMap<String, Grouping>();
+		otherConsumer.put("otherReceiver", mock(Grouping.class));
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put("data", consumer);
+		targets.put("control", consumer);
+		targets.put("other", otherConsumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, "data")).thenReturn(new Fields("a"));
+		when(context.getComponentOutputFields(null, "control")).thenReturn(new Fields("ts"));
+		when(context.getComponentOutputFields(null, "other")).thenReturn(new Fields("a"));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 5);
+		collector.tupleEmit("control", null, new Values(new Integer(-1)), null);
+		Assert.assertEquals(0, collector.resultBuffer.size());
+		
+		collector.addControlStream("control");
+		// pending control batch is emitted
+		Assert.assertEquals(1, collector.resultBuffer.get("control").size());
+		
+		for(int i = 0; i < 3; ++i) {
+			collector.tupleEmit("data", null, new Values(new Integer(i)), null);
+			collector.tupleEmit("other", null, new Values(new Integer(i)), null);
+		}
+		Assert.assertNull(collector.resultBuffer.get("data"));
+		
+		final Values controlTuple = new Values(new Integer(3));
+		collector.tupleEmit("control", null, controlTuple, null);
+		
+		// data batch is emitted before the unbatched control tuple; other receiver is not affected
+		Assert.assertEquals(1, collector.resultBuffer.get("data").size());
+		Assert.assertEquals(3, ((Batch)collector.resultBuffer.get("data").get(0)).getNumberOfTuples());
+		Assert.assertEquals(2, collector.resultBuffer.get("control").size());
+		Assert.assertSame(controlTuple, collector.resultBuffer.get("control").get(1));
+		Assert.assertNull(collector.resultBuffer.get("other"));
+	}
+	
+	@Test
+	public void testMessageIds() {
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", mock(Grouping.class));
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("dummy"));
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 3);
+		for(int i = 0; i < 3; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(i)), new Integer(i));
+		}
+		collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(3)), null);
+		collector.flush();
+		
+		List<Object> messageIds = collector.messageIdBuffer.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(2, messageIds.size());
+		Assert.assertTrue(messageIds.get(0) instanceof BatchMessageId);
+		Assert.assertEquals(3, ((BatchMessageId)messageIds.get(0)).size());
+		Assert.assertEquals(Utils.DEFAULT_STREAM_ID, ((BatchMessageId)messageIds.get(0)).getStreamId());
+		Assert.assertNull(messageIds.get(1));
+		
+		ISpout spout = mock(ISpout.class);
+		((BatchMessageId)messageIds.get(0)).ack(spout);
+		verify(spout).ack(new Integer(0));
+		verify(spout).ack(new Integer(1));
+		verify(spout).ack(new Integer(2));
+	}
+	
+	@Test
+	public void testAnchoring() {
+		HashMap<String, Grouping> consumer = new HashMap<String, Grouping>();
+		consumer.put("receiver", mock(Grouping.class));
+		
+		Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(Utils.DEFAULT_STREAM_ID, consumer);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(null, Utils.DEFAULT_STREAM_ID)).thenReturn(new Fields("dummy"));
+		
+		Tuple anchor1 = mock(Tuple.class);
+		Tuple anchor2 = mock(Tuple.class);
+		Tuple anchor3 = mock(Tuple.class);
+		
+		TestBatchCollector collector = new TestBatchCollector(context, 3);
+		collector.tupleEmit(Utils.DEFAULT_STREAM_ID, Arrays.asList(new Tuple[] {anchor1}), new Values(new Integer(0)),
+			null);
+		collector.tupleEmit(Utils.DEFAULT_STREAM_ID, Arrays.asList(new Tuple[] {anchor1, anchor2}), new Values(
+			new Integer(1)), null);
+		
+		Assert.assertTrue(collector.deferAck(anchor1));
+		Assert.assertFalse(collector.deferAck(anchor3));
+		Assert.assertNull(collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID));
+		
+		collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, new Values(new Integer(2)), null);
+		
+		Assert.assertEquals(1, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(new HashSet<Tuple>(Arrays.asList(new Tuple[] {anchor1, anchor2})), new HashSet<Tuple>(
+			collector.anchorBuffer.get(Utils.DEFAULT_STREAM_ID).get(0)));
+		Assert.assertEquals(Arrays.asList(new Tuple[] {anchor1}), collector.ackBuffer);
+		
+		collector.tupleEmit(Utils.DEFAULT_STREAM_ID, Arrays.asList(new Tuple[] {anchor2}), new Values(new Integer(3)),
+			null);
+		Assert.assertTrue(collector.deferAck(anchor2));
+		Assert.assertFalse(collector.deferAck(anchor1));
+		
+		collector.flush();
+		
+		Assert.assertEquals(2, collector.resultBuffer.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(Arrays.asList(new Tuple[] {anchor1, anchor2}), collector.ackBuffer);
+		Assert.assertFalse(collector.deferAck(anchor2));
+	}
+	
 	@Test
 	public void testKryoRegistrations() {
 		Config stormConfig = mock(Config.class);
 		AbstractBatchCollector.registerKryoClasses(stormConfig);
 		
 		verify(stormConfig).registerSerialization(Batch.class);
-		verify(stormConfig).registerSerialization(BatchColumn.class);
+		verify(stormConfig).registerSerialization(BatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(LongBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(IntBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(ShortBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(DoubleBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(StringBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(BinaryBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(SerializedBatchColumn.class, BatchColumnSerializer.class);
 	}
 	
 }
@@ -0,0 +1,122 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.task.TopologyContext;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class AdaptiveBatchSizeControllerTest {
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMinBatchSize() {
+		new AdaptiveBatchSizeController(0, 10, 100);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxBatchSize() {
+		new AdaptiveBatchSizeController(10, 9, 100);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTargetLatency() {
+		new AdaptiveBatchSizeController(1, 10, -1);
+	}
+	
+	@Test
+	public void testGrow() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(1, 1000, 100);
+		
+		// 10 tuples per ms -> 1000 tuples within latency target; at most doubled each step
+		Assert.assertEquals(20, controller.batchEmitted("stream", 10, 1, 10));
+		Assert.assertEquals(40, controller.batchEmitted("stream", 20, 2, 20));
+		Assert.assertEquals(80, controller.batchEmitted("stream", 40, 4, 40));
+		Assert.assertEquals(160, controller.batchEmitted("stream", 80, 8, 80));
+		Assert.assertEquals(320, controller.batchEmitted("stream", 160, 16, 160));
+		Assert.assertEquals(640, controller.batchEmitted("stream", 320, 32, 320));
+		Assert.assertEquals(1000, controller.batchEmitted("stream", 640, 64, 640));
+		Assert.assertEquals(1000, controller.batchEmitted("stream", 1000, 100, 1000));
+	}
+	
+	@Test
+	public void testShrink() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(5, 1000, 100);
+		
+		// 0.1 tuples per ms -> 10 tuples within latency target; at most halved each step
+		Assert.assertEquals(50, controller.batchEmitted("stream", 100, 1000, 100));
+		Assert.assertEquals(25, controller.batchEmitted("stream", 50, 500, 50));
+		Assert.assertEquals(12, controller.batchEmitted("stream", 25, 250, 25));
+		Assert.assertEquals(10, controller.batchEmitted("stream", 12, 120, 12));
+		Assert.assertEquals(10, controller.batchEmitted("stream", 10, 100, 10));
+	}
+	
+	@Test
+	public void testDownstreamLatency() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(1, 1000, 100);
+		controller.reportLatency("stream", 60);
+		
+		// 1 tuple per ms -> 40 tuples within remaining latency budget
+		Assert.assertEquals(40, controller.batchEmitted("stream", 40, 40, 40));
+		// other streams are not affected
+		Assert.assertEquals(80, controller.batchEmitted("stream-2", 40, 40, 40));
+		
+		controller.reportLatency("stream", 200);
+		Assert.assertEquals(20, controller.batchEmitted("stream", 40, 40, 40));
+		Assert.assertEquals(10, controller.batchEmitted("stream", 40, 40, 20));
+		Assert.assertEquals(5, controller.batchEmitted("stream", 40, 40, 10));
+	}
+	
+	@Test
+	public void testRegister() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(1, 1000, 100);
+		TopologyContext context = mock(TopologyContext.class);
+		
+		controller.register(context);
+		verify(context).setTaskData(AdaptiveBatchSizeController.TASK_DATA_KEY, controller);
+		
+		when(context.getTaskData(AdaptiveBatchSizeController.TASK_DATA_KEY)).thenReturn(controller);
+		Assert.assertSame(controller, AdaptiveBatchSizeController.getController(context));
+	}
+	
+	@Test
+	public void testNoController() {
+		Assert.assertNull(AdaptiveBatchSizeController.getController(mock(TopologyContext.class)));
+	}
+	
+	@Test
+	public void testMinBatchSize() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(3, 1000, 0);
+		
+		Assert.assertEquals(3, controller.batchEmitted("stream", 4, 1, 4));
+		Assert.assertEquals(3, controller.batchEmitted("stream", 3, 1, 3));
+	}
+	
+}
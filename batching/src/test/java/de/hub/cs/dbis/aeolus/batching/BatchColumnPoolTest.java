@@ -0,0 +1,136 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class BatchColumnPoolTest {
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPoolSize() {
+		new BatchColumnPool(0);
+	}
+	
+	@Test
+	public void testGetColumn() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		
+		Assert.assertEquals(LongBatchColumn.class, pool.getColumn(new Long(0), 5).getClass());
+		Assert.assertEquals(IntBatchColumn.class, pool.getColumn(new Integer(0), 5).getClass());
+		Assert.assertEquals(ShortBatchColumn.class, pool.getColumn(new Short((short)0), 5).getClass());
+		Assert.assertEquals(DoubleBatchColumn.class, pool.getColumn(new Double(0), 5).getClass());
+		Assert.assertEquals(StringBatchColumn.class, pool.getColumn("0", 5).getClass());
+		Assert.assertEquals(BinaryBatchColumn.class, pool.getColumn(new byte[0], 5).getClass());
+		Assert.assertEquals(BatchColumn.class, pool.getColumn(new Object(), 5).getClass());
+	}
+	
+	@Test
+	public void testGetSerializedColumn() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		
+		BatchColumn column = pool.getSerializedColumn(5);
+		Assert.assertEquals(SerializedBatchColumn.class, column.getClass());
+		
+		column.add("value");
+		Assert.assertTrue(((SerializedBatchColumn)column).isDirect());
+		column.acquire();
+		column.handOver(1);
+		column.release();
+		Assert.assertEquals(0, column.size());
+		Assert.assertSame(column, pool.getSerializedColumn(5));
+	}
+	
+	@Test
+	public void testRecycleAfterRelease() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		
+		BatchColumn column = pool.getColumn(new Long(0), 5);
+		column.add(new Long(1));
+		column.acquire();
+		column.release();
+		column.handOver(2);
+		Assert.assertNotSame(column, pool.getColumn(new Long(0), 5));
+		Assert.assertEquals(1, column.size());
+		
+		column.release();
+		Assert.assertEquals(0, column.size());
+		Assert.assertSame(column, pool.getColumn(new Long(0), 5));
+		Assert.assertNotSame(column, pool.getColumn(new Long(0), 5));
+	}
+	
+	@Test
+	public void testRecycleWithoutConsumers() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		
+		BatchColumn column = pool.getColumn(new Integer(0), 5);
+		column.acquire();
+		column.handOver(0);
+		Assert.assertSame(column, pool.getColumn(new Integer(0), 5));
+	}
+	
+	@Test
+	public void testUnknownConsumers() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		
+		BatchColumn column = pool.getColumn("0", 5);
+		column.acquire();
+		column.handOver(-1);
+		column.release();
+		Assert.assertNotSame(column, pool.getColumn("0", 5));
+	}
+	
+	@Test
+	public void testFullPool() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		
+		BatchColumn column1 = pool.getColumn(new Double(0), 5);
+		BatchColumn column2 = pool.getColumn(new Double(0), 5);
+		column1.acquire();
+		column2.acquire();
+		column1.handOver(0);
+		column2.handOver(0);
+		
+		Assert.assertSame(column1, pool.getColumn(new Double(0), 5));
+		Assert.assertNotSame(column2, pool.getColumn(new Double(0), 5));
+		
+		// dropped column is not bound to the pool any longer
+		column2.acquire();
+		column2.handOver(0);
+		Assert.assertNotSame(column2, pool.getColumn(new Double(0), 5));
+	}
+	
+	@Test
+	public void testNoPool() {
+		BatchColumn column = BatchColumn.newColumn(new Long(0), 5);
+		column.add(new Long(1));
+		column.acquire();
+		column.handOver(0);
+		column.release();
+		Assert.assertEquals(1, column.size());
+	}
+	
+}
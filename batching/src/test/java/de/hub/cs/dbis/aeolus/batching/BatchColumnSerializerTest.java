@@ -0,0 +1,424 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class BatchColumnSerializerTest {
+	private long seed;
+	private Random r;
+	
+	private Kryo kryo;
+	
+	
+	
+	@Before
+	public void prepare() {
+		this.seed = System.currentTimeMillis();
+		this.r = new Random(this.seed);
+		System.out.println("Test seed: " + this.seed);
+		
+		this.kryo = new Kryo();
+		this.kryo.register(BatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(LongBatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(IntBatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(ShortBatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(DoubleBatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(StringBatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(BinaryBatchColumn.class, new BatchColumnSerializer());
+		this.kryo.register(SerializedBatchColumn.class, new BatchColumnSerializer());
+	}
+	
+	
+	
+	private BatchColumn roundTrip(BatchColumn column) {
+		Output output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		
+		Input input = new Input(output.toBytes());
+		return (BatchColumn)this.kryo.readClassAndObject(input);
+	}
+	
+	@Test
+	public void testLongColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn(new Long(0), batchSize);
+		Assert.assertEquals(LongBatchColumn.class, column.getClass());
+		
+		for(int i = 0; i < batchSize; ++i) {
+			column.add(new Long(this.r.nextLong()));
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(LongBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testIntColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn(new Integer(0), batchSize);
+		Assert.assertEquals(IntBatchColumn.class, column.getClass());
+		
+		for(int i = 0; i < batchSize; ++i) {
+			column.add(new Integer(this.r.nextInt()));
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(IntBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testShortColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn(new Short((short)0), batchSize);
+		Assert.assertEquals(ShortBatchColumn.class, column.getClass());
+		
+		for(int i = 0; i < batchSize; ++i) {
+			column.add(new Short((short)this.r.nextInt()));
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(ShortBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testDoubleColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn(new Double(0), batchSize);
+		Assert.assertEquals(DoubleBatchColumn.class, column.getClass());
+		
+		for(int i = 0; i < batchSize; ++i) {
+			column.add(new Double(this.r.nextDouble() + this.r.nextLong()));
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(DoubleBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testStringColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn("", batchSize);
+		Assert.assertEquals(StringBatchColumn.class, column.getClass());
+		
+		column.add(null);
+		for(int i = 1; i < batchSize; ++i) {
+			column.add("" + (char)(32 + this.r.nextInt(95)));
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(StringBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testBinaryColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn(new byte[0], batchSize);
+		Assert.assertEquals(BinaryBatchColumn.class, column.getClass());
+		
+		column.add(null);
+		for(int i = 1; i < batchSize; ++i) {
+			byte[] value = new byte[this.r.nextInt(10)];
+			this.r.nextBytes(value);
+			column.add(value);
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(BinaryBatchColumn.class, result.getClass());
+		Assert.assertEquals(column.size(), result.size());
+		Assert.assertNull(result.get(0));
+		for(int i = 1; i < batchSize; ++i) {
+			Assert.assertArrayEquals((byte[])column.get(i), (byte[])result.get(i));
+		}
+	}
+	
+	@Test
+	public void testSerializedColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = new SerializedBatchColumn(batchSize);
+		
+		column.add(null);
+		column.add(new Long(this.r.nextLong()));
+		column.add(new Integer(this.r.nextInt()));
+		column.add(new Short((short)this.r.nextInt()));
+		column.add(new Double(this.r.nextDouble() + this.r.nextLong()));
+		column.add("ascii");
+		column.add("non-ascii: \u00e4\u00f6\u00fc");
+		for(int i = 0; i < batchSize; ++i) {
+			column.add("" + (char)(32 + this.r.nextInt(95)));
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(SerializedBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+		
+		column = new SerializedBatchColumn(batchSize);
+		byte[] value = new byte[this.r.nextInt(10)];
+		this.r.nextBytes(value);
+		column.add(value);
+		column.add(new Long(0));
+		
+		result = this.roundTrip(column);
+		Assert.assertEquals(2, result.size());
+		Assert.assertArrayEquals(value, (byte[])result.get(0));
+		Assert.assertEquals(new Long(0), result.get(1));
+	}
+	
+	@Test
+	public void testDirectSerializedColumn() {
+		// more bytes than the copy buffer holds -> copied in multiple chunks
+		SerializedBatchColumn column = new SerializedBatchColumn(100, true);
+		for(int i = 0; i < 100; ++i) {
+			char[] value = new char[50 + this.r.nextInt(100)];
+			Arrays.fill(value, (char)(32 + this.r.nextInt(95)));
+			column.add(new String(value));
+		}
+		Assert.assertTrue(column.isDirect());
+		Assert.assertTrue(column.getNumberOfBytes() > 4096);
+		
+		// the copy buffer is reused by the second serialization
+		for(int i = 0; i < 2; ++i) {
+			BatchColumn result = this.roundTrip(column);
+			Assert.assertEquals(SerializedBatchColumn.class, result.getClass());
+			Assert.assertEquals(column, result);
+		}
+	}
+	
+	@Test
+	public void testGenericColumn() {
+		final int batchSize = 1 + this.r.nextInt(20);
+		BatchColumn column = BatchColumn.newColumn(new Character('a'), batchSize);
+		Assert.assertEquals(BatchColumn.class, column.getClass());
+		
+		for(int i = 0; i < batchSize; ++i) {
+			switch(this.r.nextInt(3)) {
+			case 0:
+				column.add(new Integer(this.r.nextInt()));
+				break;
+			case 1:
+				column.add(new Double(this.r.nextDouble() + this.r.nextLong()));
+				break;
+			default:
+				column.add(new Character((char)(32 + this.r.nextInt(95))));
+			}
+		}
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(BatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testEmptyColumn() {
+		BatchColumn column = BatchColumn.newColumn(new Long(0), 1 + this.r.nextInt(20));
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(LongBatchColumn.class, result.getClass());
+		Assert.assertEquals(0, result.size());
+	}
+	
+	@Test
+	public void testRunLengthEncoding() {
+		final int batchSize = 100 + this.r.nextInt(100);
+		BatchColumn intColumn = BatchColumn.newColumn(new Integer(0), batchSize);
+		BatchColumn shortColumn = BatchColumn.newColumn(new Short((short)0), batchSize);
+		BatchColumn longColumn = BatchColumn.newColumn(new Long(0), batchSize);
+		
+		final long value = this.r.nextLong();
+		for(int i = 0; i < batchSize; ++i) {
+			intColumn.add(new Integer((int)value + i / 10));
+			shortColumn.add(new Short((short)(value + i / 10)));
+			longColumn.add(new Long(value + i / 10));
+		}
+		
+		for(BatchColumn column : new BatchColumn[] {intColumn, shortColumn, longColumn}) {
+			Output output = new Output(1024, -1);
+			this.kryo.writeClassAndObject(output, column);
+			// tag and size varint (2 bytes) plus encoding tag plus (about 20) runs of value and length
+			Assert.assertTrue(output.position() < 3 + 20 * (column.estimateSize(null) + 1) + 4);
+			
+			BatchColumn result = (BatchColumn)this.kryo.readClassAndObject(new Input(output.toBytes()));
+			Assert.assertEquals(column.getClass(), result.getClass());
+			Assert.assertEquals(column, result);
+		}
+	}
+	
+	@Test
+	public void testDeltaEncoding() {
+		final int batchSize = 100 + this.r.nextInt(100);
+		BatchColumn column = BatchColumn.newColumn(new Long(0), batchSize);
+		
+		long timestamp = System.currentTimeMillis();
+		for(int i = 0; i < batchSize; ++i) {
+			timestamp += 1 + this.r.nextInt(100);
+			column.add(new Long(timestamp));
+		}
+		
+		Output output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		Assert.assertTrue(output.position() < 8 * batchSize / 4);
+		
+		BatchColumn result = (BatchColumn)this.kryo.readClassAndObject(new Input(output.toBytes()));
+		Assert.assertEquals(LongBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testDeltaEncodingOverflow() {
+		BatchColumn column = BatchColumn.newColumn(new Long(0), 3);
+		column.add(new Long(Long.MIN_VALUE));
+		column.add(new Long(0));
+		column.add(new Long(Long.MAX_VALUE));
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(LongBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testDictionaryEncoding() {
+		final int batchSize = 100 + this.r.nextInt(100);
+		final String[] streamIds = new String[] {"default", "aeolus::flush", "throughput", null};
+		BatchColumn column = BatchColumn.newColumn("", batchSize);
+		BatchColumn plainColumn = BatchColumn.newColumn("", batchSize);
+		
+		for(int i = 0; i < batchSize; ++i) {
+			column.add(streamIds[this.r.nextInt(streamIds.length)]);
+			plainColumn.add("value-" + i);
+		}
+		
+		Output output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		// about one byte per value plus dictionary
+		Assert.assertTrue(output.position() < batchSize + 64);
+		
+		BatchColumn result = (BatchColumn)this.kryo.readClassAndObject(new Input(output.toBytes()));
+		Assert.assertEquals(StringBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+		
+		result = this.roundTrip(plainColumn);
+		Assert.assertEquals(StringBatchColumn.class, result.getClass());
+		Assert.assertEquals(plainColumn, result);
+	}
+	
+	@Test
+	public void testCompressedColumn() {
+		final int batchSize = 100 + this.r.nextInt(100);
+		BatchColumn column = BatchColumn.newColumn("", batchSize);
+		BatchColumn uncompressedColumn = BatchColumn.newColumn("", batchSize);
+		column.setCompressionThreshold(0);
+		
+		for(int i = 0; i < batchSize; ++i) {
+			final String value = "0,4,1,12345,0,0," + i + ",42,-1,-1,-1,-1,-1,-1,-1";
+			column.add(value);
+			uncompressedColumn.add(value);
+		}
+		
+		Output output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		Output uncompressedOutput = new Output(1024, -1);
+		this.kryo.writeClassAndObject(uncompressedOutput, uncompressedColumn);
+		Assert.assertTrue(output.position() < uncompressedOutput.position() / 2);
+		
+		BatchColumn result = (BatchColumn)this.kryo.readClassAndObject(new Input(output.toBytes()));
+		Assert.assertEquals(StringBatchColumn.class, result.getClass());
+		Assert.assertEquals(column, result);
+	}
+	
+	@Test
+	public void testCompressionThreshold() {
+		BatchColumn column = BatchColumn.newColumn(new Long(0), 10);
+		BatchColumn uncompressedColumn = BatchColumn.newColumn(new Long(0), 10);
+		column.setCompressionThreshold(82); // encoding tag plus 10 values -> 81 bytes
+		
+		for(int i = 0; i < 10; ++i) {
+			column.add(new Long(i % 2));
+			uncompressedColumn.add(new Long(i % 2));
+		}
+		
+		Output output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		Output uncompressedOutput = new Output(1024, -1);
+		this.kryo.writeClassAndObject(uncompressedOutput, uncompressedColumn);
+		Assert.assertArrayEquals(uncompressedOutput.toBytes(), output.toBytes());
+		
+		column.setCompressionThreshold(81);
+		output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		Assert.assertTrue(output.position() < uncompressedOutput.position());
+		Assert.assertEquals(column, this.kryo.readClassAndObject(new Input(output.toBytes())));
+	}
+	
+	@Test
+	public void testIncompressibleColumn() {
+		BatchColumn column = BatchColumn.newColumn(new byte[0], 10);
+		BatchColumn uncompressedColumn = BatchColumn.newColumn(new byte[0], 10);
+		column.setCompressionThreshold(0);
+		
+		for(int i = 0; i < 10; ++i) {
+			byte[] value = new byte[20];
+			this.r.nextBytes(value);
+			column.add(value);
+			uncompressedColumn.add(value);
+		}
+		
+		Output output = new Output(1024, -1);
+		this.kryo.writeClassAndObject(output, column);
+		Output uncompressedOutput = new Output(1024, -1);
+		this.kryo.writeClassAndObject(uncompressedOutput, uncompressedColumn);
+		Assert.assertArrayEquals(uncompressedOutput.toBytes(), output.toBytes());
+	}
+	
+	@Test
+	public void testReleaseAfterWrite() {
+		BatchColumnPool pool = new BatchColumnPool(1);
+		BatchColumn column = pool.getColumn(new Long(0), 3);
+		column.add(new Long(1));
+		column.add(new Long(2));
+		column.acquire();
+		column.handOver(1);
+		
+		BatchColumn result = this.roundTrip(column);
+		Assert.assertEquals(Arrays.asList(new Long(1), new Long(2)), result);
+		Assert.assertEquals(0, column.size());
+		Assert.assertSame(column, pool.getColumn(new Long(0), 3));
+	}
+	
+}
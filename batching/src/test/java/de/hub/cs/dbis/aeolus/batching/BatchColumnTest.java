@@ -66,4 +66,67 @@ public class BatchColumnTest {
 		
 		Assert.assertEquals(first.hashCode(), bc.hashCode());
 	}
+	
+	@Test
+	public void testSerializedColumn() {
+		SerializedBatchColumn column = new SerializedBatchColumn(2);
+		
+		column.add(new Long(1));
+		column.add(null);
+		column.add("abc");
+		column.add(new byte[] {1, 2});
+		Assert.assertEquals(4, column.size());
+		Assert.assertEquals(9 + 1 + 8 + 7, column.getNumberOfBytes());
+		
+		Assert.assertEquals(new Long(1), column.get(0));
+		Assert.assertNull(column.get(1));
+		Assert.assertEquals("abc", column.get(2));
+		Assert.assertArrayEquals(new byte[] {1, 2}, (byte[])column.get(3));
+		Assert.assertEquals(new Long(1).hashCode(), column.hashCode());
+		
+		Assert.assertTrue(column.accepts(new Double(0)));
+		Assert.assertFalse(column.accepts(new Object()));
+		
+		final StringBuilder large = new StringBuilder();
+		for(int i = 0; i < 100; ++i) {
+			large.append("\u00e4");
+		}
+		column.add(large.toString());
+		Assert.assertEquals(large.toString(), column.get(4));
+		Assert.assertEquals("abc", column.get(2));
+		
+		column.clear();
+		Assert.assertEquals(0, column.size());
+		Assert.assertEquals(0, column.getNumberOfBytes());
+	}
+	
+	@Test
+	public void testSerializedColumnHeapBuffer() {
+		SerializedBatchColumn column = new SerializedBatchColumn(2);
+		for(int i = 0; i < 100; ++i) {
+			column.add(new Long(i));
+		}
+		
+		Assert.assertFalse(column.isDirect());
+		Assert.assertEquals(new Long(99), column.get(99));
+	}
+	
+	@Test
+	public void testSerializedColumnDirectBuffer() {
+		SerializedBatchColumn column = new SerializedBatchColumn(2, true);
+		for(int i = 0; i < 100; ++i) {
+			column.add(new Long(i));
+		}
+		
+		Assert.assertTrue(column.isDirect());
+		Assert.assertEquals(new Long(99), column.get(99));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSerializedColumnSet() {
+		SerializedBatchColumn column = new SerializedBatchColumn(2);
+		column.add(new Long(1));
+		column.set(0, new Long(2));
+	}
+	
 }
@@ -0,0 +1,113 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import backtype.storm.spout.ISpout;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class BatchMessageIdTest {
+	private ISpout spoutMock;
+	
+	
+	
+	@Before
+	public void prepare() {
+		this.spoutMock = mock(ISpout.class);
+	}
+	
+	
+	
+	@Test
+	public void testAck() {
+		BatchMessageId batchId = new BatchMessageId(Arrays.asList(new Object[] {new Integer(0), new Integer(1),
+			new Integer(2)}));
+		
+		batchId.ack(this.spoutMock);
+		
+		verify(this.spoutMock).ack(new Integer(0));
+		verify(this.spoutMock).ack(new Integer(1));
+		verify(this.spoutMock).ack(new Integer(2));
+		verify(this.spoutMock, never()).fail(any());
+	}
+	
+	@Test
+	public void testFail() {
+		BatchMessageId batchId = new BatchMessageId(Arrays.asList(new Object[] {new Integer(0), new Integer(1)}));
+		
+		batchId.fail(this.spoutMock);
+		
+		verify(this.spoutMock).fail(new Integer(0));
+		verify(this.spoutMock).fail(new Integer(1));
+		verify(this.spoutMock, never()).ack(any());
+	}
+	
+	@Test
+	public void testAckShared() {
+		SharedMessageId sharedId = new SharedMessageId(new Integer(0));
+		sharedId.addBatch();
+		sharedId.addBatch();
+		
+		BatchMessageId batchId1 = new BatchMessageId(Arrays.asList(new Object[] {sharedId}));
+		BatchMessageId batchId2 = new BatchMessageId(Arrays.asList(new Object[] {sharedId, new Integer(1)}));
+		
+		batchId1.ack(this.spoutMock);
+		verify(this.spoutMock, never()).ack(any());
+		
+		batchId2.ack(this.spoutMock);
+		verify(this.spoutMock).ack(new Integer(0));
+		verify(this.spoutMock).ack(new Integer(1));
+	}
+	
+	@Test
+	public void testFailShared() {
+		SharedMessageId sharedId = new SharedMessageId(new Integer(0));
+		sharedId.addBatch();
+		sharedId.addBatch();
+		sharedId.addBatch();
+		
+		BatchMessageId batchId1 = new BatchMessageId(Arrays.asList(new Object[] {sharedId}));
+		BatchMessageId batchId2 = new BatchMessageId(Arrays.asList(new Object[] {sharedId}));
+		BatchMessageId batchId3 = new BatchMessageId(Arrays.asList(new Object[] {sharedId}));
+		
+		batchId1.fail(this.spoutMock);
+		batchId2.ack(this.spoutMock);
+		batchId3.fail(this.spoutMock);
+		
+		verify(this.spoutMock, times(1)).fail(new Integer(0));
+		verify(this.spoutMock, never()).ack(any());
+	}
+	
+}
@@ -18,6 +18,7 @@
  */
 package de.hub.cs.dbis.aeolus.batching;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import org.junit.Assert;
@@ -85,6 +86,108 @@ public class BatchTest {
 		}
 	}
 	
+	@Test
+	public void testTypedColumns() {
+		Batch b = new Batch(3, 4);
+		
+		b.addTuple(new Values(new Long(0), new Integer(1), new Double(2.0), "3"));
+		Assert.assertEquals(LongBatchColumn.class, b.get(0).getClass());
+		Assert.assertEquals(IntBatchColumn.class, b.get(1).getClass());
+		Assert.assertEquals(DoubleBatchColumn.class, b.get(2).getClass());
+		Assert.assertEquals(StringBatchColumn.class, b.get(3).getClass());
+		
+		b.addTuple(new Values(new Long(4), "5", new Double(6.0), null));
+		Assert.assertEquals(LongBatchColumn.class, b.get(0).getClass());
+		Assert.assertEquals(BatchColumn.class, b.get(1).getClass());
+		Assert.assertEquals(DoubleBatchColumn.class, b.get(2).getClass());
+		Assert.assertEquals(StringBatchColumn.class, b.get(3).getClass());
+		
+		b.addTuple(new Values(null, new Integer(7), new Double(8.0), "9"));
+		Assert.assertEquals(BatchColumn.class, b.get(0).getClass());
+		
+		Assert.assertEquals(Arrays.asList(new Long(0), new Long(4), null), b.get(0));
+		Assert.assertEquals(Arrays.asList(new Integer(1), "5", new Integer(7)), b.get(1));
+		Assert.assertEquals(Arrays.asList(new Double(2.0), new Double(6.0), new Double(8.0)), b.get(2));
+		Assert.assertEquals(Arrays.asList("3", null, "9"), b.get(3));
+	}
+	
+	@Test
+	public void testMaxBytes() {
+		Batch b = new Batch(100, 2);
+		b.setMaxBytes(30);
+		
+		// long: 8 bytes; byte[]: length + 1 bytes
+		b.addTuple(new Values(new Long(0), new byte[5]));
+		Assert.assertEquals(14, b.getEstimatedBytes());
+		Assert.assertFalse(b.isFull());
+		
+		b.addTuple(new Values(new Long(1), new byte[7]));
+		Assert.assertEquals(30, b.getEstimatedBytes());
+		Assert.assertTrue(b.isFull());
+		Assert.assertEquals(2, b.getNumberOfTuples());
+	}
+	
+	@Test
+	public void testMaxBytesGenericColumn() {
+		Batch b = new Batch(100, 1);
+		b.setMaxBytes(20);
+		
+		b.addTuple(new Values("abc"));
+		Assert.assertEquals(4, b.getEstimatedBytes());
+		
+		// column is converted into a plain BatchColumn, that writes class information
+		b.addTuple(new Values(new Integer(1)));
+		Assert.assertEquals(13, b.getEstimatedBytes());
+		Assert.assertFalse(b.isFull());
+		
+		b.addTuple(new Values("abcdefg"));
+		Assert.assertEquals(22, b.getEstimatedBytes());
+		Assert.assertTrue(b.isFull());
+	}
+	
+	@Test
+	public void testSerializeOnAppend() {
+		Batch b = new Batch(3, 2);
+		b.setSerializeOnAppend(true);
+		
+		b.addTuple(new Values(new Long(0), "a"));
+		Assert.assertEquals(SerializedBatchColumn.class, b.get(0).getClass());
+		Assert.assertEquals(SerializedBatchColumn.class, b.get(1).getClass());
+		
+		b.addTuple(new Values(new Long(1), new Object()));
+		Assert.assertEquals(SerializedBatchColumn.class, b.get(0).getClass());
+		Assert.assertEquals(BatchColumn.class, b.get(1).getClass());
+		
+		Assert.assertEquals(Arrays.asList(new Long(0), new Long(1)), b.get(0));
+		Assert.assertEquals("a", b.get(1).get(0));
+	}
+	
+	@Test
+	public void testCompressionThreshold() {
+		Batch b = new Batch(3, 2);
+		b.setCompressionThreshold(100);
+		
+		b.addTuple(new Values(new Long(0), "a"));
+		Assert.assertEquals(100, b.get(0).getCompressionThreshold());
+		Assert.assertEquals(100, b.get(1).getCompressionThreshold());
+		
+		b.addTuple(new Values(new Long(1), new Object()));
+		Assert.assertEquals(BatchColumn.class, b.get(1).getClass());
+		Assert.assertEquals(100, b.get(1).getCompressionThreshold());
+	}
+	
+	@Test
+	public void testNoMaxBytes() {
+		Batch b = new Batch(2, 1);
+		
+		b.addTuple(new Values(new byte[1000]));
+		Assert.assertEquals(0, b.getEstimatedBytes());
+		Assert.assertFalse(b.isFull());
+		
+		b.addTuple(new Values(new byte[1000]));
+		Assert.assertTrue(b.isFull());
+	}
+	
 	@Test(expected = AssertionError.class)
 	public void testInvalidNumberOfAttributesToSmall() {
 		final int numberOfAttributes = 1 + this.r.nextInt(5);
@@ -0,0 +1,93 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class BatchTupleViewTest {
+	
+	@Test
+	public void testView() {
+		Batch batch = new Batch(3, 3);
+		batch.addTuple(new Values(new Long(0), "a", new Integer(0)));
+		batch.addTuple(new Values(new Long(1), "b", new Integer(1)));
+		batch.addTuple(new Values(new Long(2), "c", new Integer(2)));
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getFields()).thenReturn(new Fields("l", "s", "i"));
+		when(input.getSourceStreamId()).thenReturn("stream");
+		when(new Integer(input.getSourceTask())).thenReturn(new Integer(42));
+		
+		BatchTupleView view = new BatchTupleView();
+		view.setBatch(new DebatchedInput(input, 3), batch.toArray(new BatchColumn[3]));
+		
+		Assert.assertEquals(3, view.size());
+		Assert.assertSame(input, view.getBatchTuple());
+		Assert.assertEquals("stream", view.getSourceStreamId());
+		Assert.assertEquals(42, view.getSourceTask());
+		
+		for(int i = 0; i < 3; ++i) {
+			view.setRow(i);
+			
+			Assert.assertEquals(new Long(i), view.getLong(0));
+			Assert.assertEquals(new Long(i), view.getLongByField("l"));
+			Assert.assertEquals(String.valueOf((char)('a' + i)), view.getString(1));
+			Assert.assertEquals(new Integer(i), view.getIntegerByField("i"));
+			Assert.assertEquals(Arrays.asList(new Object[] {new Long(i), String.valueOf((char)('a' + i)), new Integer(i)}),
+				view.getValues());
+		}
+	}
+	
+	@Test
+	public void testNewBatch() {
+		Batch batch1 = new Batch(2, 1);
+		batch1.addTuple(new Values(new Integer(0)));
+		Batch batch2 = new Batch(2, 1);
+		batch2.addTuple(new Values(new Integer(1)));
+		
+		Tuple input1 = mock(Tuple.class);
+		Tuple input2 = mock(Tuple.class);
+		
+		BatchTupleView view = new BatchTupleView();
+		view.setBatch(new DebatchedInput(input1, 1), batch1.toArray(new BatchColumn[1]));
+		Assert.assertEquals(new Integer(0), view.getValue(0));
+		
+		view.setBatch(new DebatchedInput(input2, 1), batch2.toArray(new BatchColumn[1]));
+		Assert.assertEquals(new Integer(1), view.getValue(0));
+		Assert.assertSame(input2, view.getBatchTuple());
+	}
+	
+}
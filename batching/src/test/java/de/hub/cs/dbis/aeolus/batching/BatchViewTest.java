@@ -0,0 +1,91 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class BatchViewTest {
+	
+	@Test
+	public void testView() {
+		Batch batch = new Batch(3, 2);
+		batch.addTuple(new Values(new Long(0), "a"));
+		batch.addTuple(new Values(new Long(1), "b"));
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getFields()).thenReturn(new Fields("l", "s"));
+		when(input.getSourceComponent()).thenReturn("producer");
+		when(input.getSourceStreamId()).thenReturn("stream");
+		when(new Integer(input.getSourceTask())).thenReturn(new Integer(42));
+		
+		BatchColumn[] columns = batch.toArray(new BatchColumn[2]);
+		BatchView view = new BatchView();
+		view.setBatch(input, columns);
+		
+		Assert.assertEquals(2, view.size());
+		Assert.assertEquals(2, view.getNumberOfAttributes());
+		Assert.assertSame(input, view.getInput());
+		Assert.assertEquals(new Fields("l", "s").toList(), view.getFields().toList());
+		Assert.assertEquals("producer", view.getSourceComponent());
+		Assert.assertEquals("stream", view.getSourceStreamId());
+		Assert.assertEquals(42, view.getSourceTask());
+		
+		Assert.assertSame(columns[0], view.getColumn(0));
+		Assert.assertSame(columns[1], view.getColumn("s"));
+		Assert.assertEquals(new Long(1), view.getColumn("l").get(1));
+		Assert.assertEquals("a", view.getColumn(1).get(0));
+	}
+	
+	@Test
+	public void testNewBatch() {
+		Batch batch1 = new Batch(2, 1);
+		batch1.addTuple(new Values(new Integer(0)));
+		Batch batch2 = new Batch(2, 1);
+		batch2.addTuple(new Values(new Integer(1)));
+		batch2.addTuple(new Values(new Integer(2)));
+		
+		Tuple input1 = mock(Tuple.class);
+		Tuple input2 = mock(Tuple.class);
+		
+		BatchView view = new BatchView();
+		view.setBatch(input1, batch1.toArray(new BatchColumn[1]));
+		Assert.assertEquals(1, view.size());
+		
+		view.setBatch(input2, batch2.toArray(new BatchColumn[1]));
+		Assert.assertEquals(2, view.size());
+		Assert.assertSame(input2, view.getInput());
+		Assert.assertEquals(new Integer(2), view.getColumn(0).get(1));
+	}
+	
+}
@@ -0,0 +1,130 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class DebatchingOutputCollectorTest {
+	private TopologyContext context;
+	private TestOutputCollector collector;
+	private DebatchingOutputCollector debatchingCollector;
+	
+	
+	
+	@Before
+	public void prepare() {
+		this.context = mock(TopologyContext.class);
+		when(this.context.getComponentId(anyInt())).thenReturn("producer");
+		when(this.context.getComponentOutputFields(any(String.class), any(String.class))).thenReturn(
+			new Fields("dummy"));
+		
+		this.collector = new TestOutputCollector();
+		this.debatchingCollector = new DebatchingOutputCollector(this.collector);
+	}
+	
+	
+	
+	private DebatchedTuple[] debatch(Tuple batchTuple, int numberOfTuples) {
+		DebatchedInput batch = new DebatchedInput(batchTuple, numberOfTuples);
+		DebatchedTuple[] tuples = new DebatchedTuple[numberOfTuples];
+		for(int i = 0; i < numberOfTuples; ++i) {
+			tuples[i] = new DebatchedTuple(this.context, new Values(new Integer(i)), batch);
+		}
+		return tuples;
+	}
+	
+	@Test
+	public void testAck() {
+		Tuple batchTuple = mock(Tuple.class);
+		DebatchedTuple[] tuples = this.debatch(batchTuple, 3);
+		
+		this.debatchingCollector.ack(tuples[1]);
+		this.debatchingCollector.ack(tuples[0]);
+		Assert.assertEquals(0, this.collector.acked.size());
+		
+		this.debatchingCollector.ack(tuples[2]);
+		Assert.assertEquals(Arrays.asList(new Tuple[] {batchTuple}), this.collector.acked);
+		Assert.assertEquals(0, this.collector.failed.size());
+	}
+	
+	@Test
+	public void testFail() {
+		Tuple batchTuple = mock(Tuple.class);
+		DebatchedTuple[] tuples = this.debatch(batchTuple, 3);
+		
+		this.debatchingCollector.ack(tuples[0]);
+		this.debatchingCollector.fail(tuples[1]);
+		this.debatchingCollector.fail(tuples[2]);
+		
+		Assert.assertEquals(0, this.collector.acked.size());
+		Assert.assertEquals(Arrays.asList(new Tuple[] {batchTuple}), this.collector.failed);
+	}
+	
+	@Test
+	public void testRegularTuple() {
+		Tuple input = mock(Tuple.class);
+		
+		this.debatchingCollector.ack(input);
+		this.debatchingCollector.fail(input);
+		
+		Assert.assertEquals(Arrays.asList(new Tuple[] {input}), this.collector.acked);
+		Assert.assertEquals(Arrays.asList(new Tuple[] {input}), this.collector.failed);
+	}
+	
+	@Test
+	public void testMapAnchors() {
+		Tuple batchTuple1 = mock(Tuple.class);
+		Tuple batchTuple2 = mock(Tuple.class);
+		Tuple input = mock(Tuple.class);
+		DebatchedTuple[] tuples1 = this.debatch(batchTuple1, 2);
+		DebatchedTuple[] tuples2 = this.debatch(batchTuple2, 2);
+		
+		Assert.assertNull(this.debatchingCollector.mapAnchors(null));
+		
+		Collection<Tuple> anchors = Arrays.asList(new Tuple[] {input});
+		Assert.assertSame(anchors, this.debatchingCollector.mapAnchors(anchors));
+		
+		Assert.assertEquals(Arrays.asList(new Tuple[] {batchTuple1, input, batchTuple2}), this.debatchingCollector
+			.mapAnchors(Arrays.asList(new Tuple[] {tuples1[0], input, tuples1[1], tuples2[1], tuples2[0]})));
+	}
+	
+}
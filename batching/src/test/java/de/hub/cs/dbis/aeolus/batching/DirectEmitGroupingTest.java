@@ -0,0 +1,63 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class DirectEmitGroupingTest {
+	
+	@Test
+	public void testRoundRobin() {
+		DirectEmitGrouping grouping = new DirectEmitGrouping(false);
+		grouping.prepare(null, null, Arrays.asList(new Integer(3), new Integer(5), new Integer(7)));
+		
+		final List<Object> tuple = new Values(new Integer(0));
+		for(int i = 0; i < 2; ++i) {
+			Assert.assertEquals(Arrays.asList(new Integer(3)), grouping.chooseTasks(0, tuple));
+			Assert.assertEquals(Arrays.asList(new Integer(5)), grouping.chooseTasks(0, tuple));
+			Assert.assertEquals(Arrays.asList(new Integer(7)), grouping.chooseTasks(0, tuple));
+		}
+	}
+	
+	@Test
+	public void testAllTasks() {
+		DirectEmitGrouping grouping = new DirectEmitGrouping(true);
+		grouping.prepare(null, null, Arrays.asList(new Integer(3), new Integer(5), new Integer(7)));
+		
+		final List<Object> tuple = new Values(new Integer(0));
+		for(int i = 0; i < 3; ++i) {
+			Assert.assertEquals(Arrays.asList(new Integer(3), new Integer(5), new Integer(7)),
+				grouping.chooseTasks(0, tuple));
+		}
+	}
+	
+}
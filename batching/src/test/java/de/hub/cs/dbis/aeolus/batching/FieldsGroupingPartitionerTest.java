@@ -0,0 +1,116 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class FieldsGroupingPartitionerTest {
+	private Random r;
+	
+	
+	
+	@Before
+	public void prepare() {
+		final long seed = System.currentTimeMillis();
+		this.r = new Random(seed);
+		System.out.println("Test seed: " + seed);
+	}
+	
+	
+	
+	@Test
+	public void testSameAsStorm() {
+		final Fields schema = new Fields("a", "b", "c");
+		final List<String> groupingFields = Arrays.asList("c", "a");
+		final List<Integer> taskIds = Arrays.asList(new Integer(7), new Integer(3), new Integer(11), new Integer(5));
+		final List<Integer> sortedTaskIds = Arrays.asList(new Integer(3), new Integer(5), new Integer(7),
+			new Integer(11));
+		
+		FieldsGroupingPartitioner partitioner = new FieldsGroupingPartitioner(schema, groupingFields, taskIds);
+		
+		for(int i = 0; i < 1000; ++i) {
+			Values tuple = new Values(new Integer(this.r.nextInt()), "b" + i, new Long(this.r.nextLong()));
+			
+			// Storm: (mod (.hashCode (.select out-fields group-fields values)) num-tasks)
+			List<Object> selected = new ArrayList<Object>();
+			selected.add(tuple.get(2));
+			selected.add(tuple.get(0));
+			int expectedIndex = selected.hashCode() % sortedTaskIds.size();
+			if(expectedIndex < 0) {
+				expectedIndex += sortedTaskIds.size();
+			}
+			
+			Assert.assertEquals(expectedIndex, partitioner.getTaskIndex(tuple));
+			Assert.assertEquals(sortedTaskIds.get(expectedIndex), partitioner.getTaskId(tuple));
+		}
+	}
+	
+	@Test
+	public void testNullValue() {
+		FieldsGroupingPartitioner partitioner = new FieldsGroupingPartitioner(new Fields("a", "b"),
+			Arrays.asList("b"), Arrays.asList(new Integer(1), new Integer(2)));
+		
+		Values tuple = new Values("a", null);
+		Assert.assertEquals(Arrays.asList(new Object[] {null}).hashCode() % 2, partitioner.getTaskIndex(tuple));
+	}
+	
+	@Test
+	public void testIsEquivalent() {
+		final Fields schema = new Fields("a", "b");
+		final List<Integer> tasks1 = Arrays.asList(new Integer(1), new Integer(2));
+		final List<Integer> tasks2 = Arrays.asList(new Integer(4), new Integer(3));
+		final List<Integer> tasks3 = Arrays.asList(new Integer(5), new Integer(6), new Integer(7));
+		
+		FieldsGroupingPartitioner partitioner = new FieldsGroupingPartitioner(schema, Arrays.asList("a"), tasks1);
+		
+		Assert.assertTrue(partitioner.isEquivalent(new FieldsGroupingPartitioner(schema, Arrays.asList("a"), tasks2)));
+		Assert.assertFalse(partitioner.isEquivalent(new FieldsGroupingPartitioner(schema, Arrays.asList("b"), tasks2)));
+		Assert.assertFalse(partitioner.isEquivalent(new FieldsGroupingPartitioner(schema, Arrays.asList("a"), tasks3)));
+		Assert.assertFalse(partitioner.isEquivalent(new FieldsGroupingPartitioner(schema, Arrays.asList("a", "b"),
+			tasks2)));
+	}
+	
+	@Test
+	public void testGlobalGrouping() {
+		FieldsGroupingPartitioner partitioner = new FieldsGroupingPartitioner(new Fields("a"), new ArrayList<String>(),
+			Arrays.asList(new Integer(4), new Integer(2), new Integer(3)));
+		
+		for(int i = 0; i < 100; ++i) {
+			Assert.assertEquals(new Integer(2), partitioner.getTaskId(new Values(new Integer(this.r.nextInt()))));
+		}
+	}
+	
+}
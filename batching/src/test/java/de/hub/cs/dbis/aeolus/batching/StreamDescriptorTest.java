@@ -0,0 +1,79 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class StreamDescriptorTest {
+	
+	@Test
+	public void testInitBuffers() {
+		StreamDescriptor stream = new StreamDescriptor("stream", 5, 3);
+		stream.initBuffers(4);
+		
+		Assert.assertEquals(4, stream.buffers.length);
+		for(Batch b : stream.buffers) {
+			Assert.assertTrue(b.isEmpty());
+		}
+		Assert.assertTrue(stream.dirtyBuffers.isEmpty());
+		Assert.assertNull(stream.directBuffers);
+	}
+	
+	@Test
+	public void testInitDirectBuffers() {
+		StreamDescriptor stream = new StreamDescriptor("stream", 5, 3);
+		stream.initDirectBuffers(Arrays.asList(new Integer(7), new Integer(3), new Integer(4), new Integer(9),
+			new Integer(8)));
+		
+		Assert.assertEquals(5, stream.directBuffers.length);
+		Assert.assertArrayEquals(new int[] {3, 4, 7, 8, 9}, stream.directTaskIds);
+		Assert.assertTrue(stream.dirtyDirectBuffers.isEmpty());
+		Assert.assertNull(stream.buffers);
+		
+		Assert.assertEquals(-1, stream.getDirectBufferIndex(2));
+		Assert.assertEquals(0, stream.getDirectBufferIndex(3));
+		Assert.assertEquals(1, stream.getDirectBufferIndex(4));
+		Assert.assertEquals(-1, stream.getDirectBufferIndex(5));
+		Assert.assertEquals(-1, stream.getDirectBufferIndex(6));
+		Assert.assertEquals(2, stream.getDirectBufferIndex(7));
+		Assert.assertEquals(3, stream.getDirectBufferIndex(8));
+		Assert.assertEquals(4, stream.getDirectBufferIndex(9));
+		Assert.assertEquals(-1, stream.getDirectBufferIndex(10));
+	}
+	
+	@Test
+	public void testInitDirectBuffersNoConsumer() {
+		StreamDescriptor stream = new StreamDescriptor("stream", 5, 3);
+		stream.initDirectBuffers(Arrays.<Integer> asList());
+		
+		Assert.assertEquals(0, stream.directBuffers.length);
+		Assert.assertEquals(-1, stream.getDirectBufferIndex(0));
+	}
+	
+}
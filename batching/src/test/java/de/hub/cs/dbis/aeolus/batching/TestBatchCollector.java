@@ -39,6 +39,7 @@ public class TestBatchCollector extends AbstractBatchCollector {
 	public final Map<String, List<Collection<Tuple>>> anchorBuffer = new HashMap<String, List<Collection<Tuple>>>();
 	public final Map<String, List<Object>> resultBuffer = new HashMap<String, List<Object>>();
 	public final Map<String, List<Object>> messageIdBuffer = new HashMap<String, List<Object>>();
+	public final List<Tuple> ackBuffer = new LinkedList<Tuple>();
 	
 	
 	
@@ -64,6 +65,11 @@ public class TestBatchCollector extends AbstractBatchCollector {
 		
 	}
 	
+	@Override
+	protected void doAck(Tuple input) {
+		this.ackBuffer.add(input);
+	}
+	
 	private void setListMembers(int taskId, String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
 		if(taskId != -1) {
 			List<Integer> taksList = this.taskBuffer.get(streamId);
@@ -21,6 +21,7 @@ package de.hub.cs.dbis.aeolus.batching.api;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,14 +37,24 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import backtype.storm.Config;
+import backtype.storm.Constants;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.batching.AdaptiveBatchSizeController;
 import de.hub.cs.dbis.aeolus.batching.Batch;
 import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchColumnSerializer;
 import de.hub.cs.dbis.aeolus.batching.BatchOutputCollector;
 import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
+import de.hub.cs.dbis.aeolus.batching.BinaryBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.DoubleBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.IntBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.LongBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.SerializedBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.ShortBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.StringBatchColumn;
 
 
 
@@ -79,6 +90,18 @@ public class BoltOutputBatcherTest {
 		verify(this.boltMock).prepare(same(conf), same(context), any(BatchOutputCollector.class));
 	}
 	
+	@Test
+	public void testPrepareBatchSizeController() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(1, 1000, 100);
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setBatchSizeController(controller);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		bolt.prepare(null, context, null);
+		
+		verify(context).setTaskData(AdaptiveBatchSizeController.TASK_DATA_KEY, controller);
+	}
+	
 	@Test
 	public void testExecute() {
 		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
@@ -89,6 +112,108 @@ public class BoltOutputBatcherTest {
 		verify(this.boltMock).execute(input);
 	}
 	
+	@Test
+	public void testExecuteTickTuple() throws Exception {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setMaxBufferTime(100);
+		
+		BatchOutputCollector collectorMock = mock(BatchOutputCollector.class);
+		PowerMockito.whenNew(BatchOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		bolt.prepare(null, null, null);
+		verify(collectorMock).setMaxBufferTime(100);
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+		when(input.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+		bolt.execute(input);
+		
+		verify(collectorMock).flushStale();
+		verify(this.boltMock, never()).execute(input);
+	}
+	
+	@Test
+	public void testExecuteTickTupleRequestedByBolt() throws Exception {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setMaxBufferTime("stream", 100);
+		
+		final Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, new Integer(5));
+		when(this.boltMock.getComponentConfiguration()).thenReturn(conf);
+		
+		BatchOutputCollector collectorMock = mock(BatchOutputCollector.class);
+		PowerMockito.whenNew(BatchOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		bolt.prepare(null, null, null);
+		verify(collectorMock).setMaxBufferTime("stream", 100);
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+		when(input.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+		bolt.execute(input);
+		
+		verify(collectorMock).flushStale();
+		verify(this.boltMock).execute(input);
+	}
+	
+	@Test
+	public void testPrepareMaxBatchBytes() throws Exception {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setMaxBatchBytes(65536);
+		bolt.setMaxBatchBytes("stream", 1024);
+		
+		BatchOutputCollector collectorMock = mock(BatchOutputCollector.class);
+		PowerMockito.whenNew(BatchOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		bolt.prepare(null, null, null);
+		
+		verify(collectorMock).setMaxBatchBytes(65536);
+		verify(collectorMock).setMaxBatchBytes("stream", 1024);
+	}
+	
+	@Test
+	public void testPrepareCompressionThreshold() throws Exception {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setCompressionThreshold(4096);
+		bolt.setCompressionThreshold("stream", 0);
+		
+		BatchOutputCollector collectorMock = mock(BatchOutputCollector.class);
+		PowerMockito.whenNew(BatchOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		bolt.prepare(null, null, null);
+		
+		verify(collectorMock).setCompressionThreshold(4096);
+		verify(collectorMock).setCompressionThreshold("stream", 0);
+	}
+	
+	@Test
+	public void testPrepareLocalBatchSize() throws Exception {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setLocalBatchSize(0);
+		bolt.setLocalBatchSize("stream", 5);
+		
+		BatchOutputCollector collectorMock = mock(BatchOutputCollector.class);
+		PowerMockito.whenNew(BatchOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		bolt.prepare(null, null, null);
+		
+		verify(collectorMock).setLocalBatchSize(0);
+		verify(collectorMock).setLocalBatchSize("stream", 5);
+	}
+	
+	@Test
+	public void testPrepareControlStream() throws Exception {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.addControlStream("flush");
+		
+		BatchOutputCollector collectorMock = mock(BatchOutputCollector.class);
+		PowerMockito.whenNew(BatchOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		bolt.prepare(null, null, null);
+		
+		verify(collectorMock).addControlStream("flush");
+	}
+	
 	@Test
 	public void testCleanup() throws Exception {
 		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
@@ -126,13 +251,47 @@ public class BoltOutputBatcherTest {
 		Assert.assertSame(result, conf);
 	}
 	
+	@Test
+	public void testGetComponentConfigurationMaxBufferTime() {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setMaxBufferTime(5000);
+		bolt.setMaxBufferTime("stream", 2500);
+		
+		final Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put("key", "value");
+		when(this.boltMock.getComponentConfiguration()).thenReturn(conf);
+		
+		Map<String, Object> result = bolt.getComponentConfiguration();
+		
+		Assert.assertEquals("value", result.get("key"));
+		Assert.assertEquals(new Integer(2), result.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+		Assert.assertNull(conf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+	}
+	
+	@Test
+	public void testGetComponentConfigurationShortMaxBufferTime() {
+		BoltOutputBatcher bolt = new BoltOutputBatcher(this.boltMock, this.noBatching);
+		bolt.setMaxBufferTime(10);
+		
+		Map<String, Object> result = bolt.getComponentConfiguration();
+		
+		Assert.assertEquals(new Integer(1), result.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+	}
+	
 	@Test
 	public void testKryoRegistrations() {
 		Config stormConfig = mock(Config.class);
 		BoltOutputBatcher.registerKryoClasses(stormConfig);
 		
 		verify(stormConfig).registerSerialization(Batch.class);
-		verify(stormConfig).registerSerialization(BatchColumn.class);
+		verify(stormConfig).registerSerialization(BatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(LongBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(IntBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(ShortBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(DoubleBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(StringBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(BinaryBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(SerializedBatchColumn.class, BatchColumnSerializer.class);
 	}
 	
 }
@@ -19,8 +19,11 @@
 package de.hub.cs.dbis.aeolus.batching.api;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,7 +48,18 @@ import backtype.storm.tuple.Values;
 import backtype.storm.utils.Utils;
 import de.hub.cs.dbis.aeolus.batching.Batch;
 import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchColumnSerializer;
 import de.hub.cs.dbis.aeolus.batching.BatchOutputCollector;
+import de.hub.cs.dbis.aeolus.batching.BatchTupleView;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.BinaryBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.DebatchedTuple;
+import de.hub.cs.dbis.aeolus.batching.DoubleBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.IntBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.LongBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.SerializedBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.ShortBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.StringBatchColumn;
 import de.hub.cs.dbis.aeolus.testUtils.ForwardBolt;
 import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
 
@@ -108,9 +122,18 @@ public class InputDebatcherTest {
 		Assert.assertEquals(expectedResult, collector.output.get(Utils.DEFAULT_STREAM_ID));
 	}
 	
-	@SuppressWarnings({"unchecked", "rawtypes"})
 	@Test
 	public void testExecuteSimpleBatching() {
+		this.executeSimpleBatching(false);
+	}
+	
+	@Test
+	public void testExecuteSimpleBatchingCopyMode() {
+		this.executeSimpleBatching(true);
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void executeSimpleBatching(boolean copyTuples) {
 		final int batchSize = 2 + this.r.nextInt(8);
 		final int numberOfAttributes = 2 + this.r.nextInt(3);
 		final int numberOfTuples = batchSize * 10;
@@ -125,11 +148,13 @@ public class InputDebatcherTest {
 			.thenReturn(new Fields(inputSchema));
 		
 		InputDebatcher bolt = new InputDebatcher(new ForwardBolt(new Fields("dummy")));
+		bolt.setCopyTuples(copyTuples);
 		
 		TestOutputCollector collector = new TestOutputCollector();
 		bolt.prepare(null, context, new OutputCollector(collector));
 		
 		List<Values> expectedResult = new LinkedList<Values>();
+		List<Tuple> inputs = new LinkedList<Tuple>();
 		Batch inputBatch = new Batch(batchSize, numberOfAttributes);
 		
 		for(int i = 0; i < numberOfTuples; ++i) {
@@ -148,12 +173,128 @@ public class InputDebatcherTest {
 					when(input.getValue(j)).thenReturn(inputBatch.get(j));
 				}
 				bolt.execute(input);
+				inputs.add(input);
 				
 				inputBatch = new Batch(batchSize, numberOfAttributes);
 			}
 		}
 		
 		Assert.assertEquals(expectedResult, collector.output.get(Utils.DEFAULT_STREAM_ID));
+		// ForwardBolt acks each extracted tuple -> each input batch is acked once
+		Assert.assertEquals(inputs, collector.acked);
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	@Test
+	public void testExecuteBatchBolt() {
+		IBatchBolt boltMock = mock(IBatchBolt.class);
+		InputDebatcher bolt = new InputDebatcher(boltMock);
+		
+		TestOutputCollector collector = new TestOutputCollector();
+		bolt.prepare(null, mock(TopologyContext.class), new OutputCollector(collector));
+		
+		Batch inputBatch = new Batch(2, 1);
+		inputBatch.addTuple(new Values(new Integer(0)));
+		inputBatch.addTuple(new Values(new Integer(1)));
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getValues()).thenReturn((List)inputBatch);
+		when(new Integer(input.size())).thenReturn(new Integer(1));
+		when(input.getValue(0)).thenReturn(inputBatch.get(0));
+		
+		bolt.execute(input);
+		
+		verify(boltMock).executeBatch(any(BatchView.class));
+		verify(boltMock, never()).execute(any(Tuple.class));
+		
+		Tuple regularInput = mock(Tuple.class);
+		when(regularInput.getValues()).thenReturn(new Values(new Integer(0)));
+		
+		bolt.execute(regularInput);
+		
+		verify(boltMock).execute(regularInput);
+	}
+	
+	@Test
+	public void testCopyModeOutputBatcher() {
+		IRichBolt boltMock = mock(IRichBolt.class);
+		this.executeTwoTupleBatch(new BoltOutputBatcher(boltMock, new HashMap<String, Integer>()), new HashMap<String, Object>());
+		
+		verify(boltMock, times(2)).execute(isA(DebatchedTuple.class));
+	}
+	
+	@Test
+	public void testCopyModeNestedOutputBatcher() {
+		IRichBolt boltMock = mock(IRichBolt.class);
+		this.executeTwoTupleBatch(new TestBoltWrapper(new TestBoltWrapper(new BoltOutputBatcher(boltMock,
+			new HashMap<String, Integer>()))), new HashMap<String, Object>());
+		
+		verify(boltMock, times(2)).execute(isA(DebatchedTuple.class));
+	}
+	
+	@Test
+	public void testNoCopyModeNestedOutputBatcherNoAcking() {
+		Config conf = new Config();
+		conf.setNumAckers(0);
+		
+		IRichBolt boltMock = mock(IRichBolt.class);
+		this.executeTwoTupleBatch(new TestBoltWrapper(new BoltOutputBatcher(boltMock, new HashMap<String, Integer>())),
+			conf);
+		
+		verify(boltMock, times(2)).execute(isA(BatchTupleView.class));
+	}
+	
+	@Test
+	public void testNoCopyModeWrapper() {
+		IRichBolt boltMock = mock(IRichBolt.class);
+		this.executeTwoTupleBatch(new TestBoltWrapper(boltMock), new HashMap<String, Object>());
+		
+		verify(boltMock, times(2)).execute(isA(BatchTupleView.class));
+	}
+	
+	@Test
+	public void testExecuteBatchBoltWrapper() {
+		IBatchBolt boltMock = mock(IBatchBolt.class);
+		this.executeTwoTupleBatch(new TestBatchBoltWrapper(new TestBatchBoltWrapper(boltMock)),
+			new HashMap<String, Object>());
+		
+		verify(boltMock).executeBatch(any(BatchView.class));
+		verify(boltMock, never()).execute(any(Tuple.class));
+	}
+	
+	@Test
+	public void testNoExecuteBatchBatchBoltWrapper() {
+		IRichBolt boltMock = mock(IRichBolt.class);
+		this.executeTwoTupleBatch(new TestBatchBoltWrapper(boltMock), new HashMap<String, Object>());
+		
+		verify(boltMock, times(2)).execute(isA(BatchTupleView.class));
+	}
+	
+	@Test
+	public void testNoExecuteBatchNonBatchWrapper() {
+		IBatchBolt boltMock = mock(IBatchBolt.class);
+		this.executeTwoTupleBatch(new TestBatchBoltWrapper(new TestBoltWrapper(boltMock)),
+			new HashMap<String, Object>());
+		
+		verify(boltMock, never()).executeBatch(any(BatchView.class));
+		verify(boltMock, times(2)).execute(isA(BatchTupleView.class));
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void executeTwoTupleBatch(IRichBolt wrappedBolt, Map conf) {
+		InputDebatcher bolt = new InputDebatcher(wrappedBolt);
+		bolt.prepare(conf, mock(TopologyContext.class), new OutputCollector(new TestOutputCollector()));
+		
+		Batch inputBatch = new Batch(2, 1);
+		inputBatch.addTuple(new Values(new Integer(0)));
+		inputBatch.addTuple(new Values(new Integer(1)));
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getValues()).thenReturn((List)inputBatch);
+		when(new Integer(input.size())).thenReturn(new Integer(1));
+		when(input.getValue(0)).thenReturn(inputBatch.get(0));
+		
+		bolt.execute(input);
 	}
 	
 	@Test
@@ -197,7 +338,14 @@ public class InputDebatcherTest {
 		InputDebatcher.registerKryoClasses(stormConfig);
 		
 		verify(stormConfig).registerSerialization(Batch.class);
-		verify(stormConfig).registerSerialization(BatchColumn.class);
+		verify(stormConfig).registerSerialization(BatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(LongBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(IntBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(ShortBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(DoubleBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(StringBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(BinaryBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(SerializedBatchColumn.class, BatchColumnSerializer.class);
 	}
 	
 }
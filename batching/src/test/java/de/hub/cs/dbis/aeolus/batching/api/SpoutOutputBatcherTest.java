@@ -19,12 +19,16 @@
 package de.hub.cs.dbis.aeolus.batching.api;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -44,10 +48,20 @@ import backtype.storm.topology.IRichSpout;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Fields;
 import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.batching.AdaptiveBatchSizeController;
 import de.hub.cs.dbis.aeolus.batching.Batch;
 import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchColumnSerializer;
+import de.hub.cs.dbis.aeolus.batching.BatchMessageId;
 import de.hub.cs.dbis.aeolus.batching.BatchSpoutOutputCollector;
 import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
+import de.hub.cs.dbis.aeolus.batching.BinaryBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.DoubleBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.IntBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.LongBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.SerializedBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.ShortBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.StringBatchColumn;
 import de.hub.cs.dbis.aeolus.testUtils.IncSpout;
 import de.hub.cs.dbis.aeolus.testUtils.RandomSpout;
 import de.hub.cs.dbis.aeolus.testUtils.TestSpoutOutputCollector;
@@ -106,6 +120,117 @@ public class SpoutOutputBatcherTest {
 		verify(collectorMock).flush();
 	}
 	
+	@Test
+	public void testOpenMaxBufferTime() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.setMaxBufferTime(100);
+		spout.setMaxBufferTime("stream", 10);
+		spout.open(null, null, null);
+		
+		verify(collectorMock).setMaxBufferTime(100);
+		verify(collectorMock).setMaxBufferTime("stream", 10);
+	}
+	
+	@Test
+	public void testOpenMaxBatchBytes() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.setMaxBatchBytes(65536);
+		spout.setMaxBatchBytes("stream", 1024);
+		spout.open(null, null, null);
+		
+		verify(collectorMock).setMaxBatchBytes(65536);
+		verify(collectorMock).setMaxBatchBytes("stream", 1024);
+	}
+	
+	@Test
+	public void testOpenCompressionThreshold() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.setCompressionThreshold(4096);
+		spout.setCompressionThreshold("stream", 0);
+		spout.open(null, null, null);
+		
+		verify(collectorMock).setCompressionThreshold(4096);
+		verify(collectorMock).setCompressionThreshold("stream", 0);
+	}
+	
+	@Test
+	public void testOpenLocalBatchSize() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.setLocalBatchSize(0);
+		spout.setLocalBatchSize("stream", 5);
+		spout.open(null, null, null);
+		
+		verify(collectorMock).setLocalBatchSize(0);
+		verify(collectorMock).setLocalBatchSize("stream", 5);
+	}
+	
+	@Test
+	public void testOpenControlStream() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.addControlStream("flush");
+		spout.open(null, null, null);
+		
+		verify(collectorMock).addControlStream("flush");
+	}
+	
+	@Test
+	public void testOpenBatchSizeController() {
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(1, 1000, 100);
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.setBatchSizeController(controller);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		spout.open(null, context, null);
+		
+		verify(context).setTaskData(AdaptiveBatchSizeController.TASK_DATA_KEY, controller);
+	}
+	
+	@Test
+	public void testNextTupleFlushStale() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.open(null, null, null);
+		
+		spout.nextTuple();
+		verify(this.spoutMock).nextTuple();
+		verify(collectorMock).flushStale();
+	}
+	
+	@Test
+	public void testNextTupleIdleFlush() throws Exception {
+		BatchSpoutOutputCollector collectorMock = mock(BatchSpoutOutputCollector.class);
+		PowerMockito.whenNew(BatchSpoutOutputCollector.class).withAnyArguments().thenReturn(collectorMock);
+		
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		spout.setIdleFlushThreshold(2);
+		spout.open(null, null, null);
+		
+		// wrapped spout mock does not emit any tuple
+		spout.nextTuple();
+		verify(collectorMock, never()).flush();
+		spout.nextTuple();
+		verify(collectorMock).flush();
+		spout.nextTuple();
+		verify(collectorMock).flush();
+	}
+	
 	@Test
 	public void testActivate() {
 		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
@@ -146,6 +271,41 @@ public class SpoutOutputBatcherTest {
 		verify(this.spoutMock).fail(messageId);
 	}
 	
+	@Test
+	public void testAckBatch() {
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		
+		BatchMessageId messageId = mock(BatchMessageId.class);
+		spout.ack(messageId);
+		
+		verify(messageId).ack(this.spoutMock);
+	}
+	
+	@Test
+	public void testAckBatchReportsLatency() {
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		AdaptiveBatchSizeController controller = mock(AdaptiveBatchSizeController.class);
+		spout.setBatchSizeController(controller);
+		
+		BatchMessageId messageId = mock(BatchMessageId.class);
+		when(messageId.getStreamId()).thenReturn("stream");
+		when(new Long(messageId.getEmitTimestamp())).thenReturn(new Long(System.currentTimeMillis()));
+		spout.ack(messageId);
+		
+		verify(controller).reportLatency(eq("stream"), anyLong());
+		verify(messageId).ack(this.spoutMock);
+	}
+	
+	@Test
+	public void testFailBatch() {
+		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
+		
+		BatchMessageId messageId = mock(BatchMessageId.class);
+		spout.fail(messageId);
+		
+		verify(messageId).fail(this.spoutMock);
+	}
+	
 	@Test
 	public void testDeclareOutputFields() {
 		SpoutOutputBatcher spout = new SpoutOutputBatcher(this.spoutMock, this.noBatching);
@@ -198,6 +358,39 @@ public class SpoutOutputBatcherTest {
 		Assert.assertEquals(1, collector.output.get(Utils.DEFAULT_STREAM_ID).size());
 	}
 	
+	@Test
+	public void testNextTupleMaxCalls() {
+		final int batchSize = 10;
+		final String streamId = Utils.DEFAULT_STREAM_ID;
+		final String sourceId = "sourceId";
+		
+		Map<String, Grouping> receiver = new HashMap<String, Grouping>();
+		receiver.put("receiverId", mock(Grouping.class));
+		
+		HashMap<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(streamId, receiver);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisComponentId()).thenReturn(sourceId);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(sourceId, streamId)).thenReturn(new Fields("dummy"));
+		
+		RandomSpout userSpout = new RandomSpout(1, 1000, new String[] {Utils.DEFAULT_STREAM_ID}, this.seed);
+		SpoutOutputBatcher batcher = new SpoutOutputBatcher(userSpout, batchSize);
+		batcher.setMaxNextTupleCalls(3);
+		
+		TestSpoutOutputCollector collector = new TestSpoutOutputCollector();
+		batcher.open(null, context, new SpoutOutputCollector(collector));
+		
+		for(int i = 0; i < 3; ++i) {
+			batcher.nextTuple();
+			Assert.assertNull(collector.output.get(Utils.DEFAULT_STREAM_ID));
+		}
+		batcher.nextTuple();
+		
+		Assert.assertEquals(1, collector.output.get(Utils.DEFAULT_STREAM_ID).size());
+	}
+	
 	@Test(timeout = 1000)
 	public void testNextTupleNoEmit() {
 		final int batchSize = 6 + this.r.nextInt(5);
@@ -234,13 +427,66 @@ public class SpoutOutputBatcherTest {
 		Assert.assertEquals(1, collector.output.get(Utils.DEFAULT_STREAM_ID).size());
 	}
 	
+	@Test(timeout = 1000)
+	public void testNextTupleLatencyFeedback() {
+		final String streamId = Utils.DEFAULT_STREAM_ID;
+		final String sourceId = "sourceId";
+		
+		Map<String, Grouping> receiver = new HashMap<String, Grouping>();
+		receiver.put("receiverId", mock(Grouping.class));
+		
+		HashMap<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+		targets.put(streamId, receiver);
+		
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController(1, 1000, 100);
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(context.getThisComponentId()).thenReturn(sourceId);
+		when(context.getThisTargets()).thenReturn(targets);
+		when(context.getComponentOutputFields(sourceId, streamId)).thenReturn(new Fields("dummy"));
+		when(context.getTaskData(AdaptiveBatchSizeController.TASK_DATA_KEY)).thenReturn(controller);
+		
+		RandomSpout userSpout = new RandomSpout(1, 1000, new String[] {Utils.DEFAULT_STREAM_ID}, this.seed);
+		SpoutOutputBatcher batcher = new SpoutOutputBatcher(userSpout, 4);
+		batcher.setBatchSizeController(controller);
+		
+		TestSpoutOutputCollector collector = new TestSpoutOutputCollector();
+		batcher.open(null, context, new SpoutOutputCollector(collector));
+		
+		// without downstream latency, the whole latency budget is used -> batch size doubles
+		for(int i = 0; i < 3; ++i) {
+			batcher.nextTuple();
+		}
+		
+		// downstream latency exhausts the latency budget -> batch size halves (after the already started batch)
+		AdaptiveBatchSizeController.getController(context).reportLatency(streamId, 100);
+		for(int i = 0; i < 3; ++i) {
+			batcher.nextTuple();
+		}
+		
+		List<List<Object>> result = collector.output.get(streamId);
+		Assert.assertEquals(6, result.size());
+		
+		final int[] expectedBatchSizes = new int[] {4, 8, 16, 32, 16, 8};
+		for(int i = 0; i < expectedBatchSizes.length; ++i) {
+			Assert.assertEquals(expectedBatchSizes[i], ((BatchColumn)result.get(i).get(0)).size());
+		}
+	}
+	
 	@Test
 	public void testKryoRegistrations() {
 		Config stormConfig = mock(Config.class);
 		SpoutOutputBatcher.registerKryoClasses(stormConfig);
 		
 		verify(stormConfig).registerSerialization(Batch.class);
-		verify(stormConfig).registerSerialization(BatchColumn.class);
+		verify(stormConfig).registerSerialization(BatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(LongBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(IntBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(ShortBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(DoubleBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(StringBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(BinaryBatchColumn.class, BatchColumnSerializer.class);
+		verify(stormConfig).registerSerialization(SerializedBatchColumn.class, BatchColumnSerializer.class);
 	}
 	
 }
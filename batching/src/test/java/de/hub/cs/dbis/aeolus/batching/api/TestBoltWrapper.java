@@ -0,0 +1,79 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.batching.api;
+
+import java.util.Map;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Tuple;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class TestBoltWrapper implements IBoltWrapper {
+	private static final long serialVersionUID = -1858474917389154736L;
+	
+	private final IRichBolt wrappedBolt;
+	
+	
+	
+	public TestBoltWrapper(IRichBolt bolt) {
+		this.wrappedBolt = bolt;
+	}
+	
+	
+	
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
+		this.wrappedBolt.prepare(stormConf, context, collector);
+	}
+	
+	@Override
+	public void execute(Tuple input) {
+		this.wrappedBolt.execute(input);
+	}
+	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.wrappedBolt;
+	}
+	
+	@Override
+	public void cleanup() {
+		this.wrappedBolt.cleanup();
+	}
+	
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		this.wrappedBolt.declareOutputFields(declarer);
+	}
+	
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		return this.wrappedBolt.getComponentConfiguration();
+	}
+	
+}
@@ -0,0 +1,233 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.generated.Grouping;
+import backtype.storm.grouping.CustomStreamGrouping;
+import backtype.storm.topology.BoltDeclarer;
+import backtype.storm.tuple.Fields;
+
+
+
+
+
+/**
+ * {@link LatencyMarkerBoltDeclarer} wraps a {@link BoltDeclarer} and records all components the declared bolt
+ * subscribes to. The recorded components are used to subscribe the bolt to the latency marker streams of its producers
+ * (see {@link #subscribeMarkerStreams(Set)}).
+ * 
+ * @author mjsax
+ */
+class LatencyMarkerBoltDeclarer implements BoltDeclarer {
+	/** The original declarer. */
+	private final BoltDeclarer declarer;
+	
+	/** The IDs of all components the bolt subscribes to. */
+	private final Set<String> producers = new HashSet<String>();
+	
+	
+	
+	/**
+	 * Instantiates a new {@link LatencyMarkerBoltDeclarer}.
+	 * 
+	 * @param declarer
+	 *            The original declarer.
+	 */
+	LatencyMarkerBoltDeclarer(BoltDeclarer declarer) {
+		this.declarer = declarer;
+	}
+	
+	
+	
+	/**
+	 * Subscribes the bolt to the latency marker streams of all recorded producers that emit latency markers. Markers
+	 * are received via shuffle grouping, such that each marker is processed by a single consumer task.
+	 * 
+	 * @param markerProducers
+	 *            The IDs of all components that emit latency markers.
+	 */
+	void subscribeMarkerStreams(Set<String> markerProducers) {
+		for(String componentId : this.producers) {
+			if(markerProducers.contains(componentId)) {
+				this.declarer.shuffleGrouping(componentId, MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM);
+			}
+		}
+	}
+	
+	@Override
+	public BoltDeclarer fieldsGrouping(String componentId, Fields fields) {
+		this.producers.add(componentId);
+		this.declarer.fieldsGrouping(componentId, fields);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer fieldsGrouping(String componentId, String streamId, Fields fields) {
+		this.producers.add(componentId);
+		this.declarer.fieldsGrouping(componentId, streamId, fields);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer globalGrouping(String componentId) {
+		this.producers.add(componentId);
+		this.declarer.globalGrouping(componentId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer globalGrouping(String componentId, String streamId) {
+		this.producers.add(componentId);
+		this.declarer.globalGrouping(componentId, streamId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer shuffleGrouping(String componentId) {
+		this.producers.add(componentId);
+		this.declarer.shuffleGrouping(componentId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer shuffleGrouping(String componentId, String streamId) {
+		this.producers.add(componentId);
+		this.declarer.shuffleGrouping(componentId, streamId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer localOrShuffleGrouping(String componentId) {
+		this.producers.add(componentId);
+		this.declarer.localOrShuffleGrouping(componentId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer localOrShuffleGrouping(String componentId, String streamId) {
+		this.producers.add(componentId);
+		this.declarer.localOrShuffleGrouping(componentId, streamId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer noneGrouping(String componentId) {
+		this.producers.add(componentId);
+		this.declarer.noneGrouping(componentId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer noneGrouping(String componentId, String streamId) {
+		this.producers.add(componentId);
+		this.declarer.noneGrouping(componentId, streamId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer allGrouping(String componentId) {
+		this.producers.add(componentId);
+		this.declarer.allGrouping(componentId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer allGrouping(String componentId, String streamId) {
+		this.producers.add(componentId);
+		this.declarer.allGrouping(componentId, streamId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer directGrouping(String componentId) {
+		this.producers.add(componentId);
+		this.declarer.directGrouping(componentId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer directGrouping(String componentId, String streamId) {
+		this.producers.add(componentId);
+		this.declarer.directGrouping(componentId, streamId);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer customGrouping(String componentId, CustomStreamGrouping grouping) {
+		this.producers.add(componentId);
+		this.declarer.customGrouping(componentId, grouping);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer customGrouping(String componentId, String streamId, CustomStreamGrouping grouping) {
+		this.producers.add(componentId);
+		this.declarer.customGrouping(componentId, streamId, grouping);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer grouping(GlobalStreamId id, Grouping grouping) {
+		this.producers.add(id.get_componentId());
+		this.declarer.grouping(id, grouping);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer addConfigurations(@SuppressWarnings("rawtypes") Map conf) {
+		this.declarer.addConfigurations(conf);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer addConfiguration(String config, Object value) {
+		this.declarer.addConfiguration(config, value);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer setDebug(boolean debug) {
+		this.declarer.setDebug(debug);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer setMaxTaskParallelism(Number val) {
+		this.declarer.setMaxTaskParallelism(val);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer setMaxSpoutPending(Number val) {
+		this.declarer.setMaxSpoutPending(val);
+		return this;
+	}
+	
+	@Override
+	public BoltDeclarer setNumTasks(Number val) {
+		this.declarer.setNumTasks(val);
+		return this;
+	}
+	
+}
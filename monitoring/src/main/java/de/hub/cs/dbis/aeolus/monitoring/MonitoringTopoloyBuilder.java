@@ -19,9 +19,14 @@
 package de.hub.cs.dbis.aeolus.monitoring;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import backtype.storm.generated.StormTopology;
 import backtype.storm.topology.BoltDeclarer;
 import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.IRichSpout;
@@ -31,7 +36,10 @@ import de.hub.cs.dbis.aeolus.batching.api.InputDebatcher;
 import de.hub.cs.dbis.aeolus.batching.api.SpoutOutputBatcher;
 import de.hub.cs.dbis.aeolus.monitoring.latency.LatencyBolt;
 import de.hub.cs.dbis.aeolus.monitoring.latency.LatencyCollectorBolt;
+import de.hub.cs.dbis.aeolus.monitoring.latency.LatencyHistogram;
+import de.hub.cs.dbis.aeolus.monitoring.latency.LatencyHistogramMergerBolt;
 import de.hub.cs.dbis.aeolus.monitoring.latency.LatencySpout;
+import de.hub.cs.dbis.aeolus.monitoring.profiling.ProfilingBolt;
 import de.hub.cs.dbis.aeolus.monitoring.throughput.ThroughputBolt;
 import de.hub.cs.dbis.aeolus.monitoring.throughput.ThroughputSpout;
 import de.hub.cs.dbis.aeolus.sinks.FileFlushSinkBolt;
@@ -42,7 +50,17 @@ import de.hub.cs.dbis.aeolus.sinks.FileFlushSinkBolt;
 
 /**
  * {@link MonitoringTopoloyBuilder} allows to automatically insert monitoring wrapper spouts and bolt into a topology to
- * collect throughput and latency statistics.
+ * collect throughput and latency statistics.<br />
+ * <br />
+ * Latencies are either measured for all tuples (by appending a create timestamp attribute to all tuples) or for a
+ * sample of the tuples only (by emitting separate latency markers, see {@link LatencySpout}). In sampling mode, all
+ * monitored bolts are subscribed to the latency marker streams of their producers automatically when the topology is
+ * created. In sampling mode, per-hop latencies (ie, queueing delay per edge and service time per bolt) can be collected,
+ * too.<br />
+ * <br />
+ * Throughput counters are placed outside of {@link InputDebatcher} and {@link SpoutOutputBatcher}. Thus, they see whole
+ * batches and report the number of received or emitted messages and the effective batch size next to the number of
+ * tuples.
  * 
  * @author mjsax
  */
@@ -51,35 +69,125 @@ public class MonitoringTopoloyBuilder extends TopologyBuilder {
 	public final static String DEFAULT_THROUGHPUT_STREAM = "aeolus::throughput";
 	/** The default ID of the latency report stream. */
 	public final static String DEFAULT_LATENCY_STREAM = "aeolus::latency";
+	/** The ID of the latency marker stream (used in latency sampling mode). */
+	public final static String LATENCY_MARKER_STREAM = "aeolus::latency-marker";
+	/** The default ID of the per-hop latency report stream. */
+	public final static String DEFAULT_HOP_LATENCY_STREAM = "aeolus::hop-latency";
+	/** The default ID of the profiling report stream. */
+	public final static String DEFAULT_PROFILING_STREAM = "aeolus::profiling";
 	/** The default directory to write monitoring statistics. */
 	public final static String DEFAULT_STATS_DIR = "/tmp/aeolus-stats";
 	
 	private final boolean meassureThroughput;
 	private final int reportingInterval;
 	private final boolean meassureLatency;
-	private final int statsBucketSize;
+	private final int latencyReportingInterval;
+	private final int latencySampleRate;
+	private final int latencySampleInterval;
+	private final boolean sampleLatency;
+	private final int serviceSampleRate;
+	private int profilingInterval = 0;
+	private boolean measureCpuTime = false;
+	
+	/** The IDs of all components that emit latency markers. */
+	private final Set<String> markerProducers = new HashSet<String>();
+	/** The declarers of all bolts that consume latency markers. */
+	private final List<LatencyMarkerBoltDeclarer> markerConsumers = new ArrayList<LatencyMarkerBoltDeclarer>();
 	
 	private boolean callSuper = false;
 	
 	
 	
 	public MonitoringTopoloyBuilder(boolean meassureThroughput, int reportingInterval, boolean meassureLatency,
-		int statsBucketSize) {
+		int latencyReportingInterval) {
+		this(meassureThroughput, reportingInterval, meassureLatency, latencyReportingInterval, 0, 0);
+	}
+	
+	/**
+	 * Instantiates a new {@link MonitoringTopoloyBuilder}. If {@code latencySampleRate} or
+	 * {@code latencySampleInterval} is greater than zero, latencies are measured via latency markers for a sample of
+	 * the tuples only.
+	 * 
+	 * @param meassureThroughput
+	 *            Indicates if throughput should be measured.
+	 * @param reportingInterval
+	 *            The throughput reporting interval in milliseconds.
+	 * @param meassureLatency
+	 *            Indicates if latencies should be measured.
+	 * @param latencyReportingInterval
+	 *            The latency reporting interval in milliseconds.
+	 * @param latencySampleRate
+	 *            The number of spout output tuples per latency marker (zero disables count based sampling).
+	 * @param latencySampleInterval
+	 *            The time between two latency markers in milliseconds (zero disables time based sampling).
+	 */
+	public MonitoringTopoloyBuilder(boolean meassureThroughput, int reportingInterval, boolean meassureLatency,
+		int latencyReportingInterval, int latencySampleRate, int latencySampleInterval) {
+		this(meassureThroughput, reportingInterval, meassureLatency, latencyReportingInterval, latencySampleRate,
+			latencySampleInterval, 0);
+	}
+	
+	/**
+	 * Instantiates a new {@link MonitoringTopoloyBuilder}. If {@code latencySampleRate} or
+	 * {@code latencySampleInterval} is greater than zero, latencies are measured via latency markers for a sample of
+	 * the tuples only. If {@code serviceSampleRate} is greater than zero, per-hop latencies are collected for all bolts,
+	 * too (requires latency sampling).
+	 * 
+	 * @param meassureThroughput
+	 *            Indicates if throughput should be measured.
+	 * @param reportingInterval
+	 *            The throughput reporting interval in milliseconds.
+	 * @param meassureLatency
+	 *            Indicates if latencies should be measured.
+	 * @param latencyReportingInterval
+	 *            The latency reporting interval in milliseconds.
+	 * @param latencySampleRate
+	 *            The number of spout output tuples per latency marker (zero disables count based sampling).
+	 * @param latencySampleInterval
+	 *            The time between two latency markers in milliseconds (zero disables time based sampling).
+	 * @param serviceSampleRate
+	 *            The number of input tuples per service time measurement (zero disables per-hop latencies).
+	 */
+	public MonitoringTopoloyBuilder(boolean meassureThroughput, int reportingInterval, boolean meassureLatency,
+		int latencyReportingInterval, int latencySampleRate, int latencySampleInterval, int serviceSampleRate) {
+		if(serviceSampleRate > 0 && latencySampleRate <= 0 && latencySampleInterval <= 0) {
+			throw new IllegalArgumentException("Per-hop latencies require latency sampling.");
+		}
 		this.meassureThroughput = meassureThroughput;
 		this.reportingInterval = reportingInterval;
 		this.meassureLatency = meassureLatency;
-		this.statsBucketSize = statsBucketSize;
+		this.latencyReportingInterval = latencyReportingInterval;
+		this.latencySampleRate = latencySampleRate;
+		this.latencySampleInterval = latencySampleInterval;
+		this.sampleLatency = latencySampleRate > 0 || latencySampleInterval > 0;
+		this.serviceSampleRate = serviceSampleRate;
 	}
 	
 	
 	
+	/**
+	 * Enables execute-time profiling for all bolts and sinks that are added afterwards (see {@link ProfilingBolt}).
+	 * 
+	 * @param profilingInterval
+	 *            The profiling reporting interval in milliseconds.
+	 * @param measureCpuTime
+	 *            Indicates if thread CPU time should be measured, too.
+	 */
+	public void enableProfiling(int profilingInterval, boolean measureCpuTime) {
+		if(profilingInterval <= 0) {
+			throw new IllegalArgumentException("Parameter <profilingInterval> must be greater than 0.");
+		}
+		this.profilingInterval = profilingInterval;
+		this.measureCpuTime = measureCpuTime;
+	}
+	
 	@Override
 	public SpoutDeclarer setSpout(String id, IRichSpout spout, Number parallelismHint) {
 		if(this.meassureThroughput) {
 			spout = new ThroughputSpout(spout, this.reportingInterval);
 		}
 		if(this.meassureLatency) {
-			spout = new LatencySpout(spout);
+			spout = this.createLatencySpout(id, spout);
 		}
 		
 		SpoutDeclarer declarer = super.setSpout(id, spout, parallelismHint);
@@ -107,13 +215,13 @@ public class MonitoringTopoloyBuilder extends TopologyBuilder {
 			batchSizePerStream.put(streamId, batchSize);
 		}
 		
-		if(this.meassureThroughput) {
-			spout = new ThroughputSpout(spout, this.reportingInterval);
-		}
 		if(this.meassureLatency) {
-			spout = new LatencySpout(spout);
+			spout = this.createLatencySpout(id, spout);
 		}
 		spout = new SpoutOutputBatcher(spout, batchSizePerStream);
+		if(this.meassureThroughput) {
+			spout = new ThroughputSpout(spout, this.reportingInterval);
+		}
 		
 		SpoutDeclarer declarer = super.setSpout(id, spout, parallelismHint);
 		
@@ -133,15 +241,25 @@ public class MonitoringTopoloyBuilder extends TopologyBuilder {
 			return super.setBolt(id, bolt, parallelismHint);
 		}
 		
-		if(this.meassureThroughput) {
-			bolt = new ThroughputBolt(bolt, this.reportingInterval);
+		if(this.profilingInterval > 0) {
+			bolt = new ProfilingBolt(bolt, this.profilingInterval, this.measureCpuTime);
 		}
 		if(this.meassureLatency) {
-			bolt = new LatencyBolt(bolt);
+			if(this.serviceSampleRate > 0) {
+				bolt = new LatencyBolt(bolt, this.latencyReportingInterval, this.serviceSampleRate);
+			} else {
+				bolt = new LatencyBolt(bolt, this.sampleLatency);
+			}
+			if(this.sampleLatency) {
+				this.markerProducers.add(id);
+			}
 		}
 		bolt = new InputDebatcher(bolt);
+		if(this.meassureThroughput) {
+			bolt = new ThroughputBolt(bolt, this.reportingInterval);
+		}
 		
-		BoltDeclarer declarer = super.setBolt(id, bolt, parallelismHint);
+		BoltDeclarer declarer = this.subscribeMarkerStreams(super.setBolt(id, bolt, parallelismHint));
 		
 		if(this.meassureThroughput) {
 			this.callSuper = true;
@@ -150,6 +268,9 @@ public class MonitoringTopoloyBuilder extends TopologyBuilder {
 			this.callSuper = false;
 		}
 		
+		this.setHopLatencyStats(id);
+		this.setProfilingStats(id);
+		
 		return declarer;
 	}
 	
@@ -158,15 +279,19 @@ public class MonitoringTopoloyBuilder extends TopologyBuilder {
 	}
 	
 	public BoltDeclarer setSink(String id, IRichBolt bolt, Number parallelismHint) {
-		if(this.meassureThroughput) {
-			bolt = new ThroughputBolt(bolt, this.reportingInterval, true);
+		if(this.profilingInterval > 0) {
+			bolt = new ProfilingBolt(bolt, this.profilingInterval, this.measureCpuTime);
 		}
 		if(this.meassureLatency) {
-			bolt = new LatencyCollectorBolt(bolt, this.statsBucketSize);
+			bolt = new LatencyCollectorBolt(bolt, this.latencyReportingInterval, DEFAULT_LATENCY_STREAM,
+				LatencyHistogram.DEFAULT_PRECISION_BITS, this.sampleLatency, this.serviceSampleRate);
 		}
 		bolt = new InputDebatcher(bolt);
+		if(this.meassureThroughput) {
+			bolt = new ThroughputBolt(bolt, this.reportingInterval, true);
+		}
 		
-		final BoltDeclarer declarer = super.setBolt(id, bolt, parallelismHint);
+		final BoltDeclarer declarer = this.subscribeMarkerStreams(super.setBolt(id, bolt, parallelismHint));
 		
 		if(this.meassureThroughput) {
 			this.callSuper = true;
@@ -177,11 +302,65 @@ public class MonitoringTopoloyBuilder extends TopologyBuilder {
 		
 		if(this.meassureLatency) {
 			this.callSuper = true;
+			setBolt(id + "LatencyMerger", new LatencyHistogramMergerBolt(this.latencyReportingInterval)).globalGrouping(
+				id, MonitoringTopoloyBuilder.DEFAULT_LATENCY_STREAM);
 			setBolt(id + "LatencyStats", new FileFlushSinkBolt(DEFAULT_STATS_DIR + File.separator + id + ".latencies"))
-				.shuffleGrouping(id, MonitoringTopoloyBuilder.DEFAULT_LATENCY_STREAM);
+				.shuffleGrouping(id + "LatencyMerger");
 			this.callSuper = false;
 		}
 		
+		this.setHopLatencyStats(id);
+		this.setProfilingStats(id);
+		
+		return declarer;
+	}
+	
+	/**
+	 * Subscribes all bolts that consume latency markers to the latency marker streams of their producers, before the
+	 * topology is created.
+	 */
+	@Override
+	public StormTopology createTopology() {
+		for(LatencyMarkerBoltDeclarer consumer : this.markerConsumers) {
+			consumer.subscribeMarkerStreams(this.markerProducers);
+		}
+		return super.createTopology();
+	}
+	
+	private void setProfilingStats(String id) {
+		if(this.profilingInterval > 0) {
+			this.callSuper = true;
+			setBolt(id + "Profile", new FileFlushSinkBolt(DEFAULT_STATS_DIR + File.separator + id + ".profile"))
+				.shuffleGrouping(id, MonitoringTopoloyBuilder.DEFAULT_PROFILING_STREAM);
+			this.callSuper = false;
+		}
+	}
+	
+	private void setHopLatencyStats(String id) {
+		if(this.meassureLatency && this.serviceSampleRate > 0) {
+			this.callSuper = true;
+			setBolt(id + "HopLatencyMerger", new LatencyHistogramMergerBolt(this.latencyReportingInterval, true))
+				.globalGrouping(id, MonitoringTopoloyBuilder.DEFAULT_HOP_LATENCY_STREAM);
+			setBolt(id + "HopLatencyStats", new FileFlushSinkBolt(DEFAULT_STATS_DIR + File.separator + id + ".hops"))
+				.shuffleGrouping(id + "HopLatencyMerger");
+			this.callSuper = false;
+		}
+	}
+	
+	private IRichSpout createLatencySpout(String id, IRichSpout spout) {
+		if(this.sampleLatency) {
+			this.markerProducers.add(id);
+			return new LatencySpout(spout, this.latencySampleRate, this.latencySampleInterval);
+		}
+		return new LatencySpout(spout);
+	}
+	
+	private BoltDeclarer subscribeMarkerStreams(BoltDeclarer declarer) {
+		if(this.meassureLatency && this.sampleLatency) {
+			LatencyMarkerBoltDeclarer markerDeclarer = new LatencyMarkerBoltDeclarer(declarer);
+			this.markerConsumers.add(markerDeclarer);
+			return markerDeclarer;
+		}
 		return declarer;
 	}
 	
@@ -0,0 +1,244 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * {@link HopLatencyTracker} collects per-hop latencies of a single bolt task in latency sampling mode (see
+ * {@link LatencySpout}). It records two kinds of latencies (in nanoseconds) into {@link LatencyHistogram}s:
+ * <ul>
+ * <li><em>queueing delay</em> per input edge: the time between (re-)emitting a latency marker at the producer and
+ * receiving it at this task (ie, output queue, network transfer, and input queue)</li>
+ * <li><em>service time</em>: the time the monitored bolt spends in {@code execute()} for a sample of its input tuples</li>
+ * </ul>
+ * For markers from the same worker, the queueing delay is exact. For markers from other workers, the delay includes the
+ * clock offset between both workers. Therefore, the minimum observed delay per remote worker is used as clock offset
+ * estimation and remote delays are reported relative to it (ie, the minimal transfer time is absorbed by the offset
+ * estimation as well). Because exact and relative delays are not comparable, they are reported as separate
+ * metrics.<br />
+ * <br />
+ * The histograms are reported in regular time intervals. A report is triggered by the first value that is recorded
+ * after the end of an interval and is labeled with the start of the reported interval. Empty histograms are not
+ * reported.<br />
+ * <br />
+ * <strong>Report stream output schema:</strong> {@code <ts:}{@link Long}{@code ,taskId:}{@link Integer}
+ * {@code ,histogram:byte[],metric:}{@link String}{@code >}<br />
+ * <br />
+ * where {@code metric} is {@code queue:<producer>-><component>} (local markers),
+ * {@code queue-remote:<producer>-><component>} (remote markers), or {@code service:<component>}.
+ * 
+ * @author mjsax
+ */
+class HopLatencyTracker {
+	/** The name of the metric attribute. */
+	final static String METRIC_ATTRIBUTE = "metric";
+	
+	/** The collector to emit reports. */
+	private final OutputCollector collector;
+	
+	/** The name of the report stream. */
+	private final String reportStream;
+	
+	/** The reporting interval in milliseconds. */
+	private final long interval;
+	
+	/** The number of input tuples per service time measurement. */
+	private final int serviceSampleRate;
+	
+	/** The ID of the monitored task. */
+	private final Integer taskId;
+	
+	/** The ID of the monitored component. */
+	private final String componentId;
+	
+	/** The ID of the worker the monitored task is running in. */
+	private final String workerId;
+	
+	/** The queueing delays per metric (ie, per producer component and local/remote). */
+	private final HashMap<String, LatencyHistogram> queueingDelays = new HashMap<String, LatencyHistogram>();
+	
+	/** The minimum observed delay (ie, the clock offset estimation) per remote worker. */
+	private final HashMap<String, Long> minRemoteDelays = new HashMap<String, Long>();
+	
+	/** The service times of the monitored component. */
+	private final LatencyHistogram serviceTimes = new LatencyHistogram();
+	
+	/** The number of input tuples until the next service time measurement. */
+	private int serviceCountdown;
+	
+	/** The end of the current reporting interval. */
+	private long nextReportTs;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link HopLatencyTracker}.
+	 * 
+	 * @param context
+	 *            The context of the monitored task.
+	 * @param collector
+	 *            The collector to emit reports.
+	 * @param reportStream
+	 *            The name of the report stream.
+	 * @param reportingInterval
+	 *            The reporting interval in milliseconds.
+	 * @param serviceSampleRate
+	 *            The number of input tuples per service time measurement.
+	 */
+	HopLatencyTracker(TopologyContext context, OutputCollector collector, String reportStream, long reportingInterval,
+		int serviceSampleRate) {
+		this.collector = collector;
+		this.reportStream = reportStream;
+		this.interval = reportingInterval;
+		this.serviceSampleRate = serviceSampleRate;
+		this.serviceCountdown = serviceSampleRate;
+		this.taskId = new Integer(context.getThisTaskId());
+		this.componentId = context.getThisComponentId();
+		this.workerId = LatencyClock.getWorkerId(context);
+		this.nextReportTs = (System.currentTimeMillis() / this.interval + 1) * this.interval;
+	}
+	
+	
+	
+	/**
+	 * Returns the ID of the worker the monitored task is running in.
+	 * 
+	 * @return the ID of the worker
+	 */
+	String getWorkerId() {
+		return this.workerId;
+	}
+	
+	/**
+	 * Indicates if the service time of the current input tuple should be measured.
+	 * 
+	 * @return {@code true} for every {@code serviceSampleRate}-th call
+	 */
+	boolean sampleServiceTime() {
+		if(--this.serviceCountdown == 0) {
+			this.serviceCountdown = this.serviceSampleRate;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Records the service time of a single input tuple.
+	 * 
+	 * @param serviceTime
+	 *            The service time in nanoseconds.
+	 */
+	void recordServiceTime(long serviceTime) {
+		this.report(System.currentTimeMillis());
+		this.serviceTimes.record(serviceTime);
+	}
+	
+	/**
+	 * Records the queueing delay of a received latency marker.
+	 * 
+	 * @param marker
+	 *            The received latency marker.
+	 * @param receiveTimestamp
+	 *            The time the marker was received in nanoseconds (see {@link LatencyClock#currentTimeNanos()}).
+	 */
+	void recordMarker(Tuple marker, long receiveTimestamp) {
+		this.report(receiveTimestamp / 1000000);
+		
+		long delay = receiveTimestamp - marker.getLong(TimestampAttributeAppender.MARKER_HOP_TS_INDEX).longValue();
+		
+		final String producerWorker = marker.getString(TimestampAttributeAppender.MARKER_WORKER_INDEX);
+		final String metric;
+		if(this.workerId.equals(producerWorker)) {
+			metric = "queue:" + marker.getSourceComponent() + "->" + this.componentId;
+		} else {
+			metric = "queue-remote:" + marker.getSourceComponent() + "->" + this.componentId;
+			final Long minDelay = this.minRemoteDelays.get(producerWorker);
+			if(minDelay == null || delay < minDelay.longValue()) {
+				this.minRemoteDelays.put(producerWorker, new Long(delay));
+				delay = 0;
+			} else {
+				delay -= minDelay.longValue();
+			}
+		}
+		
+		LatencyHistogram histogram = this.queueingDelays.get(metric);
+		if(histogram == null) {
+			histogram = new LatencyHistogram();
+			this.queueingDelays.put(metric, histogram);
+		}
+		histogram.record(delay);
+	}
+	
+	/**
+	 * Emits all non-empty histograms, if the current reporting interval ended. Must be called before the current value
+	 * is recorded.
+	 * 
+	 * @param now
+	 *            The current time in milliseconds.
+	 */
+	private void report(long now) {
+		if(now < this.nextReportTs) {
+			return;
+		}
+		
+		final Long ts = new Long(this.nextReportTs - this.interval);
+		for(Entry<String, LatencyHistogram> queueingDelay : this.queueingDelays.entrySet()) {
+			LatencyHistogram histogram = queueingDelay.getValue();
+			if(histogram.getTotalCount() > 0) {
+				this.collector.emit(this.reportStream, new Values(ts, this.taskId, histogram.encode(),
+					queueingDelay.getKey()));
+				histogram.reset();
+			}
+		}
+		if(this.serviceTimes.getTotalCount() > 0) {
+			this.collector.emit(this.reportStream, new Values(ts, this.taskId, this.serviceTimes.encode(), "service:"
+				+ this.componentId));
+			this.serviceTimes.reset();
+		}
+		
+		this.nextReportTs = (now / this.interval + 1) * this.interval;
+	}
+	
+	/**
+	 * Declares a per-hop latency report stream.
+	 * 
+	 * @param reportStream
+	 *            The ID of the report stream to be declared.
+	 * @param declarer
+	 *            The declarer object the report stream is declared to.
+	 */
+	static void declareReportStream(String reportStream, OutputFieldsDeclarer declarer) {
+		declarer.declareStream(reportStream, new Fields(LatencyCollectorBolt.TS_ATTRIBUTE,
+			LatencyCollectorBolt.TASK_ID_ATTRIBUTE, LatencyCollectorBolt.HISTOGRAM_ATTRIBUTE, METRIC_ATTRIBUTE));
+	}
+	
+}
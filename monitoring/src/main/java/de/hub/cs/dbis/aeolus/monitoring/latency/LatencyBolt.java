@@ -25,6 +25,12 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.api.IBatchBolt;
+import de.hub.cs.dbis.aeolus.batching.api.IBoltWrapper;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
 
@@ -32,18 +38,42 @@ import backtype.storm.tuple.Tuple;
 
 /**
  * {@link LatencyBolt} appends a "create timestamp" attribute to all emitted tuples. The appended timestamps are taken
- * from the current input tuple's create timestamp attribute (see {@link SpoutTimestampAppender}).
+ * from the current input tuple's create timestamp attribute (see {@link SpoutTimestampAppender}).<br />
+ * <br />
+ * In sampling mode (see {@link LatencySpout}), output tuples and schemas are not modified. Instead, received latency
+ * markers are forwarded to the {@link MonitoringTopoloyBuilder#LATENCY_MARKER_STREAM marker stream} without passing
+ * them to the user bolt. Additionally, per-hop latencies (ie, queueing delay per input edge and service time) can be
+ * collected and reported to the stream {@link MonitoringTopoloyBuilder#DEFAULT_HOP_LATENCY_STREAM} (see
+ * {@link HopLatencyTracker}).<br />
+ * <br />
+ * If the monitored bolt is an {@link IBatchBolt}, whole input batches are forwarded to it (see
+ * {@link #executeBatch(BatchView)}).
  * 
  * @author mjsax
  */
-public class LatencyBolt implements IRichBolt {
+public class LatencyBolt implements IBoltWrapper, IBatchBolt {
 	private static final long serialVersionUID = -4286831058178290593L;
 	
 	/** The original user bolt. */
 	private final IRichBolt userBolt;
 	
+	/** Indicates if latency markers are forwarded instead of appending timestamps to all tuples. */
+	private final boolean sampled;
+	
+	/** The reporting interval of per-hop latencies in milliseconds (zero, if per-hop latencies are not collected). */
+	private final long hopReportingInterval;
+	
+	/** The number of input tuples per service time measurement. */
+	private final int serviceSampleRate;
+	
+	/** The original Storm provided collector. */
+	private OutputCollector stormCollector;
 	/** The collector that forwards the input tuple's "create timestampe". */
 	private BoltTimestampAppender collector;
+	/** The ID of the worker this task is running in (sampling mode only). */
+	private String workerId;
+	/** Collects per-hop latencies ({@code null} if per-hop latencies are not collected). */
+	private HopLatencyTracker hopTracker;
 	
 	
 	
@@ -54,23 +84,127 @@ public class LatencyBolt implements IRichBolt {
 	 *            The user bolt to be monitored.
 	 */
 	public LatencyBolt(IRichBolt userBolt) {
+		this(userBolt, false);
+	}
+	
+	/**
+	 * Instantiate a new {@link LatencyBolt} that either appends "create timestamps" to all emitted tuples or forwards
+	 * latency markers of the given bolt.
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param sampled
+	 *            Indicates if latency markers should be forwarded instead of appending timestamps to all tuples.
+	 */
+	public LatencyBolt(IRichBolt userBolt, boolean sampled) {
 		this.userBolt = userBolt;
+		this.sampled = sampled;
+		this.hopReportingInterval = 0;
+		this.serviceSampleRate = 0;
+	}
+	
+	/**
+	 * Instantiate a new {@link LatencyBolt} that forwards latency markers of the given bolt and collects per-hop
+	 * latencies.
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param hopReportingInterval
+	 *            The reporting interval of per-hop latencies in milliseconds.
+	 * @param serviceSampleRate
+	 *            The number of input tuples per service time measurement.
+	 */
+	public LatencyBolt(IRichBolt userBolt, long hopReportingInterval, int serviceSampleRate) {
+		if(hopReportingInterval <= 0) {
+			throw new IllegalArgumentException("Parameter <hopReportingInterval> must be greater than 0.");
+		}
+		if(serviceSampleRate <= 0) {
+			throw new IllegalArgumentException("Parameter <serviceSampleRate> must be greater than 0.");
+		}
+		this.userBolt = userBolt;
+		this.sampled = true;
+		this.hopReportingInterval = hopReportingInterval;
+		this.serviceSampleRate = serviceSampleRate;
 	}
 	
 	
 	
 	@Override
 	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
-		this.collector = new BoltTimestampAppender(collector);
-		this.userBolt.prepare(stormConf, context, this.collector);
+		this.stormCollector = collector;
+		if(this.sampled) {
+			this.workerId = LatencyClock.getWorkerId(context);
+			if(this.hopReportingInterval > 0) {
+				this.hopTracker = new HopLatencyTracker(context, collector,
+					MonitoringTopoloyBuilder.DEFAULT_HOP_LATENCY_STREAM, this.hopReportingInterval, this.serviceSampleRate);
+			}
+			this.userBolt.prepare(stormConf, context, collector);
+		} else {
+			this.collector = new BoltTimestampAppender(collector);
+			this.userBolt.prepare(stormConf, context, this.collector);
+		}
 	}
 	
 	@Override
 	public void execute(Tuple input) {
-		this.collector.createTimestamp = input.getLong(input.size() - 1);
+		if(this.sampled) {
+			if(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM.equals(input.getSourceStreamId())) {
+				if(this.hopTracker != null) {
+					this.hopTracker.recordMarker(input, LatencyClock.currentTimeNanos());
+				}
+				this.stormCollector.emit(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM, new Values(
+					input.getValue(TimestampAttributeAppender.MARKER_CREATE_TS_INDEX), new Long(
+						LatencyClock.currentTimeNanos()), this.workerId));
+				this.stormCollector.ack(input);
+				return;
+			}
+			if(this.hopTracker != null && this.hopTracker.sampleServiceTime()) {
+				final long start = System.nanoTime();
+				this.userBolt.execute(input);
+				this.hopTracker.recordServiceTime(System.nanoTime() - start);
+				return;
+			}
+		} else {
+			this.collector.createTimestamp = input.getLong(input.size() - 1);
+		}
 		this.userBolt.execute(input);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The batch is forwarded to the monitored bolt as a whole. If timestamps are appended to all tuples, all output
+	 * tuples get the oldest create timestamp of the batch assigned. If a service time is sampled, the service time of
+	 * the batch is divided by its size. Must only be called if the monitored bolt is an {@link IBatchBolt}.
+	 */
+	@Override
+	public void executeBatch(BatchView batch) {
+		final IBatchBolt batchBolt = (IBatchBolt)this.userBolt;
+		
+		if(this.sampled) {
+			if(this.hopTracker != null && this.hopTracker.sampleServiceTime()) {
+				final long start = System.nanoTime();
+				batchBolt.executeBatch(batch);
+				this.hopTracker.recordServiceTime((System.nanoTime() - start) / batch.size());
+				return;
+			}
+		} else {
+			final BatchColumn timestamps = batch.getColumn(batch.getNumberOfAttributes() - 1);
+			long createTimestamp = TimestampAttributeAppender.getCreateTimestamp(timestamps, 0);
+			for(int i = 1; i < batch.size(); ++i) {
+				createTimestamp = Math.min(createTimestamp,
+					TimestampAttributeAppender.getCreateTimestamp(timestamps, i));
+			}
+			this.collector.createTimestamp = new Long(createTimestamp);
+		}
+		batchBolt.executeBatch(batch);
+	}
+	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.userBolt;
+	}
+	
 	@Override
 	public void cleanup() {
 		this.userBolt.cleanup();
@@ -78,7 +212,15 @@ public class LatencyBolt implements IRichBolt {
 	
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		TimestampAttributeAppender.addCreateTimestampAttributeToSchemas(this.userBolt, declarer);
+		if(this.sampled) {
+			this.userBolt.declareOutputFields(declarer);
+			TimestampAttributeAppender.declareMarkerStream(declarer);
+			if(this.hopReportingInterval > 0) {
+				HopLatencyTracker.declareReportStream(MonitoringTopoloyBuilder.DEFAULT_HOP_LATENCY_STREAM, declarer);
+			}
+		} else {
+			TimestampAttributeAppender.addCreateTimestampAttributeToSchemas(this.userBolt, declarer);
+		}
 	}
 	
 	@Override
@@ -0,0 +1,75 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import backtype.storm.task.TopologyContext;
+
+
+
+
+
+/**
+ * {@link LatencyClock} provides wall-clock timestamps with nanosecond resolution. The timestamps are based on
+ * {@link System#nanoTime()} and a fixed offset to {@link System#currentTimeMillis()} that is computed once per worker
+ * (ie, JVM). Thus, timestamps taken by different tasks of the same worker are directly comparable, while timestamps of
+ * different workers are subject to the (millisecond) clock offset of both workers.
+ * 
+ * @author mjsax
+ */
+final class LatencyClock {
+	/** The offset between {@link System#nanoTime()} and the wall-clock time in nanoseconds. */
+	private final static long NANO_OFFSET = System.currentTimeMillis() * 1000000 - System.nanoTime();
+	
+	
+	
+	private LatencyClock() {}
+	
+	
+	
+	/**
+	 * Returns the current wall-clock time in nanoseconds.
+	 * 
+	 * @return the current wall-clock time in nanoseconds
+	 */
+	static long currentTimeNanos() {
+		return System.nanoTime() + NANO_OFFSET;
+	}
+	
+	/**
+	 * Returns an ID of the worker the given task is running in, ie, {@code <hostname>:<port>}.
+	 * 
+	 * @param context
+	 *            The context of the task.
+	 * 
+	 * @return the ID of the task's worker
+	 */
+	static String getWorkerId(TopologyContext context) {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch(UnknownHostException e) {
+			host = "unknown";
+		}
+		return host + ":" + context.getThisWorkerPort();
+	}
+	
+}
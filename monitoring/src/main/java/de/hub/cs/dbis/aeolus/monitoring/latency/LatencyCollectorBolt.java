@@ -20,8 +20,6 @@ package de.hub.cs.dbis.aeolus.monitoring.latency;
 
 import java.util.Map;
 
-import org.apache.storm.guava.collect.TreeMultiset;
-
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichBolt;
@@ -29,6 +27,10 @@ import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.api.IBatchBolt;
+import de.hub.cs.dbis.aeolus.batching.api.IBoltWrapper;
 import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
@@ -36,31 +38,74 @@ import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
 /**
- * {@link LatencyCollectorBolt} appends a "create timestamp" attribute to all emitted tuples. The appended timestamps
- * are taken from the current input tuple's create timestamp attribute (see {@link SpoutTimestampAppender}).
+ * {@link LatencyCollectorBolt} computes the end-to-end latency of all processed tuples. The latency is the difference
+ * between the "finished processing" timestamp and the create timestamp attribute of the input tuple (see
+ * {@link SpoutTimestampAppender}). All latencies are recorded in a {@link LatencyHistogram} that is reported and reset
+ * in regular time intervals.<br />
+ * <br />
+ * <strong>Statistics report stream output schema:</strong> {@code <ts:}{@link Long}{@code ,taskId:}{@link Integer}
+ * {@code ,histogram:byte[]>}<br />
+ * <br />
+ * where {@code ts} is the start of the reporting interval the latencies were recorded in (intervals are aligned to
+ * multiples of the interval length, such that all tasks use the same timestamps), and {@code histogram} is the
+ * {@link LatencyHistogram#encode() encoded} histogram of the interval. Reporting is triggered by the first tuple that
+ * finished processing after an interval ended; thus, no report is emitted for an interval without input. Use
+ * {@link LatencyHistogramMergerBolt} to combine the reports of multiple tasks.<br />
+ * <br />
+ * In sampling mode (see {@link LatencySpout}), only received latency markers are evaluated (and not passed to the user
+ * bolt); the latency of a marker is the difference between its receive timestamp and its create timestamp.
+ * Additionally, per-hop latencies of the sink (ie, queueing delay per input edge and service time) can be collected and
+ * reported to the stream {@link MonitoringTopoloyBuilder#DEFAULT_HOP_LATENCY_STREAM} (see {@link HopLatencyTracker}).
+ * <br />
+ * <br />
+ * If the monitored bolt is an {@link IBatchBolt}, whole input batches are forwarded to it (see
+ * {@link #executeBatch(BatchView)}).
  * 
  * @author mjsax
  */
-public class LatencyCollectorBolt implements IRichBolt {
+public class LatencyCollectorBolt implements IBoltWrapper, IBatchBolt {
 	private static final long serialVersionUID = -4286831058178290593L;
 	
+	/** The name of the timestamp attribute. */
+	public final static String TS_ATTRIBUTE = "ts";
+	
+	/** The name of the task ID attribute. */
+	public final static String TASK_ID_ATTRIBUTE = "taskId";
+	
+	/** The name of the encoded histogram attribute. */
+	public final static String HISTOGRAM_ATTRIBUTE = "histogram";
+	
 	/** The original user bolt. */
 	private final IRichBolt userBolt;
 	
-	/** The number of tuples to compute latency statistics. */
-	private final int bucketSize;
+	/** The reporting interval in milliseconds. */
+	private final long interval;
+	
+	/** The number of precision bits of the used histogram. */
+	private final int precisionBits;
 	
 	/** The name of the report stream. */
 	private final String reportStream;
 	
+	/** Indicates if only latency markers are evaluated. */
+	private final boolean sampled;
+	
+	/** The number of input tuples per service time measurement (zero, if per-hop latencies are not collected). */
+	private final int serviceSampleRate;
+	
 	/** The original Storm provided collector. */
 	private OutputCollector stormCollector;
 	/** The collector that provide the "finished processing" timestamp. */
 	private BoltEndTimestampCollector collector;
 	
-	private final TreeMultiset<Long> orderedLatencies = TreeMultiset.create();
-	private final Long[] asArray;
-	private long sum = 0;
+	/** The ID of the task reporting the statistics. */
+	private Integer taskId;
+	/** The latencies of the current reporting interval. */
+	private LatencyHistogram histogram;
+	/** The end of the current reporting interval. */
+	private long nextReportTs;
+	/** Collects per-hop latencies ({@code null} if per-hop latencies are not collected). */
+	private HopLatencyTracker hopTracker;
 	
 	
 	
@@ -70,11 +115,11 @@ public class LatencyCollectorBolt implements IRichBolt {
 	 * 
 	 * @param userBolt
 	 *            The user bolt to be monitored.
-	 * @param statsBucketSize
-	 *            The number of tuples of a statistic bucket.
+	 * @param reportingInterval
+	 *            The reporting interval in milliseconds.
 	 */
-	public LatencyCollectorBolt(IRichBolt userBolt, int statsBucketSize) {
-		this(userBolt, statsBucketSize, MonitoringTopoloyBuilder.DEFAULT_LATENCY_STREAM);
+	public LatencyCollectorBolt(IRichBolt userBolt, long reportingInterval) {
+		this(userBolt, reportingInterval, MonitoringTopoloyBuilder.DEFAULT_LATENCY_STREAM);
 	}
 	
 	/**
@@ -82,49 +127,186 @@ public class LatencyCollectorBolt implements IRichBolt {
 	 * 
 	 * @param userBolt
 	 *            The user bolt to be monitored.
-	 * @param statsBucketSize
-	 *            The number of tuples of a statistic bucket.
+	 * @param reportingInterval
+	 *            The reporting interval in milliseconds.
 	 * @param reportStream
 	 *            The name of the report stream.
 	 */
-	public LatencyCollectorBolt(IRichBolt userBolt, int statsBucketSize, String reportStream) {
+	public LatencyCollectorBolt(IRichBolt userBolt, long reportingInterval, String reportStream) {
+		this(userBolt, reportingInterval, reportStream, LatencyHistogram.DEFAULT_PRECISION_BITS);
+	}
+	
+	/**
+	 * Instantiate a new {@link LatencyCollectorBolt} that report latency statistics with the given histogram precision
+	 * to the specified stream.
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param reportingInterval
+	 *            The reporting interval in milliseconds.
+	 * @param reportStream
+	 *            The name of the report stream.
+	 * @param precisionBits
+	 *            The number of precision bits of the used histogram (see {@link LatencyHistogram}).
+	 */
+	public LatencyCollectorBolt(IRichBolt userBolt, long reportingInterval, String reportStream, int precisionBits) {
+		this(userBolt, reportingInterval, reportStream, precisionBits, false);
+	}
+	
+	/**
+	 * Instantiate a new {@link LatencyCollectorBolt} that report latency statistics of all tuples or of latency markers
+	 * only, with the given histogram precision to the specified stream.
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param reportingInterval
+	 *            The reporting interval in milliseconds.
+	 * @param reportStream
+	 *            The name of the report stream.
+	 * @param precisionBits
+	 *            The number of precision bits of the used histogram (see {@link LatencyHistogram}).
+	 * @param sampled
+	 *            Indicates if only latency markers should be evaluated.
+	 */
+	public LatencyCollectorBolt(IRichBolt userBolt, long reportingInterval, String reportStream, int precisionBits,
+		boolean sampled) {
+		this(userBolt, reportingInterval, reportStream, precisionBits, sampled, 0);
+	}
+	
+	/**
+	 * Instantiate a new {@link LatencyCollectorBolt} that report latency statistics of all tuples or of latency markers
+	 * only, with the given histogram precision to the specified stream. If {@code serviceSampleRate} is greater than
+	 * zero, per-hop latencies are collected, too (sampling mode only).
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param reportingInterval
+	 *            The reporting interval in milliseconds.
+	 * @param reportStream
+	 *            The name of the report stream.
+	 * @param precisionBits
+	 *            The number of precision bits of the used histogram (see {@link LatencyHistogram}).
+	 * @param sampled
+	 *            Indicates if only latency markers should be evaluated.
+	 * @param serviceSampleRate
+	 *            The number of input tuples per service time measurement (zero disables per-hop latencies).
+	 */
+	public LatencyCollectorBolt(IRichBolt userBolt, long reportingInterval, String reportStream, int precisionBits,
+		boolean sampled, int serviceSampleRate) {
+		if(serviceSampleRate > 0 && !sampled) {
+			throw new IllegalArgumentException("Per-hop latencies can only be collected in sampling mode.");
+		}
+		if(reportingInterval <= 0) {
+			throw new IllegalArgumentException("Parameter <reportingInterval> must be greater than 0.");
+		}
 		this.userBolt = userBolt;
-		this.bucketSize = statsBucketSize;
-		this.asArray = new Long[this.bucketSize];
+		this.interval = reportingInterval;
 		this.reportStream = reportStream;
+		this.precisionBits = precisionBits;
+		this.sampled = sampled;
+		this.serviceSampleRate = serviceSampleRate;
 	}
 	
 	@Override
 	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
 		this.stormCollector = collector;
-		this.collector = new BoltEndTimestampCollector(collector);
-		this.userBolt.prepare(stormConf, context, this.collector);
+		this.taskId = context.getThisTaskId();
+		this.histogram = new LatencyHistogram(this.precisionBits);
+		this.nextReportTs = (System.currentTimeMillis() / this.interval + 1) * this.interval;
+		if(this.sampled) {
+			if(this.serviceSampleRate > 0) {
+				this.hopTracker = new HopLatencyTracker(context, collector,
+					MonitoringTopoloyBuilder.DEFAULT_HOP_LATENCY_STREAM, this.interval, this.serviceSampleRate);
+			}
+			this.userBolt.prepare(stormConf, context, collector);
+		} else {
+			this.collector = new BoltEndTimestampCollector(collector);
+			this.userBolt.prepare(stormConf, context, this.collector);
+		}
 	}
 	
 	@Override
 	public void execute(Tuple input) {
+		if(this.sampled) {
+			if(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM.equals(input.getSourceStreamId())) {
+				final long now = LatencyClock.currentTimeNanos();
+				this.stormCollector.ack(input);
+				if(this.hopTracker != null) {
+					this.hopTracker.recordMarker(input, now);
+				}
+				this.record(input.getLong(TimestampAttributeAppender.MARKER_CREATE_TS_INDEX).longValue(),
+					now / 1000000);
+			} else if(this.hopTracker != null && this.hopTracker.sampleServiceTime()) {
+				final long start = System.nanoTime();
+				this.userBolt.execute(input);
+				this.hopTracker.recordServiceTime(System.nanoTime() - start);
+			} else {
+				this.userBolt.execute(input);
+			}
+			return;
+		}
+		
 		long createTimestamp = input.getLong(input.size() - 1).longValue();
 		this.userBolt.execute(input);
+		this.record(createTimestamp, this.collector.endTimestamp);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The batch is forwarded to the monitored bolt as a whole. If all tuples are evaluated, the latency of each tuple of
+	 * the batch is recorded (using the time the batch was acked or failed as "finished processing" timestamp). If a
+	 * service time is sampled, the service time of the batch is divided by its size. Must only be called if the
+	 * monitored bolt is an {@link IBatchBolt}.
+	 */
+	@Override
+	public void executeBatch(BatchView batch) {
+		final IBatchBolt batchBolt = (IBatchBolt)this.userBolt;
+		
+		if(this.sampled) {
+			if(this.hopTracker != null && this.hopTracker.sampleServiceTime()) {
+				final long start = System.nanoTime();
+				batchBolt.executeBatch(batch);
+				this.hopTracker.recordServiceTime((System.nanoTime() - start) / batch.size());
+			} else {
+				batchBolt.executeBatch(batch);
+			}
+			return;
+		}
 		
-		long latency = this.collector.endTimestamp - createTimestamp;
-		this.sum += latency;
-		this.orderedLatencies.add(new Long(latency));
-		if(this.orderedLatencies.size() == this.bucketSize) {
-			this.orderedLatencies.toArray(this.asArray);
-			
-			Long max = this.asArray[this.bucketSize - 1];
-			Long percentil99 = this.asArray[(this.bucketSize * 99) / 100 - 1];
-			Long percentil95 = this.asArray[(this.bucketSize * 95) / 100 - 1];
-			Long median = this.asArray[this.bucketSize / 2 - 1];
-			Long avg = new Long(this.sum / this.bucketSize);
-			Long min = this.asArray[0];
-			
-			this.stormCollector.emit(this.reportStream, new Values(new Long(System.currentTimeMillis()), max,
-				percentil99, percentil95, median, avg, min));
-			
-			this.orderedLatencies.clear();
-			this.sum = 0;
+		batchBolt.executeBatch(batch);
+		final BatchColumn timestamps = batch.getColumn(batch.getNumberOfAttributes() - 1);
+		final int size = batch.size();
+		for(int i = 0; i < size; ++i) {
+			this.record(TimestampAttributeAppender.getCreateTimestamp(timestamps, i), this.collector.endTimestamp);
+		}
+	}
+	
+	/**
+	 * Records the latency of a single tuple. If the tuple finished processing after the current reporting interval
+	 * ended, the latency histogram of the current interval is reported (if not empty) and reset first. Thus, each
+	 * latency is accounted to the interval in which the tuple finished processing.
+	 * 
+	 * @param createTimestamp
+	 *            The create timestamp of the tuple.
+	 * @param endTimestamp
+	 *            The "finished processing" timestamp of the tuple.
+	 */
+	void record(long createTimestamp, long endTimestamp) {
+		if(endTimestamp >= this.nextReportTs) {
+			if(this.histogram.getTotalCount() > 0) {
+				this.stormCollector.emit(this.reportStream, new Values(new Long(this.nextReportTs - this.interval),
+					this.taskId, this.histogram.encode()));
+				this.histogram.reset();
+			}
+			this.nextReportTs = (endTimestamp / this.interval + 1) * this.interval;
 		}
+		this.histogram.record(endTimestamp - createTimestamp);
+	}
+	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.userBolt;
 	}
 	
 	@Override
@@ -135,7 +317,10 @@ public class LatencyCollectorBolt implements IRichBolt {
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
 		this.userBolt.declareOutputFields(declarer);
-		declarer.declareStream(this.reportStream, new Fields("ts", "max", "99", "95", "med", "avg", "min"));
+		declarer.declareStream(this.reportStream, new Fields(TS_ATTRIBUTE, TASK_ID_ATTRIBUTE, HISTOGRAM_ATTRIBUTE));
+		if(this.serviceSampleRate > 0) {
+			HopLatencyTracker.declareReportStream(MonitoringTopoloyBuilder.DEFAULT_HOP_LATENCY_STREAM, declarer);
+		}
 	}
 	
 	@Override
@@ -0,0 +1,306 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import java.util.Arrays;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+
+
+
+
+/**
+ * {@link LatencyHistogram} is a fixed-memory log-linear histogram for non-negative latency values. Values are
+ * assigned to buckets of exponentially growing size; each bucket is divided into {@code 2^(precisionBits-1)} linear
+ * sub-buckets. Thus, the relative error of all reported values is less than {@code 1 / 2^(precisionBits-1)} (values
+ * smaller than {@code 2^precisionBits} are recorded exactly), while the memory consumption is independent of the
+ * number and range of the recorded values.<br />
+ * <br />
+ * Histograms with the same precision can be merged. Thus, histograms can be collected by multiple tasks and combined
+ * into global statistics. For transfer, a histogram is encoded into a compact byte array that only contains non-empty
+ * sub-buckets (see {@link #encode()} and {@link #decode(byte[])}).
+ * 
+ * @author mjsax
+ */
+public class LatencyHistogram {
+	
+	/** The default number of precision bits (ie, a relative error of less than 1/64). */
+	public final static int DEFAULT_PRECISION_BITS = 7;
+	
+	/** The number of precision bits. */
+	private final int precisionBits;
+	
+	/** The number of sub-buckets of each (but the first) bucket. */
+	private final int halfSubBucketCount;
+	
+	/** The count of each sub-bucket. */
+	private final long[] counts;
+	
+	/** The number of recorded values. */
+	private long totalCount = 0;
+	
+	/** The sum of all recorded values. */
+	private long sum = 0;
+	
+	/** The smallest recorded value. */
+	private long min = Long.MAX_VALUE;
+	
+	/** The largest recorded value. */
+	private long max = 0;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link LatencyHistogram} with {@link #DEFAULT_PRECISION_BITS default precision}.
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_PRECISION_BITS);
+	}
+	
+	/**
+	 * Instantiates a new {@link LatencyHistogram} with the given precision.
+	 * 
+	 * @param precisionBits
+	 *            The number of precision bits (from 1 to 20).
+	 */
+	public LatencyHistogram(int precisionBits) {
+		if(precisionBits < 1 || precisionBits > 20) {
+			throw new IllegalArgumentException("Parameter <precisionBits> must be in range [1,20].");
+		}
+		this.precisionBits = precisionBits;
+		this.halfSubBucketCount = 1 << (precisionBits - 1);
+		// values are non-negative longs -> the highest bucket holds values with bit 62 set
+		this.counts = new long[(65 - precisionBits) * this.halfSubBucketCount];
+	}
+	
+	
+	
+	/**
+	 * Records a single value. Negative values (eg, caused by clock skew between hosts) are recorded as zero.
+	 * 
+	 * @param value
+	 *            The value to be recorded.
+	 */
+	public void record(long value) {
+		if(value < 0) {
+			value = 0;
+		}
+		++this.counts[this.getIndex(value)];
+		++this.totalCount;
+		this.sum += value;
+		if(value < this.min) {
+			this.min = value;
+		}
+		if(value > this.max) {
+			this.max = value;
+		}
+	}
+	
+	/**
+	 * Adds all recorded values of the given histogram to this histogram.
+	 * 
+	 * @param other
+	 *            The histogram to be merged into this histogram.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if both histograms do not have the same precision
+	 */
+	public void merge(LatencyHistogram other) {
+		if(other.precisionBits != this.precisionBits) {
+			throw new IllegalArgumentException("Histograms with different precision cannot be merged.");
+		}
+		for(int i = 0; i < this.counts.length; ++i) {
+			this.counts[i] += other.counts[i];
+		}
+		this.totalCount += other.totalCount;
+		this.sum += other.sum;
+		if(other.min < this.min) {
+			this.min = other.min;
+		}
+		if(other.max > this.max) {
+			this.max = other.max;
+		}
+	}
+	
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		Arrays.fill(this.counts, 0);
+		this.totalCount = 0;
+		this.sum = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+	
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return the number of recorded values
+	 */
+	public long getTotalCount() {
+		return this.totalCount;
+	}
+	
+	/**
+	 * Returns the smallest recorded value.
+	 * 
+	 * @return the smallest recorded value (zero, if no value was recorded)
+	 */
+	public long getMin() {
+		return this.totalCount == 0 ? 0 : this.min;
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 * 
+	 * @return the largest recorded value (zero, if no value was recorded)
+	 */
+	public long getMax() {
+		return this.max;
+	}
+	
+	/**
+	 * Returns the average of all recorded values.
+	 * 
+	 * @return the average of all recorded values (zero, if no value was recorded)
+	 */
+	public long getMean() {
+		return this.totalCount == 0 ? 0 : this.sum / this.totalCount;
+	}
+	
+	/**
+	 * Returns the value at the given percentile, ie, the largest value of the sub-bucket that contains the
+	 * {@code percentile}-th recorded value.
+	 * 
+	 * @param percentile
+	 *            The percentile (from 0 to 100).
+	 * 
+	 * @return the value at the given percentile (zero, if no value was recorded)
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if(this.totalCount == 0) {
+			return 0;
+		}
+		
+		final long countAtPercentile = Math.max(1, (long)Math.ceil((percentile / 100) * this.totalCount));
+		long count = 0;
+		for(int i = 0; i < this.counts.length; ++i) {
+			count += this.counts[i];
+			if(count >= countAtPercentile) {
+				return Math.min(this.getHighestEquivalentValue(i), this.max);
+			}
+		}
+		return this.max;
+	}
+	
+	/**
+	 * Encodes this histogram into a compact byte array.
+	 * 
+	 * @return the encoded histogram
+	 */
+	public byte[] encode() {
+		int numberOfBuckets = 0;
+		for(int i = 0; i < this.counts.length; ++i) {
+			if(this.counts[i] != 0) {
+				++numberOfBuckets;
+			}
+		}
+		
+		final Output output = new Output(32 + 4 * numberOfBuckets, -1);
+		output.writeByte(this.precisionBits);
+		output.writeLong(this.totalCount, true);
+		output.writeLong(this.sum, true);
+		output.writeLong(this.getMin(), true);
+		output.writeLong(this.max, true);
+		output.writeInt(numberOfBuckets, true);
+		// sub-bucket indexes are written as deltas to the previous non-empty sub-bucket
+		int lastIndex = 0;
+		for(int i = 0; i < this.counts.length; ++i) {
+			if(this.counts[i] != 0) {
+				output.writeInt(i - lastIndex, true);
+				output.writeLong(this.counts[i], true);
+				lastIndex = i;
+			}
+		}
+		
+		return output.toBytes();
+	}
+	
+	/**
+	 * Decodes a histogram that was encoded by {@link #encode()}.
+	 * 
+	 * @param encodedHistogram
+	 *            The encoded histogram.
+	 * 
+	 * @return the decoded histogram
+	 */
+	public static LatencyHistogram decode(byte[] encodedHistogram) {
+		final Input input = new Input(encodedHistogram);
+		
+		final LatencyHistogram histogram = new LatencyHistogram(input.readByte());
+		histogram.totalCount = input.readLong(true);
+		histogram.sum = input.readLong(true);
+		histogram.min = input.readLong(true);
+		histogram.max = input.readLong(true);
+		if(histogram.totalCount == 0) {
+			histogram.min = Long.MAX_VALUE;
+		}
+		
+		final int numberOfBuckets = input.readInt(true);
+		int index = 0;
+		for(int i = 0; i < numberOfBuckets; ++i) {
+			index += input.readInt(true);
+			histogram.counts[index] = input.readLong(true);
+		}
+		
+		return histogram;
+	}
+	
+	/**
+	 * Computes the sub-bucket index of a non-negative value.
+	 * 
+	 * @param value
+	 *            The value.
+	 * 
+	 * @return the index of the sub-bucket the value belongs to
+	 */
+	private int getIndex(long value) {
+		// values with less than precisionBits significant bits are stored in bucket 0 exactly
+		final int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (this.precisionBits - 1));
+		return bucket * this.halfSubBucketCount + (int)(value >>> bucket);
+	}
+	
+	/**
+	 * Computes the largest value that belongs to the given sub-bucket.
+	 * 
+	 * @param index
+	 *            The sub-bucket index.
+	 * 
+	 * @return the largest value of the sub-bucket
+	 */
+	private long getHighestEquivalentValue(int index) {
+		final int bucket = Math.max(0, index / this.halfSubBucketCount - 1);
+		final long lowestValue = ((long)(index - bucket * this.halfSubBucketCount)) << bucket;
+		return lowestValue + (1L << bucket) - 1;
+	}
+	
+}
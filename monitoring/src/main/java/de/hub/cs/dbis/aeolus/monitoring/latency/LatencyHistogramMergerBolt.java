@@ -0,0 +1,217 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * {@link LatencyHistogramMergerBolt} merges the latency histograms reported by multiple {@link LatencyCollectorBolt}
+ * tasks into global latency statistics. It must be connected to the report streams via global grouping. Histograms
+ * with the same report timestamp are merged and emitted as soon as all producer tasks reported. Because tasks without
+ * input do not report, an incomplete interval is emitted as soon as a report that is at least two intervals newer is
+ * received. Reports that are received after their interval was emitted are dropped (ie, each interval is emitted at
+ * most once).<br />
+ * <br />
+ * If the merger is labeled, the reported histograms carry an additional metric attribute (see
+ * {@link HopLatencyTracker}) and histograms are merged per report timestamp and metric.<br />
+ * <br />
+ * <strong>Output schema:</strong> {@code <ts:}{@link Long}{@code ,count:}{@link Long}{@code ,50:}{@link Long}
+ * {@code ,99:}{@link Long}{@code ,99.9:}{@link Long}{@code ,max:}{@link Long}{@code ,avg:}{@link Long}{@code ,min:}
+ * {@link Long}{@code >} (labeled: {@code <ts:}{@link Long}{@code ,metric:}{@link String}{@code ,count:}...{@code >})
+ * 
+ * @author mjsax
+ */
+public class LatencyHistogramMergerBolt implements IRichBolt {
+	private static final long serialVersionUID = 2923460474960553126L;
+	private final static Logger logger = LoggerFactory.getLogger(LatencyHistogramMergerBolt.class);
+	
+	/**
+	 * A partially merged histogram.
+	 */
+	private static class PendingHistogram {
+		/** The merged histogram. */
+		final LatencyHistogram histogram;
+		/** The number of merged reports. */
+		int numberOfReports = 1;
+		
+		PendingHistogram(LatencyHistogram histogram) {
+			this.histogram = histogram;
+		}
+	}
+	
+	/** The reporting interval of the producers in milliseconds. */
+	private final long interval;
+	
+	/** Indicates if reported histograms carry a metric attribute. */
+	private final boolean labeled;
+	
+	/** The output collector. */
+	private OutputCollector collector;
+	
+	/** The number of producer tasks. */
+	private int numberOfProducers;
+	
+	/** The merged histograms of all pending intervals (per metric). */
+	private final TreeMap<Long, HashMap<String, PendingHistogram>> histograms;
+	
+	/** All intervals up to this report timestamp were emitted; reports for these intervals are dropped. */
+	private long lastEmittedTs = Long.MIN_VALUE;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link LatencyHistogramMergerBolt}.
+	 * 
+	 * @param reportingInterval
+	 *            The reporting interval of the producer tasks in milliseconds.
+	 */
+	public LatencyHistogramMergerBolt(long reportingInterval) {
+		this(reportingInterval, false);
+	}
+	
+	/**
+	 * Instantiates a new {@link LatencyHistogramMergerBolt}.
+	 * 
+	 * @param reportingInterval
+	 *            The reporting interval of the producer tasks in milliseconds.
+	 * @param labeled
+	 *            Indicates if reported histograms carry a metric attribute.
+	 */
+	public LatencyHistogramMergerBolt(long reportingInterval, boolean labeled) {
+		this.interval = reportingInterval;
+		this.labeled = labeled;
+		this.histograms = new TreeMap<Long, HashMap<String, PendingHistogram>>();
+	}
+	
+	
+	
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
+		this.collector = collector;
+		
+		this.numberOfProducers = 0;
+		for(GlobalStreamId source : context.getThisSources().keySet()) {
+			this.numberOfProducers += context.getComponentTasks(source.get_componentId()).size();
+		}
+	}
+	
+	@Override
+	public void execute(Tuple input) {
+		final Long ts = input.getLong(0);
+		if(ts.longValue() <= this.lastEmittedTs) {
+			logger.warn("Dropping late report of task {} for interval {} (already emitted).", input.getValue(1), ts);
+			this.collector.ack(input);
+			return;
+		}
+		
+		final LatencyHistogram histogram = LatencyHistogram.decode((byte[])input.getValue(2));
+		final String metric = this.labeled ? input.getString(3) : null;
+		
+		HashMap<String, PendingHistogram> pending = this.histograms.get(ts);
+		if(pending == null) {
+			pending = new HashMap<String, PendingHistogram>();
+			this.histograms.put(ts, pending);
+		}
+		PendingHistogram merged = pending.get(metric);
+		if(merged == null) {
+			merged = new PendingHistogram(histogram);
+			pending.put(metric, merged);
+		} else {
+			merged.histogram.merge(histogram);
+			++merged.numberOfReports;
+		}
+		
+		if(merged.numberOfReports >= this.numberOfProducers) {
+			this.emit(ts, metric, merged.histogram);
+			pending.remove(metric);
+			if(pending.isEmpty()) {
+				this.histograms.remove(ts);
+			}
+		}
+		
+		this.lastEmittedTs = Math.max(this.lastEmittedTs, ts.longValue() - 2 * this.interval);
+		while(!this.histograms.isEmpty() && this.histograms.firstKey().longValue() <= this.lastEmittedTs) {
+			Entry<Long, HashMap<String, PendingHistogram>> incomplete = this.histograms.pollFirstEntry();
+			for(Entry<String, PendingHistogram> metricHistogram : incomplete.getValue().entrySet()) {
+				this.emit(incomplete.getKey(), metricHistogram.getKey(), metricHistogram.getValue().histogram);
+			}
+		}
+		
+		this.collector.ack(input);
+	}
+	
+	/**
+	 * Emits the statistics of a merged histogram.
+	 * 
+	 * @param ts
+	 *            The report timestamp.
+	 * @param metric
+	 *            The metric of the histogram ({@code null} if not labeled).
+	 * @param histogram
+	 *            The merged histogram.
+	 */
+	private void emit(Long ts, String metric, LatencyHistogram histogram) {
+		final Values statistics = new Values(ts, new Long(histogram.getTotalCount()), new Long(
+			histogram.getValueAtPercentile(50)), new Long(histogram.getValueAtPercentile(99)), new Long(
+			histogram.getValueAtPercentile(99.9)), new Long(histogram.getMax()), new Long(histogram.getMean()),
+			new Long(histogram.getMin()));
+		if(this.labeled) {
+			statistics.add(1, metric);
+		}
+		this.collector.emit(statistics);
+	}
+	
+	@Override
+	public void cleanup() {}
+	
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		if(this.labeled) {
+			declarer.declare(new Fields("ts", HopLatencyTracker.METRIC_ATTRIBUTE, "count", "50", "99", "99.9", "max",
+				"avg", "min"));
+		} else {
+			declarer.declare(new Fields("ts", "count", "50", "99", "99.9", "max", "avg", "min"));
+		}
+	}
+	
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		return null;
+	}
+	
+}
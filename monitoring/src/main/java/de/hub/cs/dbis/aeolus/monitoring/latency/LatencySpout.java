@@ -24,6 +24,7 @@ import backtype.storm.spout.SpoutOutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichSpout;
 import backtype.storm.topology.OutputFieldsDeclarer;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
 
@@ -31,7 +32,13 @@ import backtype.storm.topology.OutputFieldsDeclarer;
 
 /**
  * {@link LatencySpout} appends a "create timestamp" attribute to all emitted tuples. The appended timestamps are taken
- * by {@link System#currentTimeMillis()}.
+ * by {@link System#currentTimeMillis()}.<br />
+ * <br />
+ * In sampling mode, output tuples and schemas are not modified. Instead, a latency marker is emitted to the separate
+ * stream {@link MonitoringTopoloyBuilder#LATENCY_MARKER_STREAM} for every {@code sampleRate}-th output tuple and/or
+ * for the first output tuple after each {@code sampleInterval} milliseconds (see {@link SpoutLatencyMarkerCollector}).
+ * Markers are forwarded by {@link LatencyBolt} and evaluated by {@link LatencyCollectorBolt}; downstream bolts must
+ * subscribe to the marker stream (see {@link MonitoringTopoloyBuilder}).
  * 
  * @author mjsax
  */
@@ -41,6 +48,21 @@ public class LatencySpout implements IRichSpout {
 	/** The original user spout. */
 	private final IRichSpout userSpout;
 	
+	/** Indicates if latency markers are emitted instead of appending timestamps to all tuples. */
+	private final boolean sampled;
+	
+	/** The number of output tuples per latency marker (zero disables count based sampling). */
+	private final int sampleRate;
+	
+	/** The time between two latency markers in milliseconds (zero disables time based sampling). */
+	private final long sampleInterval;
+	
+	/** The collector that emits latency markers (in sampling mode). */
+	private SpoutLatencyMarkerCollector markerCollector;
+	
+	/** The timestamp when the next time based sample should be taken. */
+	private long nextSampleTs;
+	
 	
 	
 	/**
@@ -51,13 +73,45 @@ public class LatencySpout implements IRichSpout {
 	 */
 	public LatencySpout(IRichSpout userSpout) {
 		this.userSpout = userSpout;
+		this.sampled = false;
+		this.sampleRate = 0;
+		this.sampleInterval = 0;
+	}
+	
+	/**
+	 * Instantiate a new {@link LatencySpout} that emits latency markers for a sample of the emitted tuples of the given
+	 * spout. Count and time based sampling can be combined.
+	 * 
+	 * @param userSpout
+	 *            The user spout to be monitored.
+	 * @param sampleRate
+	 *            The number of output tuples per latency marker (zero disables count based sampling).
+	 * @param sampleInterval
+	 *            The time between two latency markers in milliseconds (zero disables time based sampling).
+	 */
+	public LatencySpout(IRichSpout userSpout, int sampleRate, long sampleInterval) {
+		if(sampleRate <= 0 && sampleInterval <= 0) {
+			throw new IllegalArgumentException(
+				"Either parameter <sampleRate> or <sampleInterval> must be greater than 0.");
+		}
+		this.userSpout = userSpout;
+		this.sampled = true;
+		this.sampleRate = sampleRate;
+		this.sampleInterval = sampleInterval;
 	}
 	
 	
 	
 	@Override
 	public void open(@SuppressWarnings("rawtypes") Map conf, TopologyContext context, SpoutOutputCollector collector) {
-		this.userSpout.open(conf, context, new SpoutTimestampAppender(collector));
+		if(this.sampled) {
+			this.markerCollector = new SpoutLatencyMarkerCollector(collector, this.sampleRate,
+				LatencyClock.getWorkerId(context));
+			this.nextSampleTs = System.currentTimeMillis();
+			this.userSpout.open(conf, context, this.markerCollector);
+		} else {
+			this.userSpout.open(conf, context, new SpoutTimestampAppender(collector));
+		}
 	}
 	
 	@Override
@@ -77,6 +131,14 @@ public class LatencySpout implements IRichSpout {
 	
 	@Override
 	public void nextTuple() {
+		// check the time once per call (instead of once per emitted tuple)
+		if(this.sampleInterval > 0) {
+			final long now = System.currentTimeMillis();
+			if(now >= this.nextSampleTs) {
+				this.markerCollector.sampleNext = true;
+				this.nextSampleTs = now + this.sampleInterval;
+			}
+		}
 		this.userSpout.nextTuple();
 	}
 	
@@ -92,7 +154,12 @@ public class LatencySpout implements IRichSpout {
 	
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		TimestampAttributeAppender.addCreateTimestampAttributeToSchemas(this.userSpout, declarer);
+		if(this.sampled) {
+			this.userSpout.declareOutputFields(declarer);
+			TimestampAttributeAppender.declareMarkerStream(declarer);
+		} else {
+			TimestampAttributeAppender.addCreateTimestampAttributeToSchemas(this.userSpout, declarer);
+		}
 	}
 	
 	@Override
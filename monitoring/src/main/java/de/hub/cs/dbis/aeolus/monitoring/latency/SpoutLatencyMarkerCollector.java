@@ -0,0 +1,105 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import java.util.List;
+
+import backtype.storm.spout.SpoutOutputCollector;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+
+
+
+
+
+/**
+ * {@link SpoutLatencyMarkerCollector} wraps a spout output collector to emit latency markers for a sample of the
+ * output tuples. Output tuples are not modified. Instead, a marker tuple that contains the current timestamp (in
+ * milliseconds and nanoseconds, see {@link LatencyClock}) and the ID of the emitting worker is emitted to the
+ * {@link MonitoringTopoloyBuilder#LATENCY_MARKER_STREAM marker stream} right after a sampled output tuple.
+ * 
+ * @author mjsax
+ */
+class SpoutLatencyMarkerCollector extends SpoutOutputCollector {
+	/** The original Storm provided collector. */
+	private final SpoutOutputCollector collector;
+	
+	/** The ID of the worker the spout task is running in. */
+	private final String workerId;
+	
+	/** The number of output tuples per marker ({@code Long.MAX_VALUE} if count based sampling is disabled). */
+	private final long sampleRate;
+	
+	/** The number of output tuples until the next marker is emitted. */
+	private long countdown;
+	
+	/** Indicates that a marker should be emitted for the next output tuple (used for time based sampling). */
+	boolean sampleNext = false;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link SpoutLatencyMarkerCollector}.
+	 * 
+	 * @param collector
+	 *            the original Storm provided collector
+	 * @param sampleRate
+	 *            the number of output tuples per marker (zero disables count based sampling)
+	 * @param workerId
+	 *            the ID of the worker the spout task is running in
+	 */
+	public SpoutLatencyMarkerCollector(SpoutOutputCollector collector, int sampleRate, String workerId) {
+		super(collector);
+		this.collector = collector;
+		this.workerId = workerId;
+		this.sampleRate = sampleRate > 0 ? sampleRate : Long.MAX_VALUE;
+		this.countdown = this.sampleRate;
+	}
+	
+	
+	
+	@Override
+	public List<Integer> emit(String streamId, List<Object> tuple, Object messageId) {
+		final List<Integer> result = this.collector.emit(streamId, tuple, messageId);
+		if(!streamId.startsWith("aeolus::") && (--this.countdown == 0 || this.sampleNext)) {
+			this.emitMarker();
+		}
+		return result;
+	}
+	
+	@Override
+	public void emitDirect(int taskId, String streamId, List<Object> tuple, Object messageId) {
+		this.collector.emitDirect(taskId, streamId, tuple, messageId);
+		if(!streamId.startsWith("aeolus::") && (--this.countdown == 0 || this.sampleNext)) {
+			this.emitMarker();
+		}
+	}
+	
+	/**
+	 * Emits a marker tuple with the current timestamp and resets the sampling state.
+	 */
+	private void emitMarker() {
+		final long now = LatencyClock.currentTimeNanos();
+		this.collector.emit(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM, new Values(new Long(now / 1000000),
+			new Long(now), this.workerId));
+		this.countdown = this.sampleRate;
+		this.sampleNext = false;
+	}
+	
+}
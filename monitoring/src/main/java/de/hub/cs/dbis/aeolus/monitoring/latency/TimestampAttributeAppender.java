@@ -25,19 +25,34 @@ import java.util.Map.Entry;
 import backtype.storm.topology.IComponent;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Fields;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.LongBatchColumn;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
 
 
 
 /**
- * {@link TimestampAttributeAppender} appends a "create timestamp" attribute to schema of all declared streams.
+ * {@link TimestampAttributeAppender} appends a "create timestamp" attribute to schema of all declared streams. It also
+ * declares the latency marker stream (for latency sampling mode).
  * 
  * @author mjsax
  */
 final class TimestampAttributeAppender {
 	/** The name of the additional timestamp attribute. */
 	final static String CREATE_TS_FIELD_NAME = "aeouls::create-ts";
+	/** The name of the latency marker attribute that holds the time (in nanoseconds) the marker was (re-)emitted. */
+	final static String HOP_TS_FIELD_NAME = "aeolus::hop-ts";
+	/** The name of the latency marker attribute that holds the ID of the worker that (re-)emitted the marker. */
+	final static String WORKER_FIELD_NAME = "aeolus::worker";
+	
+	/** The index of the create timestamp attribute of latency markers. */
+	final static int MARKER_CREATE_TS_INDEX = 0;
+	/** The index of the hop timestamp attribute of latency markers. */
+	final static int MARKER_HOP_TS_INDEX = 1;
+	/** The index of the worker ID attribute of latency markers. */
+	final static int MARKER_WORKER_INDEX = 2;
 	
 	
 	
@@ -58,4 +73,26 @@ final class TimestampAttributeAppender {
 		}
 	}
 	
+	static void declareMarkerStream(OutputFieldsDeclarer declarer) {
+		declarer.declareStream(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM, new Fields(CREATE_TS_FIELD_NAME,
+			HOP_TS_FIELD_NAME, WORKER_FIELD_NAME));
+	}
+	
+	/**
+	 * Returns the create timestamp of a single tuple of an input batch.
+	 * 
+	 * @param column
+	 *            The create timestamp column (ie, the last column) of the batch.
+	 * @param index
+	 *            The index of the tuple within the batch.
+	 * 
+	 * @return the create timestamp of the tuple
+	 */
+	static long getCreateTimestamp(BatchColumn column, int index) {
+		if(column instanceof LongBatchColumn) {
+			return ((LongBatchColumn)column).getLong(index);
+		}
+		return ((Long)column.get(index)).longValue();
+	}
+	
 }
@@ -0,0 +1,169 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.microbenchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import backtype.storm.generated.Grouping;
+import backtype.storm.generated.NullStruct;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.batching.AbstractBatchCollector;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+
+
+
+
+public class BatchAllocationBenchmark {
+	protected final static OptionParser parser = new OptionParser();
+	
+	private final static OptionSpec<Integer> batchSizeOption, numberOfAttributesOption, numberOfTuplesOption,
+		poolSizeOption, runsOption;
+	
+	static {
+		batchSizeOption = parser.accepts("batchSize", "The output batch size.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).required();
+		numberOfAttributesOption = parser.accepts("attributes", "The number of attributes per tuple.")
+			.withRequiredArg().describedAs("number of attributes").ofType(Integer.class).defaultsTo(new Integer(3));
+		numberOfTuplesOption = parser.accepts("tuples", "The number of tuples emitted per run.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).defaultsTo(new Integer(10000000));
+		poolSizeOption = parser.accepts("poolSize", "The number of recycled columns per column type.")
+			.withRequiredArg().describedAs("number of columns").ofType(Integer.class).defaultsTo(new Integer(16));
+		runsOption = parser.accepts("runs", "The number of measured runs (after one warm-up run).").withRequiredArg()
+			.describedAs("number of runs").ofType(Integer.class).defaultsTo(new Integer(5));
+	}
+	
+	private static class LocalConsumerCollector extends AbstractBatchCollector {
+		private final static List<Integer> receiverTasks = Collections.singletonList(new Integer(1));
+		
+		long consumed = 0;
+		
+		public LocalConsumerCollector(TopologyContext context, int batchSize) {
+			super(context, batchSize);
+		}
+		
+		@Override
+		protected List<Integer> doEmit(String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
+			this.consume(tupleOrBatch);
+			return receiverTasks;
+		}
+		
+		@Override
+		protected void doEmitDirect(int taskId, String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
+			this.consume(tupleOrBatch);
+		}
+		
+		private void consume(Object tupleOrBatch) {
+			for(Object column : (List<?>)tupleOrBatch) {
+				this.consumed += ((BatchColumn)column).size();
+				((BatchColumn)column).release();
+			}
+		}
+	}
+	
+	private static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread
+			.currentThread().getId());
+	}
+	
+	private static void run(String mode, Values[] tuples, int batchSize, int numberOfTuples, int poolSize, boolean print) {
+		final String[] attributes = new String[tuples[0].size()];
+		for(int i = 0; i < attributes.length; ++i) {
+			attributes[i] = "a" + i;
+		}
+		TopologyContext context = new BenchmarkTopologyContext(Utils.DEFAULT_STREAM_ID, new Fields(attributes),
+			Grouping.shuffle(new NullStruct()), 1);
+		
+		LocalConsumerCollector collector = new LocalConsumerCollector(context, batchSize);
+		collector.setColumnPoolSize(poolSize);
+		
+		final long startBytes = getAllocatedBytes();
+		final long start = System.nanoTime();
+		for(int i = 0; i < numberOfTuples; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, tuples[i % tuples.length], null);
+		}
+		collector.flush();
+		final long duration = System.nanoTime() - start;
+		final long allocatedBytes = getAllocatedBytes() - startBytes;
+		
+		if(collector.consumed != (long)numberOfTuples * attributes.length) {
+			throw new RuntimeException("Lost tuples: " + collector.consumed);
+		}
+		
+		if(print) {
+			System.out.println(mode + "\t" + (duration / 1000000) + " ms\t" + (allocatedBytes / (1024 * 1024))
+				+ " MB\t" + ((double)allocatedBytes / numberOfTuples) + " bytes/tuple");
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		OptionSet options = null;
+		try {
+			options = parser.parse(args);
+		} catch(OptionException e) {
+			System.err.println(e.getMessage());
+			System.err.println();
+			parser.printHelpOn(System.err);
+			System.exit(-1);
+		}
+		
+		final int batchSize = options.valueOf(batchSizeOption).intValue();
+		final int numberOfAttributes = options.valueOf(numberOfAttributesOption).intValue();
+		final int numberOfTuples = options.valueOf(numberOfTuplesOption).intValue();
+		final int poolSize = options.valueOf(poolSizeOption).intValue();
+		final int runs = options.valueOf(runsOption).intValue();
+		
+		// pre-generate input tuples, such that tuple creation does not allocate memory during measurement
+		final Values[] tuples = new Values[1024];
+		for(int i = 0; i < tuples.length; ++i) {
+			tuples[i] = new Values();
+			for(int j = 0; j < numberOfAttributes; ++j) {
+				switch(j % 3) {
+				case 0:
+					tuples[i].add(new Long(i));
+					break;
+				case 1:
+					tuples[i].add(new Integer(i));
+					break;
+				default:
+					tuples[i].add(new Double(i));
+				}
+			}
+		}
+		
+		run("warm-up", tuples, batchSize, numberOfTuples, 0, false);
+		run("warm-up", tuples, batchSize, numberOfTuples, poolSize, false);
+		for(int i = 0; i < runs; ++i) {
+			run("allocate", tuples, batchSize, numberOfTuples, 0, true);
+			run("recycle", tuples, batchSize, numberOfTuples, poolSize, true);
+		}
+	}
+	
+}
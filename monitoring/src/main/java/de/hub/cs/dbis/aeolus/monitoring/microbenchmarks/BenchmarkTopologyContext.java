@@ -0,0 +1,94 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.microbenchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import backtype.storm.generated.Grouping;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Fields;
+
+
+
+
+
+public class BenchmarkTopologyContext extends TopologyContext {
+	public final static String PRODUCER_ID = "producer";
+	public final static String CONSUMER_ID = "consumer";
+	
+	private final Fields outputSchema;
+	private final Map<String, Map<String, Grouping>> targets = new HashMap<String, Map<String, Grouping>>();
+	private final List<Integer> consumerTasks = new ArrayList<Integer>();
+	
+	
+	
+	public BenchmarkTopologyContext(String streamId, Fields outputSchema, Grouping grouping, int numberOfConsumerTasks) {
+		this(new String[] {streamId}, outputSchema, grouping, numberOfConsumerTasks);
+	}
+	
+	public BenchmarkTopologyContext(String[] streamIds, Fields outputSchema, Grouping grouping, int numberOfConsumerTasks) {
+		super(null, new HashMap<Object, Object>(), new HashMap<Integer, String>(),
+			new HashMap<String, List<Integer>>(), new HashMap<String, Map<String, Fields>>(), null, null, null,
+			new Integer(0), null, new ArrayList<Integer>(), null, null, null, null, null);
+		
+		this.outputSchema = outputSchema;
+		
+		for(String streamId : streamIds) {
+			Map<String, Grouping> consumer = new HashMap<String, Grouping>();
+			consumer.put(CONSUMER_ID, grouping);
+			this.targets.put(streamId, consumer);
+		}
+		
+		for(int i = 1; i <= numberOfConsumerTasks; ++i) {
+			this.consumerTasks.add(new Integer(i));
+		}
+	}
+	
+	
+	
+	@Override
+	public String getThisComponentId() {
+		return PRODUCER_ID;
+	}
+	
+	@Override
+	public Map<String, Map<String, Grouping>> getThisTargets() {
+		return this.targets;
+	}
+	
+	@Override
+	public Fields getComponentOutputFields(String componentId, String stream) {
+		if(PRODUCER_ID.equals(componentId) && this.targets.containsKey(stream)) {
+			return this.outputSchema;
+		}
+		return null;
+	}
+	
+	@Override
+	public List<Integer> getComponentTasks(String componentId) {
+		if(CONSUMER_ID.equals(componentId)) {
+			return this.consumerTasks;
+		}
+		return new ArrayList<Integer>();
+	}
+	
+}
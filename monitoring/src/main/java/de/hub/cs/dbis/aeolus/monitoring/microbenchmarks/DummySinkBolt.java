@@ -22,15 +22,16 @@ import java.util.Map;
 
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
-import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.api.IBatchBolt;
 
 
 
 
 
-public class DummySinkBolt implements IRichBolt {
+public class DummySinkBolt implements IBatchBolt {
 	private static final long serialVersionUID = -4049388466874875023L;
 	
 	private OutputCollector collector;
@@ -45,6 +46,11 @@ public class DummySinkBolt implements IRichBolt {
 		this.collector.ack(input);
 	}
 	
+	@Override
+	public void executeBatch(BatchView batch) {
+		this.collector.ack(batch.getInput());
+	}
+	
 	@Override
 	public void cleanup() {}
 	
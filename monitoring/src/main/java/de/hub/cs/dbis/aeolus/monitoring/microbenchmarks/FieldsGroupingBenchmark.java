@@ -0,0 +1,145 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.microbenchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import backtype.storm.generated.Grouping;
+import backtype.storm.generated.NullStruct;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.batching.AbstractBatchCollector;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+
+
+
+
+public class FieldsGroupingBenchmark {
+	protected final static OptionParser parser = new OptionParser();
+	
+	private final static OptionSpec<Integer> batchSizeOption, numberOfKeysOption, numberOfTasksOption,
+		numberOfTuplesOption, runsOption;
+	
+	static {
+		batchSizeOption = parser.accepts("batchSize", "The output batch size.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).defaultsTo(new Integer(100));
+		numberOfKeysOption = parser.accepts("keys", "The number of grouping attributes.").withRequiredArg()
+			.describedAs("number of attributes").ofType(Integer.class).defaultsTo(new Integer(1));
+		numberOfTasksOption = parser.accepts("dop", "The number of consumer tasks.").withRequiredArg()
+			.describedAs("number of tasks").ofType(Integer.class).defaultsTo(new Integer(4));
+		numberOfTuplesOption = parser.accepts("tuples", "The number of tuples emitted per run.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).defaultsTo(new Integer(10000000));
+		runsOption = parser.accepts("runs", "The number of measured runs (after one warm-up run).").withRequiredArg()
+			.describedAs("number of runs").ofType(Integer.class).defaultsTo(new Integer(5));
+	}
+	
+	private static class CountingCollector extends AbstractBatchCollector {
+		long emitted = 0;
+		
+		public CountingCollector(TopologyContext context, int batchSize) {
+			super(context, batchSize);
+		}
+		
+		@Override
+		protected List<Integer> doEmit(String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
+			++this.emitted;
+			return null;
+		}
+		
+		@Override
+		protected void doEmitDirect(int taskId, String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
+			++this.emitted;
+		}
+	}
+	
+	private static void run(String mode, Grouping grouping, Values[] tuples, int batchSize, int numberOfTasks, int numberOfTuples, boolean print) {
+		final String[] attributes = new String[tuples[0].size()];
+		for(int i = 0; i < attributes.length; ++i) {
+			attributes[i] = "a" + i;
+		}
+		TopologyContext context = new BenchmarkTopologyContext(Utils.DEFAULT_STREAM_ID, new Fields(attributes),
+			grouping, numberOfTasks);
+		
+		CountingCollector collector = new CountingCollector(context, batchSize);
+		
+		final long start = System.nanoTime();
+		for(int i = 0; i < numberOfTuples; ++i) {
+			collector.tupleEmit(Utils.DEFAULT_STREAM_ID, null, tuples[i % tuples.length], null);
+		}
+		final long duration = System.nanoTime() - start;
+		
+		if(print) {
+			System.out.println(mode + "\t" + (duration / 1000000) + " ms\t" + ((double)duration / numberOfTuples)
+				+ " ns/tuple\t" + collector.emitted + " batches");
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		OptionSet options = null;
+		try {
+			options = parser.parse(args);
+		} catch(OptionException e) {
+			System.err.println(e.getMessage());
+			System.err.println();
+			parser.printHelpOn(System.err);
+			System.exit(-1);
+		}
+		
+		final int batchSize = options.valueOf(batchSizeOption).intValue();
+		final int numberOfKeys = options.valueOf(numberOfKeysOption).intValue();
+		final int numberOfTasks = options.valueOf(numberOfTasksOption).intValue();
+		final int numberOfTuples = options.valueOf(numberOfTuplesOption).intValue();
+		final int runs = options.valueOf(runsOption).intValue();
+		
+		// pre-generate input tuples (key attributes first, followed by one payload attribute)
+		final Values[] tuples = new Values[1024];
+		final List<String> keys = new ArrayList<String>(numberOfKeys);
+		for(int j = 0; j < numberOfKeys; ++j) {
+			keys.add("a" + j);
+		}
+		for(int i = 0; i < tuples.length; ++i) {
+			tuples[i] = new Values();
+			for(int j = 0; j < numberOfKeys; ++j) {
+				tuples[i].add(new Long(i * 31 + j));
+			}
+			tuples[i].add("payload-" + i);
+		}
+		
+		final Grouping shuffle = Grouping.shuffle(new NullStruct());
+		final Grouping fields = Grouping.fields(keys);
+		
+		// shuffle-grouping uses a single output buffer and thus, gives the cost of batching without partitioning
+		run("warm-up", shuffle, tuples, batchSize, numberOfTasks, numberOfTuples, false);
+		run("warm-up", fields, tuples, batchSize, numberOfTasks, numberOfTuples, false);
+		for(int i = 0; i < runs; ++i) {
+			run("shuffle", shuffle, tuples, batchSize, numberOfTasks, numberOfTuples, true);
+			run("fields", fields, tuples, batchSize, numberOfTasks, numberOfTuples, true);
+		}
+	}
+	
+}
@@ -0,0 +1,190 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.microbenchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import backtype.storm.generated.Grouping;
+import backtype.storm.generated.NullStruct;
+import backtype.storm.spout.ISpoutOutputCollector;
+import backtype.storm.spout.SpoutOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichSpout;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.monitoring.throughput.ThroughputSpout;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+
+
+
+
+public class MonitoringOverheadBenchmark {
+	protected final static OptionParser parser = new OptionParser();
+	
+	private final static OptionSpec<Integer> numberOfTuplesOption, runsOption, intervalOption;
+	
+	private final static int[] numberOfStreams = new int[] {1, 4, 16};
+	
+	static {
+		numberOfTuplesOption = parser.accepts("tuples", "The number of tuples emitted per run.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).defaultsTo(new Integer(10000000));
+		runsOption = parser.accepts("runs", "The number of measured runs (after one warm-up run).").withRequiredArg()
+			.describedAs("number of runs").ofType(Integer.class).defaultsTo(new Integer(5));
+		intervalOption = parser.accepts("interval", "The reporting interval of the throughput monitor.")
+			.withRequiredArg().describedAs("ms").ofType(Integer.class).defaultsTo(new Integer(1000));
+	}
+	
+	private static class CountingCollector implements ISpoutOutputCollector {
+		long emitted = 0;
+		
+		@Override
+		public List<Integer> emit(String streamId, List<Object> tuple, Object messageId) {
+			++this.emitted;
+			return null;
+		}
+		
+		@Override
+		public void emitDirect(int taskId, String streamId, List<Object> tuple, Object messageId) {
+			++this.emitted;
+		}
+		
+		@Override
+		public void reportError(Throwable error) {}
+	}
+	
+	private static class RoundRobinSpout implements IRichSpout {
+		private static final long serialVersionUID = 6011485939434893207L;
+		
+		private final String[] streamIds;
+		private final Values tuple;
+		private SpoutOutputCollector collector;
+		private int next = 0;
+		
+		public RoundRobinSpout(String[] streamIds, Values tuple) {
+			this.streamIds = streamIds;
+			this.tuple = tuple;
+		}
+		
+		@Override
+		public void open(@SuppressWarnings("rawtypes") Map conf, TopologyContext context, SpoutOutputCollector collector) {
+			this.collector = collector;
+		}
+		
+		@Override
+		public void close() {}
+		
+		@Override
+		public void activate() {}
+		
+		@Override
+		public void deactivate() {}
+		
+		@Override
+		public void nextTuple() {
+			this.collector.emit(this.streamIds[this.next], this.tuple);
+			if(++this.next == this.streamIds.length) {
+				this.next = 0;
+			}
+		}
+		
+		@Override
+		public void ack(Object msgId) {}
+		
+		@Override
+		public void fail(Object msgId) {}
+		
+		@Override
+		public void declareOutputFields(OutputFieldsDeclarer declarer) {
+			for(String streamId : this.streamIds) {
+				declarer.declareStream(streamId, new Fields("a0", "a1"));
+			}
+		}
+		
+		@Override
+		public Map<String, Object> getComponentConfiguration() {
+			return null;
+		}
+	}
+	
+	private static long run(int numberOfStreams, Values tuple, int numberOfTuples, boolean monitored, int interval) {
+		// stream IDs are constants within an operator -> use the same string objects for declaration and emit
+		final String[] streamIds = new String[numberOfStreams];
+		for(int i = 0; i < numberOfStreams; ++i) {
+			streamIds[i] = "stream-" + i;
+		}
+		TopologyContext context = new BenchmarkTopologyContext(streamIds, new Fields("a0", "a1"),
+			Grouping.shuffle(new NullStruct()), 1);
+		
+		IRichSpout spout = new RoundRobinSpout(streamIds, tuple);
+		if(monitored) {
+			spout = new ThroughputSpout(spout, interval);
+		}
+		spout.open(new HashMap<Object, Object>(), context, new SpoutOutputCollector(new CountingCollector()));
+		
+		final long start = System.nanoTime();
+		for(int i = 0; i < numberOfTuples; ++i) {
+			spout.nextTuple();
+		}
+		final long duration = System.nanoTime() - start;
+		
+		spout.close();
+		return duration;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		OptionSet options = null;
+		try {
+			options = parser.parse(args);
+		} catch(OptionException e) {
+			System.err.println(e.getMessage());
+			System.err.println();
+			parser.printHelpOn(System.err);
+			System.exit(-1);
+		}
+		
+		final int numberOfTuples = options.valueOf(numberOfTuplesOption).intValue();
+		final int runs = options.valueOf(runsOption).intValue();
+		final int interval = options.valueOf(intervalOption).intValue();
+		
+		final Values tuple = new Values(new Long(42), "payload");
+		
+		for(int n : numberOfStreams) {
+			run(n, tuple, numberOfTuples, false, interval);
+			run(n, tuple, numberOfTuples, true, interval);
+		}
+		for(int i = 0; i < runs; ++i) {
+			for(int n : numberOfStreams) {
+				final long plain = run(n, tuple, numberOfTuples, false, interval);
+				final long monitored = run(n, tuple, numberOfTuples, true, interval);
+				
+				System.out.println(n + " streams\t" + ((double)plain / numberOfTuples) + " ns/tuple (plain)\t"
+					+ ((double)monitored / numberOfTuples) + " ns/tuple (monitored)\t"
+					+ ((double)(monitored - plain) / numberOfTuples) + " ns/tuple overhead");
+			}
+		}
+	}
+	
+}
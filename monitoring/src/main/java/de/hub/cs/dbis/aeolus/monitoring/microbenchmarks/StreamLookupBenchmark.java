@@ -0,0 +1,126 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.microbenchmarks;
+
+import java.util.Collection;
+import java.util.List;
+
+import backtype.storm.generated.Grouping;
+import backtype.storm.generated.NullStruct;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.batching.AbstractBatchCollector;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+
+
+
+
+public class StreamLookupBenchmark {
+	protected final static OptionParser parser = new OptionParser();
+	
+	private final static OptionSpec<Integer> batchSizeOption, numberOfTuplesOption, runsOption;
+	
+	private final static int[] numberOfStreams = new int[] {1, 4, 16};
+	
+	static {
+		batchSizeOption = parser.accepts("batchSize", "The output batch size.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).defaultsTo(new Integer(100));
+		numberOfTuplesOption = parser.accepts("tuples", "The number of tuples emitted per run.").withRequiredArg()
+			.describedAs("number of tuples").ofType(Integer.class).defaultsTo(new Integer(10000000));
+		runsOption = parser.accepts("runs", "The number of measured runs (after one warm-up run).").withRequiredArg()
+			.describedAs("number of runs").ofType(Integer.class).defaultsTo(new Integer(5));
+	}
+	
+	private static class CountingCollector extends AbstractBatchCollector {
+		long emitted = 0;
+		
+		public CountingCollector(TopologyContext context, int batchSize) {
+			super(context, batchSize);
+		}
+		
+		@Override
+		protected List<Integer> doEmit(String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
+			++this.emitted;
+			return null;
+		}
+		
+		@Override
+		protected void doEmitDirect(int taskId, String streamId, Collection<Tuple> anchors, Object tupleOrBatch, Object messageId) {
+			++this.emitted;
+		}
+	}
+	
+	private static void run(int numberOfStreams, Values tuple, int batchSize, int numberOfTuples, boolean print) {
+		// stream IDs are constants within an operator -> use the same string objects for declaration and emit
+		final String[] streamIds = new String[numberOfStreams];
+		for(int i = 0; i < numberOfStreams; ++i) {
+			streamIds[i] = "stream-" + i;
+		}
+		TopologyContext context = new BenchmarkTopologyContext(streamIds, new Fields("a0", "a1"),
+			Grouping.shuffle(new NullStruct()), 1);
+		
+		CountingCollector collector = new CountingCollector(context, batchSize);
+		
+		// round-robin over all output streams (worst case for a cached last-stream lookup)
+		final long start = System.nanoTime();
+		for(int i = 0; i < numberOfTuples; ++i) {
+			collector.tupleEmit(streamIds[i % numberOfStreams], null, tuple, null);
+		}
+		final long duration = System.nanoTime() - start;
+		
+		if(print) {
+			System.out.println(numberOfStreams + " streams\t" + (duration / 1000000) + " ms\t"
+				+ ((double)duration / numberOfTuples) + " ns/tuple\t" + collector.emitted + " batches");
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		OptionSet options = null;
+		try {
+			options = parser.parse(args);
+		} catch(OptionException e) {
+			System.err.println(e.getMessage());
+			System.err.println();
+			parser.printHelpOn(System.err);
+			System.exit(-1);
+		}
+		
+		final int batchSize = options.valueOf(batchSizeOption).intValue();
+		final int numberOfTuples = options.valueOf(numberOfTuplesOption).intValue();
+		final int runs = options.valueOf(runsOption).intValue();
+		
+		final Values tuple = new Values(new Long(42), "payload");
+		
+		for(int n : numberOfStreams) {
+			run(n, tuple, batchSize, numberOfTuples, false);
+		}
+		for(int i = 0; i < runs; ++i) {
+			for(int n : numberOfStreams) {
+				run(n, tuple, batchSize, numberOfTuples, true);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,410 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.api.IBatchBolt;
+import de.hub.cs.dbis.aeolus.batching.api.IBoltWrapper;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+import de.hub.cs.dbis.aeolus.monitoring.latency.LatencyHistogram;
+
+
+
+
+
+/**
+ * {@link ProfilingBolt} measures the service time (ie, the wall-clock time spent in {@code execute()}) of a bolt per
+ * input stream and reports it in regular intervals. Optionally, the CPU time of the executing thread is measured, too
+ * (via {@link ThreadMXBean}). Service times are recorded in nanoseconds into a {@link LatencyHistogram} per input
+ * stream.<br />
+ * <br />
+ * <strong>Statistics report stream output schema:</strong> {@code <ts:}{@link Long}{@code ,taskId:}{@link Integer}
+ * {@code ,streamId:}{@link String}{@code ,count:}{@link Long}{@code ,busy:}{@link Double}{@code ,cpu:}{@link Double}
+ * {@code ,50:}{@link Long}{@code ,99:}{@link Long}{@code ,99.9:}{@link Long}{@code ,max:}{@link Long}{@code ,avg:}
+ * {@link Long}{@code ,avgCpu:}{@link Long}{@code >}<br />
+ * <br />
+ * where {@code ts} is the start of the reporting interval, {@code count} is the number of processed input tuples,
+ * {@code busy} and {@code cpu} are the fractions of the interval spent in {@code execute()} and on the CPU,
+ * respectively, and {@code 50} to {@code avgCpu} are service time statistics in nanoseconds. For each interval, one
+ * record per input stream with input and one record over all input streams (stream ID {@code in}) is reported. Thus,
+ * an idle interval is reported with a busy ratio of zero. A service time is accounted to the interval in which the
+ * call to {@code execute()} started.<br />
+ * <br />
+ * Reporting is triggered by the first tuple that is processed after the end of an interval. At this point, all
+ * elapsed intervals are reported at once (ie, reports of idle intervals are delayed until the bolt receives input
+ * again).<br />
+ * <br />
+ * If the monitored bolt is an {@link IBatchBolt}, whole input batches are forwarded to it (see
+ * {@link #executeBatch(BatchView)}). In this case, a single service time is recorded per batch (and {@code count} is
+ * the number of processed batches).
+ * 
+ * @author mjsax
+ */
+public class ProfilingBolt implements IBoltWrapper, IBatchBolt {
+	private final static long serialVersionUID = 2401358726587324123L;
+	private final static Logger logger = LoggerFactory.getLogger(ProfilingBolt.class);
+	
+	/** The name of the timestamp attribute. */
+	public final static String TS_ATTRIBUTE = "ts";
+	
+	/** The name of the task ID attribute. */
+	public final static String TASK_ID_ATTRIBUTE = "taskId";
+	
+	/** The name of the stream ID attribute. */
+	public final static String STREAM_ID_ATTRIBUTE = "streamId";
+	
+	/** The name of the tuple count attribute. */
+	public final static String COUNT_ATTRIBUTE = "count";
+	
+	/** The name of the busy ratio attribute. */
+	public final static String BUSY_ATTRIBUTE = "busy";
+	
+	/** The name of the CPU ratio attribute. */
+	public final static String CPU_ATTRIBUTE = "cpu";
+	
+	/** The original user bolt. */
+	private final IRichBolt userBolt;
+	
+	/** The reporting interval in milliseconds. */
+	private final long interval;
+	
+	/** Indicates if thread CPU time should be measured. */
+	private final boolean measureCpuTime;
+	
+	/** The name of the report stream. */
+	private final String reportStream;
+	
+	/** The collector to emit reports. */
+	private OutputCollector collector;
+	
+	/** The ID of the monitored task. */
+	private Integer taskId;
+	
+	/** Used to get the thread CPU time ({@code null} if CPU time is not measured). */
+	private ThreadMXBean threadBean;
+	
+	/** The statistics per input stream. */
+	private final HashMap<String, StreamProfile> profiles = new HashMap<String, StreamProfile>();
+	
+	/** The statistics per input stream in insertion order (for reporting). */
+	private final List<StreamProfile> profileList = new ArrayList<StreamProfile>();
+	
+	/** The ID of the input stream that was processed last. */
+	private String lastStreamId;
+	
+	/** The statistics of the input stream that was processed last. */
+	private StreamProfile lastProfile;
+	
+	/** The end of the current reporting interval. */
+	private long nextReportTs;
+	
+	/** The time the measurement of the current reporting interval started in milliseconds. */
+	private long intervalStartTs;
+	
+	
+	
+	/**
+	 * The collected statistics of a single input stream.
+	 */
+	private static class StreamProfile {
+		/** The input stream ID. */
+		final String streamId;
+		/** The service times of the current reporting interval. */
+		final LatencyHistogram serviceTimes = new LatencyHistogram();
+		/** The sum of all service times of the current reporting interval. */
+		long serviceTimeSum = 0;
+		/** The sum of all CPU times of the current reporting interval. */
+		long cpuTimeSum = 0;
+		
+		StreamProfile(String streamId) {
+			this.streamId = streamId;
+		}
+	}
+	
+	
+	
+	/**
+	 * Instantiates a new {@link ProfilingBolt} that reports service times of the given bolt to the default report
+	 * stream {@link MonitoringTopoloyBuilder#DEFAULT_PROFILING_STREAM}.
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param interval
+	 *            The reporting interval in milliseconds.
+	 * @param measureCpuTime
+	 *            Indicates if thread CPU time should be measured.
+	 */
+	public ProfilingBolt(IRichBolt userBolt, long interval, boolean measureCpuTime) {
+		this(userBolt, interval, measureCpuTime, MonitoringTopoloyBuilder.DEFAULT_PROFILING_STREAM);
+	}
+	
+	/**
+	 * Instantiates a new {@link ProfilingBolt} that reports service times of the given bolt to the specified stream.
+	 * 
+	 * @param userBolt
+	 *            The user bolt to be monitored.
+	 * @param interval
+	 *            The reporting interval in milliseconds.
+	 * @param measureCpuTime
+	 *            Indicates if thread CPU time should be measured.
+	 * @param reportStream
+	 *            The name of the report stream.
+	 */
+	public ProfilingBolt(IRichBolt userBolt, long interval, boolean measureCpuTime, String reportStream) {
+		if(interval <= 0) {
+			throw new IllegalArgumentException("Parameter <interval> must be greater than 0.");
+		}
+		this.userBolt = userBolt;
+		this.interval = interval;
+		this.measureCpuTime = measureCpuTime;
+		this.reportStream = reportStream;
+	}
+	
+	
+	
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
+		this.collector = collector;
+		this.taskId = new Integer(context.getThisTaskId());
+		
+		if(this.measureCpuTime) {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(bean.isCurrentThreadCpuTimeSupported()) {
+				if(!bean.isThreadCpuTimeEnabled()) {
+					bean.setThreadCpuTimeEnabled(true);
+				}
+				this.threadBean = bean;
+			} else {
+				logger.warn("Thread CPU time is not supported by the JVM. CPU time is not measured.");
+			}
+		}
+		
+		this.intervalStartTs = System.currentTimeMillis();
+		this.nextReportTs = (this.intervalStartTs / this.interval + 1) * this.interval;
+		
+		this.userBolt.prepare(stormConf, context, collector);
+	}
+	
+	@Override
+	public void execute(Tuple input) {
+		final long now = System.currentTimeMillis();
+		
+		if(this.threadBean != null) {
+			final long cpuStart = this.threadBean.getCurrentThreadCpuTime();
+			final long start = System.nanoTime();
+			this.userBolt.execute(input);
+			final long serviceTime = System.nanoTime() - start;
+			this.record(input.getSourceStreamId(), now, serviceTime, this.threadBean.getCurrentThreadCpuTime()
+				- cpuStart);
+		} else {
+			final long start = System.nanoTime();
+			this.userBolt.execute(input);
+			this.record(input.getSourceStreamId(), now, System.nanoTime() - start, 0);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The service time of the whole batch is recorded as a single value. Must only be called if the monitored bolt is
+	 * an {@link IBatchBolt}.
+	 */
+	@Override
+	public void executeBatch(BatchView batch) {
+		final IBatchBolt batchBolt = (IBatchBolt)this.userBolt;
+		final long now = System.currentTimeMillis();
+		
+		if(this.threadBean != null) {
+			final long cpuStart = this.threadBean.getCurrentThreadCpuTime();
+			final long start = System.nanoTime();
+			batchBolt.executeBatch(batch);
+			final long serviceTime = System.nanoTime() - start;
+			this.record(batch.getSourceStreamId(), now, serviceTime, this.threadBean.getCurrentThreadCpuTime()
+				- cpuStart);
+		} else {
+			final long start = System.nanoTime();
+			batchBolt.executeBatch(batch);
+			this.record(batch.getSourceStreamId(), now, System.nanoTime() - start, 0);
+		}
+	}
+	
+	/**
+	 * Records the service time and CPU time of a single call to {@code execute()}. If the current reporting interval
+	 * ended before the call started, all elapsed intervals are reported first.
+	 * 
+	 * @param streamId
+	 *            The ID of the input stream.
+	 * @param startTimestamp
+	 *            The time the call started in milliseconds.
+	 * @param serviceTime
+	 *            The service time in nanoseconds.
+	 * @param cpuTime
+	 *            The CPU time in nanoseconds.
+	 */
+	void record(String streamId, long startTimestamp, long serviceTime, long cpuTime) {
+		if(startTimestamp >= this.nextReportTs) {
+			this.report(startTimestamp);
+		}
+		
+		final StreamProfile profile = this.getProfile(streamId);
+		profile.serviceTimes.record(serviceTime);
+		profile.serviceTimeSum += serviceTime;
+		profile.cpuTimeSum += cpuTime;
+	}
+	
+	/**
+	 * Returns the statistics of the given input stream.
+	 * 
+	 * @param streamId
+	 *            The ID of the input stream.
+	 * 
+	 * @return the statistics of the given input stream
+	 */
+	private StreamProfile getProfile(String streamId) {
+		// comparing references is sufficient to detect a cache hit (equal stream IDs are looked up in the map)
+		if(streamId != this.lastStreamId) {
+			StreamProfile profile = this.profiles.get(streamId);
+			if(profile == null) {
+				profile = new StreamProfile(streamId);
+				this.profiles.put(streamId, profile);
+				this.profileList.add(profile);
+			}
+			this.lastProfile = profile;
+			this.lastStreamId = streamId;
+		}
+		return this.lastProfile;
+	}
+	
+	/**
+	 * Reports the statistics of all input streams and over all input streams for each elapsed reporting interval, and
+	 * resets them. Intervals after the first one are idle and reported with a count of zero.
+	 * 
+	 * @param now
+	 *            The current time in milliseconds.
+	 */
+	private void report(long now) {
+		do {
+			this.reportInterval();
+			this.intervalStartTs = this.nextReportTs;
+			this.nextReportTs += this.interval;
+		} while(now >= this.nextReportTs);
+	}
+	
+	/**
+	 * Reports the statistics of all input streams and over all input streams of the current reporting interval, and
+	 * resets them.
+	 */
+	private void reportInterval() {
+		final Long ts = new Long(this.nextReportTs - this.interval);
+		final double elapsed = Math.max(1, this.nextReportTs - this.intervalStartTs) * 1000000.0;
+		
+		final LatencyHistogram overall = new LatencyHistogram();
+		long overallServiceTimeSum = 0;
+		long overallCpuTimeSum = 0;
+		
+		for(StreamProfile profile : this.profileList) {
+			if(profile.serviceTimes.getTotalCount() == 0) {
+				continue;
+			}
+			this.emit(ts, profile.streamId, profile.serviceTimes, profile.serviceTimeSum, profile.cpuTimeSum, elapsed);
+			
+			overall.merge(profile.serviceTimes);
+			overallServiceTimeSum += profile.serviceTimeSum;
+			overallCpuTimeSum += profile.cpuTimeSum;
+			
+			profile.serviceTimes.reset();
+			profile.serviceTimeSum = 0;
+			profile.cpuTimeSum = 0;
+		}
+		this.emit(ts, "in", overall, overallServiceTimeSum, overallCpuTimeSum, elapsed);
+	}
+	
+	/**
+	 * Emits a single report record.
+	 * 
+	 * @param ts
+	 *            The start of the reporting interval.
+	 * @param streamId
+	 *            The ID of the reported input stream.
+	 * @param serviceTimes
+	 *            The service times of the reporting interval.
+	 * @param serviceTimeSum
+	 *            The sum of all service times of the reporting interval.
+	 * @param cpuTimeSum
+	 *            The sum of all CPU times of the reporting interval.
+	 * @param elapsed
+	 *            The measured duration of the reporting interval in nanoseconds.
+	 */
+	private void emit(Long ts, String streamId, LatencyHistogram serviceTimes, long serviceTimeSum, long cpuTimeSum,
+		double elapsed) {
+		final long count = serviceTimes.getTotalCount();
+		final long avgCpuTime = count == 0 ? 0 : cpuTimeSum / count;
+		
+		this.collector.emit(this.reportStream, new Values(ts, this.taskId, streamId, new Long(count), new Double(
+			serviceTimeSum / elapsed), new Double(cpuTimeSum / elapsed),
+			new Long(serviceTimes.getValueAtPercentile(50)), new Long(serviceTimes.getValueAtPercentile(99)), new Long(
+				serviceTimes.getValueAtPercentile(99.9)), new Long(serviceTimes.getMax()), new Long(
+				serviceTimes.getMean()), new Long(avgCpuTime)));
+	}
+	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.userBolt;
+	}
+	
+	@Override
+	public void cleanup() {
+		this.userBolt.cleanup();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Additionally to the output streams declared by the monitored user bolt, a statistical output stream is declared.
+	 */
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		this.userBolt.declareOutputFields(declarer);
+		declarer.declareStream(this.reportStream, new Fields(TS_ATTRIBUTE, TASK_ID_ATTRIBUTE, STREAM_ID_ATTRIBUTE,
+			COUNT_ATTRIBUTE, BUSY_ATTRIBUTE, CPU_ATTRIBUTE, "50", "99", "99.9", "max", "avg", "avgCpu"));
+	}
+	
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		return this.userBolt.getComponentConfiguration();
+	}
+	
+}
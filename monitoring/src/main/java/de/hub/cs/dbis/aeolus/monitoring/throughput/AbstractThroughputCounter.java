@@ -19,11 +19,15 @@
 package de.hub.cs.dbis.aeolus.monitoring.throughput;
 
 import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
 
@@ -34,14 +38,34 @@ import backtype.storm.tuple.Values;
  * computes a separate count for each logical stream and the overall count over all streams. The collected statistical
  * values can be emitted to a regular stream within a topology.<br />
  * <br />
+ * Batches (ie, tuples that contain {@link BatchColumn}s) are detected and counted with the number of contained
+ * (logical) tuples. Additionally, the number of physical messages (ie, single tuples or batches) is counted. Thus, the
+ * reported values are the same for batched and unbatched runs, independent of the position of the counter within the
+ * wrapper stack. However, messages and the effective batch size can only be reported correctly, if the counter sees
+ * whole batches (ie, if it is placed outside of {@code InputDebatcher} or {@code SpoutOutputBatcher}).<br />
+ * <br />
+ * Monitoring streams (ie, latency markers and the statistics report streams of {@link MonitoringTopoloyBuilder}) are
+ * not counted. Direct streams that are used by batching to emulate fields-grouping (ie, streams with prefix
+ * {@link BatchingOutputFieldsDeclarer#STREAM_PREFIX}) carry user data and are counted under their user stream.<br />
+ * <br />
  * <strong>Statistics report stream output schema:</strong> {@code <ts:}{@link Long}{@code ,streamId:}{@link String}
- * {@code ,count:}{@link Long} {@code ,delta:}{@link Long}{@code >}<br />
+ * {@code ,taskId:}{@link Integer}{@code ,count:}{@link Long} {@code ,delta:}{@link Long}{@code ,throughput:}
+ * {@link Long}{@code ,messages:}{@link Long}{@code ,messageThroughput:}{@link Long}{@code ,batchSize:}{@link Double}
+ * {@code >}<br />
  * <br />
  * where {@code ts} is the timestamp when reporting is triggered, {@code streamId} is the stream name the statistics
- * belong to, {@code count} is the overall count, and {@code delta} is the count since the last report. <em>Be aware,
+ * belong to, {@code count} is the overall count, {@code delta} is the count since the last report, and
+ * {@code throughput} is the delta count per second. {@code messages} and {@code messageThroughput} are the number of
+ * physical messages since the last report and per second, and {@code batchSize} is the effective batch size (ie,
+ * {@code delta / messages}) since the last report. <em>Be aware,
  * that each declared input or output stream is prefixed with</em> {@code in::} <em>or</em> {@code out::}
  * <em>respectively. Additionally, the stream IDs</em> {@code in} <em>and</em> {@code out}
- * <em>are used for the counters over all incoming or outgoing streams.</em>
+ * <em>are used for the counters over all incoming or outgoing streams.</em><br />
+ * <br />
+ * Counting is done by a single thread (ie, the executor thread of the monitored task) without any locking: each stream
+ * has its own {@link Counter} slot that is looked up once per stream and updated lazily. The reporting thread reads the
+ * slots and computes the delta values itself. Thus, the per-tuple overhead is a cached (reference) lookup of the slot
+ * and two non-blocking writes.
  * 
  * @author mjsax
  */
@@ -65,6 +89,15 @@ abstract class AbstractThroughputCounter {
 	/** The name of the throughput attribute. */
 	public final static String THROUGHPUT_ATTRIBUTE = "throughput";
 	
+	/** The name of the delta message count attribute. */
+	public final static String MESSAGES_ATTRIBUTE = "messages";
+	
+	/** The name of the message throughput attribute. */
+	public final static String MESSAGE_THROUGHPUT_ATTRIBUTE = "messageThroughput";
+	
+	/** The name of the effective batch size attribute. */
+	public final static String BATCH_SIZE_ATTRIBUTE = "batchSize";
+	
 	/** The index of the timestamp attribute. */
 	public final static int TS_INDEX = 0;
 	
@@ -88,13 +121,25 @@ abstract class AbstractThroughputCounter {
 	/** The ID of the task reporting the metric. */
 	protected final Integer taskId;
 	
-	/** Holds the overall count per stream. */
-	private final HashMap<String, Counter> counter = new HashMap<String, Counter>();
+	/** The prefix of all reported stream IDs. */
+	private final String streamIdPrefix;
 	
-	/** Hold the count per stream since the last report. */
-	private final HashMap<String, Counter> deltaCounter = new HashMap<String, Counter>();
+	/** Holds the counter slot per stream (only accessed by the counting thread). */
+	private final HashMap<String, Counter> streamCounters = new HashMap<String, Counter>();
 	
-	/** The overall count over all streams. */
+	/** Holds all counter slots; new slots are published to the reporting thread via this list. */
+	private final CopyOnWriteArrayList<Counter> counters = new CopyOnWriteArrayList<Counter>();
+	
+	/** The ID of the stream that was counted last (see {@link #getCounter(String)}). */
+	private String lastStreamId;
+	
+	/** The counter slot of the stream that was counted last. */
+	private Counter lastCounter;
+	
+	/** The counter slot of all monitoring streams, that is never reported. */
+	private final Counter internalStreams = new Counter(null);
+	
+	/** The overall count over all streams (only accessed by the reporting thread). */
 	private long overallCount = 0;
 	
 	
@@ -110,19 +155,55 @@ abstract class AbstractThroughputCounter {
 	public AbstractThroughputCounter(boolean inputOrOutput, Integer taskId) {
 		this.inputOrOutput = inputOrOutput;
 		this.taskId = taskId;
+		if(inputOrOutput) {
+			this.streamIdPrefix = "in::";
+		} else {
+			this.streamIdPrefix = "out::";
+		}
 	}
 	
 	
 	
+	/**
+	 * Returns the number of logical tuples of the given message. If the message is a batch (ie, its attributes are
+	 * {@link BatchColumn}s), the number of tuples within the batch is returned.
+	 * 
+	 * @param message
+	 *            The values of an input or output tuple.
+	 * 
+	 * @return the number of logical tuples of the given message
+	 */
+	static int getNumberOfTuples(List<Object> message) {
+		if(message != null && message.size() > 0 && message.get(0) instanceof BatchColumn) {
+			return ((BatchColumn)message.get(0)).size();
+		}
+		return 1;
+	}
+	
 	/**
 	 * Increases the counter of an input stream.
 	 * 
 	 * @param streamId
 	 *            The ID of the input stream.
+	 * @param message
+	 *            The values of the input tuple (or batch).
 	 */
-	void countIn(String streamId) {
+	void countIn(String streamId, List<Object> message) {
 		assert (this.inputOrOutput);
-		this.doCount("in::" + streamId);
+		this.getCounter(streamId).add(getNumberOfTuples(message));
+	}
+	
+	/**
+	 * Increases the counter of an input stream by a single message that contains the given number of tuples.
+	 * 
+	 * @param streamId
+	 *            The ID of the input stream.
+	 * @param numberOfTuples
+	 *            The number of tuples of the input message (ie, the batch size).
+	 */
+	void countIn(String streamId, int numberOfTuples) {
+		assert (this.inputOrOutput);
+		this.getCounter(streamId).add(numberOfTuples);
 	}
 	
 	/**
@@ -130,25 +211,59 @@ abstract class AbstractThroughputCounter {
 	 * 
 	 * @param streamId
 	 *            The ID of the output stream.
+	 * @param message
+	 *            The values of the output tuple (or batch).
 	 */
-	void countOut(String streamId) {
+	void countOut(String streamId, List<Object> message) {
 		assert (!this.inputOrOutput);
-		this.doCount("out::" + streamId);
+		this.getCounter(streamId).add(getNumberOfTuples(message));
 	}
 	
 	/**
-	 * Performs the actual counting for input and output streams.
+	 * Returns the counter slot of the given stream. If the stream is counted the first time, a new slot is created and
+	 * published to the reporting thread. All monitoring streams share a single slot, that is not reported. Emulated
+	 * direct streams share the slot of their user stream.
 	 * 
 	 * @param streamId
 	 *            The ID of the stream.
+	 * 
+	 * @return the counter slot of the given stream
 	 */
-	private synchronized void doCount(String streamId) {
-		Counter c = this.deltaCounter.get(streamId);
-		if(c == null) {
-			c = new Counter();
-			this.deltaCounter.put(streamId, c);
+	private Counter getCounter(String streamId) {
+		// stream IDs are usually constants -> comparing references is sufficient to detect a cache hit
+		if(streamId != this.lastStreamId) {
+			Counter c = this.streamCounters.get(streamId);
+			if(c == null) {
+				if(isMonitoringStream(streamId)) {
+					c = this.internalStreams;
+				} else if(streamId.startsWith(BatchingOutputFieldsDeclarer.STREAM_PREFIX)) {
+					c = this.getCounter(streamId.substring(BatchingOutputFieldsDeclarer.STREAM_PREFIX.length()));
+				} else {
+					c = new Counter(this.streamIdPrefix + streamId);
+					this.counters.add(c);
+				}
+				this.streamCounters.put(streamId, c);
+			}
+			this.lastCounter = c;
+			this.lastStreamId = streamId;
 		}
-		++c.counter;
+		return this.lastCounter;
+	}
+	
+	/**
+	 * Checks if the given stream is a monitoring stream (ie, a latency marker or statistics report stream).
+	 * 
+	 * @param streamId
+	 *            The ID of the stream.
+	 * 
+	 * @return {@code true} if the stream is a monitoring stream; {@code false} otherwise
+	 */
+	private static boolean isMonitoringStream(String streamId) {
+		return streamId.equals(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM)
+			|| streamId.equals(MonitoringTopoloyBuilder.DEFAULT_THROUGHPUT_STREAM)
+			|| streamId.equals(MonitoringTopoloyBuilder.DEFAULT_LATENCY_STREAM)
+			|| streamId.equals(MonitoringTopoloyBuilder.DEFAULT_HOP_LATENCY_STREAM)
+			|| streamId.equals(MonitoringTopoloyBuilder.DEFAULT_PROFILING_STREAM);
 	}
 	
 	/**
@@ -159,24 +274,23 @@ abstract class AbstractThroughputCounter {
 	 * @param factor
 	 *            The normalization factor for reported values "per second".
 	 */
-	synchronized void reportCount(long ts, double factor) {
+	void reportCount(long ts, double factor) {
 		long overallDelta = 0;
+		long overallMessages = 0;
 		
-		for(Entry<String, Counter> count : this.deltaCounter.entrySet()) {
-			String streamId = count.getKey();
-			Counter delta = count.getValue();
-			
-			Counter c = this.counter.get(streamId);
-			if(c == null) {
-				c = new Counter();
-				this.counter.put(streamId, c);
-			}
-			c.counter += delta.counter;
-			overallDelta += delta.counter;
-			this.doEmit(new Values(new Long(ts), streamId, taskId, new Long(c.counter), new Long(delta.counter),
-				new Long((long)(delta.counter / factor))));
+		for(Counter c : this.counters) {
+			final long count = c.getCounter();
+			final long messages = c.getMessages();
+			final long delta = count - c.reportedCounter;
+			final long deltaMessages = messages - c.reportedMessages;
+			c.reportedCounter = count;
+			c.reportedMessages = messages;
 			
-			count.setValue(new Counter());
+			overallDelta += delta;
+			overallMessages += deltaMessages;
+			this.doEmit(new Values(new Long(ts), c.reportStreamId, taskId, new Long(count), new Long(delta), new Long(
+				(long)(delta / factor)), new Long(deltaMessages), new Long((long)(deltaMessages / factor)), new Double(
+				getBatchSize(delta, deltaMessages))));
 		}
 		
 		this.overallCount += overallDelta;
@@ -188,7 +302,22 @@ abstract class AbstractThroughputCounter {
 		}
 		
 		this.doEmit(new Values(new Long(ts), id, taskId, new Long(this.overallCount), new Long(overallDelta), new Long(
-			(long)(overallDelta / factor))));
+			(long)(overallDelta / factor)), new Long(overallMessages), new Long((long)(overallMessages / factor)),
+			new Double(getBatchSize(overallDelta, overallMessages))));
+	}
+	
+	/**
+	 * Computes the effective batch size.
+	 * 
+	 * @param tuples
+	 *            The number of logical tuples.
+	 * @param messages
+	 *            The number of physical messages.
+	 * 
+	 * @return the average number of tuples per message (zero, if no message was counted)
+	 */
+	private static double getBatchSize(long tuples, long messages) {
+		return messages == 0 ? 0 : (double)tuples / messages;
 	}
 	
 	/**
@@ -210,7 +339,8 @@ abstract class AbstractThroughputCounter {
 	 */
 	static void declareStatsStream(String reportStream, OutputFieldsDeclarer declarer) {
 		declarer.declareStream(reportStream, new Fields(TS_ATTRIBUTE, STREAM_ID_ATTRIBUTE, TASK_ID_ATTRIBUTE,
-			COUNT_ATTRIBUTE, DELTA_ATTRIBUTE, THROUGHPUT_ATTRIBUTE));
+			COUNT_ATTRIBUTE, DELTA_ATTRIBUTE, THROUGHPUT_ATTRIBUTE, MESSAGES_ATTRIBUTE, MESSAGE_THROUGHPUT_ATTRIBUTE,
+			BATCH_SIZE_ATTRIBUTE));
 	}
 	
 }
@@ -18,20 +18,81 @@
  */
 package de.hub.cs.dbis.aeolus.monitoring.throughput;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
 
 
 /**
- * {@link Counter} is simple long counter.
+ * {@link Counter} is a per-stream counter slot. It holds the overall number of counted tuples and messages of a single
+ * stream. Both values are only updated by a single (counting) thread and read by a single (reporting) thread. Thus,
+ * updates use {@link AtomicLong#lazySet(long)} instead of a lock or an atomic read-modify-write operation.
  * 
  * @author mjsax
  */
 class Counter {
 	
-	/** The value of the counter. */
-	public long counter = 0;
+	/** The reported stream ID (ie, including the {@code in::} or {@code out::} prefix). */
+	final String reportStreamId;
+	
+	/** The overall number of counted tuples. */
+	private final AtomicLong counter = new AtomicLong();
+	
+	/** The overall number of physical messages (ie, single tuples or batches) that contained the counted tuples. */
+	private final AtomicLong messages = new AtomicLong();
+	
+	/** The number of counted tuples at the last report (only accessed by the reporting thread). */
+	long reportedCounter = 0;
+	
+	/** The number of counted messages at the last report (only accessed by the reporting thread). */
+	long reportedMessages = 0;
+	
+	
+	
+	/**
+	 * Instantiates a new {@link Counter}.
+	 * 
+	 * @param reportStreamId
+	 *            The reported stream ID.
+	 */
+	Counter(String reportStreamId) {
+		this.reportStreamId = reportStreamId;
+	}
+	
+	
+	
+	/**
+	 * Counts a single message. Must only be called by the counting thread.
+	 * 
+	 * @param numberOfTuples
+	 *            The number of logical tuples of the counted message.
+	 */
+	void add(int numberOfTuples) {
+		this.counter.lazySet(this.counter.get() + numberOfTuples);
+		this.messages.lazySet(this.messages.get() + 1);
+	}
+	
+	/**
+	 * Returns the overall number of counted tuples.
+	 * 
+	 * @return the overall number of counted tuples
+	 */
+	long getCounter() {
+		return this.counter.get();
+	}
+	
+	/**
+	 * Returns the overall number of counted messages.
+	 * 
+	 * @return the overall number of counted messages
+	 */
+	long getMessages() {
+		return this.messages.get();
+	}
 	
 	@Override
 	public String toString() {
-		return "" + counter;
+		return "" + this.counter.get();
 	}
 }
@@ -28,6 +28,9 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.IRichBolt;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.api.IBatchBolt;
+import de.hub.cs.dbis.aeolus.batching.api.IBoltWrapper;
 import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
 
 
@@ -38,11 +41,14 @@ import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
  * {@link ThroughputBolt} counts the number of received and emitted tuples and reports the count in regular intervals.
  * The counts are grouped by stream ID and and overall count is reported, too.<br />
  * <br />
- * Internally, it uses {@link BoltThroughputCounter} for input and output streams.
+ * Internally, it uses {@link BoltThroughputCounter} for input and output streams.<br />
+ * <br />
+ * If the monitored bolt is an {@link IBatchBolt}, whole input batches are forwarded to it (see
+ * {@link #executeBatch(BatchView)}).
  * 
  * @author mjsax
  */
-public class ThroughputBolt implements IRichBolt {
+public class ThroughputBolt implements IBoltWrapper, IBatchBolt {
 	private final static long serialVersionUID = -2588575856564324599L;
 	private final static Logger logger = LoggerFactory.getLogger(ThroughputBolt.class);
 	
@@ -155,10 +161,27 @@ public class ThroughputBolt implements IRichBolt {
 	
 	@Override
 	public void execute(Tuple input) {
-		this.inputCounter.countIn(input.getSourceStreamId());
+		this.inputCounter.countIn(input.getSourceStreamId(), input.getValues());
 		this.userBolt.execute(input);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The batch is counted as a single message that contains {@link BatchView#size()} tuples and is forwarded to the
+	 * monitored bolt as a whole. Must only be called if the monitored bolt is an {@link IBatchBolt}.
+	 */
+	@Override
+	public void executeBatch(BatchView batch) {
+		this.inputCounter.countIn(batch.getSourceStreamId(), batch.size());
+		((IBatchBolt)this.userBolt).executeBatch(batch);
+	}
+	
+	@Override
+	public IRichBolt getWrappedBolt() {
+		return this.userBolt;
+	}
+	
 	@Override
 	public void cleanup() {
 		this.inputReporter.isRunning = false;
@@ -111,13 +111,13 @@ class ThroughputOutputCollector extends OutputCollector {
 	
 	@Override
 	public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
-		this.counter.countOut(streamId);
+		this.counter.countOut(streamId, tuple);
 		return super.emit(streamId, anchors, tuple);
 	}
 	
 	@Override
 	public void emitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
-		this.counter.countOut(streamId);
+		this.counter.countOut(streamId, tuple);
 		super.emitDirect(taskId, streamId, anchors, tuple);
 	}
 	
@@ -58,7 +58,7 @@ class ThroughputSpoutOutputCollector extends SpoutOutputCollector {
 	
 	@Override
 	public List<Integer> emit(String streamId, List<Object> tuple, Object messageId) {
-		this.counter.countOut(streamId);
+		this.counter.countOut(streamId, tuple);
 		return super.emit(streamId, tuple, messageId);
 	}
 	
@@ -79,7 +79,7 @@ class ThroughputSpoutOutputCollector extends SpoutOutputCollector {
 	
 	@Override
 	public void emitDirect(int taskId, String streamId, List<Object> tuple, Object messageId) {
-		this.counter.countOut(streamId);
+		this.counter.countOut(streamId, tuple);
 		super.emitDirect(taskId, streamId, tuple, messageId);
 	}
 	
@@ -0,0 +1,180 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.generated.Grouping;
+import backtype.storm.generated.StormTopology;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.LongBatchColumn;
+import de.hub.cs.dbis.aeolus.batching.api.InputDebatcher;
+import de.hub.cs.dbis.aeolus.monitoring.throughput.ThroughputBolt;
+import de.hub.cs.dbis.aeolus.monitoring.throughput.ThroughputSpout;
+import de.hub.cs.dbis.aeolus.testUtils.ForwardBolt;
+import de.hub.cs.dbis.aeolus.testUtils.IncSpout;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class MonitoringTopoloyBuilderTest {
+	private final String spoutId = "spout";
+	private final String boltId = "bolt";
+	private final String sinkId = "sink";
+	
+	
+	
+	@Test
+	public void testSetBoltExecuteBatch() {
+		MonitoringTopoloyBuilder builder = new MonitoringTopoloyBuilder(true, 1000, true, 1000);
+		builder.enableProfiling(1000, false);
+		builder.setBolt(this.boltId, new TestBatchBolt());
+		
+		List<Object> result = this.executeBatch(builder.createTopology());
+		
+		// batch size and oldest create timestamp
+		Assert.assertEquals(Arrays.asList(new Integer(3), new Long(5)), result);
+	}
+	
+	@Test
+	public void testSetSinkExecuteBatch() {
+		MonitoringTopoloyBuilder builder = new MonitoringTopoloyBuilder(true, 1000, true, 1000);
+		builder.enableProfiling(1000, false);
+		builder.setSink(this.boltId, new TestBatchBolt());
+		
+		List<Object> result = this.executeBatch(builder.createTopology());
+		
+		Assert.assertEquals(new Values(new Integer(3)), result);
+	}
+	
+	@Test
+	public void testThroughputCounterPlacement() {
+		MonitoringTopoloyBuilder builder = new MonitoringTopoloyBuilder(true, 1000, false, 0);
+		builder.setBatchingSpout(this.spoutId, new IncSpout(), 10);
+		builder.setBolt(this.boltId, new TestBatchBolt());
+		builder.setSink(this.sinkId, new TestBatchBolt());
+		StormTopology topology = builder.createTopology();
+		
+		// throughput counters must see whole batches
+		Assert.assertEquals(ThroughputSpout.class, Utils.deserialize(
+			topology.get_spouts().get(this.spoutId).get_spout_object().get_serialized_java()).getClass());
+		
+		for(String id : new String[] {this.boltId, this.sinkId}) {
+			Object bolt = Utils.deserialize(topology.get_bolts().get(id).get_bolt_object().get_serialized_java());
+			Assert.assertEquals(ThroughputBolt.class, bolt.getClass());
+			Assert.assertEquals(InputDebatcher.class, ((ThroughputBolt)bolt).getWrappedBolt().getClass());
+		}
+	}
+	
+	@Test
+	public void testMarkerStreamSubscription() {
+		MonitoringTopoloyBuilder builder = new MonitoringTopoloyBuilder(false, 1000, true, 1000, 10, 0);
+		builder.setSpout(this.spoutId, new IncSpout());
+		// sink is declared before its producer; subscription must be deferred to createTopology()
+		builder.setSink(this.sinkId, new ForwardBolt()).fieldsGrouping(this.boltId, new Fields("id"))
+			.shuffleGrouping(this.boltId, "otherStream");
+		builder.setBolt(this.boltId, new ForwardBolt()).shuffleGrouping(this.spoutId);
+		StormTopology topology = builder.createTopology();
+		
+		Map<GlobalStreamId, Grouping> boltInputs = topology.get_bolts().get(this.boltId).get_common().get_inputs();
+		Assert.assertEquals(2, boltInputs.size());
+		Assert.assertTrue(boltInputs.containsKey(new GlobalStreamId(this.spoutId, Utils.DEFAULT_STREAM_ID)));
+		Assert.assertTrue(boltInputs.containsKey(new GlobalStreamId(this.spoutId,
+			MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM)));
+		
+		// marker stream is subscribed once per producer
+		Map<GlobalStreamId, Grouping> sinkInputs = topology.get_bolts().get(this.sinkId).get_common().get_inputs();
+		Assert.assertEquals(3, sinkInputs.size());
+		Assert.assertTrue(sinkInputs.containsKey(new GlobalStreamId(this.boltId,
+			MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM)));
+	}
+	
+	@Test
+	public void testNoMarkerStreamSubscription() {
+		MonitoringTopoloyBuilder builder = new MonitoringTopoloyBuilder(false, 1000, true, 1000);
+		builder.setSpout(this.spoutId, new IncSpout());
+		builder.setBolt(this.boltId, new ForwardBolt()).shuffleGrouping(this.spoutId);
+		StormTopology topology = builder.createTopology();
+		
+		Map<GlobalStreamId, Grouping> boltInputs = topology.get_bolts().get(this.boltId).get_common().get_inputs();
+		Assert.assertEquals(1, boltInputs.size());
+		Assert.assertTrue(boltInputs.containsKey(new GlobalStreamId(this.spoutId, Utils.DEFAULT_STREAM_ID)));
+	}
+	
+	/**
+	 * Prepares the monitored bolt of the given topology and processes a single batch of three tuples with create
+	 * timestamps.
+	 * 
+	 * @return the single output tuple of the monitored bolt
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<Object> executeBatch(StormTopology topology) {
+		IRichBolt bolt = (IRichBolt)Utils.deserialize(topology.get_bolts().get(this.boltId).get_bolt_object()
+			.get_serialized_java());
+		
+		TopologyContext context = mock(TopologyContext.class);
+		when(new Integer(context.getThisTaskId())).thenReturn(new Integer(0));
+		TestOutputCollector collector = new TestOutputCollector();
+		bolt.prepare(new HashMap(), context, new OutputCollector(collector));
+		
+		BatchColumn values = new BatchColumn(3);
+		LongBatchColumn timestamps = new LongBatchColumn(3);
+		for(int i = 0; i < 3; ++i) {
+			values.add(new Integer(i));
+			timestamps.addLong(7 - i);
+		}
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getValues()).thenReturn(new Values(values, timestamps));
+		when(new Integer(input.size())).thenReturn(new Integer(2));
+		when(input.getValue(0)).thenReturn(values);
+		when(input.getValue(1)).thenReturn(timestamps);
+		when(input.getSourceStreamId()).thenReturn(Utils.DEFAULT_STREAM_ID);
+		
+		bolt.execute(input);
+		bolt.cleanup();
+		
+		Assert.assertEquals(Arrays.asList(input), collector.acked);
+		Assert.assertEquals(1, collector.output.get(Utils.DEFAULT_STREAM_ID).size());
+		return collector.output.get(Utils.DEFAULT_STREAM_ID).get(0);
+	}
+	
+}
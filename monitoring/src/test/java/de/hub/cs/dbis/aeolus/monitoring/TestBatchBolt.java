@@ -0,0 +1,79 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring;
+
+import java.util.Map;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import de.hub.cs.dbis.aeolus.batching.BatchView;
+import de.hub.cs.dbis.aeolus.batching.api.IBatchBolt;
+
+
+
+
+
+/**
+ * {@link TestBatchBolt} emits the size of each received batch (and the value of each received single tuple) and acks
+ * its input.
+ * 
+ * @author mjsax
+ */
+public class TestBatchBolt implements IBatchBolt {
+	private static final long serialVersionUID = -8113948723549011362L;
+	
+	private OutputCollector collector;
+	
+	
+	
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
+		this.collector = collector;
+	}
+	
+	@Override
+	public void execute(Tuple input) {
+		this.collector.emit(input, new Values(input.getValue(0)));
+		this.collector.ack(input);
+	}
+	
+	@Override
+	public void executeBatch(BatchView batch) {
+		this.collector.emit(batch.getInput(), new Values(new Integer(batch.size())));
+		this.collector.ack(batch.getInput());
+	}
+	
+	@Override
+	public void cleanup() {}
+	
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		declarer.declare(new Fields("a"));
+	}
+	
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		return null;
+	}
+	
+}
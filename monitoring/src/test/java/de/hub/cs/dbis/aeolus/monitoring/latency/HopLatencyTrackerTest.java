@@ -0,0 +1,187 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class HopLatencyTrackerTest {
+	private final static long INTERVAL = 1000;
+	private final static String REPORT_STREAM = "report";
+	
+	private TopologyContext context;
+	private TestOutputCollector collector;
+	private String workerId;
+	
+	
+	
+	@Before
+	public void prepare() {
+		this.context = mock(TopologyContext.class);
+		when(new Integer(this.context.getThisTaskId())).thenReturn(new Integer(3));
+		when(this.context.getThisComponentId()).thenReturn("bolt");
+		when(this.context.getThisWorkerPort()).thenReturn(new Integer(6700));
+		this.collector = new TestOutputCollector();
+		this.workerId = LatencyClock.getWorkerId(this.context);
+	}
+	
+	
+	
+	@Test
+	public void testServiceTimeSampling() {
+		HopLatencyTracker tracker = new HopLatencyTracker(this.context, new OutputCollector(this.collector),
+			REPORT_STREAM, INTERVAL, 3);
+		
+		for(int i = 0; i < 3; ++i) {
+			Assert.assertFalse(tracker.sampleServiceTime());
+			Assert.assertFalse(tracker.sampleServiceTime());
+			Assert.assertTrue(tracker.sampleServiceTime());
+		}
+	}
+	
+	@Test
+	public void testServiceTimeReporting() {
+		final long before = System.currentTimeMillis();
+		HopLatencyTracker tracker = new HopLatencyTracker(this.context, new OutputCollector(this.collector),
+			REPORT_STREAM, INTERVAL, 1);
+		
+		tracker.recordServiceTime(5);
+		tracker.recordServiceTime(9);
+		final long after = System.currentTimeMillis();
+		Assert.assertNull(this.collector.output.get(REPORT_STREAM));
+		
+		// a marker after the end of the current interval triggers the report
+		final long start = (after / INTERVAL + 2) * INTERVAL;
+		tracker.recordMarker(this.createMarker("spout", this.workerId, start * 1000000 - 1), start * 1000000);
+		
+		List<List<Object>> reports = this.collector.output.get(REPORT_STREAM);
+		Assert.assertEquals(1, reports.size());
+		final long ts = ((Long)reports.get(0).get(0)).longValue();
+		Assert.assertEquals(0, ts % INTERVAL);
+		Assert.assertTrue(before / INTERVAL * INTERVAL <= ts && ts <= after);
+		assertReport(reports.get(0), ts, "service:bolt", 2, 5, 9);
+	}
+	
+	@Test
+	public void testLocalRemoteSplit() {
+		HopLatencyTracker tracker = new HopLatencyTracker(this.context, new OutputCollector(this.collector),
+			REPORT_STREAM, INTERVAL, 1);
+		
+		final long start = (System.currentTimeMillis() / INTERVAL + 2) * INTERVAL;
+		final long startNs = start * 1000000;
+		
+		// local delays are exact
+		tracker.recordMarker(this.createMarker("spout", this.workerId, startNs + 100 - 5), startNs + 100);
+		tracker.recordMarker(this.createMarker("spout", this.workerId, startNs + 200 - 11), startNs + 200);
+		// remote delays are relative to the minimum delay per worker (ie, 1000 for worker1 and 50000 for worker2)
+		tracker.recordMarker(this.createMarker("spout", "worker1", startNs + 300 - 1000), startNs + 300);
+		tracker.recordMarker(this.createMarker("spout", "worker1", startNs + 400 - 1007), startNs + 400);
+		tracker.recordMarker(this.createMarker("spout", "worker2", startNs + 500 - 50000), startNs + 500);
+		tracker.recordMarker(this.createMarker("spout", "worker2", startNs + 600 - 50013), startNs + 600);
+		
+		tracker.recordMarker(this.createMarker("spout", this.workerId, startNs + INTERVAL * 1000000 - 1), startNs
+			+ INTERVAL * 1000000);
+		
+		Map<String, List<Object>> reports = this.getReportsByMetric();
+		Assert.assertEquals(2, reports.size());
+		assertReport(reports.get("queue:spout->bolt"), start, "queue:spout->bolt", 2, 5, 11);
+		assertReport(reports.get("queue-remote:spout->bolt"), start, "queue-remote:spout->bolt", 4, 0, 13);
+	}
+	
+	@Test
+	public void testIntervalReporting() {
+		HopLatencyTracker tracker = new HopLatencyTracker(this.context, new OutputCollector(this.collector),
+			REPORT_STREAM, INTERVAL, 1);
+		
+		final long start = (System.currentTimeMillis() / INTERVAL + 2) * INTERVAL;
+		
+		// closing the (empty) first interval does not emit a report
+		tracker.recordMarker(this.createMarker("spout", this.workerId, start * 1000000 - 3), start * 1000000);
+		tracker.recordMarker(this.createMarker("spout", this.workerId, (start + INTERVAL - 1) * 1000000 - 7),
+			(start + INTERVAL - 1) * 1000000);
+		Assert.assertNull(this.collector.output.get(REPORT_STREAM));
+		
+		// first marker of next interval triggers report of previous interval
+		tracker.recordMarker(this.createMarker("spout", this.workerId, (start + INTERVAL) * 1000000 - 11),
+			(start + INTERVAL) * 1000000);
+		
+		List<List<Object>> reports = this.collector.output.get(REPORT_STREAM);
+		Assert.assertEquals(1, reports.size());
+		assertReport(reports.get(0), start, "queue:spout->bolt", 2, 3, 7);
+		
+		// no report for the empty interval [start + 2 * INTERVAL, start + 3 * INTERVAL)
+		tracker.recordMarker(this.createMarker("spout", this.workerId, (start + 3 * INTERVAL + 100) * 1000000 - 13),
+			(start + 3 * INTERVAL + 100) * 1000000);
+		
+		Assert.assertEquals(2, reports.size());
+		assertReport(reports.get(1), start + INTERVAL, "queue:spout->bolt", 1, 11, 11);
+	}
+	
+	private Tuple createMarker(String producer, String producerWorker, long hopTimestamp) {
+		Tuple marker = mock(Tuple.class);
+		when(marker.getSourceComponent()).thenReturn(producer);
+		when(marker.getLong(TimestampAttributeAppender.MARKER_HOP_TS_INDEX)).thenReturn(new Long(hopTimestamp));
+		when(marker.getString(TimestampAttributeAppender.MARKER_WORKER_INDEX)).thenReturn(producerWorker);
+		return marker;
+	}
+	
+	private Map<String, List<Object>> getReportsByMetric() {
+		Map<String, List<Object>> reports = new HashMap<String, List<Object>>();
+		for(List<Object> report : this.collector.output.get(REPORT_STREAM)) {
+			Assert.assertNull(reports.put((String)report.get(3), report));
+		}
+		return reports;
+	}
+	
+	/**
+	 * Checks the timestamp, task ID, metric, and the recorded latencies of a report tuple.
+	 */
+	private static void assertReport(List<Object> report, long ts, String metric, int numberOfValues, long min,
+		long max) {
+		Assert.assertEquals(new Long(ts), report.get(0));
+		Assert.assertEquals(new Integer(3), report.get(1));
+		Assert.assertEquals(metric, report.get(3));
+		
+		LatencyHistogram histogram = LatencyHistogram.decode((byte[])report.get(2));
+		Assert.assertEquals(numberOfValues, histogram.getTotalCount());
+		Assert.assertEquals(min, histogram.getMin());
+		Assert.assertEquals(max, histogram.getMax());
+	}
+	
+}
@@ -0,0 +1,95 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class LatencyBoltTest {
+	
+	@Test
+	public void testForwardMarker() {
+		TestOutputCollector collector = new TestOutputCollector();
+		IRichBolt userBolt = mock(IRichBolt.class);
+		
+		LatencyBolt bolt = new LatencyBolt(userBolt, true);
+		bolt.prepare(null, mock(TopologyContext.class), new OutputCollector(collector));
+		
+		final Long createTs = new Long(System.currentTimeMillis() - 10);
+		Tuple marker = mock(Tuple.class);
+		when(marker.getSourceStreamId()).thenReturn(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM);
+		when(marker.getValue(TimestampAttributeAppender.MARKER_CREATE_TS_INDEX)).thenReturn(createTs);
+		
+		final long before = LatencyClock.currentTimeNanos();
+		bolt.execute(marker);
+		final long after = LatencyClock.currentTimeNanos();
+		
+		verify(userBolt, never()).execute(any(Tuple.class));
+		Assert.assertEquals(1, collector.acked.size());
+		Assert.assertSame(marker, collector.acked.get(0));
+		
+		// create timestamp is preserved, hop timestamp is renewed
+		List<List<Object>> markers = collector.output.get(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM);
+		Assert.assertEquals(1, markers.size());
+		Assert.assertEquals(createTs, markers.get(0).get(TimestampAttributeAppender.MARKER_CREATE_TS_INDEX));
+		final long hopTs = ((Long)markers.get(0).get(TimestampAttributeAppender.MARKER_HOP_TS_INDEX)).longValue();
+		Assert.assertTrue(before <= hopTs && hopTs <= after);
+	}
+	
+	@Test
+	public void testForwardTuple() {
+		TestOutputCollector collector = new TestOutputCollector();
+		IRichBolt userBolt = mock(IRichBolt.class);
+		
+		LatencyBolt bolt = new LatencyBolt(userBolt, true);
+		bolt.prepare(null, mock(TopologyContext.class), new OutputCollector(collector));
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getSourceStreamId()).thenReturn("default");
+		
+		bolt.execute(input);
+		
+		verify(userBolt).execute(input);
+		Assert.assertNull(collector.output.get(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM));
+		Assert.assertEquals(0, collector.acked.size());
+	}
+	
+}
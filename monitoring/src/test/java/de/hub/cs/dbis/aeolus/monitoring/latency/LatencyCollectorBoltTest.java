@@ -0,0 +1,130 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class LatencyCollectorBoltTest {
+	private final static long INTERVAL = 1000;
+	private final static String REPORT_STREAM = "report";
+	
+	
+	
+	@Test
+	public void testIntervalReporting() {
+		TopologyContext context = mock(TopologyContext.class);
+		when(new Integer(context.getThisTaskId())).thenReturn(new Integer(3));
+		TestOutputCollector collector = new TestOutputCollector();
+		
+		LatencyCollectorBolt bolt = new LatencyCollectorBolt(mock(IRichBolt.class), INTERVAL, REPORT_STREAM);
+		bolt.prepare(null, context, new OutputCollector(collector));
+		
+		// use timestamps after the first interval boundary, to be independent of the time prepare() is called
+		final long start = (System.currentTimeMillis() / INTERVAL + 2) * INTERVAL;
+		
+		bolt.record(start - 5, start);
+		bolt.record(start + 500 - 7, start + 500);
+		bolt.record(start + INTERVAL - 1 - 9, start + INTERVAL - 1);
+		Assert.assertNull(collector.output.get(REPORT_STREAM));
+		
+		// first tuple of next interval triggers report of previous interval
+		bolt.record(start + INTERVAL - 11, start + INTERVAL);
+		
+		List<List<Object>> reports = collector.output.get(REPORT_STREAM);
+		Assert.assertEquals(1, reports.size());
+		assertReport(reports.get(0), start, 3, 5, 9);
+		
+		// no report for the empty interval [start + 2 * INTERVAL, start + 3 * INTERVAL)
+		bolt.record(start + 3 * INTERVAL + 100 - 13, start + 3 * INTERVAL + 100);
+		
+		Assert.assertEquals(2, reports.size());
+		assertReport(reports.get(1), start + INTERVAL, 1, 11, 11);
+		
+		bolt.record(start + 4 * INTERVAL - 1, start + 4 * INTERVAL);
+		
+		Assert.assertEquals(3, reports.size());
+		assertReport(reports.get(2), start + 3 * INTERVAL, 1, 13, 13);
+	}
+	
+	@Test
+	public void testSampledMarker() {
+		TopologyContext context = mock(TopologyContext.class);
+		TestOutputCollector collector = new TestOutputCollector();
+		IRichBolt userBolt = mock(IRichBolt.class);
+		
+		LatencyCollectorBolt bolt = new LatencyCollectorBolt(userBolt, INTERVAL, REPORT_STREAM,
+			LatencyHistogram.DEFAULT_PRECISION_BITS, true);
+		bolt.prepare(null, context, new OutputCollector(collector));
+		
+		Tuple marker = mock(Tuple.class);
+		when(marker.getSourceStreamId()).thenReturn(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM);
+		when(marker.getLong(TimestampAttributeAppender.MARKER_CREATE_TS_INDEX)).thenReturn(
+			new Long(System.currentTimeMillis()));
+		
+		bolt.execute(marker);
+		
+		verify(userBolt, never()).execute(any(Tuple.class));
+		Assert.assertEquals(1, collector.acked.size());
+		Assert.assertSame(marker, collector.acked.get(0));
+		
+		Tuple input = mock(Tuple.class);
+		when(input.getSourceStreamId()).thenReturn("default");
+		
+		bolt.execute(input);
+		
+		verify(userBolt).execute(input);
+	}
+	
+	/**
+	 * Checks the timestamp, task ID, and the recorded latencies of a report tuple.
+	 */
+	private static void assertReport(List<Object> report, long ts, int numberOfValues, long min, long max) {
+		Assert.assertEquals(new Long(ts), report.get(0));
+		Assert.assertEquals(new Integer(3), report.get(1));
+		
+		LatencyHistogram histogram = LatencyHistogram.decode((byte[])report.get(2));
+		Assert.assertEquals(numberOfValues, histogram.getTotalCount());
+		Assert.assertEquals(min, histogram.getMin());
+		Assert.assertEquals(max, histogram.getMax());
+	}
+	
+}
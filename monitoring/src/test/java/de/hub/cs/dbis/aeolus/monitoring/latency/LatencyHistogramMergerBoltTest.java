@@ -0,0 +1,181 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.generated.Grouping;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class LatencyHistogramMergerBoltTest {
+	private final static long INTERVAL = 1000;
+	
+	private TopologyContext context;
+	
+	
+	
+	@Before
+	public void prepare() {
+		HashMap<GlobalStreamId, Grouping> sources = new HashMap<GlobalStreamId, Grouping>();
+		sources.put(new GlobalStreamId("sink", MonitoringTopoloyBuilder.DEFAULT_LATENCY_STREAM), null);
+		
+		this.context = mock(TopologyContext.class);
+		when(this.context.getThisSources()).thenReturn(sources);
+		when(this.context.getComponentTasks("sink")).thenReturn(Arrays.asList(new Integer(0), new Integer(1)));
+	}
+	
+	
+	
+	@Test
+	public void testMergeCompleteInterval() {
+		LatencyHistogramMergerBolt bolt = new LatencyHistogramMergerBolt(INTERVAL);
+		TestOutputCollector collector = new TestOutputCollector();
+		bolt.prepare(null, this.context, new OutputCollector(collector));
+		
+		bolt.execute(createReport(0, 0, null, 10, 20));
+		Assert.assertNull(collector.output.get(Utils.DEFAULT_STREAM_ID));
+		
+		bolt.execute(createReport(0, 1, null, 30));
+		
+		List<List<Object>> result = collector.output.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(new Values(new Long(0), new Long(3), new Long(20), new Long(30), new Long(30),
+			new Long(30), new Long(20), new Long(10)), result.get(0));
+		Assert.assertEquals(2, collector.acked.size());
+	}
+	
+	@Test
+	public void testFlushStaleInterval() {
+		LatencyHistogramMergerBolt bolt = new LatencyHistogramMergerBolt(INTERVAL);
+		TestOutputCollector collector = new TestOutputCollector();
+		bolt.prepare(null, this.context, new OutputCollector(collector));
+		
+		// task 1 does not report for interval 0 (eg, no input)
+		bolt.execute(createReport(0, 0, null, 10));
+		bolt.execute(createReport(INTERVAL, 0, null, 20));
+		Assert.assertNull(collector.output.get(Utils.DEFAULT_STREAM_ID));
+		
+		bolt.execute(createReport(2 * INTERVAL, 0, null, 30));
+		
+		List<List<Object>> result = collector.output.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(new Long(0), result.get(0).get(0));
+		Assert.assertEquals(new Long(1), result.get(0).get(1));
+		
+		bolt.execute(createReport(INTERVAL, 1, null, 40));
+		
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals(new Long(INTERVAL), result.get(1).get(0));
+		Assert.assertEquals(new Long(2), result.get(1).get(1));
+	}
+	
+	@Test
+	public void testDropLateReport() {
+		LatencyHistogramMergerBolt bolt = new LatencyHistogramMergerBolt(INTERVAL);
+		TestOutputCollector collector = new TestOutputCollector();
+		bolt.prepare(null, this.context, new OutputCollector(collector));
+		
+		bolt.execute(createReport(0, 0, null, 10));
+		bolt.execute(createReport(3 * INTERVAL, 0, null, 20));
+		
+		List<List<Object>> result = collector.output.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(1, result.size());
+		
+		// intervals 0 and 1000 are emitted already -> late reports must not be emitted a second time
+		Tuple lateReport = createReport(0, 1, null, 30);
+		bolt.execute(lateReport);
+		bolt.execute(createReport(INTERVAL, 1, null, 30));
+		Assert.assertEquals(1, result.size());
+		Assert.assertTrue(collector.acked.contains(lateReport));
+		
+		bolt.execute(createReport(5 * INTERVAL, 1, null, 40));
+		bolt.execute(createReport(5 * INTERVAL, 0, null, 50));
+		
+		Assert.assertEquals(3, result.size());
+		Assert.assertEquals(new Long(3 * INTERVAL), result.get(1).get(0));
+		Assert.assertEquals(new Long(1), result.get(1).get(1));
+		Assert.assertEquals(new Long(5 * INTERVAL), result.get(2).get(0));
+		Assert.assertEquals(new Long(2), result.get(2).get(1));
+		Assert.assertEquals(6, collector.acked.size());
+	}
+	
+	@Test
+	public void testLabeled() {
+		LatencyHistogramMergerBolt bolt = new LatencyHistogramMergerBolt(INTERVAL, true);
+		TestOutputCollector collector = new TestOutputCollector();
+		bolt.prepare(null, this.context, new OutputCollector(collector));
+		
+		bolt.execute(createReport(0, 0, "a", 10));
+		bolt.execute(createReport(0, 0, "b", 20));
+		bolt.execute(createReport(0, 1, "b", 30));
+		
+		List<List<Object>> result = collector.output.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(new Long(0), result.get(0).get(0));
+		Assert.assertEquals("b", result.get(0).get(1));
+		Assert.assertEquals(new Long(2), result.get(0).get(2));
+		
+		bolt.execute(createReport(0, 1, "a", 40));
+		
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals("a", result.get(1).get(1));
+		Assert.assertEquals(new Long(40), result.get(1).get(6));
+	}
+	
+	/**
+	 * Creates a report tuple with a histogram that contains the given latencies.
+	 */
+	private static Tuple createReport(long ts, int taskId, String metric, long... latencies) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long latency : latencies) {
+			histogram.record(latency);
+		}
+		
+		Tuple report = mock(Tuple.class);
+		when(report.getLong(0)).thenReturn(new Long(ts));
+		when(report.getValue(1)).thenReturn(new Integer(taskId));
+		when(report.getValue(2)).thenReturn(histogram.encode());
+		when(report.getString(3)).thenReturn(metric);
+		return report;
+	}
+	
+}
@@ -0,0 +1,175 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class LatencyHistogramTest {
+	
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		Assert.assertEquals(0, histogram.getTotalCount());
+		Assert.assertEquals(0, histogram.getMin());
+		Assert.assertEquals(0, histogram.getMax());
+		Assert.assertEquals(0, histogram.getMean());
+		Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+	
+	@Test
+	public void testExactSmallValues() {
+		LatencyHistogram histogram = new LatencyHistogram(7);
+		for(int i = 1; i <= 100; ++i) {
+			histogram.record(i);
+		}
+		
+		Assert.assertEquals(100, histogram.getTotalCount());
+		Assert.assertEquals(1, histogram.getMin());
+		Assert.assertEquals(100, histogram.getMax());
+		Assert.assertEquals(50, histogram.getMean());
+		Assert.assertEquals(50, histogram.getValueAtPercentile(50));
+		Assert.assertEquals(99, histogram.getValueAtPercentile(99));
+		Assert.assertEquals(100, histogram.getValueAtPercentile(100));
+	}
+	
+	@Test
+	public void testNegativeValue() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		
+		Assert.assertEquals(1, histogram.getTotalCount());
+		Assert.assertEquals(0, histogram.getMin());
+		Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+	
+	@Test
+	public void testRelativeError() {
+		final long seed = System.currentTimeMillis();
+		final Random r = new Random(seed);
+		System.out.println("Test seed: " + seed);
+		
+		final int precisionBits = 5;
+		final LatencyHistogram histogram = new LatencyHistogram(precisionBits);
+		final long[] values = new long[10000];
+		for(int i = 0; i < values.length; ++i) {
+			values[i] = (long)Math.pow(2, r.nextDouble() * 40);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		
+		for(double percentile : new double[] {50, 90, 99, 99.9}) {
+			long expected = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+			long result = histogram.getValueAtPercentile(percentile);
+			Assert.assertTrue(result >= expected);
+			Assert.assertTrue(result - expected <= expected / (1 << (precisionBits - 1)));
+		}
+		Assert.assertEquals(values[values.length - 1], histogram.getMax());
+		Assert.assertEquals(values[0], histogram.getMin());
+	}
+	
+	@Test
+	public void testLargeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(Long.MAX_VALUE / 3);
+		
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+		Assert.assertTrue(histogram.getValueAtPercentile(50) >= Long.MAX_VALUE / 3);
+	}
+	
+	@Test
+	public void testMerge() {
+		final long seed = System.currentTimeMillis();
+		final Random r = new Random(seed);
+		System.out.println("Test seed: " + seed);
+		
+		LatencyHistogram all = new LatencyHistogram();
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		for(int i = 0; i < 1000; ++i) {
+			long value = r.nextInt(100000);
+			all.record(value);
+			if(i % 3 == 0) {
+				first.record(value);
+			} else {
+				second.record(value);
+			}
+		}
+		first.merge(second);
+		
+		Assert.assertEquals(all.getTotalCount(), first.getTotalCount());
+		Assert.assertEquals(all.getMin(), first.getMin());
+		Assert.assertEquals(all.getMax(), first.getMax());
+		Assert.assertEquals(all.getMean(), first.getMean());
+		Assert.assertEquals(all.getValueAtPercentile(50), first.getValueAtPercentile(50));
+		Assert.assertEquals(all.getValueAtPercentile(99), first.getValueAtPercentile(99));
+		Assert.assertEquals(all.getValueAtPercentile(99.9), first.getValueAtPercentile(99.9));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeDifferentPrecision() {
+		new LatencyHistogram(5).merge(new LatencyHistogram(6));
+	}
+	
+	@Test
+	public void testEncodeDecode() {
+		final long seed = System.currentTimeMillis();
+		final Random r = new Random(seed);
+		System.out.println("Test seed: " + seed);
+		
+		LatencyHistogram histogram = new LatencyHistogram(9);
+		for(int i = 0; i < 1000; ++i) {
+			histogram.record(r.nextInt(1000000));
+		}
+		
+		byte[] encoded = histogram.encode();
+		LatencyHistogram decoded = LatencyHistogram.decode(encoded);
+		
+		Assert.assertEquals(histogram.getTotalCount(), decoded.getTotalCount());
+		Assert.assertEquals(histogram.getMin(), decoded.getMin());
+		Assert.assertEquals(histogram.getMax(), decoded.getMax());
+		Assert.assertEquals(histogram.getMean(), decoded.getMean());
+		for(double percentile : new double[] {0, 25, 50, 90, 99, 99.9, 100}) {
+			Assert.assertEquals(histogram.getValueAtPercentile(percentile), decoded.getValueAtPercentile(percentile));
+		}
+		Assert.assertArrayEquals(encoded, decoded.encode());
+	}
+	
+	@Test
+	public void testEncodeDecodeEmpty() {
+		LatencyHistogram decoded = LatencyHistogram.decode(new LatencyHistogram().encode());
+		decoded.record(7);
+		
+		Assert.assertEquals(7, decoded.getMin());
+		Assert.assertEquals(7, decoded.getMax());
+	}
+	
+}
@@ -0,0 +1,92 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.latency;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.spout.SpoutOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+import de.hub.cs.dbis.aeolus.testUtils.IncSpout;
+import de.hub.cs.dbis.aeolus.testUtils.TestSpoutOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class LatencySpoutTest {
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoSampling() {
+		new LatencySpout(new IncSpout(), 0, 0);
+	}
+	
+	@Test
+	public void testCountBasedSampling() {
+		TestSpoutOutputCollector collector = new TestSpoutOutputCollector();
+		
+		LatencySpout spout = new LatencySpout(new IncSpout(), 3, 0);
+		spout.open(null, mock(TopologyContext.class), new SpoutOutputCollector(collector));
+		
+		for(int i = 0; i < 10; ++i) {
+			spout.nextTuple();
+		}
+		
+		// user tuples are not modified
+		List<List<Object>> output = collector.output.get(Utils.DEFAULT_STREAM_ID);
+		Assert.assertEquals(10, output.size());
+		Assert.assertEquals(1, output.get(0).size());
+		
+		// one marker for each third tuple
+		List<List<Object>> markers = collector.output.get(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM);
+		Assert.assertEquals(3, markers.size());
+		for(List<Object> marker : markers) {
+			Assert.assertEquals(3, marker.size());
+			Assert.assertEquals(
+				new Long(((Long)marker.get(TimestampAttributeAppender.MARKER_HOP_TS_INDEX)).longValue() / 1000000),
+				marker.get(TimestampAttributeAppender.MARKER_CREATE_TS_INDEX));
+		}
+	}
+	
+	@Test
+	public void testTimeBasedSampling() {
+		TestSpoutOutputCollector collector = new TestSpoutOutputCollector();
+		
+		// the first sample is taken right after open(); the next one is not due before the test finished
+		LatencySpout spout = new LatencySpout(new IncSpout(), 0, 3600000);
+		spout.open(null, mock(TopologyContext.class), new SpoutOutputCollector(collector));
+		
+		for(int i = 0; i < 10; ++i) {
+			spout.nextTuple();
+		}
+		
+		Assert.assertEquals(10, collector.output.get(Utils.DEFAULT_STREAM_ID).size());
+		Assert.assertEquals(1, collector.output.get(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM).size());
+	}
+	
+}
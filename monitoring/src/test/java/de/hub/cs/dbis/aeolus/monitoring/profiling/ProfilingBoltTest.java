@@ -0,0 +1,143 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.profiling;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Tuple;
+import de.hub.cs.dbis.aeolus.testUtils.TestOutputCollector;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class ProfilingBoltTest {
+	private final static long INTERVAL = 1000;
+	private final static String REPORT_STREAM = "report";
+	
+	
+	
+	@Test
+	public void testServiceTimeRecording() {
+		TestOutputCollector collector = new TestOutputCollector();
+		
+		// use a long interval, such that all tuples are processed within a single interval
+		ProfilingBolt bolt = new ProfilingBolt(new SleepBolt(2), 3600000, false, REPORT_STREAM);
+		bolt.prepare(null, this.createContext(), new OutputCollector(collector));
+		
+		for(int i = 0; i < 3; ++i) {
+			bolt.execute(createTuple("a"));
+		}
+		bolt.execute(createTuple("b"));
+		Assert.assertNull(collector.output.get(REPORT_STREAM));
+		
+		bolt.record("c", System.currentTimeMillis() + 3 * 3600000, 0, 0);
+		
+		long countA = 0, countB = 0, countIn = 0;
+		for(List<Object> report : collector.output.get(REPORT_STREAM)) {
+			Assert.assertEquals(new Integer(3), report.get(1));
+			final long count = ((Long)report.get(3)).longValue();
+			if(report.get(2).equals("a")) {
+				countA += count;
+			} else if(report.get(2).equals("b")) {
+				countB += count;
+			} else {
+				Assert.assertEquals("in", report.get(2));
+				countIn += count;
+			}
+			if(count > 0) {
+				// median service time and average service time are at least the sleep time
+				Assert.assertTrue(((Long)report.get(6)).longValue() >= 2000000);
+				Assert.assertTrue(((Long)report.get(10)).longValue() >= 2000000);
+			}
+		}
+		Assert.assertEquals(3, countA);
+		Assert.assertEquals(1, countB);
+		Assert.assertEquals(4, countIn);
+	}
+	
+	@Test
+	public void testIntervalReporting() {
+		TestOutputCollector collector = new TestOutputCollector();
+		
+		ProfilingBolt bolt = new ProfilingBolt(new SleepBolt(0), INTERVAL, false, REPORT_STREAM);
+		bolt.prepare(null, this.createContext(), new OutputCollector(collector));
+		
+		// use timestamps after the first interval boundary, to be independent of the time prepare() is called
+		final long start = (System.currentTimeMillis() / INTERVAL + 2) * INTERVAL;
+		
+		// closes all (idle) intervals before start
+		bolt.record("a", start, 100000000, 0);
+		List<List<Object>> reports = collector.output.get(REPORT_STREAM);
+		Assert.assertTrue(reports.size() >= 2);
+		for(int i = 0; i < reports.size(); ++i) {
+			assertReport(reports.get(i), start - (reports.size() - i) * INTERVAL, "in", 0, 0);
+		}
+		reports.clear();
+		
+		bolt.record("a", start + 500, 100000000, 0);
+		bolt.record("b", start + INTERVAL - 1, 50000000, 0);
+		Assert.assertEquals(0, reports.size());
+		
+		// first tuple after two idle intervals triggers one report per elapsed interval
+		bolt.record("a", start + 3 * INTERVAL + 5, 1, 0);
+		
+		Assert.assertEquals(5, reports.size());
+		assertReport(reports.get(0), start, "a", 2, 0.2);
+		assertReport(reports.get(1), start, "b", 1, 0.05);
+		assertReport(reports.get(2), start, "in", 3, 0.25);
+		assertReport(reports.get(3), start + INTERVAL, "in", 0, 0);
+		assertReport(reports.get(4), start + 2 * INTERVAL, "in", 0, 0);
+	}
+	
+	private TopologyContext createContext() {
+		TopologyContext context = mock(TopologyContext.class);
+		when(new Integer(context.getThisTaskId())).thenReturn(new Integer(3));
+		return context;
+	}
+	
+	private static Tuple createTuple(String streamId) {
+		Tuple input = mock(Tuple.class);
+		when(input.getSourceStreamId()).thenReturn(streamId);
+		return input;
+	}
+	
+	/**
+	 * Checks the timestamp, task ID, stream ID, tuple count, and busy ratio of a report tuple.
+	 */
+	private static void assertReport(List<Object> report, long ts, String streamId, long count, double busy) {
+		Assert.assertEquals(new Long(ts), report.get(0));
+		Assert.assertEquals(new Integer(3), report.get(1));
+		Assert.assertEquals(streamId, report.get(2));
+		Assert.assertEquals(new Long(count), report.get(3));
+		Assert.assertEquals(busy, ((Double)report.get(4)).doubleValue(), 1e-9);
+	}
+	
+}
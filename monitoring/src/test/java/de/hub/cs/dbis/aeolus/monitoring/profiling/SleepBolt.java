@@ -0,0 +1,77 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.profiling;
+
+import java.util.Map;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.IRichBolt;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.tuple.Tuple;
+
+
+
+
+
+/**
+ * {@link SleepBolt} sleeps for a fixed time for each received tuple and does not emit anything.
+ * 
+ * @author mjsax
+ */
+public class SleepBolt implements IRichBolt {
+	private static final long serialVersionUID = 5263394286409263437L;
+	
+	/** The sleep time per tuple in milliseconds. */
+	private final long sleepTime;
+	
+	
+	
+	public SleepBolt(long sleepTime) {
+		this.sleepTime = sleepTime;
+	}
+	
+	
+	
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context, OutputCollector collector) {
+		// nothing to do
+	}
+	
+	@Override
+	public void execute(Tuple input) {
+		try {
+			Thread.sleep(this.sleepTime);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void cleanup() {}
+	
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {}
+	
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		return null;
+	}
+	
+}
@@ -0,0 +1,239 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.throughput;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import backtype.storm.tuple.Values;
+import backtype.storm.utils.Utils;
+import de.hub.cs.dbis.aeolus.batching.BatchColumn;
+import de.hub.cs.dbis.aeolus.batching.BatchingOutputFieldsDeclarer;
+import de.hub.cs.dbis.aeolus.batching.LongBatchColumn;
+import de.hub.cs.dbis.aeolus.monitoring.MonitoringTopoloyBuilder;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class AbstractThroughputCounterTest {
+	
+	@Test
+	public void testCountInBatches() {
+		TestThroughputCounter counter = new TestThroughputCounter(true);
+		
+		counter.countIn("s", createBatch(4));
+		counter.countIn("s", createBatch(4));
+		counter.countIn("s", new Values(new Long(0), new Long(1)));
+		counter.reportCount(1000, 0.5);
+		
+		Assert.assertEquals(2, counter.reports.size());
+		Assert.assertEquals(createReport("in::s", 9, 9, 18, 3, 6, 3.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("in", 9, 9, 18, 3, 6, 3.0), counter.reports.get(1));
+	}
+	
+	@Test
+	public void testCountInBatchSize() {
+		TestThroughputCounter counter = new TestThroughputCounter(true);
+		
+		counter.countIn("s", 10);
+		counter.countIn("s", 6);
+		counter.reportCount(1000, 2);
+		
+		Assert.assertEquals(createReport("in::s", 16, 16, 8, 2, 1, 8.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("in", 16, 16, 8, 2, 1, 8.0), counter.reports.get(1));
+	}
+	
+	@Test
+	public void testCountOutBatches() {
+		TestThroughputCounter counter = new TestThroughputCounter(false);
+		
+		counter.countOut("s", createBatch(5));
+		counter.countOut("s", createBatch(3));
+		counter.reportCount(1000, 1);
+		
+		Assert.assertEquals(2, counter.reports.size());
+		Assert.assertEquals(createReport("out::s", 8, 8, 8, 2, 2, 4.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("out", 8, 8, 8, 2, 2, 4.0), counter.reports.get(1));
+	}
+	
+	@Test
+	public void testNoInput() {
+		TestThroughputCounter counter = new TestThroughputCounter(false);
+		
+		counter.reportCount(1000, 1);
+		
+		Assert.assertEquals(1, counter.reports.size());
+		Assert.assertEquals(createReport("out", 0, 0, 0, 0, 0, 0.0), counter.reports.get(0));
+	}
+	
+	@Test
+	public void testInternalStreams() {
+		TestThroughputCounter counter = new TestThroughputCounter(false);
+		
+		counter.countOut(MonitoringTopoloyBuilder.LATENCY_MARKER_STREAM, new Values(new Long(0)));
+		counter.countOut("s", createBatch(2));
+		counter.countOut(MonitoringTopoloyBuilder.DEFAULT_PROFILING_STREAM, new Values(new Long(0)));
+		counter.reportCount(1000, 1);
+		
+		Assert.assertEquals(2, counter.reports.size());
+		Assert.assertEquals(createReport("out::s", 2, 2, 2, 1, 1, 2.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("out", 2, 2, 2, 1, 1, 2.0), counter.reports.get(1));
+	}
+	
+	@Test
+	public void testEmulatedDirectStreams() {
+		TestThroughputCounter counter = new TestThroughputCounter(false);
+		
+		counter.countOut(Utils.DEFAULT_STREAM_ID, createBatch(2));
+		counter.countOut(BatchingOutputFieldsDeclarer.STREAM_PREFIX + Utils.DEFAULT_STREAM_ID, createBatch(3));
+		counter.countOut("aeolus::s", createBatch(4));
+		counter.reportCount(1000, 1);
+		
+		// emulated direct streams carry user data and are counted under their user stream
+		Assert.assertEquals(3, counter.reports.size());
+		Assert.assertEquals(createReport("out::default", 5, 5, 5, 2, 2, 2.5), counter.reports.get(0));
+		Assert.assertEquals(createReport("out::s", 4, 4, 4, 1, 1, 4.0), counter.reports.get(1));
+		Assert.assertEquals(createReport("out", 9, 9, 9, 3, 3, 3.0), counter.reports.get(2));
+	}
+	
+	@Test
+	public void testPerStreamCounters() {
+		TestThroughputCounter counter = new TestThroughputCounter(true);
+		
+		counter.countIn("a", new Values(new Long(0)));
+		counter.countIn("b", new Values(new Long(0)));
+		counter.countIn("a", new Values(new Long(0)));
+		counter.countIn("c", createBatch(3));
+		counter.reportCount(1000, 1);
+		
+		// slots are reported in the order the streams are counted the first time
+		Assert.assertEquals(4, counter.reports.size());
+		Assert.assertEquals(createReport("in::a", 2, 2, 2, 2, 2, 1.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("in::b", 1, 1, 1, 1, 1, 1.0), counter.reports.get(1));
+		Assert.assertEquals(createReport("in::c", 3, 3, 3, 1, 1, 3.0), counter.reports.get(2));
+		Assert.assertEquals(createReport("in", 6, 6, 6, 4, 4, 1.5), counter.reports.get(3));
+	}
+	
+	@Test
+	public void testLastStreamCache() {
+		TestThroughputCounter counter = new TestThroughputCounter(false);
+		
+		// equal stream IDs that are different objects must be counted in the same slot
+		counter.countOut("a", new Values(new Long(0)));
+		counter.countOut(new String("a"), new Values(new Long(0)));
+		counter.countOut("b", new Values(new Long(0)));
+		counter.countOut(new String("a"), new Values(new Long(0)));
+		counter.countOut("a", new Values(new Long(0)));
+		counter.countOut(new String("b"), new Values(new Long(0)));
+		counter.reportCount(1000, 1);
+		
+		Assert.assertEquals(3, counter.reports.size());
+		Assert.assertEquals(createReport("out::a", 4, 4, 4, 4, 4, 1.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("out::b", 2, 2, 2, 2, 2, 1.0), counter.reports.get(1));
+		Assert.assertEquals(createReport("out", 6, 6, 6, 6, 6, 1.0), counter.reports.get(2));
+	}
+	
+	@Test
+	public void testDeltaAcrossIntervals() {
+		TestThroughputCounter counter = new TestThroughputCounter(true);
+		
+		counter.countIn("a", createBatch(4));
+		counter.countIn("b", new Values(new Long(0)));
+		counter.reportCount(1000, 1);
+		counter.reports.clear();
+		
+		counter.countIn("a", createBatch(2));
+		counter.countIn("a", createBatch(2));
+		counter.countIn("c", new Values(new Long(0)));
+		counter.reportCount(1000, 1);
+		
+		Assert.assertEquals(4, counter.reports.size());
+		Assert.assertEquals(createReport("in::a", 8, 4, 4, 2, 2, 2.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("in::b", 1, 0, 0, 0, 0, 0.0), counter.reports.get(1));
+		Assert.assertEquals(createReport("in::c", 1, 1, 1, 1, 1, 1.0), counter.reports.get(2));
+		Assert.assertEquals(createReport("in", 10, 5, 5, 3, 3, 5.0 / 3), counter.reports.get(3));
+		counter.reports.clear();
+		
+		counter.reportCount(1000, 1);
+		
+		Assert.assertEquals(createReport("in::a", 8, 0, 0, 0, 0, 0.0), counter.reports.get(0));
+		Assert.assertEquals(createReport("in", 10, 0, 0, 0, 0, 0.0), counter.reports.get(3));
+	}
+	
+	@Test
+	public void testConcurrentReporting() throws InterruptedException {
+		final TestThroughputCounter counter = new TestThroughputCounter(true);
+		final int numberOfTuples = 100000;
+		
+		Thread countingThread = new Thread() {
+			@Override
+			public void run() {
+				for(int i = 0; i < numberOfTuples; ++i) {
+					counter.countIn("a", 1);
+				}
+			}
+		};
+		countingThread.start();
+		
+		long sum = 0;
+		long lastCount = 0;
+		while(countingThread.isAlive()) {
+			counter.reportCount(1000, 1);
+			final Values overall = counter.reports.get(counter.reports.size() - 1);
+			final long count = ((Long)overall.get(3)).longValue();
+			Assert.assertTrue(count >= lastCount);
+			Assert.assertEquals(count - lastCount, ((Long)overall.get(4)).longValue());
+			sum += count - lastCount;
+			lastCount = count;
+			counter.reports.clear();
+		}
+		countingThread.join();
+		
+		counter.reportCount(1000, 1);
+		sum += ((Long)counter.reports.get(counter.reports.size() - 1).get(4)).longValue();
+		Assert.assertEquals(numberOfTuples, sum);
+	}
+	
+	/**
+	 * Creates a batch with two attributes and the given number of tuples.
+	 */
+	static Values createBatch(int size) {
+		BatchColumn first = new BatchColumn(size);
+		LongBatchColumn second = new LongBatchColumn(size);
+		for(int i = 0; i < size; ++i) {
+			first.add(new Integer(i));
+			second.addLong(i);
+		}
+		return new Values(first, second);
+	}
+	
+	/**
+	 * Creates the expected report tuple (with timestamp 1000 and task ID 0).
+	 */
+	static Values createReport(String streamId, long count, long delta, long throughput, long messages,
+		long messageThroughput, double batchSize) {
+		return new Values(new Long(1000), streamId, new Integer(0), new Long(count), new Long(delta), new Long(
+			throughput), new Long(messages), new Long(messageThroughput), new Double(batchSize));
+	}
+	
+}
@@ -0,0 +1,68 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.throughput;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+
+
+
+/**
+ * @author mjsax
+ */
+public class CounterTest {
+	
+	@Test
+	public void testAdd() {
+		Counter counter = new Counter("in::a");
+		Assert.assertEquals(0, counter.getCounter());
+		Assert.assertEquals(0, counter.getMessages());
+		
+		counter.add(1);
+		counter.add(10);
+		counter.add(5);
+		
+		Assert.assertEquals(16, counter.getCounter());
+		Assert.assertEquals(3, counter.getMessages());
+		Assert.assertEquals("16", counter.toString());
+		Assert.assertEquals("in::a", counter.reportStreamId);
+	}
+	
+	@Test
+	public void testVisibility() throws InterruptedException {
+		final Counter counter = new Counter("in::a");
+		
+		Thread countingThread = new Thread() {
+			@Override
+			public void run() {
+				for(int i = 0; i < 1000; ++i) {
+					counter.add(2);
+				}
+			}
+		};
+		countingThread.start();
+		countingThread.join();
+		
+		Assert.assertEquals(2000, counter.getCounter());
+		Assert.assertEquals(1000, counter.getMessages());
+	}
+	
+}
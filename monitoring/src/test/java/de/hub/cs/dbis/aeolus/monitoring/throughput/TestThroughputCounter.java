@@ -0,0 +1,51 @@
+/*
+ * #!
+ * %
+ * Copyright (C) 2014 - 2016 Humboldt-Universität zu Berlin
+ * %
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #_
+ */
+package de.hub.cs.dbis.aeolus.monitoring.throughput;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import backtype.storm.tuple.Values;
+
+
+
+
+
+/**
+ * {@link TestThroughputCounter} collects all reported statistics tuples.
+ * 
+ * @author mjsax
+ */
+class TestThroughputCounter extends AbstractThroughputCounter {
+	final List<Values> reports = new LinkedList<Values>();
+	
+	
+	
+	public TestThroughputCounter(boolean inputOrOutput) {
+		super(inputOrOutput, new Integer(0));
+	}
+	
+	
+	
+	@Override
+	void doEmit(Values statsTuple) {
+		this.reports.add(statsTuple);
+	}
+	
+}
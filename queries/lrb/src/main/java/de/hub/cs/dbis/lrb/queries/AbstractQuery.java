@@ -84,8 +84,8 @@ public abstract class AbstractQuery {
 			.describedAs("ms").ofType(Integer.class);
 		measureLatencyOption = parser
 			.accepts("measureLatency",
-				"Collect tuples latencies and report statistics in buckets of specified number of tuples.")
-			.withRequiredArg().describedAs("cnt").ofType(Integer.class);
+				"Collect tuples latencies and report statistics in specified time intervalls.")
+			.withRequiredArg().describedAs("ms").ofType(Integer.class);
 	}
 	
 	
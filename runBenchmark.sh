@@ -44,7 +44,7 @@ java \
   --toll-output /data/mjsax/lrb-result/toll.out \
   --toll-ass-output /data/mjsax/lrb-result/tollass.out \
   --measureThroughput 1000 \
-  --measureLatency 100 \
+  --measureLatency 1000 \
   --realtime \
 
 